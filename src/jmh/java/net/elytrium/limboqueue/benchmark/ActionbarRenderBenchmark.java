@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.elytrium.commons.kyori.serialization.Serializers;
+import net.elytrium.limboqueue.Config;
+import net.elytrium.limboqueue.message.MessageTemplate;
+import net.elytrium.limboqueue.message.Messages;
+import net.elytrium.limboqueue.queue.QueueGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering the queue actionbar line for every player of a {@code queueSize} queue, i.e. the work of one actionbar tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ActionbarRenderBenchmark {
+
+  /**
+   * Admission rate the estimated waits are based on, in players per second.
+   */
+  private static final double THROUGHPUT = 20;
+
+  @Param({"1000", "10000", "100000"})
+  private int queueSize;
+
+  @Param({"MINIMESSAGE", "LEGACY_AMPERSAND"})
+  private String serializerName;
+
+  private Serializer serializer;
+  private Messages messages;
+  private String pattern;
+
+  @Setup
+  public void setup() {
+    this.serializer = new Serializer(Serializers.valueOf(this.serializerName).getSerializer());
+    this.messages = new Messages(this.serializer);
+    this.pattern = MessageTemplate.index(Config.IMP.MESSAGES.ACTIONBAR_QUEUE, "position", "seconds", "eta");
+  }
+
+  /**
+   * Formatting and parsing the configured pattern for every player, as done before templates were precompiled.
+   */
+  @Benchmark
+  public void formatAndDeserialize(Blackhole blackhole) {
+    for (int i = 0; i < this.queueSize; i++) {
+      blackhole.consume(this.serializer.deserialize(MessageFormat.format(this.pattern, i + 1, waitingSeconds(i),
+          this.messages.formatEta(QueueGroup.estimateWait(i + 1, THROUGHPUT)))));
+    }
+  }
+
+  @Benchmark
+  public void precompiled(Blackhole blackhole) {
+    for (int i = 0; i < this.queueSize; i++) {
+      blackhole.consume(this.messages.actionbarQueue(i + 1, waitingSeconds(i), QueueGroup.estimateWait(i + 1, THROUGHPUT)));
+    }
+  }
+
+  private static int waitingSeconds(int position) {
+    // Players further back have been waiting longer
+    return position / 10;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.queue.CommandRing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Three threads queuing commands while the dispatcher drains them, through the ring and through a deque behind a lock,
+ * the way every queue change used to wait for the others.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandRingBenchmark {
+
+  private static final int CAPACITY = 1 << 14;
+  private static final int BATCH_SIZE = 1024;
+  private static final Runnable COMMAND = () -> {
+  };
+
+  private CommandRing<Runnable> ring;
+  private ArrayDeque<Runnable> deque;
+
+  @Setup
+  public void setup() {
+    this.ring = new CommandRing<>(CAPACITY);
+    this.deque = new ArrayDeque<>(CAPACITY);
+  }
+
+  @Benchmark
+  @Group("ring")
+  @GroupThreads(3)
+  public boolean ringOffer() {
+    return this.ring.offer(COMMAND);
+  }
+
+  @Benchmark
+  @Group("ring")
+  @GroupThreads(1)
+  public int ringDrain() {
+    return this.ring.drain(Runnable::run, BATCH_SIZE);
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(3)
+  public boolean lockedOffer() {
+    synchronized (this.deque) {
+      return this.deque.size() < CAPACITY && this.deque.offer(COMMAND);
+    }
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(1)
+  public int lockedDrain() {
+    synchronized (this.deque) {
+      int drained = 0;
+      Runnable command;
+      while (drained < BATCH_SIZE && (command = this.deque.poll()) != null) {
+        command.run();
+        drained++;
+      }
+
+      return drained;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import com.velocitypowered.api.plugin.PluginContainer;
+import com.velocitypowered.api.plugin.PluginManager;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerInfo;
+import com.velocitypowered.api.proxy.server.ServerPing;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.elytrium.limboapi.api.LimboFactory;
+import net.elytrium.limboapi.api.player.LimboPlayer;
+import net.elytrium.limboqueue.Config;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.elytrium.limboqueue.QueueSettings;
+import net.kyori.adventure.text.Component;
+import org.slf4j.Logger;
+
+/**
+ * Minimal stand-ins for the proxy and LimboAPI objects, so the plugin classes can run outside of Velocity.
+ * Methods without an answer return null, false, zero or an empty Optional.
+ */
+final class Fakes {
+
+  private Fakes() {
+  }
+
+  static QueuePlayerInfo player(UUID uuid) {
+    return player(uuid, 0);
+  }
+
+  static QueuePlayerInfo player(UUID uuid, int tier) {
+    Player player = proxy(Player.class, Map.of(
+        "getUniqueId", args -> uuid,
+        "getUsername", args -> uuid.toString().substring(0, 16),
+        "isActive", args -> true
+    ));
+    LimboPlayer limboPlayer = proxy(LimboPlayer.class, Map.of("getProxyPlayer", args -> player));
+    return new QueuePlayerInfo(limboPlayer, QueueClock.millis(), tier, QueueSettings.DEFAULT_GROUP);
+  }
+
+  static RegisteredServer server(String name, InetSocketAddress address, int online, int max) {
+    ServerInfo serverInfo = new ServerInfo(name, address);
+    ServerPing ping = new ServerPing(new ServerPing.Version(0, "benchmark"), new ServerPing.Players(online, max, List.of()), Component.empty(), null);
+    return proxy(RegisteredServer.class, Map.of(
+        "getServerInfo", args -> serverInfo,
+        "ping", args -> CompletableFuture.completedFuture(ping)
+    ));
+  }
+
+  /**
+   * Creates the plugin without initializing it: no config file is read and nothing is registered on the proxy.
+   * Its settings are taken from {@link Config#IMP} as it is when this is called.
+   */
+  static LimboQueue plugin(Map<String, RegisteredServer> servers) {
+    LimboFactory factory = proxy(LimboFactory.class, Map.of());
+    PluginContainer container = proxy(PluginContainer.class, Map.of("getInstance", args -> Optional.of(factory)));
+    PluginManager pluginManager = proxy(PluginManager.class, Map.of("getPlugin", args -> Optional.of(container)));
+    ProxyServer proxyServer = proxy(ProxyServer.class, Map.of(
+        "getPluginManager", args -> pluginManager,
+        "getServer", args -> Optional.ofNullable(servers.get((String) args[0]))
+    ));
+    Logger logger = proxy(Logger.class, Map.of());
+    LimboQueue plugin = new LimboQueue(logger, proxyServer, Path.of("build", "jmh"));
+    try {
+      Field settings = LimboQueue.class.getDeclaredField("settings");
+      settings.setAccessible(true);
+      settings.set(plugin, new QueueSettings(Config.IMP, logger));
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalStateException("Failed to set the settings", e);
+    }
+
+    return plugin;
+  }
+
+  /**
+   * Sets the serializer that {@link LimboQueue#reload()} would have created from the config.
+   */
+  static void useSerializer(Serializer serializer) {
+    try {
+      Method setSerializer = LimboQueue.class.getDeclaredMethod("setSerializer", Serializer.class);
+      setSerializer.setAccessible(true);
+      setSerializer.invoke(null, serializer);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Failed to set the serializer", e);
+    }
+  }
+
+  private static <T> T proxy(Class<T> type, Map<String, Answer> answers) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        default:
+          break;
+      }
+
+      Answer answer = answers.get(method.getName());
+      if (answer != null) {
+        return answer.answer(args);
+      }
+
+      return defaultValue(method.getReturnType());
+    }));
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == Optional.class) {
+      return Optional.empty();
+    } else if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type == float.class) {
+      return 0.0F;
+    } else if (type == double.class) {
+      return 0.0;
+    } else if (type == short.class) {
+      return (short) 0;
+    } else if (type == byte.class) {
+      return (byte) 0;
+    } else if (type == char.class) {
+      return '\0';
+    } else {
+      return null;
+    }
+  }
+
+  private interface Answer {
+
+    Object answer(Object[] args);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.listener.QueueListener;
+import net.kyori.adventure.text.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Deciding whether a kicked player goes to the queue, with the default kick reasons.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KickReasonBenchmark {
+
+  private QueueListener listener;
+  private Component fullReason;
+  private Component splitReason;
+  private Component translatableReason;
+  private Component otherReason;
+
+  @Setup
+  public void setup() {
+    this.listener = new QueueListener(Fakes.plugin(Map.of()));
+    this.fullReason = Component.text("The server is full");
+    // What a styled message looks like once deserialized: the text is split over several components.
+    this.splitReason = Component.text("The ")
+        .append(Component.text("server"))
+        .append(Component.text(" is full"))
+        .append(Component.text(", try again later"));
+    this.translatableReason = Component.translatable("multiplayer.disconnect.server_full");
+    this.otherReason = Component.text("You are banned from this server.")
+        .append(Component.text(" Reason: "))
+        .append(Component.text("Using unfair modifications"))
+        .append(Component.text(" Appeal at https://example.com/appeal"));
+  }
+
+  @Benchmark
+  public boolean matching() {
+    return this.listener.matchesKickMessage(this.fullReason);
+  }
+
+  @Benchmark
+  public boolean matchingSplit() {
+    return this.listener.matchesKickMessage(this.splitReason);
+  }
+
+  @Benchmark
+  public boolean matchingTranslatable() {
+    return this.listener.matchesKickMessage(this.translatableReason);
+  }
+
+  @Benchmark
+  public boolean notMatching() {
+    return this.listener.matchesKickMessage(this.otherReason);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.elytrium.limboqueue.queue.TieredQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Queue operations with the queue already holding {@code queueSize} players, spread evenly over {@code tiers}
+ * priority tiers weighted 1, 3 and 6.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayerQueueBenchmark {
+
+  private static final int[] WEIGHTS = {1, 3, 6};
+
+  @Param({"1000", "10000", "100000"})
+  private int queueSize;
+
+  @Param({"1", "3"})
+  private int tiers;
+
+  private TieredQueue queue;
+  private UUID[] uuids;
+  private QueuePlayerInfo extraPlayer;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    this.queue = new TieredQueue();
+    this.queue.setWeights(Arrays.copyOf(WEIGHTS, this.tiers));
+    this.uuids = new UUID[this.queueSize];
+    for (int i = 0; i < this.queueSize; i++) {
+      QueuePlayerInfo playerInfo = Fakes.player(UUID.randomUUID(), i % this.tiers);
+      this.uuids[i] = playerInfo.getUuid();
+      this.queue.add(playerInfo);
+    }
+
+    this.extraPlayer = Fakes.player(UUID.randomUUID());
+  }
+
+  @Benchmark
+  public boolean addAndRemove() {
+    this.queue.add(this.extraPlayer);
+    return this.queue.remove(this.extraPlayer);
+  }
+
+  /**
+   * Moves the head to the tail, like a player that failed to connect and was queued again.
+   */
+  @Benchmark
+  public boolean pollAndAdd() {
+    return this.queue.add(this.queue.poll());
+  }
+
+  /**
+   * Removes a player from the middle of the queue and queues them again at the tail.
+   */
+  @Benchmark
+  public boolean removeByUuid() {
+    return this.queue.add(this.queue.remove(this.nextUuid()));
+  }
+
+  @Benchmark
+  public int position() {
+    return this.queue.getPosition(this.nextUuid());
+  }
+
+  @Benchmark
+  public List<QueuePlayerInfo> snapshot() {
+    return this.queue.snapshot();
+  }
+
+  /**
+   * Snapshot taken after every change, the worst case for the snapshot cache.
+   */
+  @Benchmark
+  public List<QueuePlayerInfo> snapshotAfterChange() {
+    this.queue.add(this.queue.poll());
+    return this.queue.snapshot();
+  }
+
+  private UUID nextUuid() {
+    UUID uuid = this.uuids[this.cursor];
+    this.cursor = (this.cursor + 7919) % this.uuids.length;
+    return uuid;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.Config;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.ServerManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The checks the listener runs on every server switch: is the server a target, and is a server of its group up.
+ * Target servers are split over four groups, the last group is the one being checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreConnectBenchmark {
+
+  @Param({"8", "64"})
+  private int servers;
+
+  private ServerSocket backend;
+  private ServerManager serverManager;
+  private RegisteredServer target;
+  private RegisteredServer other;
+
+  @Setup
+  public void setup() throws IOException {
+    this.backend = new ServerSocket(0, 64, InetAddress.getLoopbackAddress());
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), this.backend.getLocalPort());
+
+    Map<String, RegisteredServer> registered = new HashMap<>();
+    StringJoiner names = new StringJoiner(",");
+    StringJoiner groups = new StringJoiner(";");
+    for (int group = 0; group < 4; group++) {
+      StringJoiner members = new StringJoiner(",");
+      for (int i = group; i < this.servers; i += 4) {
+        String name = "server" + i;
+        registered.put(name, Fakes.server(name, address, 100, 500));
+        names.add(name);
+        members.add(name);
+      }
+
+      groups.add("group" + group + ":" + members);
+    }
+
+    this.other = Fakes.server("hub", address, 100, 500);
+    registered.put("hub", this.other);
+
+    Config.IMP.MAIN.SERVERS = names.toString();
+    Config.IMP.MAIN.GROUPS = groups.toString();
+    Config.IMP.MAIN.SPILLOVER = "";
+    LimboQueue plugin = Fakes.plugin(registered);
+    this.serverManager = new ServerManager(plugin);
+    this.serverManager.checkServers().join();
+    this.target = registered.get("server" + (this.servers - 1));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    this.serverManager.close();
+    this.backend.close();
+    Config.IMP.MAIN.GROUPS = "";
+  }
+
+  @Benchmark
+  public boolean targetServer() {
+    return this.check(this.target);
+  }
+
+  @Benchmark
+  public boolean otherServer() {
+    return this.check(this.other);
+  }
+
+  private boolean check(RegisteredServer server) {
+    String group = this.serverManager.getGroup(server);
+    return group != null && this.serverManager.hasAvailableServers(group);
+  }
+}
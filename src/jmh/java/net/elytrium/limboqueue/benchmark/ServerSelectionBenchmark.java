@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.benchmark;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.Config;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.ServerManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link ServerManager#getAvailableServer()} with every target server up and partially filled.
+ *
+ * <p>The selection doesn't depend on the queue size, only on the amount of servers and the strategy.
+ * The servers are probed once against a local socket, so the manager goes through a real check round.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServerSelectionBenchmark {
+
+  @Param({"ROUND_ROBIN", "LEAST_LOADED", "WEIGHTED", "POWER_OF_TWO"})
+  private String strategy;
+
+  @Param({"2", "8", "32"})
+  private int servers;
+
+  private ServerSocket backend;
+  private ServerManager serverManager;
+
+  @Setup
+  public void setup() throws IOException {
+    this.backend = new ServerSocket(0, 64, InetAddress.getLoopbackAddress());
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), this.backend.getLocalPort());
+
+    Map<String, RegisteredServer> registered = new HashMap<>();
+    StringJoiner names = new StringJoiner(",");
+    for (int i = 0; i < this.servers; i++) {
+      String name = "server" + i;
+      registered.put(name, Fakes.server(name, address, (i * 37) % 450, 500));
+      names.add(name);
+    }
+
+    Config.IMP.MAIN.SERVERS = names.toString();
+    Config.IMP.MAIN.SERVER_SELECTION = this.strategy;
+    Config.IMP.MAIN.SERVER_WEIGHTS = "";
+    LimboQueue plugin = Fakes.plugin(registered);
+    this.serverManager = new ServerManager(plugin);
+    this.serverManager.checkServers().join();
+    if (this.serverManager.getAvailableServerCount() != this.servers) {
+      throw new IllegalStateException("Only " + this.serverManager.getAvailableServerCount() + " servers are available");
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    this.serverManager.close();
+    this.backend.close();
+  }
+
+  @Benchmark
+  public Optional<RegisteredServer> select() {
+    return this.serverManager.getAvailableServer();
+  }
+}
@@ -17,6 +17,7 @@
 
 package net.elytrium.limboqueue;
 
+import java.util.List;
 import net.elytrium.commons.config.YamlConfig;
 
 public class Config extends YamlConfig {
@@ -37,10 +38,51 @@ public class Config extends YamlConfig {
     public String SERVER = "lobby";
     @Comment("Servers from velocity.toml which will be checked for availability (comma separated)")
     public String SERVERS = "lobby,lobby2";
+    @Comment({
+        "Server groups with a queue each, like \"survival:survival1,survival2;minigames:bedwars,skywars\".",
+        "Players are queued for the group of the server they tried to join and every group is admitted on its own,",
+        "so a full group doesn't hold the others back. Servers from the list above that are in no group form the \"default\" group"
+    })
+    public String GROUPS = "";
+    @Comment({
+        "Let the players of a group be sent to the servers of another group while nobody is waiting for that group,",
+        "like \"lobby>lobby-overflow,minigames>lobby\""
+    })
+    public String SPILLOVER = "";
     @Comment("Send player to the queue if kick reason contains this text (like \"The server if full!\")")
     public String KICK_MESSAGE = "The server is full";
+    @Comment({
+        "More kick reasons that send the player to the queue, matched against the plain text of the reason:",
+        "\"text\" - the reason contains this text, case sensitive",
+        "\"regex:...\" - this regular expression is found in the reason, like \"regex:(?i)server is (full|restarting)\"",
+        "\"translation:...\" - the reason contains a translatable component with this key"
+    })
+    public List<String> KICK_REASONS = List.of("translation:multiplayer.disconnect.server_full");
     @Comment("Server checking interval in seconds")
     public int CHECK_INTERVAL = 2;
+    @Comment({
+        "Queue admission runs whenever a server becomes available, a player leaves a server or a new player is queued.",
+        "This interval in seconds is only a safety net for events that were missed"
+    })
+    public int QUEUE_SWEEP_INTERVAL = 10;
+    @Comment({
+        "Admission modes:",
+        "SINGLE - connect one player per admission pass",
+        "BATCH - on every admission pass, connect as many players as there are free slots on the backends"
+    })
+    public String ADMISSION_MODE = "BATCH";
+    @Comment("Maximum amount of connection requests in flight at the same time (BATCH mode)")
+    public int MAX_CONCURRENT_CONNECTIONS = 16;
+    @Comment({
+        "How a server is chosen for each admitted player:",
+        "ROUND_ROBIN - in turn",
+        "LEAST_LOADED - the server with the lowest online/max ratio, lower ping round trip on ties",
+        "WEIGHTED - proportionally to server-weights (or to the max player count from the ping)",
+        "POWER_OF_TWO - the less loaded of two random servers"
+    })
+    public String SERVER_SELECTION = "LEAST_LOADED";
+    @Comment("Capacity weights for the WEIGHTED selection, like \"lobby:100,lobby2:50\"")
+    public String SERVER_WEIGHTS = "";
     @Comment("Enable automatic queue on join (players will be sent to queue world on join)")
     public boolean QUEUE_ON_JOIN = true;
     @Comment("Enable actionbar messages while in queue")
@@ -49,6 +91,143 @@ public class Config extends YamlConfig {
     public boolean ENABLE_SCOREBOARD = false;
     @Comment("Actionbar update interval in seconds")
     public int ACTIONBAR_INTERVAL = 1;
+    @Comment({
+        "The queue is split into this many groups that are updated one after another during the actionbar interval,",
+        "so that the actionbar packets are not all sent at once"
+    })
+    public int ACTIONBAR_SHARDS = 4;
+    @Comment({
+        "Actionbar is only resent when its text changes, or after this many seconds so it doesn't fade out",
+        "(the client hides it after about 3 seconds)"
+    })
+    public int ACTIONBAR_KEEP_ALIVE = 2;
+    @Comment({
+        "Seconds of admissions the estimated wait time ({eta} in the messages) is averaged over.",
+        "Shorter follows changes of the admission rate faster, longer jumps less"
+    })
+    public int ETA_WINDOW = 60;
+
+    @Create
+    public Config.MAIN.PRIORITY PRIORITY;
+
+    public static class PRIORITY {
+
+      @Comment({
+          "Admission weights of the priority tiers, like \"1,3,6\". The first one is for players without a priority permission,",
+          "players with the limboqueue.priority.<n> permission are in tier n (the highest one they have).",
+          "While several tiers are waiting, each one gets its weight's share of the admissions, so lower tiers are never starved"
+      })
+      public String WEIGHTS = "1";
+    }
+
+    @Create
+    public Config.MAIN.HEALTH HEALTH;
+
+    public static class HEALTH {
+
+      @Comment({
+          "Failed probes in a row before a server is taken out of rotation. A refused connection takes it out right away,",
+          "a connection that breaks or times out counts as a failed probe"
+      })
+      public int FAILURE_THRESHOLD = 2;
+      @Comment("Seconds a server stays out of rotation after its first failure, doubled (with jitter) on every failure in a row")
+      public int BASE_BACKOFF = 5;
+      @Comment("Maximum amount of seconds a server stays out of rotation")
+      public int MAX_BACKOFF = 120;
+      @Comment("Servers that stay healthy are probed less often, up to once per this amount of seconds")
+      public int STABLE_PROBE_INTERVAL = 10;
+    }
+
+    @Create
+    public Config.MAIN.CONNECT CONNECT;
+
+    public static class CONNECT {
+
+      @Comment("Seconds a connection from the queue may take before it is given up and the player goes back to their place in the queue")
+      public int TIMEOUT = 15;
+      @Comment({
+          "Milliseconds before a player whose connection failed is sent again from their place in the queue,",
+          "doubled (with jitter) on every failure of the same player"
+      })
+      public int RETRY_BACKOFF = 1000;
+      @Comment("Maximum amount of milliseconds before a player whose connection failed is sent again")
+      public int MAX_RETRY_BACKOFF = 30000;
+      @Comment("Times another plugin may cancel the connection of a player from the queue before the player is removed from it")
+      public int MAX_CANCELLED = 3;
+    }
+
+    @Create
+    public Config.MAIN.SLOW_START SLOW_START;
+
+    public static class SLOW_START {
+
+      @Comment({
+          "Seconds over which the admission rate of a server that is healthy again grows from INITIAL_RATE to FULL_RATE,",
+          "so a server still warming up after a restart isn't flooded with players. 0 to send players as fast as possible"
+      })
+      public int WINDOW = 60;
+      @Comment("Players per second sent to a server right after it is healthy again")
+      public int INITIAL_RATE = 2;
+      @Comment("Players per second at the end of the window, servers are no longer throttled afterwards")
+      public int FULL_RATE = 50;
+      @Comment({
+          "A ping slower than this percentage of the usual ping time of a server, or a connection to it that breaks or times out,",
+          "halves its admission rate, which then grows back the same way"
+      })
+      public int RTT_THRESHOLD = 200;
+    }
+
+    @Create
+    public Config.MAIN.METRICS METRICS;
+
+    public static class METRICS {
+
+      @Comment("Serve queue and server metrics in the Prometheus text format on http://<bind>:<port>/metrics")
+      public boolean ENABLED = false;
+      @Comment("Address to listen on. Keep it local unless the endpoint is protected by a firewall")
+      public String BIND = "127.0.0.1";
+      public int PORT = 9225;
+    }
+
+    @Create
+    public Config.MAIN.JOURNAL JOURNAL;
+
+    public static class JOURNAL {
+
+      @Comment({
+          "Write queue joins, leaves and admissions to a journal in the plugin folder, so that players who come back",
+          "after a proxy restart get their queue position and waiting time back"
+      })
+      public boolean ENABLED = true;
+      @Comment("Seconds a player has to come back after leaving the queue or after a restart to get the position back")
+      public int RESTORE_TIMEOUT = 300;
+      @Comment("Journal events are written to disk in batches, once per this amount of milliseconds")
+      public int FLUSH_INTERVAL = 250;
+    }
+
+    @Create
+    public Config.MAIN.CLUSTER CLUSTER;
+
+    public static class CLUSTER {
+
+      @Comment({
+          "How proxies sending players to the same servers share their queues and the free slots of the servers:",
+          "LOCAL - they don't, this proxy is alone",
+          "FILE - through a directory shared by all the proxies, e.g. on the same host or on a network mount with file locks"
+      })
+      public String BACKEND = "LOCAL";
+      @Comment("Directory of the FILE backend, relative to the plugin folder unless absolute")
+      public String DIRECTORY = "cluster";
+      @Comment("Name of this proxy in the cluster, unique for every proxy. A random one is used when empty")
+      public String PROXY_ID = "";
+      @Comment({
+          "Milliseconds a slot taken by a proxy stays reserved for it, long enough for the connection to complete",
+          "and for the player to show up in the next ping of every proxy"
+      })
+      public int LEASE_TIME = 5000;
+      @Comment("Seconds after which a proxy that stopped updating its queue is left out, at least twice the sweep interval")
+      public int EXPIRY = 30;
+    }
 
     @Create
     public Config.MAIN.WORLD WORLD;
@@ -72,12 +251,19 @@ public class Config extends YamlConfig {
     public String ACTIONBAR_WAITING = "<yellow>⏳ Searching for available servers... <gray>({0}s)";
     @Comment("Actionbar message when server found")
     public String ACTIONBAR_CONNECTING = "<green>✓ Server found! Connecting...";
-    @Comment("Actionbar message showing queue position")
-    public String ACTIONBAR_QUEUE = "<aqua>Queue Position: <white>{0} <gray>| <yellow>Waiting time: <white>{1}s";
+    @Comment({
+        "Actionbar message showing queue position. {0} or {position}: position in the queue, {1} or {seconds}: seconds spent waiting,",
+        "{eta}: estimated time left, from the recent admission rate"
+    })
+    public String ACTIONBAR_QUEUE = "<aqua>Queue Position: <white>{0} <gray>| <yellow>Waiting time: <white>{1}s <gray>| <yellow>ETA: <white>{eta}";
+    @Comment("Shown as {eta} until a player of the queue has been admitted")
+    public String ETA_UNKNOWN = "?";
     
     @Comment("Message when no servers are available")
     public String NO_SERVERS_AVAILABLE = "<red>No servers are currently available. Please wait...";
     @Comment("Message when connecting to server")
     public String CONNECTING_TO_SERVER = "<green>Connecting to {0}...";
+    @Comment("Disconnect message when the connection to a server kept being cancelled by another plugin")
+    public String CONNECTION_CANCELLED = "<red>Your connection to {0} was cancelled, you have been removed from the queue.";
   }
 }
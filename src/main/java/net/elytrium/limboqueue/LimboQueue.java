@@ -21,21 +21,28 @@ import com.google.inject.Inject;
 import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.PluginContainer;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
-import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.scheduler.ScheduledTask;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.commons.kyori.serialization.Serializers;
@@ -43,9 +50,24 @@ import net.elytrium.limboapi.api.Limbo;
 import net.elytrium.limboapi.api.LimboFactory;
 import net.elytrium.limboapi.api.chunk.Dimension;
 import net.elytrium.limboapi.api.chunk.VirtualWorld;
+import net.elytrium.limboapi.api.player.LimboPlayer;
+import net.elytrium.limboqueue.api.LimboQueueApi;
+import net.elytrium.limboqueue.api.event.QueueAdmitEvent;
+import net.elytrium.limboqueue.api.event.QueueLeaveEvent;
+import net.elytrium.limboqueue.cluster.CapacityCoordinator;
+import net.elytrium.limboqueue.cluster.ClusterBackend;
+import net.elytrium.limboqueue.cluster.FileCluster;
+import net.elytrium.limboqueue.cluster.LocalCluster;
+import net.elytrium.limboqueue.cluster.QueueStore;
 import net.elytrium.limboqueue.commands.LimboQueueCommand;
 import net.elytrium.limboqueue.handler.QueueHandler;
 import net.elytrium.limboqueue.listener.QueueListener;
+import net.elytrium.limboqueue.message.ActionbarBroadcaster;
+import net.elytrium.limboqueue.message.Messages;
+import net.elytrium.limboqueue.metrics.PrometheusExporter;
+import net.elytrium.limboqueue.metrics.QueueMetrics;
+import net.elytrium.limboqueue.queue.QueueGroup;
+import net.elytrium.limboqueue.queue.QueueJournal;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.ComponentSerializer;
 import org.slf4j.Logger;
@@ -57,12 +79,21 @@ public class LimboQueue {
   private static Logger LOGGER;
   private static Serializer SERIALIZER;
   private final ProxyServer server;
+  private final Path dataDirectory;
   private final File configFile;
   private final LimboFactory factory;
-  private final List<QueuePlayerInfo> queuedPlayers = new ArrayList<>();
+  private final QueueMetrics metrics;
+  private final QueueService api;
+  private final String randomProxyId = UUID.randomUUID().toString();
+  private volatile QueueSettings settings;
+  private volatile Map<String, QueueGroup> groups = Collections.emptyMap();
   private ServerManager serverManager;
+  private Messages messages;
+  private PrometheusExporter exporter;
+  private QueueJournal journal;
+  private volatile QueueStore queueStore;
+  private volatile CapacityCoordinator capacityCoordinator;
   private Limbo queueServer;
-  private int checkInterval;
   private ScheduledTask queueTask;
   private ScheduledTask pingTask;
   private ScheduledTask actionbarTask;
@@ -72,10 +103,13 @@ public class LimboQueue {
     setLogger(logger);
 
     this.server = server;
+    this.dataDirectory = dataDirectory;
 
     File dataDirectoryFile = dataDirectory.toFile();
     this.configFile = new File(dataDirectoryFile, "config.yml");
 
+    this.metrics = new QueueMetrics(this);
+    this.api = new QueueService(this);
     this.factory = (LimboFactory) this.server.getPluginManager().getPlugin("limboapi").flatMap(PluginContainer::getInstance).orElseThrow();
   }
 
@@ -99,17 +133,160 @@ public class LimboQueue {
     return this.serverManager;
   }
 
+  public Messages getMessages() {
+    return this.messages;
+  }
+
+  public QueueMetrics getMetrics() {
+    return this.metrics;
+  }
 
+  /**
+   * @return the API for other plugins, available as soon as the plugin is constructed
+   */
+  public LimboQueueApi getApi() {
+    return this.api;
+  }
+
+  /**
+   * @return where the queues are shared with the other proxies, local only unless a cluster backend is configured
+   */
+  public QueueStore getQueueStore() {
+    return this.queueStore;
+  }
+
+  public CapacityCoordinator getCapacityCoordinator() {
+    return this.capacityCoordinator;
+  }
+
+  /**
+   * @return the settings of the last reload, replaced as a whole so they can be read once and used for a whole pass
+   */
+  public QueueSettings getSettings() {
+    return this.settings;
+  }
 
   @Subscribe
   public void onProxyInitialization(ProxyInitializeEvent event) {
-    this.reload();
+    QueueSettings settings = this.loadSettings();
+    this.messages = new Messages(SERIALIZER);
+    this.applyGroups(settings);
+    this.openCluster(settings);
+    this.openJournal(settings, true);
+    this.serverManager = this.createServerManager();
+    this.startExporter(settings);
+    this.createQueueServer(settings);
+
+    // Registered once, everything they use is looked up on every call and survives reloads.
+    this.server.getEventManager().register(this, new QueueListener(this));
+    CommandManager manager = this.server.getCommandManager();
+    manager.register("limboqueue", new LimboQueueCommand(this), "lq", "queue");
+
+    // Start all tasks
+    this.startPingTask(settings);
+    
+    // Do initial server check before starting queue processing
+    this.getServer().getScheduler().buildTask(this, () -> this.serverManager.checkServers().thenRun(() -> {
+      LOGGER.info("Initial server check completed. Starting queue processing...");
+      this.startQueueTask(this.settings);
+      this.startActionbarTask(this.settings);
+    })).delay(1, TimeUnit.SECONDS).schedule();
+  }
+
+  @Subscribe
+  public void onProxyShutdown(ProxyShutdownEvent event) {
+    if (this.serverManager != null) {
+      this.serverManager.close();
+    }
+    if (this.exporter != null) {
+      this.exporter.close();
+    }
+    if (this.journal != null) {
+      this.journal.close();
+    }
+    this.closeCluster(this.queueStore, this.capacityCoordinator);
   }
 
+  /**
+   * Reads the config again and reconfigures only the parts whose settings changed.
+   * Queued players, server probe history and event registrations are kept.
+   */
   public void reload() {
+    QueueSettings previous = this.settings;
+    QueueSettings settings = this.loadSettings();
+    List<String> changed = new ArrayList<>();
+
+    // Templates are cheap to compile and may reference the serializer, they are always rebuilt.
+    this.messages = new Messages(SERIALIZER);
+
+    if (settings.serversChanged(previous)) {
+      this.applyGroups(settings);
+      this.serverManager.reload(settings);
+      changed.add("servers");
+    }
+
+    if (settings.priorityChanged(previous)) {
+      this.groups.values().forEach(group -> group.getDispatcher().execute(() -> group.getQueue().setWeights(settings.getTierWeights())));
+      changed.add("priority");
+    }
+
+    if (settings.getEtaWindow() != previous.getEtaWindow()) {
+      this.groups.values().forEach(group -> group.getAdmitter().getThroughput().setWindow(settings.getEtaWindow()));
+      changed.add("eta window");
+    }
+
+    if (settings.getCheckInterval() != previous.getCheckInterval()) {
+      this.startPingTask(settings);
+      changed.add("check interval");
+    }
+
+    // Not started yet if the initial server check is still running, it will use the new settings.
+    if (this.queueTask != null && settings.getSweepInterval() != previous.getSweepInterval()) {
+      this.startQueueTask(settings);
+      changed.add("sweep interval");
+    }
+
+    if (this.queueTask != null && settings.actionbarChanged(previous)) {
+      this.startActionbarTask(settings);
+      changed.add("actionbar");
+    }
+
+    if (settings.metricsChanged(previous)) {
+      this.startExporter(settings);
+      changed.add("metrics");
+    }
+
+    if (settings.clusterChanged(previous)) {
+      this.openCluster(settings);
+      changed.add("cluster");
+    }
+
+    if (settings.journalChanged(previous)) {
+      this.openJournal(settings, false);
+      changed.add("journal");
+    }
+
+    if (!settings.getDimension().equals(previous.getDimension())) {
+      // Players already in the previous world stay there until they leave the queue.
+      this.createQueueServer(settings);
+      changed.add("world");
+    }
+
+    if (!settings.getSerializer().equals(previous.getSerializer())) {
+      changed.add("serializer");
+    }
+
+    this.wakeUpAll();
+    LOGGER.info("Config reloaded, {}", changed.isEmpty() ? "only messages were updated" : "reconfigured: " + String.join(", ", changed));
+  }
+
+  /**
+   * Reads the config file, creates the serializer and publishes the new settings.
+   */
+  private QueueSettings loadSettings() {
     Config.IMP.reload(this.configFile);
-    ComponentSerializer<Component, Component, String> serializer = Serializers.valueOf(Config.IMP.MAIN.SERIALIZER.toUpperCase(Locale.ROOT))
-        .getSerializer();
+    QueueSettings settings = new QueueSettings(Config.IMP, LOGGER);
+    ComponentSerializer<Component, Component, String> serializer = Serializers.valueOf(settings.getSerializer()).getSerializer();
     if (serializer == null) {
       LOGGER.warn("The specified serializer could not be founded, using default. (LEGACY_AMPERSAND)");
       setSerializer(new Serializer(Objects.requireNonNull(Serializers.LEGACY_AMPERSAND.getSerializer())));
@@ -117,234 +294,401 @@ public class LimboQueue {
       setSerializer(new Serializer(serializer));
     }
 
-    this.checkInterval = Config.IMP.MAIN.CHECK_INTERVAL;
+    this.settings = settings;
+    return settings;
+  }
+
+  /**
+   * Creates the groups that are new and applies the spillover rules. Groups that stay keep their queue,
+   * the players of removed groups are moved to the default group in their admission order.
+   */
+  private void applyGroups(QueueSettings settings) {
+    Map<String, QueueGroup> previous = this.groups;
+    Map<String, QueueGroup> groups = new LinkedHashMap<>();
+    for (QueueSettings.Group groupSettings : settings.getGroups()) {
+      QueueGroup group = previous.get(groupSettings.getName());
+      if (group == null) {
+        group = new QueueGroup(this, groupSettings.getName());
+        group.getQueue().setWeights(settings.getTierWeights());
+      }
+
+      group.setSpillover(groupSettings.getSpillover());
+      groups.put(group.getName(), group);
+    }
+
+    this.groups = Collections.unmodifiableMap(groups);
+    for (QueueGroup group : previous.values()) {
+      if (!groups.containsKey(group.getName())) {
+        group.getDispatcher().execute(() -> {
+          QueuePlayerInfo playerInfo;
+          while ((playerInfo = group.getQueue().poll()) != null) {
+            this.addQueuedPlayer(playerInfo);
+          }
+        });
+
+        LOGGER.info("Server group {} was removed, its players were moved to group {}", group.getName(), this.getDefaultGroup().getName());
+      }
+    }
+  }
+
+  protected ServerManager createServerManager() {
+    return new ServerManager(this);
+  }
 
-    // Initialize managers
-    this.serverManager = new ServerManager(this);
+  /**
+   * @return the single thread the FILE cluster backend reads and writes its queue files on
+   */
+  protected ExecutorService createClusterExecutor() {
+    return Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LimboQueue Cluster");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
 
-    VirtualWorld queueWorld = this.factory.createVirtualWorld(Dimension.valueOf(Config.IMP.MAIN.WORLD.DIMENSION), 0, 100, 0, (float) 90, (float) 0.0);
+  private void createQueueServer(QueueSettings settings) {
+    VirtualWorld queueWorld = this.factory.createVirtualWorld(Dimension.valueOf(settings.getDimension()), 0, 100, 0, (float) 90, (float) 0.0);
     this.queueServer = this.factory.createLimbo(queueWorld).setName("LimboQueue").setWorldTime(6000);
-    this.server.getEventManager().register(this, new QueueListener(this));
+  }
 
-    CommandManager manager = this.server.getCommandManager();
-    manager.unregister("limboqueue");
-    manager.register("limboqueue", new LimboQueueCommand(this), "lq", "queue");
+  private void startExporter(QueueSettings settings) {
+    if (this.exporter != null) {
+      this.exporter.close();
+      this.exporter = null;
+    }
 
-    // Start all tasks
-    this.startPingTask();
-    
-    // Do initial server check before starting queue processing
-    this.getServer().getScheduler().buildTask(this, () -> {
-      this.serverManager.checkServers();
-      LOGGER.info("Initial server check completed. Starting queue processing...");
-      this.startQueueTask();
-      this.startActionbarTask();
-    }).delay(1, TimeUnit.SECONDS).schedule();
+    if (settings.isMetricsEnabled()) {
+      try {
+        this.exporter = new PrometheusExporter(this.metrics.getRegistry(), settings.getMetricsBind(), settings.getMetricsPort());
+        LOGGER.info("Serving metrics on http://{}:{}/metrics", settings.getMetricsBind(), this.exporter.getAddress().getPort());
+      } catch (IOException e) {
+        LOGGER.error("Failed to start the metrics endpoint on {}:{}", settings.getMetricsBind(), settings.getMetricsPort(), e);
+      }
+    }
+  }
+
+  /**
+   * Joins the other proxies through the configured backend, or keeps this proxy on its own. The previous backend is
+   * closed once the new one is published, so that passes running meanwhile still have one.
+   */
+  private void openCluster(QueueSettings settings) {
+    LocalCluster local = new LocalCluster();
+    QueueStore queueStore = local;
+    CapacityCoordinator capacityCoordinator = local;
+    if (settings.getClusterBackend() == ClusterBackend.FILE) {
+      String proxyId = settings.getProxyId().isEmpty() ? this.randomProxyId : settings.getProxyId();
+      Path directory = this.dataDirectory.resolve(settings.getClusterDirectory());
+      try {
+        FileCluster cluster = new FileCluster(directory, proxyId, LOGGER, settings.getLeaseTime(), TimeUnit.SECONDS.toMillis(settings.getClusterExpiry()),
+            this.createClusterExecutor());
+        queueStore = cluster;
+        capacityCoordinator = cluster;
+        LOGGER.info("Sharing the queue with the other proxies through {} as {}", directory, proxyId);
+      } catch (IOException e) {
+        LOGGER.error("Failed to open the cluster directory {}, this proxy will admit players on its own", directory, e);
+      }
+    }
+
+    QueueStore previousStore = this.queueStore;
+    CapacityCoordinator previousCoordinator = this.capacityCoordinator;
+    this.queueStore = queueStore;
+    this.capacityCoordinator = capacityCoordinator;
+    this.closeCluster(previousStore, previousCoordinator);
+  }
+
+  private void closeCluster(QueueStore queueStore, CapacityCoordinator capacityCoordinator) {
+    if (queueStore != null) {
+      queueStore.close();
+    }
+    if (capacityCoordinator != null && capacityCoordinator != queueStore) {
+      capacityCoordinator.close();
+    }
   }
 
-  public void queuePlayer(Player player) {
+  /**
+   * The journal is only reopened when its settings change, the queue it mirrors is never replaced.
+   *
+   * @param replay true at startup only, a journal reopened later records the current queues instead of restoring
+   *     positions that are already held
+   */
+  private void openJournal(QueueSettings settings, boolean replay) {
+    QueueJournal previous = this.journal;
+    if (previous != null) {
+      previous.close();
+      this.journal = null;
+    }
+
+    if (settings.isJournalEnabled()) {
+      try {
+        QueueJournal journal = new QueueJournal(this.dataDirectory, this::getGroupByKey, LOGGER,
+            TimeUnit.SECONDS.toMillis(settings.getRestoreTimeout()), settings.getFlushInterval(), replay);
+        if (previous != null) {
+          journal.takeRestored(previous);
+        }
+
+        this.groups.values().forEach(journal::recordQueue);
+        this.journal = journal;
+        if (replay && journal.getRestoredCount() > 0) {
+          LOGGER.info("Restored the queue positions of {} players, keeping them for {}s", journal.getRestoredCount(), settings.getRestoreTimeout());
+        }
+
+        return;
+      } catch (IOException e) {
+        LOGGER.error("Failed to open the queue journal, queue positions won't survive a restart", e);
+      }
+    }
+
+    if (previous != null) {
+      // Nothing expires them anymore.
+      previous.releaseRestored();
+    }
+  }
+
+  /**
+   * Queues the player for the default group, e.g. when joining the queue manually.
+   */
+  public boolean queuePlayer(Player player) {
+    return this.queuePlayer(player, this.getDefaultGroup().getName());
+  }
+
+  /**
+   * @return false if the player is already connected to a server
+   */
+  public boolean queuePlayer(Player player, String group) {
     // Don't queue players who are already connected to a server
     if (player.getCurrentServer().isPresent()) {
       LOGGER.debug("Player {} is already connected to server {}, not queueing", 
           player.getUsername(), 
           player.getCurrentServer().get().getServerInfo().getName());
-      return;
+      return false;
     }
     
-    LOGGER.info("Queueing player {} (Available servers: {}/{})", 
+    LOGGER.info("Queueing player {} for group {} (Available servers: {}/{})", 
         player.getUsername(),
-        this.serverManager.getAvailableServers().size(),
+        group,
+        this.serverManager.getAvailableServerCount(),
         this.serverManager.getTargetServers().size());
-    this.queueServer.spawnPlayer(player, new QueueHandler(this));
+    this.queueServer.spawnPlayer(player, new QueueHandler(this, group));
+    return true;
   }
 
   public ProxyServer getServer() {
     return this.server;
   }
 
-  public synchronized void addQueuedPlayer(QueuePlayerInfo playerInfo) {
-    this.queuedPlayers.add(playerInfo);
+  /**
+   * @return the server groups, the default one first
+   */
+  public Collection<QueueGroup> getGroups() {
+    return this.groups.values();
+  }
+
+  /**
+   * @return the group with this name, or null if there is none
+   */
+  public QueueGroup getGroup(String name) {
+    return this.groups.get(name);
+  }
+
+  /**
+   * @return the group of manually queued players and of players whose group was removed
+   */
+  public QueueGroup getDefaultGroup() {
+    return this.groups.values().iterator().next();
+  }
+
+  /**
+   * @return the group the player is queued in
+   */
+  public QueueGroup getGroupOf(QueuePlayerInfo playerInfo) {
+    QueueGroup group = this.groups.get(playerInfo.getGroup());
+    return group == null ? this.getDefaultGroup() : group;
+  }
+
+  /**
+   * @return true while the player is being sent to a server by one of the queues
+   */
+  public boolean isBeingSent(Player player) {
+    for (QueueGroup group : this.groups.values()) {
+      if (group.getAdmitter().isSending(player.getUniqueId())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private QueueGroup getGroupByKey(int key) {
+    for (QueueGroup group : this.groups.values()) {
+      if (QueueJournal.groupKey(group.getName()) == key) {
+        return group;
+      }
+    }
+
+    return this.getDefaultGroup();
+  }
+
+  /**
+   * @return amount of players queued in all the groups
+   */
+  public int getQueuedCount() {
+    int count = 0;
+    for (QueueGroup group : this.groups.values()) {
+      count += group.getQueue().size();
+    }
+
+    return count;
+  }
+
+  /**
+   * Wakes the groups that may send players to the servers of the given group: the group itself and the groups
+   * spilling over into it.
+   */
+  public void wakeUp(String serverGroup) {
+    for (QueueGroup group : this.groups.values()) {
+      if (group.canUse(serverGroup)) {
+        group.getDispatcher().wakeUp();
+      }
+    }
+  }
+
+  private void wakeUpAll() {
+    this.groups.values().forEach(group -> group.getDispatcher().wakeUp());
+  }
+
+  /**
+   * Creates the queue entry of a player, in the highest priority tier the player has the permission for,
+   * with the original join time if the player was restored from the journal.
+   */
+  public QueuePlayerInfo createQueuedPlayer(LimboPlayer player, String group) {
+    Player proxyPlayer = player.getProxyPlayer();
+    long joinTime = this.journal == null ? -1 : this.journal.takeRestoredJoinTime(proxyPlayer.getUniqueId(), group);
+    return new QueuePlayerInfo(player, joinTime < 0 ? QueueClock.millis() : joinTime, this.getPriorityTier(proxyPlayer), group);
+  }
+
+  private int getPriorityTier(Player player) {
+    for (int tier = this.settings.getTierCount() - 1; tier > 0; tier--) {
+      if (player.hasPermission("limboqueue.priority." + tier)) {
+        return tier;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Adds the player to the queue of their group, or of the default group if their group doesn't exist anymore.
+   * The player is queued by the dispatcher of the group, right away if called from it.
+   */
+  public void addQueuedPlayer(QueuePlayerInfo playerInfo) {
+    QueueGroup group = this.getGroupOf(playerInfo);
+    playerInfo.setGroup(group.getName());
+    group.getDispatcher().execute(() -> {
+      if (!group.getQueue().add(playerInfo)) {
+        return;
+      }
+
+      if (this.journal != null) {
+        this.journal.recordJoin(playerInfo.getUuid(), playerInfo.getJoinTime(), group.getName(), playerInfo.getTier());
+      }
+
+      // A non-empty queue is already waiting for capacity, only the first player needs to wake the dispatcher.
+      if (group.getQueue().size() == 1) {
+        group.getDispatcher().wakeUp();
+      }
+    });
+  }
+
+  public void removeQueuedPlayer(QueuePlayerInfo playerInfo) {
+    QueueGroup group = this.getGroupOf(playerInfo);
+    group.getDispatcher().execute(() -> {
+      if (group.getQueue().remove(playerInfo)) {
+        this.recordLeft(playerInfo, QueueLeaveEvent.Reason.DISCONNECTED);
+      }
+    });
+  }
+
+  /**
+   * Records a player that left the queue while queued or while being sent to a server.
+   * The position can still be restored if the proxy restarts before the player comes back.
+   */
+  public void recordLeft(QueuePlayerInfo playerInfo, QueueLeaveEvent.Reason reason) {
+    if (this.journal != null) {
+      this.journal.recordLeave(playerInfo.getUuid());
+    }
+
+    this.fireEvent(new QueueLeaveEvent(playerInfo.getLimboPlayer().getProxyPlayer(), playerInfo.getGroup(), reason));
+  }
+
+  /**
+   * Records a player that reached a server, its position is not restored anymore.
+   */
+  public void recordAdmitted(QueuePlayerInfo playerInfo) {
+    if (this.journal != null) {
+      this.journal.recordAdmit(playerInfo.getUuid());
+    }
+
+    this.fireEvent(new QueueAdmitEvent(playerInfo.getLimboPlayer().getProxyPlayer(), playerInfo.getGroup(),
+        Duration.ofMillis(QueueClock.millis() - playerInfo.getJoinTime())));
   }
 
-  public synchronized void removeQueuedPlayer(QueuePlayerInfo playerInfo) {
-    this.queuedPlayers.remove(playerInfo);
+  /**
+   * Hands the event to Velocity's event executor, the listeners never hold up the caller.
+   */
+  public void fireEvent(Object event) {
+    this.server.getEventManager().fireAndForget(event);
   }
 
-  public synchronized List<QueuePlayerInfo> getQueuedPlayers() {
-    return new ArrayList<>(this.queuedPlayers);
+  private void expireRestoredPlayers() {
+    if (this.journal != null) {
+      this.journal.expireRestored();
+    }
   }
 
-  private void startQueueTask() {
+  private void startQueueTask(QueueSettings settings) {
     if (this.queueTask != null) {
       this.queueTask.cancel();
     }
-    this.queueTask = this.getServer().getScheduler().buildTask(this, () -> {
-      List<QueuePlayerInfo> currentQueue = this.getQueuedPlayers();
-      
-      // Clean up disconnected players from queue
-      currentQueue.removeIf(playerInfo -> {
-        Player player = playerInfo.getLimboPlayer().getProxyPlayer();
-        if (player == null || !player.isActive()) {
-          this.removeQueuedPlayer(playerInfo);
-          LOGGER.debug("Removed disconnected player from queue");
-          return true;
-        }
-        return false;
-      });
-      
-      // CRITICAL: Only process queue if we have players AND available servers
-      if (!currentQueue.isEmpty()) {
-        // Double check that servers are available before attempting any connection
-        if (!this.serverManager.hasAvailableServers()) {
-          LOGGER.debug("No servers available, {} players waiting in queue", currentQueue.size());
-          return; // Exit early if no servers available
-        }
-        
-        // Get available server - with additional validation
-        Optional<RegisteredServer> availableServer = this.serverManager.getAvailableServer();
-        if (!availableServer.isPresent()) {
-          LOGGER.warn("No available server found despite hasAvailableServers() returning true - this should not happen");
-          return; // Exit early if no server available
-        }
-        
-        // Triple check: verify the server is still actually available before connecting
-        RegisteredServer server = availableServer.get();
-        if (!this.serverManager.getAvailableServers().contains(server)) {
-          LOGGER.warn("Selected server {} is no longer in available servers list", server.getServerInfo().getName());
-          return; // Exit early if server is no longer available
-        }
-        
-        // Get first player in queue
-        QueuePlayerInfo firstPlayer = currentQueue.get(0);
-        if (firstPlayer.getLimboPlayer().getProxyPlayer() == null) {
-          LOGGER.debug("First player in queue has no proxy player, removing from queue");
-          this.removeQueuedPlayer(firstPlayer);
-          return;
-        }
-        
-        Player player = firstPlayer.getLimboPlayer().getProxyPlayer();
-        
-        // Check if player is already connected to a server
-        if (player.getCurrentServer().isPresent()) {
-          LOGGER.debug("Player {} is already connected to server {}, removing from queue", 
-              player.getUsername(), 
-              player.getCurrentServer().get().getServerInfo().getName());
-          this.removeQueuedPlayer(firstPlayer);
-          return;
-        }
-        
-        LOGGER.info("Attempting to connect player {} to server {} (Available servers: {}/{})", 
-            player.getUsername(), 
-            server.getServerInfo().getName(),
-            this.serverManager.getAvailableServers().size(),
-            this.serverManager.getTargetServers().size());
-        
-        // Send connecting message
-        String connectingMessage = MessageFormat.format(Config.IMP.MESSAGES.CONNECTING_TO_SERVER, server.getServerInfo().getName());
-        player.sendMessage(SERIALIZER.deserialize(connectingMessage));
-        
-        // Send actionbar message
-        if (Config.IMP.MAIN.ENABLE_ACTIONBAR) {
-          player.sendActionBar(SERIALIZER.deserialize(Config.IMP.MESSAGES.ACTIONBAR_CONNECTING));
-        }
-        
-        // Remove player from queue BEFORE attempting connection to prevent multiple attempts
-        this.removeQueuedPlayer(firstPlayer);
-        
-        // Try to connect player with proper error handling
-        player.createConnectionRequest(server).connect().whenComplete((result, throwable) -> {
-          if (throwable != null || !result.isSuccessful()) {
-            // Connection failed
-            String errorMessage = throwable != null ? throwable.getMessage() : "Connection unsuccessful";
-            LOGGER.warn("Failed to connect player {} to server {}: {}", 
-                player.getUsername(), 
-                server.getServerInfo().getName(), 
-                errorMessage);
-            
-            // Mark server as unavailable immediately to prevent further attempts
-            this.serverManager.markServerUnavailable(server);
-            
-            // Only put player back in queue if still connected to limbo AND proxy
-            Player currentPlayer = firstPlayer.getLimboPlayer().getProxyPlayer();
-            if (currentPlayer != null && currentPlayer.isActive() && !currentPlayer.getCurrentServer().isPresent()) {
-              // Player is still connected to proxy but not to any server, and still in limbo
-              // Check if there are any other servers that might become available
-              if (this.serverManager.getTotalServerCount() > 1 
-                  || errorMessage.contains("Connection refused") 
-                  || errorMessage.contains("ConnectException")) {
-                // Server is likely down, put player back in queue to wait
-                this.addQueuedPlayer(firstPlayer);
-                LOGGER.info("Player {} returned to queue, waiting for servers to become available", 
-                    player.getUsername());
-              } else {
-                // Send error message to player but keep them in queue
-                currentPlayer.sendMessage(SERIALIZER.deserialize(Config.IMP.MESSAGES.NO_SERVERS_AVAILABLE));
-                this.addQueuedPlayer(firstPlayer);
-              }
-            } else {
-              // Player is no longer connected or already connected to a server, don't re-queue
-              LOGGER.debug("Player {} is no longer connected to limbo or already connected to server, not re-queueing", 
-                  player.getUsername());
-            }
-          } else {
-            // Connection successful, disconnect from limbo
-            LOGGER.info("Successfully connected player {} to server {}", 
-                player.getUsername(), server.getServerInfo().getName());
-            firstPlayer.getLimboPlayer().disconnect();
-          }
-        });
-      }
-    }).repeat(this.checkInterval, TimeUnit.SECONDS).schedule();
+    this.queueTask = this.getServer().getScheduler().buildTask(this, this::sweep)
+        .repeat(settings.getSweepInterval(), TimeUnit.SECONDS).schedule();
+    this.wakeUpAll();
   }
 
-  private void startPingTask() {
+  private void sweep() {
+    this.groups.values().forEach(group -> group.getDispatcher().sweep());
+    this.expireRestoredPlayers();
+  }
+
+  private void startPingTask(QueueSettings settings) {
     if (this.pingTask != null) {
       this.pingTask.cancel();
     }
     this.pingTask = this.getServer().getScheduler().buildTask(this, () -> {
       this.serverManager.checkServers();
-    }).repeat(this.checkInterval, TimeUnit.SECONDS).schedule();
+    }).repeat(settings.getCheckInterval(), TimeUnit.SECONDS).schedule();
   }
 
-  private void startActionbarTask() {
+  private void startActionbarTask(QueueSettings settings) {
     if (this.actionbarTask != null) {
       this.actionbarTask.cancel();
+      this.actionbarTask = null;
     }
     
-    if (!Config.IMP.MAIN.ENABLE_ACTIONBAR) {
+    if (!settings.isActionbarEnabled()) {
       return;
     }
     
+    // One broadcaster per group, as positions and server availability are per group.
+    Map<String, ActionbarBroadcaster> broadcasters = new ConcurrentHashMap<>();
+    long keepAlive = TimeUnit.SECONDS.toMillis(settings.getActionbarKeepAlive());
+    int shards = Math.max(1, settings.getActionbarShards());
+    long shardInterval = Math.max(1, TimeUnit.SECONDS.toMillis(settings.getActionbarInterval()) / shards);
     this.actionbarTask = this.getServer().getScheduler().buildTask(this, () -> {
-      List<QueuePlayerInfo> currentQueue = this.getQueuedPlayers();
-      
-      for (int i = 0; i < currentQueue.size(); i++) {
-        QueuePlayerInfo playerInfo = currentQueue.get(i);
-        playerInfo.updateWaitingTime();
-        
-        if (playerInfo.getLimboPlayer().getProxyPlayer() != null) {
-          Player player = playerInfo.getLimboPlayer().getProxyPlayer();
-          
-          String actionbarMessage;
-          if (this.serverManager.hasAvailableServers()) {
-            if (i == 0) {
-              // First player in queue - will be connected soon
-              actionbarMessage = Config.IMP.MESSAGES.ACTIONBAR_CONNECTING;
-            } else {
-              // Other players in queue
-              actionbarMessage = MessageFormat.format(Config.IMP.MESSAGES.ACTIONBAR_QUEUE, 
-                  i + 1, playerInfo.getWaitingTimeSeconds());
-            }
-          } else {
-            actionbarMessage = MessageFormat.format(Config.IMP.MESSAGES.ACTIONBAR_WAITING, 
-                playerInfo.getWaitingTimeSeconds());
-          }
-          
-          player.sendActionBar(SERIALIZER.deserialize(actionbarMessage));
-        }
+      for (QueueGroup group : this.groups.values()) {
+        broadcasters.computeIfAbsent(group.getName(), name -> new ActionbarBroadcaster(shards, keepAlive)).tick(this.messages, group,
+            group.getAdmitter().hasAvailableServers(this.serverManager));
       }
-    }).repeat(Config.IMP.MAIN.ACTIONBAR_INTERVAL, TimeUnit.SECONDS).schedule();
+    }).repeat(shardInterval, TimeUnit.MILLISECONDS).schedule();
   }
 
-
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue;
+
+/**
+ * Time source of the queue. Defaults to the system clock and can be swapped, e.g. for a simulation on virtual time.
+ */
+public final class QueueClock {
+
+  private static final Source SYSTEM = new Source() {
+    @Override
+    public long millis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanos() {
+      return System.nanoTime();
+    }
+  };
+
+  private static volatile Source source = SYSTEM;
+
+  private QueueClock() {
+  }
+
+  /**
+   * @return wall-clock time in milliseconds, see {@link System#currentTimeMillis()}
+   */
+  public static long millis() {
+    return source.millis();
+  }
+
+  /**
+   * @return monotonic time in nanoseconds, only meaningful relative to another reading, see {@link System#nanoTime()}
+   */
+  public static long nanos() {
+    return source.nanos();
+  }
+
+  /**
+   * @param newSource the time source to use from now on, or null to go back to the system clock
+   */
+  public static void setSource(Source newSource) {
+    source = newSource == null ? SYSTEM : newSource;
+  }
+
+  public interface Source {
+
+    long millis();
+
+    long nanos();
+  }
+}
@@ -17,17 +17,37 @@
 
 package net.elytrium.limboqueue;
 
+import java.util.UUID;
 import net.elytrium.limboapi.api.player.LimboPlayer;
+import net.kyori.adventure.text.Component;
 
 public class QueuePlayerInfo {
   
   private final LimboPlayer limboPlayer;
+  private final UUID uuid;
   private final long joinTime;
+  private final int tier;
+  private volatile String group;
+  private volatile int failedAttempts;
+  private volatile int cancelledAttempts;
   private long waitingTime;
+  private Component lastActionbar;
+  private long lastActionbarTime;
   
   public QueuePlayerInfo(LimboPlayer limboPlayer) {
+    this(limboPlayer, QueueClock.millis(), 0, QueueSettings.DEFAULT_GROUP);
+  }
+  
+  /**
+   * @param tier priority tier, 0 for players without a priority permission
+   * @param group name of the server group the player waits for
+   */
+  public QueuePlayerInfo(LimboPlayer limboPlayer, long joinTime, int tier, String group) {
     this.limboPlayer = limboPlayer;
-    this.joinTime = System.currentTimeMillis();
+    this.uuid = limboPlayer.getProxyPlayer().getUniqueId();
+    this.joinTime = joinTime;
+    this.tier = tier;
+    this.group = group;
     this.waitingTime = 0;
   }
   
@@ -35,19 +55,72 @@ public class QueuePlayerInfo {
     return this.limboPlayer;
   }
   
+  public UUID getUuid() {
+    return this.uuid;
+  }
+  
   public long getJoinTime() {
     return this.joinTime;
   }
   
+  public int getTier() {
+    return this.tier;
+  }
+  
+  public String getGroup() {
+    return this.group;
+  }
+  
+  /**
+   * Moves the player to another group, e.g. when their group was removed by a reload.
+   */
+  public void setGroup(String group) {
+    this.group = group;
+  }
+  
+  /**
+   * @return connection attempts from the queue that failed for this player
+   */
+  public int getFailedAttempts() {
+    return this.failedAttempts;
+  }
+
+  /**
+   * @return failed attempts including this one
+   */
+  public int recordFailedAttempt() {
+    return ++this.failedAttempts;
+  }
+
+  /**
+   * @return attempts cancelled by another plugin including this one
+   */
+  public int recordCancelledAttempt() {
+    return ++this.cancelledAttempts;
+  }
+  
   public long getWaitingTime() {
     return this.waitingTime;
   }
   
   public void updateWaitingTime() {
-    this.waitingTime = (System.currentTimeMillis() - this.joinTime) / 1000;
+    this.waitingTime = (QueueClock.millis() - this.joinTime) / 1000;
   }
   
   public int getWaitingTimeSeconds() {
     return (int) this.waitingTime;
   }
+  
+  public Component getLastActionbar() {
+    return this.lastActionbar;
+  }
+  
+  public long getLastActionbarTime() {
+    return this.lastActionbarTime;
+  }
+  
+  public void setLastActionbar(Component lastActionbar, long time) {
+    this.lastActionbar = lastActionbar;
+    this.lastActionbarTime = time;
+  }
 }
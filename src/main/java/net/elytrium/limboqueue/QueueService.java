@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue;
+
+import com.velocitypowered.api.proxy.Player;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import net.elytrium.limboqueue.api.LimboQueueApi;
+import net.elytrium.limboqueue.api.QueueStatus;
+import net.elytrium.limboqueue.api.event.QueueLeaveEvent;
+import net.elytrium.limboqueue.queue.QueueGroup;
+
+/**
+ * The {@link LimboQueueApi} of the plugin. Lookups of a player are queued to the dispatcher of every group,
+ * only the one holding the player answers.
+ */
+public class QueueService implements LimboQueueApi {
+
+  private final LimboQueue plugin;
+
+  public QueueService(LimboQueue plugin) {
+    this.plugin = plugin;
+  }
+
+  @Override
+  public CompletableFuture<Optional<QueueStatus>> getStatus(UUID uuid) {
+    return this.askGroups(group -> this.getStatus(group, uuid));
+  }
+
+  @Override
+  public int getQueueSize() {
+    return this.plugin.getQueuedCount();
+  }
+
+  @Override
+  public int getQueueSize(String group) {
+    QueueGroup queueGroup = this.plugin.getGroup(group);
+    return queueGroup == null ? 0 : queueGroup.getQueue().size();
+  }
+
+  @Override
+  public boolean enqueue(Player player, String group) {
+    return this.plugin.getGroup(group) != null && this.plugin.queuePlayer(player, group);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> dequeue(UUID uuid) {
+    return this.askGroups(group -> {
+      QueuePlayerInfo playerInfo = group.getQueue().remove(uuid);
+      if (playerInfo == null) {
+        return null;
+      }
+
+      this.plugin.recordLeft(playerInfo, QueueLeaveEvent.Reason.DEQUEUED);
+      playerInfo.getLimboPlayer().disconnect();
+      return true;
+    }).thenApply(removed -> removed.orElse(false));
+  }
+
+  /**
+   * Runs on the dispatcher of the group.
+   */
+  private QueueStatus getStatus(QueueGroup group, UUID uuid) {
+    QueuePlayerInfo playerInfo = group.getQueue().get(uuid);
+    if (playerInfo == null) {
+      return null;
+    }
+
+    int position = group.getPosition(playerInfo);
+    long eta = QueueGroup.estimateWait(position, group.getClusterThroughput());
+    return new QueueStatus(uuid, group.getName(), position, group.getQueue().size() + group.getRemote().size(),
+        eta < 0 ? null : Duration.ofSeconds(eta));
+  }
+
+  /**
+   * Runs the query on the dispatcher of every group.
+   *
+   * @return the first answer that is not null, in the order of the groups
+   */
+  private <T> CompletableFuture<Optional<T>> askGroups(Function<QueueGroup, T> query) {
+    List<CompletableFuture<T>> answers = new ArrayList<>();
+    for (QueueGroup group : this.plugin.getGroups()) {
+      CompletableFuture<T> answer = new CompletableFuture<>();
+      group.getDispatcher().execute(() -> {
+        try {
+          answer.complete(query.apply(group));
+        } catch (RuntimeException e) {
+          answer.completeExceptionally(e);
+        }
+      });
+      answers.add(answer);
+    }
+
+    return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0]))
+        .thenApply(ignored -> answers.stream().map(CompletableFuture::join).filter(Objects::nonNull).findFirst());
+  }
+}
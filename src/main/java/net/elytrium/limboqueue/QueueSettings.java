@@ -0,0 +1,555 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import net.elytrium.commons.kyori.serialization.Serializers;
+import net.elytrium.limboqueue.cluster.ClusterBackend;
+import net.elytrium.limboqueue.listener.KickReasonMatcher;
+import net.elytrium.limboqueue.queue.AdmissionMode;
+import net.elytrium.limboqueue.server.AdmissionThrottle;
+import net.elytrium.limboqueue.server.CircuitBreaker;
+import net.elytrium.limboqueue.server.SelectionStrategy;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.ComponentSerializer;
+import org.slf4j.Logger;
+
+/**
+ * Immutable copy of the config, parsed and validated once per reload.
+ *
+ * <p>A reload publishes a new instance as a whole, so code that reads {@link LimboQueue#getSettings()} once per pass
+ * never sees half of a reload. Comparing it with the previous instance tells which parts of the plugin need to be
+ * reconfigured.
+ */
+public final class QueueSettings {
+
+  public static final String DEFAULT_GROUP = "default";
+
+  private final String serializer;
+  private final List<String> servers;
+  private final List<Group> groups;
+  private final KickReasonMatcher kickReasons;
+  private final int checkInterval;
+  private final int sweepInterval;
+  private final AdmissionMode admissionMode;
+  private final int maxConcurrentConnections;
+  private final int[] tierWeights;
+  private final SelectionStrategy selection;
+  private final Map<String, Integer> weights;
+  private final CircuitBreaker.Settings health;
+  private final AdmissionThrottle.Settings slowStart;
+  private final long connectTimeout;
+  private final long retryBackoff;
+  private final long maxRetryBackoff;
+  private final int maxCancelled;
+  private final boolean actionbarEnabled;
+  private final int actionbarInterval;
+  private final int actionbarShards;
+  private final int actionbarKeepAlive;
+  private final int etaWindow;
+  private final boolean metricsEnabled;
+  private final String metricsBind;
+  private final int metricsPort;
+  private final boolean journalEnabled;
+  private final int restoreTimeout;
+  private final int flushInterval;
+  private final ClusterBackend clusterBackend;
+  private final String clusterDirectory;
+  private final String proxyId;
+  private final int leaseTime;
+  private final int clusterExpiry;
+  private final String dimension;
+
+  public QueueSettings(Config config, Logger logger) {
+    Config.MAIN main = config.MAIN;
+    this.serializer = main.SERIALIZER.toUpperCase(Locale.ROOT);
+    this.groups = parseGroups(parseServers(main), main.GROUPS, main.SPILLOVER, logger);
+    this.servers = this.groups.stream().flatMap(group -> group.getServers().stream()).distinct()
+        .collect(Collectors.toUnmodifiableList());
+    this.kickReasons = KickReasonMatcher.compile(parseKickReasons(main), createSerializer(this.serializer), logger);
+    this.checkInterval = Math.max(1, main.CHECK_INTERVAL);
+    this.sweepInterval = Math.max(1, main.QUEUE_SWEEP_INTERVAL);
+    this.admissionMode = parseAdmissionMode(main.ADMISSION_MODE, logger);
+    this.maxConcurrentConnections = Math.max(1, main.MAX_CONCURRENT_CONNECTIONS);
+    this.tierWeights = parseTierWeights(main.PRIORITY.WEIGHTS, logger);
+    this.selection = parseSelection(main.SERVER_SELECTION, logger);
+    this.weights = parseWeights(main.SERVER_WEIGHTS, logger);
+    this.health = new CircuitBreaker.Settings(main.HEALTH.FAILURE_THRESHOLD,
+        TimeUnit.SECONDS.toMillis(main.HEALTH.BASE_BACKOFF), TimeUnit.SECONDS.toMillis(main.HEALTH.MAX_BACKOFF),
+        TimeUnit.SECONDS.toMillis(this.checkInterval), TimeUnit.SECONDS.toMillis(main.HEALTH.STABLE_PROBE_INTERVAL));
+    this.slowStart = new AdmissionThrottle.Settings(TimeUnit.SECONDS.toNanos(main.SLOW_START.WINDOW),
+        main.SLOW_START.INITIAL_RATE, main.SLOW_START.FULL_RATE, main.SLOW_START.RTT_THRESHOLD / 100.0);
+    this.connectTimeout = TimeUnit.SECONDS.toMillis(Math.max(1, main.CONNECT.TIMEOUT));
+    this.retryBackoff = Math.max(0, main.CONNECT.RETRY_BACKOFF);
+    this.maxRetryBackoff = Math.max(this.retryBackoff, main.CONNECT.MAX_RETRY_BACKOFF);
+    this.maxCancelled = Math.max(0, main.CONNECT.MAX_CANCELLED);
+    this.actionbarEnabled = main.ENABLE_ACTIONBAR;
+    this.actionbarInterval = main.ACTIONBAR_INTERVAL;
+    this.actionbarShards = main.ACTIONBAR_SHARDS;
+    this.actionbarKeepAlive = main.ACTIONBAR_KEEP_ALIVE;
+    this.etaWindow = Math.max(1, main.ETA_WINDOW);
+    this.metricsEnabled = main.METRICS.ENABLED;
+    this.metricsBind = main.METRICS.BIND;
+    this.metricsPort = main.METRICS.PORT;
+    this.journalEnabled = main.JOURNAL.ENABLED;
+    this.restoreTimeout = main.JOURNAL.RESTORE_TIMEOUT;
+    this.flushInterval = main.JOURNAL.FLUSH_INTERVAL;
+    this.clusterBackend = parseClusterBackend(main.CLUSTER.BACKEND, logger);
+    this.clusterDirectory = main.CLUSTER.DIRECTORY;
+    this.proxyId = main.CLUSTER.PROXY_ID.trim();
+    this.leaseTime = Math.max(0, main.CLUSTER.LEASE_TIME);
+    // Idle groups are only published on sweeps, a shorter expiry would drop live proxies in between.
+    this.clusterExpiry = Math.max(this.sweepInterval * 2, main.CLUSTER.EXPIRY);
+    this.dimension = main.WORLD.DIMENSION;
+  }
+
+  /**
+   * Uses SERVERS if it contains multiple servers, otherwise SERVER for compatibility.
+   */
+  private static List<String> parseServers(Config.MAIN main) {
+    List<String> servers = new ArrayList<>();
+    String[] names = main.SERVERS.contains(",") ? main.SERVERS.split(",") : new String[] {main.SERVER};
+    for (String name : names) {
+      if (!name.isBlank()) {
+        servers.add(name.trim());
+      }
+    }
+
+    return Collections.unmodifiableList(servers);
+  }
+
+  /**
+   * @return the serializer with this name, the plugin warns about an unknown one and falls back to LEGACY_AMPERSAND
+   */
+  private static ComponentSerializer<Component, Component, String> createSerializer(String name) {
+    ComponentSerializer<Component, Component, String> serializer = null;
+    try {
+      serializer = Serializers.valueOf(name).getSerializer();
+    } catch (IllegalArgumentException e) {
+      // Unknown name, same as a missing serializer.
+    }
+
+    return serializer == null ? Objects.requireNonNull(Serializers.LEGACY_AMPERSAND.getSerializer()) : serializer;
+  }
+
+  /**
+   * KICK_MESSAGE comes first, for compatibility with the configs written before KICK_REASONS.
+   */
+  private static List<String> parseKickReasons(Config.MAIN main) {
+    List<String> reasons = new ArrayList<>();
+    if (!main.KICK_MESSAGE.isEmpty()) {
+      reasons.add(main.KICK_MESSAGE);
+    }
+
+    if (main.KICK_REASONS != null) {
+      reasons.addAll(main.KICK_REASONS);
+    }
+
+    return reasons;
+  }
+
+  /**
+   * Splits the servers into the configured groups. The servers that are in no group form the default group,
+   * which comes first.
+   */
+  private static List<Group> parseGroups(List<String> servers, String groups, String spillover, Logger logger) {
+    Map<String, List<String>> groupServers = new LinkedHashMap<>();
+    for (String entry : groups.split(";")) {
+      if (entry.isBlank()) {
+        continue;
+      }
+
+      String[] parts = entry.split(":", 2);
+      if (parts.length != 2 || parts[0].isBlank()) {
+        logger.warn("Invalid server group '{}', expected name:server1,server2", entry.trim());
+        continue;
+      }
+
+      List<String> members = groupServers.computeIfAbsent(parts[0].trim(), name -> new ArrayList<>());
+      for (String server : parts[1].split(",")) {
+        if (!server.isBlank()) {
+          members.add(server.trim());
+        }
+      }
+    }
+
+    List<String> ungrouped = new ArrayList<>(servers);
+    groupServers.values().forEach(ungrouped::removeAll);
+    if (!ungrouped.isEmpty() || groupServers.isEmpty()) {
+      Map<String, List<String>> withDefault = new LinkedHashMap<>();
+      withDefault.put(DEFAULT_GROUP, ungrouped);
+      groupServers.forEach((name, members) -> withDefault.computeIfAbsent(name, key -> new ArrayList<>()).addAll(members));
+      groupServers = withDefault;
+    }
+
+    Map<String, List<String>> spillovers = new HashMap<>();
+    for (String entry : spillover.split(",")) {
+      if (entry.isBlank()) {
+        continue;
+      }
+
+      String[] parts = entry.split(">");
+      if (parts.length != 2 || !groupServers.containsKey(parts[0].trim()) || !groupServers.containsKey(parts[1].trim())) {
+        logger.warn("Invalid spillover '{}', expected group>group with two configured groups", entry.trim());
+        continue;
+      }
+
+      spillovers.computeIfAbsent(parts[0].trim(), name -> new ArrayList<>()).add(parts[1].trim());
+    }
+
+    List<Group> parsed = new ArrayList<>();
+    groupServers.forEach((name, members) -> parsed.add(new Group(name, members, spillovers.getOrDefault(name, List.of()))));
+    return Collections.unmodifiableList(parsed);
+  }
+
+  private static AdmissionMode parseAdmissionMode(String mode, Logger logger) {
+    try {
+      return AdmissionMode.valueOf(mode.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Unknown admission mode {}, using default. (BATCH)", mode);
+      return AdmissionMode.BATCH;
+    }
+  }
+
+  private static int[] parseTierWeights(String weights, Logger logger) {
+    List<Integer> parsed = new ArrayList<>();
+    for (String weight : weights.split(",")) {
+      try {
+        parsed.add(Math.max(1, Integer.parseInt(weight.trim())));
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid priority weight '{}', using 1", weight.trim());
+        parsed.add(1);
+      }
+    }
+
+    return parsed.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static ClusterBackend parseClusterBackend(String backend, Logger logger) {
+    try {
+      return ClusterBackend.valueOf(backend.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Unknown cluster backend {}, using default. (LOCAL)", backend);
+      return ClusterBackend.LOCAL;
+    }
+  }
+
+  private static SelectionStrategy parseSelection(String selection, Logger logger) {
+    try {
+      return SelectionStrategy.valueOf(selection.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Unknown server selection {}, using default. (LEAST_LOADED)", selection);
+      return SelectionStrategy.LEAST_LOADED;
+    }
+  }
+
+  private static Map<String, Integer> parseWeights(String weights, Logger logger) {
+    Map<String, Integer> parsed = new HashMap<>();
+    for (String entry : weights.split(",")) {
+      if (entry.isBlank()) {
+        continue;
+      }
+
+      String[] parts = entry.split(":");
+      try {
+        parsed.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        logger.warn("Invalid server weight '{}', expected name:weight", entry.trim());
+      }
+    }
+
+    return Collections.unmodifiableMap(parsed);
+  }
+
+  /**
+   * @return true if the target servers, the way they are selected, the way their health is checked or the way they are ramped up differ
+   */
+  public boolean serversChanged(QueueSettings other) {
+    return !this.groups.equals(other.groups) || this.selection != other.selection
+        || !this.weights.equals(other.weights) || !this.health.equals(other.health) || !this.slowStart.equals(other.slowStart);
+  }
+
+  public boolean priorityChanged(QueueSettings other) {
+    return !Arrays.equals(this.tierWeights, other.tierWeights);
+  }
+
+  public boolean actionbarChanged(QueueSettings other) {
+    return this.actionbarEnabled != other.actionbarEnabled || this.actionbarInterval != other.actionbarInterval
+        || this.actionbarShards != other.actionbarShards || this.actionbarKeepAlive != other.actionbarKeepAlive;
+  }
+
+  public boolean metricsChanged(QueueSettings other) {
+    return this.metricsEnabled != other.metricsEnabled || !Objects.equals(this.metricsBind, other.metricsBind)
+        || this.metricsPort != other.metricsPort;
+  }
+
+  public boolean journalChanged(QueueSettings other) {
+    return this.journalEnabled != other.journalEnabled || this.restoreTimeout != other.restoreTimeout
+        || this.flushInterval != other.flushInterval;
+  }
+
+  public boolean clusterChanged(QueueSettings other) {
+    return this.clusterBackend != other.clusterBackend || !Objects.equals(this.clusterDirectory, other.clusterDirectory)
+        || !Objects.equals(this.proxyId, other.proxyId) || this.leaseTime != other.leaseTime || this.clusterExpiry != other.clusterExpiry;
+  }
+
+  public String getSerializer() {
+    return this.serializer;
+  }
+
+  /**
+   * @return names of all the target servers, in every group
+   */
+  public List<String> getServers() {
+    return this.servers;
+  }
+
+  /**
+   * @return server groups, the default group (the one of manually queued players) first
+   */
+  public List<Group> getGroups() {
+    return this.groups;
+  }
+
+  public KickReasonMatcher getKickReasons() {
+    return this.kickReasons;
+  }
+
+  /**
+   * @return server checking interval in seconds
+   */
+  public int getCheckInterval() {
+    return this.checkInterval;
+  }
+
+  /**
+   * @return queue sweep interval in seconds
+   */
+  public int getSweepInterval() {
+    return this.sweepInterval;
+  }
+
+  public AdmissionMode getAdmissionMode() {
+    return this.admissionMode;
+  }
+
+  public int getMaxConcurrentConnections() {
+    return this.maxConcurrentConnections;
+  }
+
+  /**
+   * @return admission weights of the priority tiers, lowest tier first
+   */
+  public int[] getTierWeights() {
+    return this.tierWeights.clone();
+  }
+
+  public int getTierCount() {
+    return this.tierWeights.length;
+  }
+
+  public SelectionStrategy getSelection() {
+    return this.selection;
+  }
+
+  /**
+   * @return capacity weights by server name, for the {@link SelectionStrategy#WEIGHTED} selection
+   */
+  public Map<String, Integer> getWeights() {
+    return this.weights;
+  }
+
+  public CircuitBreaker.Settings getHealth() {
+    return this.health;
+  }
+
+  public AdmissionThrottle.Settings getSlowStart() {
+    return this.slowStart;
+  }
+
+  /**
+   * @return milliseconds a connection from the queue may take before it is given up
+   */
+  public long getConnectTimeout() {
+    return this.connectTimeout;
+  }
+
+  /**
+   * @return milliseconds before the first retry of a player whose connection failed, doubled on every failure
+   */
+  public long getRetryBackoff() {
+    return this.retryBackoff;
+  }
+
+  public long getMaxRetryBackoff() {
+    return this.maxRetryBackoff;
+  }
+
+  /**
+   * @return cancelled connections after which a player is removed from the queue instead of being sent again
+   */
+  public int getMaxCancelled() {
+    return this.maxCancelled;
+  }
+
+  public boolean isActionbarEnabled() {
+    return this.actionbarEnabled;
+  }
+
+  /**
+   * @return actionbar update interval in seconds
+   */
+  public int getActionbarInterval() {
+    return this.actionbarInterval;
+  }
+
+  public int getActionbarShards() {
+    return this.actionbarShards;
+  }
+
+  /**
+   * @return seconds after which an unchanged actionbar is sent again
+   */
+  public int getActionbarKeepAlive() {
+    return this.actionbarKeepAlive;
+  }
+
+  /**
+   * @return time constant in seconds of the admission rate average the estimated wait time is based on
+   */
+  public int getEtaWindow() {
+    return this.etaWindow;
+  }
+
+  public boolean isMetricsEnabled() {
+    return this.metricsEnabled;
+  }
+
+  public String getMetricsBind() {
+    return this.metricsBind;
+  }
+
+  public int getMetricsPort() {
+    return this.metricsPort;
+  }
+
+  public boolean isJournalEnabled() {
+    return this.journalEnabled;
+  }
+
+  /**
+   * @return seconds a player has to come back to get the queue position back
+   */
+  public int getRestoreTimeout() {
+    return this.restoreTimeout;
+  }
+
+  /**
+   * @return journal flush interval in milliseconds
+   */
+  public int getFlushInterval() {
+    return this.flushInterval;
+  }
+
+  public ClusterBackend getClusterBackend() {
+    return this.clusterBackend;
+  }
+
+  public String getClusterDirectory() {
+    return this.clusterDirectory;
+  }
+
+  /**
+   * @return configured name of this proxy, empty if a random one should be used
+   */
+  public String getProxyId() {
+    return this.proxyId;
+  }
+
+  public int getLeaseTime() {
+    return this.leaseTime;
+  }
+
+  public int getClusterExpiry() {
+    return this.clusterExpiry;
+  }
+
+  public String getDimension() {
+    return this.dimension;
+  }
+
+  /**
+   * A set of target servers with its own queue.
+   */
+  public static final class Group {
+
+    private final String name;
+    private final List<String> servers;
+    private final List<String> spillover;
+
+    public Group(String name, List<String> servers, List<String> spillover) {
+      this.name = name;
+      this.servers = List.copyOf(servers);
+      this.spillover = List.copyOf(spillover);
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public List<String> getServers() {
+      return this.servers;
+    }
+
+    /**
+     * @return groups whose servers may take this group's players while nobody is waiting for them, in order
+     */
+    public List<String> getSpillover() {
+      return this.spillover;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Group)) {
+        return false;
+      }
+
+      Group group = (Group) o;
+      return this.name.equals(group.name) && this.servers.equals(group.servers) && this.spillover.equals(group.spillover);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.name, this.servers, this.spillover);
+    }
+  }
+}
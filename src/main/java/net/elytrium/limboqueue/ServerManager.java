@@ -20,217 +20,568 @@ package net.elytrium.limboqueue;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.proxy.server.ServerPing;
 import java.io.IOException;
-import java.net.ConnectException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import javax.net.SocketFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import net.elytrium.limboqueue.server.AdmissionThrottle;
+import net.elytrium.limboqueue.server.CircuitBreaker;
+import net.elytrium.limboqueue.server.ProbeResult;
+import net.elytrium.limboqueue.server.ReservationLedger;
+import net.elytrium.limboqueue.server.ServerIndex;
+import net.elytrium.limboqueue.server.ServerLoad;
+import net.elytrium.limboqueue.server.ServerProber;
+import net.elytrium.limboqueue.server.ServerSelector;
+import net.elytrium.limboqueue.server.ServerSnapshot;
+import net.elytrium.limboqueue.server.TcpProber;
 
 public class ServerManager {
+
+  private static final long CONNECT_TIMEOUT_MILLIS = 2000;
   
   private final LimboQueue plugin;
-  private final List<RegisteredServer> targetServers;
-  private final List<RegisteredServer> availableServers;
-  private final Map<RegisteredServer, Long> unavailableServers;
-  private int lastSelectedIndex = 0;
+  private final AtomicReference<ServerSnapshot> snapshot;
+  private final Map<RegisteredServer, CircuitBreaker> breakers;
+  private final Map<RegisteredServer, ReservationLedger> ledgers;
+  private final Map<RegisteredServer, AdmissionThrottle> throttles;
+  private final Map<RegisteredServer, ProbeResult> probeResults;
+  private final ServerProber prober;
+  private final Object checkLock = new Object();
+  private CompletableFuture<Void> currentCheck;
+  private volatile ServerSelector selector;
   
   public ServerManager(LimboQueue plugin) {
+    this(plugin, createTcpProber());
+  }
+
+  /**
+   * @param prober reachability check run before each ping, closed along with the manager
+   */
+  public ServerManager(LimboQueue plugin, ServerProber prober) {
     this.plugin = plugin;
-    this.targetServers = new ArrayList<>();
-    this.availableServers = new ArrayList<>();
-    this.unavailableServers = new HashMap<>();
-    this.loadServers();
+    this.snapshot = new AtomicReference<>(ServerSnapshot.EMPTY);
+    this.breakers = new ConcurrentHashMap<>();
+    this.ledgers = new ConcurrentHashMap<>();
+    this.throttles = new ConcurrentHashMap<>();
+    this.probeResults = new ConcurrentHashMap<>();
+    this.prober = prober;
+    this.loadServers(plugin.getSettings());
+  }
+
+  private static ServerProber createTcpProber() {
+    try {
+      return new TcpProber("LimboQueue Prober");
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open the server prober", e);
+    }
   }
   
-  private void loadServers() {
-    this.targetServers.clear();
-    
-    // Use SERVERS if it contains multiple servers, otherwise use SERVER for compatibility
-    String serversConfig = Config.IMP.MAIN.SERVERS;
-    if (serversConfig.contains(",")) {
-      // Multiple servers configured
-      String[] serverNames = serversConfig.split(",");
-      for (String serverName : serverNames) {
-        serverName = serverName.trim();
+  /**
+   * Resolves the target servers of every group and publishes them as a new {@link ServerIndex}. Breakers, ledgers
+   * and throttles of servers that stay are kept along with their state, only their settings are replaced.
+   */
+  private void loadServers(QueueSettings settings) {
+    List<RegisteredServer> targetServers = new ArrayList<>();
+    Map<RegisteredServer, String> serverGroups = new HashMap<>();
+    Map<String, List<RegisteredServer>> groupServers = new LinkedHashMap<>();
+    for (QueueSettings.Group group : settings.getGroups()) {
+      List<RegisteredServer> members = new ArrayList<>();
+      for (String serverName : group.getServers()) {
         Optional<RegisteredServer> server = this.plugin.getServer().getServer(serverName);
-        if (server.isPresent()) {
-          this.targetServers.add(server.get());
-        } else {
+        if (server.isEmpty()) {
           this.plugin.getLogger().warn("Server '" + serverName + "' not found in velocity.toml!");
+          continue;
         }
+
+        String previous = serverGroups.putIfAbsent(server.get(), group.getName());
+        if (previous != null) {
+          this.plugin.getLogger().warn("Server '{}' is already in group '{}', ignoring it in group '{}'", serverName, previous, group.getName());
+          continue;
+        }
+
+        members.add(server.get());
+        targetServers.add(server.get());
       }
-    } else {
-      // Single server - use SERVER for compatibility
-      String serverName = Config.IMP.MAIN.SERVER.trim();
-      Optional<RegisteredServer> server = this.plugin.getServer().getServer(serverName);
-      if (server.isPresent()) {
-        this.targetServers.add(server.get());
-      } else {
-        this.plugin.getLogger().warn("Server '" + serverName + "' not found in velocity.toml!");
-      }
+
+      groupServers.put(group.getName(), members);
     }
     
-    if (this.targetServers.isEmpty()) {
+    if (targetServers.isEmpty()) {
       this.plugin.getLogger().error("No valid servers found! Please check your configuration.");
     }
+
+    this.selector = settings.getSelection().create(settings.getWeights());
+
+    long now = QueueClock.millis();
+    this.breakers.keySet().retainAll(targetServers);
+    this.ledgers.keySet().retainAll(targetServers);
+    this.throttles.keySet().retainAll(targetServers);
+    this.probeResults.keySet().retainAll(targetServers);
+    for (RegisteredServer server : targetServers) {
+      this.breakers.computeIfAbsent(server, s -> new CircuitBreaker(settings.getHealth(), now)).setSettings(settings.getHealth());
+      this.ledgers.computeIfAbsent(server, s -> new ReservationLedger());
+      this.throttles.computeIfAbsent(server, s -> new AdmissionThrottle(settings.getSlowStart())).setSettings(settings.getSlowStart());
+    }
+
+    ServerIndex index = new ServerIndex(groupServers);
+    this.snapshot.updateAndGet(current -> ServerSnapshot.of(index, new HashSet<>(current.getAvailable())));
   }
-  
-  public void checkServers() {
-    this.availableServers.clear();
-    
-    // Clean up servers that have been unavailable for more than 30 seconds
-    long currentTime = System.currentTimeMillis();
-    this.unavailableServers.entrySet().removeIf(entry -> 
-        currentTime - entry.getValue() > 30000); // 30 seconds
-    
-    List<CompletableFuture<Void>> futures = new ArrayList<>();
-    
-    for (RegisteredServer server : this.targetServers) {
-      // Skip servers that are temporarily marked as unavailable
-      if (this.unavailableServers.containsKey(server)) {
-        this.plugin.getLogger().debug("Skipping server {} - temporarily marked as unavailable", 
-            server.getServerInfo().getName());
-        continue;
+
+  /**
+   * Starts a probe round for every target server. Nothing blocks: TCP checks run on the prober thread
+   * and pings are chained onto their results.
+   *
+   * <p>The round collects its results on the side and publishes them as a new {@link ServerSnapshot} once it is over,
+   * so readers keep seeing the previous round in the meantime. Servers that come up during the round are
+   * published right away.
+   *
+   * <p>Only servers whose {@link CircuitBreaker} asks for it are probed: open breakers wait for their backoff,
+   * and closed ones that have been healthy for a while are probed less often and keep their previous state.
+   *
+   * @return future completed when the round is over; if a round is still running, its future is returned instead
+   */
+  public CompletableFuture<Void> checkServers() {
+    synchronized (this.checkLock) {
+      if (this.currentCheck != null && !this.currentCheck.isDone()) {
+        this.plugin.getLogger().debug("Previous server check is still running, skipping");
+        return this.currentCheck;
       }
-      
-      CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
-        // First check if server is connectable via socket
-        if (!this.isServerConnectable(server)) {
-          this.plugin.getLogger().debug("Server {} is not connectable", 
-              server.getServerInfo().getName());
-          return null;
+
+      long now = QueueClock.millis();
+      ServerSnapshot previous = this.snapshot.get();
+      List<CompletableFuture<Void>> futures = new ArrayList<>();
+      Set<RegisteredServer> roundAvailable = ConcurrentHashMap.newKeySet();
+
+      for (RegisteredServer server : previous.getIndex().getServers()) {
+        CircuitBreaker breaker = this.breakers.get(server);
+        if (breaker == null) {
+          // Removed by a reload that hasn't published its index yet.
+          continue;
         }
-        
-        // If connectable, then check with ping for player count
-        try {
-          ServerPing ping = server.ping().orTimeout(5, TimeUnit.SECONDS).join();
-          if (ping != null && ping.getPlayers().isPresent()) {
-            ServerPing.Players players = ping.getPlayers().get();
-            // Only consider server available if it has space for players
-            if (players.getOnline() < players.getMax()) {
-              synchronized (this.availableServers) {
-                this.availableServers.add(server);
-              }
-              this.plugin.getLogger().debug("Server {} is available ({}/{} players)", 
-                  server.getServerInfo().getName(), players.getOnline(), players.getMax());
-            } else {
-              this.plugin.getLogger().debug("Server {} is full ({}/{} players)", 
-                  server.getServerInfo().getName(), players.getOnline(), players.getMax());
-            }
+
+        if (!breaker.shouldProbe(now)) {
+          if (breaker.isClosed() && previous.isAvailable(server)) {
+            // Healthy and not due for a probe yet
+            roundAvailable.add(server);
           } else {
-            // If connectable but no ping response, DO NOT assume it's available
-            // Only add to available servers if we get a proper ping response
-            this.plugin.getLogger().debug("Server {} is connectable but ping failed, NOT marking as available", 
-                server.getServerInfo().getName());
+            this.plugin.getLogger().debug("Skipping server {} - circuit breaker is {}",
+                server.getServerInfo().getName(), breaker.getState());
           }
-        } catch (Exception e) {
-          this.plugin.getLogger().debug("Server {} ping failed after successful connection test: {}", 
-              server.getServerInfo().getName(), e.getMessage());
-          // If ping fails, DO NOT consider it available - we need a proper ping response
-          // to ensure the server is actually ready to accept players
+          continue;
         }
+
+        breaker.onProbeStarted(now);
+
+        futures.add(this.prober.probe(server.getServerInfo().getAddress(), CONNECT_TIMEOUT_MILLIS)
+            .thenCompose(probe -> this.onProbed(server, probe, roundAvailable)));
+      }
+
+      this.currentCheck = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+          .orTimeout(10, TimeUnit.SECONDS)
+          .handle((result, throwable) -> {
+            if (throwable != null) {
+              this.plugin.getLogger().warn("Server check timed out or failed: {}", throwable.getMessage());
+            }
+
+            // Servers marked unavailable or removed by a reload while the round was running stay out.
+            roundAvailable.removeIf(server -> !this.canAdmit(server));
+            ServerSnapshot published = this.snapshot.updateAndGet(current -> ServerSnapshot.of(current.getIndex(), roundAvailable));
+            this.plugin.getLogger().info("Server check completed: {}/{} servers available",
+                published.size(), published.getIndex().getServers().size());
+            return null;
+          });
+      return this.currentCheck;
+    }
+  }
+
+  private CompletableFuture<Void> onProbed(RegisteredServer server, ProbeResult probe, Set<RegisteredServer> roundAvailable) {
+    CircuitBreaker breaker = this.breakers.get(server);
+    ReservationLedger ledger = this.ledgers.get(server);
+    if (breaker == null || ledger == null) {
+      // Removed from the target servers by a reload while the probe was running
+      return CompletableFuture.completedFuture(null);
+    }
+
+    this.probeResults.put(server, probe);
+    this.plugin.getMetrics().recordProbe(server.getServerInfo().getName(), probe);
+    // First check if server is connectable via socket
+    if (!probe.isReachable()) {
+      this.plugin.getLogger().debug("Server {} is not connectable: {}",
+          server.getServerInfo().getName(), probe.getFailure());
+      this.recordProbeFailure(server);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    this.plugin.getLogger().debug("Server {} socket connection successful ({} ms)",
+        server.getServerInfo().getName(), probe.getLatencyMillis());
+
+    // If connectable, then check with ping for player count
+    long pingStart = QueueClock.nanos();
+    return server.ping().orTimeout(5, TimeUnit.SECONDS).handle((ping, throwable) -> {
+      if (throwable != null) {
+        this.plugin.getLogger().debug("Server {} ping failed after successful connection test: {}",
+            server.getServerInfo().getName(), throwable.getMessage());
+        // If ping fails, DO NOT consider it available - we need a proper ping response
+        // to ensure the server is actually ready to accept players
+        this.plugin.getMetrics().recordPingFailure(server.getServerInfo().getName());
+        this.recordProbeFailure(server);
         return null;
-      });
-      futures.add(future);
+      }
+
+      if (ping != null && ping.getPlayers().isPresent()) {
+        ServerPing.Players players = ping.getPlayers().get();
+        if (breaker.recordSuccess(QueueClock.millis())) {
+          this.plugin.getLogger().info("Server {} is healthy again, circuit breaker closed", server.getServerInfo().getName());
+          this.onBreakerClosed(server);
+        }
+        ServerLoad load = new ServerLoad(players.getOnline(), players.getMax(), pingStart, QueueClock.nanos());
+        this.plugin.getMetrics().recordPing(server.getServerInfo().getName(), load.getPingNanos());
+        this.onPing(server, load.getPingNanos());
+        ledger.reconcile(load);
+        // Only consider server available if it has space for players
+        if (players.getOnline() < players.getMax()) {
+          roundAvailable.add(server);
+          if (!this.snapshot.get().isAvailable(server) && breaker.isClosed()) {
+            this.snapshot.updateAndGet(current -> current.with(server));
+            this.plugin.wakeUp(this.getGroup(server));
+          }
+          this.plugin.getLogger().debug("Server {} is available ({}/{} players)",
+              server.getServerInfo().getName(), players.getOnline(), players.getMax());
+        } else {
+          this.plugin.getLogger().debug("Server {} is full ({}/{} players)",
+              server.getServerInfo().getName(), players.getOnline(), players.getMax());
+        }
+      } else {
+        // If connectable but no ping response, DO NOT assume it's available
+        // Only add to available servers if we get a proper ping response
+        this.plugin.getLogger().debug("Server {} is connectable but ping failed, NOT marking as available",
+            server.getServerInfo().getName());
+        this.plugin.getMetrics().recordPingFailure(server.getServerInfo().getName());
+        this.recordProbeFailure(server);
+      }
+
+      return null;
+    });
+  }
+
+  private void recordProbeFailure(RegisteredServer server) {
+    CircuitBreaker breaker = this.breakers.get(server);
+    if (breaker != null && breaker.recordFailure(QueueClock.millis())) {
+      this.onBreakerOpened(server, breaker);
     }
-    
-    // Wait for all checks to complete
-    try {
-      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-          .orTimeout(10, TimeUnit.SECONDS)
-          .join();
-    } catch (Exception e) {
-      this.plugin.getLogger().warn("Server check timed out or failed: {}", e.getMessage());
+  }
+
+  private void onBreakerOpened(RegisteredServer server, CircuitBreaker breaker) {
+    this.snapshot.updateAndGet(current -> current.without(server));
+    ReservationLedger ledger = this.ledgers.get(server);
+    if (ledger != null) {
+      ledger.invalidate();
     }
-    
-    this.plugin.getLogger().info("Server check completed: {}/{} servers available", 
-        this.availableServers.size(), this.targetServers.size());
+
+    this.plugin.getLogger().info("Marked server {} as temporarily unavailable for {} s",
+        server.getServerInfo().getName(), Math.max(0, breaker.getRetryAt() - QueueClock.millis()) / 1000);
   }
-  
+
+  /**
+   * Sends players to the server slowly at first, it may still be warming up.
+   */
+  private void onBreakerClosed(RegisteredServer server) {
+    AdmissionThrottle throttle = this.throttles.get(server);
+    if (throttle != null) {
+      throttle.startRamp(QueueClock.nanos());
+    }
+  }
+
+  private void onPing(RegisteredServer server, long pingNanos) {
+    AdmissionThrottle throttle = this.throttles.get(server);
+    if (throttle != null) {
+      throttle.onPing(pingNanos, QueueClock.nanos());
+    }
+  }
+
+  /**
+   * Picks a server for the next player with the configured {@link SelectionStrategy}, among the available servers
+   * with a closed circuit breaker and at least one free slot.
+   */
   public Optional<RegisteredServer> getAvailableServer() {
-    synchronized (this.availableServers) {
-      if (this.availableServers.isEmpty()) {
-        return Optional.empty();
-      }
-      
-      // Use round-robin selection to avoid always selecting the same server
-      if (this.lastSelectedIndex >= this.availableServers.size()) {
-        this.lastSelectedIndex = 0;
+    return this.getAvailableServer(null);
+  }
+
+  /**
+   * Same as {@link #getAvailableServer()}, among the servers of the group only.
+   *
+   * @param group name of the group, or null for any target server
+   */
+  public Optional<RegisteredServer> getAvailableServer(String group) {
+    return this.getAvailableServer(group, server -> true);
+  }
+
+  /**
+   * Same as {@link #getAvailableServer(String)}, among the servers accepted by the filter only.
+   */
+  public Optional<RegisteredServer> getAvailableServer(String group, Predicate<RegisteredServer> filter) {
+    List<RegisteredServer> candidates = this.getAdmittableServers(group, filter);
+    if (candidates.isEmpty()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(candidates.size() == 1 ? candidates.get(0) : this.selector.select(candidates, this));
+  }
+
+  /**
+   * @param group name of the group, or null for any target server
+   * @return the available servers of the group with a closed circuit breaker and at least one free slot
+   */
+  public List<RegisteredServer> getAdmittableServers(String group) {
+    return this.getAdmittableServers(group, server -> true);
+  }
+
+  private List<RegisteredServer> getAdmittableServers(String group, Predicate<RegisteredServer> filter) {
+    ServerSnapshot snapshot = this.snapshot.get();
+    List<RegisteredServer> servers = group == null ? snapshot.getAvailable() : snapshot.getIndex().getGroupServers(group);
+    List<RegisteredServer> candidates = new ArrayList<>(servers.size());
+    for (RegisteredServer server : servers) {
+      if (snapshot.isAvailable(server) && this.canAdmit(server) && this.getFreeSlots(server) > 0 && filter.test(server)) {
+        candidates.add(server);
       }
-      
-      RegisteredServer selectedServer = this.availableServers.get(this.lastSelectedIndex);
-      this.lastSelectedIndex = (this.lastSelectedIndex + 1) % this.availableServers.size();
-      
-      return Optional.of(selectedServer);
     }
+
+    return candidates;
+  }
+
+  /**
+   * @return the last published availability snapshot, safe to keep and read from any thread
+   */
+  public ServerSnapshot getSnapshot() {
+    return this.snapshot.get();
   }
   
+  /**
+   * @return immutable list of the target servers, replaced as a whole when the servers are reloaded
+   */
   public List<RegisteredServer> getTargetServers() {
-    return new ArrayList<>(this.targetServers);
+    return this.snapshot.get().getIndex().getServers();
   }
   
+  /**
+   * @return immutable list of available servers from the current snapshot
+   */
   public List<RegisteredServer> getAvailableServers() {
-    synchronized (this.availableServers) {
-      return new ArrayList<>(this.availableServers);
-    }
+    return this.snapshot.get().getAvailable();
   }
   
   public int getAvailableServerCount() {
-    return this.availableServers.size();
+    return this.snapshot.get().size();
   }
   
   public int getTotalServerCount() {
-    return this.targetServers.size();
+    return this.snapshot.get().getIndex().getServers().size();
   }
   
   public boolean hasAvailableServers() {
-    return !this.availableServers.isEmpty();
+    return !this.snapshot.get().isEmpty();
   }
-  
-  public void reload() {
-    this.loadServers();
+
+  /**
+   * Allocates nothing, called on every server switch towards a target server.
+   *
+   * @param group name of the group, or null for any target server
+   */
+  public boolean hasAvailableServers(String group) {
+    ServerSnapshot snapshot = this.snapshot.get();
+    return group == null ? !snapshot.isEmpty() : snapshot.hasAvailable(group);
+  }
+
+  /**
+   * @return name of the group of the server, or null if it is not a target server
+   */
+  public String getGroup(RegisteredServer server) {
+    return this.snapshot.get().getIndex().getGroup(server);
+  }
+
+  /**
+   * @return immutable list of the target servers of the group, empty for an unknown group
+   */
+  public List<RegisteredServer> getGroupServers(String group) {
+    return this.snapshot.get().getIndex().getGroupServers(group);
   }
   
-  public void markServerUnavailable(RegisteredServer server) {
-    synchronized (this.availableServers) {
-      this.availableServers.remove(server);
+  /**
+   * Applies new target servers, selection and health settings. Probe history and reservations of the servers
+   * that stay in the list are kept.
+   */
+  public void reload(QueueSettings settings) {
+    this.loadServers(settings);
+  }
+
+  /**
+   * Closes the prober. The manager must not be used afterwards.
+   */
+  public void close() {
+    this.prober.close();
+  }
+
+  public ProbeResult getLastProbe(RegisteredServer server) {
+    return this.probeResults.get(server);
+  }
+
+  /**
+   * @return the last ping reading of the server, or null if it has no valid one
+   */
+  public ServerLoad getServerLoad(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    return ledger == null ? null : ledger.getLoad();
+  }
+
+  public ReservationLedger getLedger(RegisteredServer server) {
+    return this.ledgers.get(server);
+  }
+
+  public AdmissionThrottle getThrottle(RegisteredServer server) {
+    return this.throttles.get(server);
+  }
+
+  /**
+   * @return free slots reported by the last ping, minus reservations it doesn't account for yet,
+   *     and no more than the players its {@link AdmissionThrottle} lets through right now
+   */
+  public int getFreeSlots(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    AdmissionThrottle throttle = this.throttles.get(server);
+    if (ledger == null || throttle == null) {
+      return 0;
     }
-    // Mark server as temporarily unavailable for 30 seconds
-    this.unavailableServers.put(server, System.currentTimeMillis());
-    this.plugin.getLogger().info("Marked server {} as temporarily unavailable", 
-        server.getServerInfo().getName());
+
+    return Math.min(ledger.getFreeSlots(), throttle.getAvailable(QueueClock.nanos()));
   }
-  
-  private boolean isServerConnectable(RegisteredServer server) {
-    String address = server.getServerInfo().getAddress().getHostString();
-    int port = server.getServerInfo().getAddress().getPort();
-    
-    try {
-      Socket socket = SocketFactory.getDefault().createSocket();
-      socket.setSoTimeout(2000); // 2 second timeout - faster detection
-      socket.connect(new InetSocketAddress(address, port), 2000); // Connection timeout
-      socket.close();
-      this.plugin.getLogger().debug("Server {} socket connection successful", 
-          server.getServerInfo().getName());
-      return true;
-    } catch (ConnectException e) {
-      this.plugin.getLogger().debug("Server {} connection refused: {}", 
-          server.getServerInfo().getName(), e.getMessage());
-      return false;
-    } catch (IOException e) {
-      this.plugin.getLogger().debug("Server {} connection failed: {}", 
-          server.getServerInfo().getName(), e.getMessage());
+
+  /**
+   * Reserves a slot for a player about to be sent to the server. The reservation must be either
+   * {@link #confirmSlot confirmed} or {@link #releaseSlot released} once the connection attempt is over.
+   */
+  public boolean tryAcquireSlot(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    AdmissionThrottle throttle = this.throttles.get(server);
+    if (ledger == null || throttle == null || !throttle.tryAcquire(QueueClock.nanos())) {
       return false;
-    } catch (Exception e) {
-      this.plugin.getLogger().debug("Server {} unexpected connection error: {}", 
-          server.getServerInfo().getName(), e.getMessage());
+    }
+
+    if (!ledger.tryReserve()) {
+      throttle.refund();
       return false;
     }
+
+    return true;
+  }
+
+  /**
+   * @param group name of the group
+   * @return milliseconds until a server of the group that only lacks a token of its {@link AdmissionThrottle}
+   *     can take a player, or -1 if no server of the group waits for one
+   */
+  public long getThrottleDelay(String group) {
+    ServerSnapshot snapshot = this.snapshot.get();
+    long now = QueueClock.nanos();
+    long delay = Long.MAX_VALUE;
+    for (RegisteredServer server : snapshot.getIndex().getGroupServers(group)) {
+      ReservationLedger ledger = this.ledgers.get(server);
+      AdmissionThrottle throttle = this.throttles.get(server);
+      if (ledger == null || throttle == null || !snapshot.isAvailable(server) || !this.canAdmit(server) || ledger.getFreeSlots() <= 0) {
+        continue;
+      }
+
+      long serverDelay = throttle.getDelayNanos(now);
+      if (serverDelay > 0) {
+        delay = Math.min(delay, serverDelay);
+      }
+    }
+
+    return delay == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(delay) + 1;
+  }
+
+  public void confirmSlot(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    if (ledger != null) {
+      ledger.confirm(QueueClock.nanos());
+    }
+  }
+
+  public void releaseSlot(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    if (ledger != null) {
+      ledger.release();
+    }
+  }
+
+  /**
+   * Called when a player leaves a backend, so the freed slot can be handed out before the next ping.
+   */
+  public void onPlayerLeft(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    if (ledger != null) {
+      ledger.onDeparture(QueueClock.nanos());
+      this.plugin.wakeUp(this.getGroup(server));
+    }
+  }
+  
+  /**
+   * Takes the server out of rotation right away, e.g. after a failed connection.
+   */
+  public void markServerUnavailable(RegisteredServer server) {
+    CircuitBreaker breaker = this.breakers.get(server);
+    if (breaker != null && breaker.trip(QueueClock.millis())) {
+      this.onBreakerOpened(server, breaker);
+    }
+  }
+
+  /**
+   * Counts a connection that broke or timed out like a failed probe, and as a sign of congestion of the server.
+   */
+  public void recordConnectFailure(RegisteredServer server) {
+    AdmissionThrottle throttle = this.throttles.get(server);
+    if (throttle != null) {
+      throttle.onCongestion(QueueClock.nanos());
+    }
+
+    this.recordProbeFailure(server);
+  }
+
+  /**
+   * No slot of the server is handed out until its next ping, e.g. after it turned a player away as full.
+   */
+  public void markFull(RegisteredServer server) {
+    ReservationLedger ledger = this.ledgers.get(server);
+    if (ledger != null) {
+      ledger.markFull(QueueClock.nanos());
+    }
+  }
+
+  public void recordConnectSuccess(RegisteredServer server) {
+    CircuitBreaker breaker = this.breakers.get(server);
+    if (breaker != null && breaker.recordSuccess(QueueClock.millis())) {
+      this.onBreakerClosed(server);
+    }
+  }
+
+  /**
+   * @return true if players may be sent to the server, i.e. its circuit breaker is closed
+   */
+  public boolean canAdmit(RegisteredServer server) {
+    CircuitBreaker breaker = this.breakers.get(server);
+    return breaker != null && breaker.isClosed();
+  }
+
+  public CircuitBreaker getBreaker(RegisteredServer server) {
+    return this.breakers.get(server);
   }
 }
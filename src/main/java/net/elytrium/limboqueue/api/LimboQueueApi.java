@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.api;
+
+import com.velocitypowered.api.proxy.Player;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Entry point for other plugins, obtained with {@link net.elytrium.limboqueue.LimboQueue#getApi()}.
+ *
+ * <p>The queue of each server group is only changed by its own dispatcher, so lookups and changes that need the queue
+ * itself are queued to it and complete once it ran them, on the thread it runs on. Don't block on the futures
+ * from an event handler or a Netty thread. Counts are read from the last published state and return right away.
+ *
+ * <p>Changes of the queue are also fired as events, without waiting for the listeners:
+ * {@link net.elytrium.limboqueue.api.event.QueueJoinEvent}, {@link net.elytrium.limboqueue.api.event.QueueAdvanceEvent},
+ * {@link net.elytrium.limboqueue.api.event.QueueAdmitEvent} and {@link net.elytrium.limboqueue.api.event.QueueLeaveEvent}.
+ */
+public interface LimboQueueApi {
+
+  /**
+   * Finds the player in the queues in O(log n) per priority tier.
+   *
+   * @return where the player is in the queue, or empty if the player is not queued
+   */
+  CompletableFuture<Optional<QueueStatus>> getStatus(UUID uuid);
+
+  /**
+   * @return 1-based position of the player across every proxy of the cluster, or empty if the player is not queued
+   */
+  default CompletableFuture<OptionalInt> getPosition(UUID uuid) {
+    return this.getStatus(uuid).thenApply(status -> status.map(queueStatus -> OptionalInt.of(queueStatus.getPosition())).orElse(OptionalInt.empty()));
+  }
+
+  /**
+   * @return amount of players queued on this proxy, in every group
+   */
+  int getQueueSize();
+
+  /**
+   * @return amount of players queued on this proxy for the group, 0 for an unknown group
+   */
+  int getQueueSize(String group);
+
+  /**
+   * Sends the player to the queue of the group, like a player kicked from one of its servers.
+   *
+   * @return false if the group doesn't exist or the player is already connected to a server
+   */
+  boolean enqueue(Player player, String group);
+
+  /**
+   * Removes the player from the queue and from the queue limbo.
+   *
+   * @return true if the player was waiting in a queue, false if the player wasn't queued or is already being sent to a server
+   */
+  CompletableFuture<Boolean> dequeue(UUID uuid);
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.api;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Where a player was in the queue when it was looked up.
+ */
+public class QueueStatus {
+
+  private final UUID uuid;
+  private final String group;
+  private final int position;
+  private final int queueSize;
+  private final Duration estimatedWait;
+
+  public QueueStatus(UUID uuid, String group, int position, int queueSize, Duration estimatedWait) {
+    this.uuid = uuid;
+    this.group = group;
+    this.position = position;
+    this.queueSize = queueSize;
+    this.estimatedWait = estimatedWait;
+  }
+
+  public UUID getUuid() {
+    return this.uuid;
+  }
+
+  /**
+   * @return name of the server group the player waits for
+   */
+  public String getGroup() {
+    return this.group;
+  }
+
+  /**
+   * @return 1-based position across every proxy of the cluster
+   */
+  public int getPosition() {
+    return this.position;
+  }
+
+  /**
+   * @return amount of players waiting for the group across every proxy of the cluster
+   */
+  public int getQueueSize() {
+    return this.queueSize;
+  }
+
+  /**
+   * @return time left until the player's turn at the recent admission rate, empty until a player of the group was admitted
+   */
+  public Optional<Duration> getEstimatedWait() {
+    return Optional.ofNullable(this.estimatedWait);
+  }
+}
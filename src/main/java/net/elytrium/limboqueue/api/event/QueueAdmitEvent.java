@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.api.event;
+
+import com.velocitypowered.api.proxy.Player;
+import java.time.Duration;
+
+/**
+ * Fired when a queued player reached a server, either sent by the queue or on their own.
+ */
+public final class QueueAdmitEvent {
+
+  private final Player player;
+  private final String group;
+  private final Duration waited;
+
+  public QueueAdmitEvent(Player player, String group, Duration waited) {
+    this.player = player;
+    this.group = group;
+    this.waited = waited;
+  }
+
+  public Player getPlayer() {
+    return this.player;
+  }
+
+  public String getGroup() {
+    return this.group;
+  }
+
+  /**
+   * @return time since the player joined the queue, including the time before a restart for restored players
+   */
+  public Duration getWaited() {
+    return this.waited;
+  }
+
+  @Override
+  public String toString() {
+    return "QueueAdmitEvent{player=" + this.player + ", group=" + this.group + ", waited=" + this.waited + "}";
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.api.event;
+
+/**
+ * Fired when players left the queue of a server group, so that everybody behind them moved up.
+ *
+ * <p>Fired at most once per batch of queue changes instead of once per player whose position changed,
+ * listeners that show positions look them up with {@link net.elytrium.limboqueue.api.LimboQueueApi#getStatus}.
+ */
+public final class QueueAdvanceEvent {
+
+  private final String group;
+  private final int left;
+  private final int queueSize;
+
+  public QueueAdvanceEvent(String group, int left, int queueSize) {
+    this.group = group;
+    this.left = left;
+    this.queueSize = queueSize;
+  }
+
+  public String getGroup() {
+    return this.group;
+  }
+
+  /**
+   * @return amount of players that left the queue since the previous event, sent to a server or not
+   */
+  public int getLeft() {
+    return this.left;
+  }
+
+  /**
+   * @return amount of players still queued on this proxy for the group
+   */
+  public int getQueueSize() {
+    return this.queueSize;
+  }
+
+  @Override
+  public String toString() {
+    return "QueueAdvanceEvent{group=" + this.group + ", left=" + this.left + ", queueSize=" + this.queueSize + "}";
+  }
+}
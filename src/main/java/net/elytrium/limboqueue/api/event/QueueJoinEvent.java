@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.api.event;
+
+import com.velocitypowered.api.proxy.Player;
+
+/**
+ * Fired when a player joins the queue of a server group, after the player was queued.
+ */
+public final class QueueJoinEvent {
+
+  private final Player player;
+  private final String group;
+  private final int position;
+
+  public QueueJoinEvent(Player player, String group, int position) {
+    this.player = player;
+    this.group = group;
+    this.position = position;
+  }
+
+  public Player getPlayer() {
+    return this.player;
+  }
+
+  public String getGroup() {
+    return this.group;
+  }
+
+  /**
+   * @return 1-based position the player got across every proxy of the cluster
+   */
+  public int getPosition() {
+    return this.position;
+  }
+
+  @Override
+  public String toString() {
+    return "QueueJoinEvent{player=" + this.player + ", group=" + this.group + ", position=" + this.position + "}";
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.api.event;
+
+import com.velocitypowered.api.proxy.Player;
+
+/**
+ * Fired when a player leaves the queue without reaching a server.
+ */
+public final class QueueLeaveEvent {
+
+  private final Player player;
+  private final String group;
+  private final Reason reason;
+
+  public QueueLeaveEvent(Player player, String group, Reason reason) {
+    this.player = player;
+    this.group = group;
+    this.reason = reason;
+  }
+
+  /**
+   * @return the player, who may not be connected anymore
+   */
+  public Player getPlayer() {
+    return this.player;
+  }
+
+  public String getGroup() {
+    return this.group;
+  }
+
+  public Reason getReason() {
+    return this.reason;
+  }
+
+  @Override
+  public String toString() {
+    return "QueueLeaveEvent{player=" + this.player + ", group=" + this.group + ", reason=" + this.reason + "}";
+  }
+
+  public enum Reason {
+
+    /**
+     * The player left the proxy while waiting or being sent.
+     */
+    DISCONNECTED,
+    /**
+     * The server the player was sent to kicked them for another reason than being full.
+     */
+    KICKED,
+    /**
+     * Another plugin cancelled the connections of the player to the servers too many times in a row.
+     */
+    CANCELLED,
+    /**
+     * Another plugin removed the player through the API.
+     */
+    DEQUEUED
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+/**
+ * Splits the free slots of the backends between the proxies, so that proxies admitting at the same time don't
+ * send more players to a backend than it has room for.
+ *
+ * <p>Slots are leased for a whole admission pass in one call: a pass asks for slots on every server it may use,
+ * sends players to the granted ones and gives the slots it didn't use back once it is done.
+ */
+public interface CapacityCoordinator {
+
+  /**
+   * Leases up to {@code wanted[i]} slots on {@code servers[i]}, never more than its {@code free[i]} slots minus the
+   * slots other proxies still hold a lease on. A lease outlives the pass, so that a used slot stays counted until the
+   * pings of every proxy see the player on the backend.
+   *
+   * @param free free slots of each server as seen by this proxy, its own connections already taken into account
+   */
+  SlotLease lease(String[] servers, int[] free, int[] wanted);
+
+  /**
+   * Gives back the slots of the lease that were not used.
+   */
+  void release(SlotLease lease);
+
+  /**
+   * Gives back every slot this proxy holds.
+   */
+  void close();
+}
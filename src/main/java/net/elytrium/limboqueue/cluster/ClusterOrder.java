@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import java.util.List;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+
+/**
+ * Order of the players of a group across all the proxies.
+ *
+ * <p>Inside a priority tier players are ordered by join time, whichever proxy they are on. Tiers are interleaved
+ * with the same weighted fair scheduling as {@link net.elytrium.limboqueue.queue.TieredQueue}, starting from the head
+ * of every tier. Every proxy computes the same order from the same published queues, so the players a proxy admits
+ * are the ones whose turn it is in the whole cluster. Proxies are expected to share the priority weights, tiers a
+ * proxy doesn't know about are left out.
+ */
+public final class ClusterOrder {
+
+  private static final long STRIDE_SCALE = 1L << 20;
+  private static final long[] NO_PLAYERS = new long[0];
+
+  private ClusterOrder() {
+  }
+
+  /**
+   * @param queue local queue in admission order
+   * @return join times of the players, per tier in queue order, as published by a {@link QueueStore}
+   */
+  public static long[][] getJoinTimes(List<QueuePlayerInfo> queue) {
+    int tierCount = 0;
+    for (QueuePlayerInfo playerInfo : queue) {
+      tierCount = Math.max(tierCount, playerInfo.getTier() + 1);
+    }
+
+    int[] counts = new int[tierCount];
+    for (QueuePlayerInfo playerInfo : queue) {
+      ++counts[playerInfo.getTier()];
+    }
+
+    long[][] joinTimes = new long[tierCount][];
+    for (int tier = 0; tier < tierCount; tier++) {
+      joinTimes[tier] = new long[counts[tier]];
+      counts[tier] = 0;
+    }
+
+    for (QueuePlayerInfo playerInfo : queue) {
+      int tier = playerInfo.getTier();
+      joinTimes[tier][counts[tier]++] = playerInfo.getJoinTime();
+    }
+
+    return joinTimes;
+  }
+
+  /**
+   * @return how many of the next {@code capacity} players of the cluster are queued on this proxy
+   */
+  public static int getLocalShare(List<QueuePlayerInfo> queue, RemoteQueue remote, int[] weights, int capacity) {
+    if (remote.isEmpty()) {
+      return Math.min(capacity, queue.size());
+    }
+
+    return merge(queue, remote, weights, capacity, null);
+  }
+
+  /**
+   * @return cluster-wide 1-based positions of the players of the local queue, in the order of the queue
+   */
+  public static int[] getPositions(List<QueuePlayerInfo> queue, RemoteQueue remote, int[] weights) {
+    int[] positions = new int[queue.size()];
+    if (remote.isEmpty()) {
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = i + 1;
+      }
+    } else {
+      merge(queue, remote, weights, queue.size() + remote.size(), positions);
+    }
+
+    return positions;
+  }
+
+  /**
+   * Walks the first {@code limit} players of the cluster order.
+   *
+   * @param positions filled with the positions of the local players met on the way, may be null
+   * @return amount of local players among them
+   */
+  private static int merge(List<QueuePlayerInfo> queue, RemoteQueue remote, int[] weights, int limit, int[] positions) {
+    int tierCount = weights.length;
+    int[][] local = new int[tierCount][];
+    int[] counts = new int[tierCount];
+    for (QueuePlayerInfo playerInfo : queue) {
+      ++counts[tierOf(playerInfo, tierCount)];
+    }
+
+    long[][] remoteTiers = new long[tierCount][];
+    long[] strides = new long[tierCount];
+    for (int tier = 0; tier < tierCount; tier++) {
+      local[tier] = new int[counts[tier]];
+      counts[tier] = 0;
+      remoteTiers[tier] = tier < remote.getTierCount() ? remote.getTier(tier) : NO_PLAYERS;
+      strides[tier] = STRIDE_SCALE / Math.max(1, weights[tier]);
+    }
+
+    // Indexes of the local players of each tier, the queue is already in admission order inside a tier.
+    for (int i = 0; i < queue.size(); i++) {
+      int tier = tierOf(queue.get(i), tierCount);
+      local[tier][counts[tier]++] = i;
+    }
+
+    int[] nextLocal = new int[tierCount];
+    int[] nextRemote = new int[tierCount];
+    long[] passes = new long[tierCount];
+    int share = 0;
+    for (int position = 1; position <= limit; position++) {
+      int best = -1;
+      long bestPass = Long.MAX_VALUE;
+      for (int tier = tierCount - 1; tier >= 0; tier--) {
+        boolean waiting = nextLocal[tier] < local[tier].length || nextRemote[tier] < remoteTiers[tier].length;
+        if (waiting && passes[tier] < bestPass) {
+          best = tier;
+          bestPass = passes[tier];
+        }
+      }
+
+      if (best == -1) {
+        break;
+      }
+
+      passes[best] += strides[best];
+      // Local players go first on equal join times, the leases still keep the proxies from overshooting.
+      boolean localTurn = nextLocal[best] < local[best].length && (nextRemote[best] == remoteTiers[best].length
+          || queue.get(local[best][nextLocal[best]]).getJoinTime() <= remoteTiers[best][nextRemote[best]]);
+      if (localTurn) {
+        int index = local[best][nextLocal[best]++];
+        if (positions != null) {
+          positions[index] = position;
+        }
+
+        ++share;
+      } else {
+        ++nextRemote[best];
+      }
+    }
+
+    return share;
+  }
+
+  private static int tierOf(QueuePlayerInfo playerInfo, int tierCount) {
+    return Math.max(0, Math.min(playerInfo.getTier(), tierCount - 1));
+  }
+}
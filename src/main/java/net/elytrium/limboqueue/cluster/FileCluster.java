@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import org.slf4j.Logger;
+
+/**
+ * Cluster backend on a directory shared by the proxies, e.g. proxies running on one host or sharing a network mount
+ * with working file locks.
+ *
+ * <p>Every proxy writes its queues to a file of its own, replaced atomically, and reads the files of the others,
+ * which are only parsed again when the sequence number in their header changed. A file is rewritten when a queue changed, and at least every
+ * third of the expiry time so that the others know the proxy is alive; a proxy whose file is older than that is
+ * left out. The queue files are written and read on a single background thread, an exchange only hands the queue
+ * over and returns the remote queues read last, so the dispatchers of the groups never wait for the disk or for each other.
+ *
+ * <p>Leases are kept in one small file that is read, updated and written back under an exclusive lock, once per
+ * admission pass. The grant has to be decided under that lock, so it is the only file access left to the dispatchers;
+ * the slots a pass didn't use are given back on the background thread.
+ *
+ * <p>When the directory can't be used the proxy goes on as if it were alone, and a warning is logged once.
+ */
+public class FileCluster implements QueueStore, CapacityCoordinator {
+
+  private static final int MAGIC = 0x4C514331;
+  private static final int VERSION = 1;
+  private static final String QUEUE_PREFIX = "queue-";
+  private static final String QUEUE_SUFFIX = ".dat";
+  /**
+   * Queue files not updated for this many expiry times are left behind by proxies that crashed, and deleted.
+   */
+  private static final int STALE_EXPIRIES = 10;
+
+  private final Path directory;
+  private final String proxyId;
+  private final Path queueFile;
+  private final Path leaseFile;
+  private final FileChannel lockChannel;
+  private final Logger logger;
+  private final long leaseTime;
+  private final long expiry;
+  /**
+   * The file lock is held by the whole JVM, so the clusters of this JVM, e.g. the old and the new one during a reload,
+   * take turns on their own.
+   */
+  private static final Object LEASE_LOCK = new Object();
+
+  private final ExecutorService executor;
+  private final Map<String, List<QueuePlayerInfo>> published = new ConcurrentHashMap<>();
+  private final Map<String, long[][]> publishedJoinTimes = new ConcurrentHashMap<>();
+  private final AtomicBoolean syncScheduled = new AtomicBoolean();
+  private volatile boolean changed;
+  private volatile Map<String, RemoteQueue> remoteQueues = Collections.emptyMap();
+  private volatile boolean failing;
+  // Only used by the background thread.
+  private final Map<Path, RemoteFile> remoteFiles = new HashMap<>();
+  private final Set<Path> unreadableFiles = new HashSet<>();
+  private long sequence = ThreadLocalRandom.current().nextLong();
+  private long writtenAt;
+
+  /**
+   * @param executor runs the file I/O one task at a time, shut down on {@link #close()}
+   */
+  public FileCluster(Path directory, String proxyId, Logger logger, long leaseTimeMillis, long expiryMillis, ExecutorService executor)
+      throws IOException {
+    this.directory = directory;
+    this.proxyId = proxyId;
+    this.queueFile = directory.resolve(QUEUE_PREFIX + proxyId + QUEUE_SUFFIX);
+    this.leaseFile = directory.resolve("leases.dat");
+    this.logger = logger;
+    this.leaseTime = leaseTimeMillis;
+    this.expiry = expiryMillis;
+    this.executor = executor;
+
+    Files.createDirectories(directory);
+    this.lockChannel = FileChannel.open(directory.resolve("leases.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Hands the queue over to the background thread and returns the remote queues it read last. The periodic sweep
+   * exchanges every group, which keeps the file of this proxy fresh while nothing else does.
+   */
+  @Override
+  public RemoteQueue exchange(String group, Supplier<List<QueuePlayerInfo>> queue) {
+    List<QueuePlayerInfo> snapshot = queue.get();
+    // Snapshots are cached until the queue changes, the same instance means nothing changed.
+    if (this.published.put(group, snapshot) != snapshot) {
+      this.publishedJoinTimes.put(group, ClusterOrder.getJoinTimes(snapshot));
+      this.changed = true;
+    }
+
+    this.requestSync();
+    return this.remoteQueues.getOrDefault(group, RemoteQueue.EMPTY);
+  }
+
+  @Override
+  public SlotLease lease(String[] servers, int[] free, int[] wanted) {
+    try {
+      long expiresAt = QueueClock.millis() + this.leaseTime;
+      int[] granted = this.updateLeases(table -> table.grant(this.proxyId, servers, free, wanted, expiresAt));
+      this.recovered();
+      return new SlotLease(servers, granted);
+    } catch (IOException | RuntimeException e) {
+      this.failed("lease slots", e);
+      return new LocalCluster().lease(servers, free, wanted);
+    }
+  }
+
+  @Override
+  public void release(SlotLease lease) {
+    try {
+      this.executor.execute(() -> {
+        try {
+          this.updateLeases(table -> {
+            table.release(this.proxyId, lease);
+            return null;
+          });
+        } catch (IOException | RuntimeException e) {
+          this.failed("give leased slots back", e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Closed meanwhile, the leases of this proxy are removed anyway.
+    }
+  }
+
+  @Override
+  public void close() {
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+        this.logger.warn("The cluster directory {} is still being written to, leaving it anyway", this.directory);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      Files.deleteIfExists(this.queueFile);
+      this.updateLeases(table -> {
+        table.removeProxy(this.proxyId);
+        return null;
+      });
+      this.lockChannel.close();
+    } catch (IOException | RuntimeException e) {
+      this.logger.warn("Failed to leave the cluster directory {}, the other proxies will forget this one once it expires", this.directory, e);
+    }
+  }
+
+  private void requestSync() {
+    if (this.syncScheduled.compareAndSet(false, true)) {
+      try {
+        this.executor.execute(this::sync);
+      } catch (RejectedExecutionException e) {
+        // Closed meanwhile, the previous remote queues are good enough until the new backend takes over.
+      }
+    }
+  }
+
+  /**
+   * Writes the queues of this proxy if they changed or the file is getting old, then reads the queues of the others.
+   * Runs on the background thread only.
+   */
+  private void sync() {
+    this.syncScheduled.set(false);
+    try {
+      long now = QueueClock.millis();
+      if (this.changed || now - this.writtenAt >= this.expiry / 3) {
+        this.changed = false;
+        this.writeQueues(now);
+      }
+
+      this.remoteQueues = this.readRemote(now);
+      this.recovered();
+    } catch (IOException | RuntimeException e) {
+      this.failed("exchange the queues", e);
+      this.changed = true;
+      this.remoteQueues = Collections.emptyMap();
+    }
+  }
+
+  private void writeQueues(long now) throws IOException {
+    Path temporary = this.directory.resolve(QUEUE_PREFIX + this.proxyId + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(++this.sequence);
+      out.writeLong(now);
+      out.writeInt(this.publishedJoinTimes.size());
+      for (Map.Entry<String, long[][]> entry : this.publishedJoinTimes.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue().length);
+        for (long[] tier : entry.getValue()) {
+          out.writeInt(tier.length);
+          for (long joinTime : tier) {
+            out.writeLong(joinTime);
+          }
+        }
+      }
+    }
+
+    Files.move(temporary, this.queueFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.writtenAt = now;
+  }
+
+  /**
+   * Merges the queues the live proxies published, by group. A file that can't be read is left out on its own,
+   * and files of proxies gone for long are deleted.
+   */
+  private Map<String, RemoteQueue> readRemote(long now) throws IOException {
+    Map<String, List<long[][]>> queues = new HashMap<>();
+    Set<Path> seen = new HashSet<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, QUEUE_PREFIX + "*" + QUEUE_SUFFIX)) {
+      for (Path file : files) {
+        if (file.equals(this.queueFile)) {
+          continue;
+        }
+
+        RemoteFile remoteFile;
+        try {
+          remoteFile = this.readRemoteFile(file);
+        } catch (IOException | RuntimeException e) {
+          // Garbage counts may also fail as a negative array size.
+          seen.add(file);
+          this.unreadable(file, now, e);
+          continue;
+        }
+
+        if (remoteFile != null) {
+          seen.add(file);
+          if (this.unreadableFiles.remove(file)) {
+            this.logger.info("The cluster file {} can be read again", file);
+          }
+
+          if (now - remoteFile.updatedAt >= this.expiry * STALE_EXPIRIES) {
+            this.deleteStale(file);
+          } else if (now - remoteFile.updatedAt < this.expiry) {
+            for (Map.Entry<String, long[][]> group : remoteFile.groups.entrySet()) {
+              queues.computeIfAbsent(group.getKey(), name -> new ArrayList<>()).add(group.getValue());
+            }
+          }
+        }
+      }
+    }
+
+    this.remoteFiles.keySet().retainAll(seen);
+    this.unreadableFiles.retainAll(seen);
+    Map<String, RemoteQueue> remoteQueues = new HashMap<>();
+    queues.forEach((group, groupQueues) -> remoteQueues.put(group, RemoteQueue.merge(groupQueues)));
+    return remoteQueues;
+  }
+
+  /**
+   * Warns once about a file that is corrupt or of another version, e.g. written by an older LimboQueue,
+   * and deletes it once it is stale.
+   */
+  private void unreadable(Path file, long now, Exception e) {
+    try {
+      if (now - Files.getLastModifiedTime(file).toMillis() >= this.expiry * STALE_EXPIRIES) {
+        this.deleteStale(file);
+        return;
+      }
+    } catch (IOException ignored) {
+      // Deleted meanwhile, or the next sync will tell.
+    }
+
+    if (this.unreadableFiles.add(file)) {
+      this.logger.warn("Failed to read the cluster file {}, leaving its proxy out until it is replaced", file, e);
+    }
+  }
+
+  private void deleteStale(Path file) {
+    try {
+      if (Files.deleteIfExists(file)) {
+        this.logger.info("Deleted the cluster file {}, its proxy hasn't updated it for {} seconds", file,
+            TimeUnit.MILLISECONDS.toSeconds(this.expiry * STALE_EXPIRIES));
+      }
+    } catch (IOException e) {
+      this.logger.warn("Failed to delete the stale cluster file {}", file, e);
+    }
+  }
+
+  /**
+   * @return the parsed file, from the cache if it wasn't replaced since, or null if it was deleted meanwhile
+   */
+  private RemoteFile readRemoteFile(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unknown format of the cluster file " + file);
+      }
+
+      long sequence = in.readLong();
+      RemoteFile cached = this.remoteFiles.get(file);
+      if (cached != null && cached.sequence == sequence) {
+        return cached;
+      }
+
+      long updatedAt = in.readLong();
+      int groupCount = in.readInt();
+      Map<String, long[][]> groups = new HashMap<>();
+      for (int i = 0; i < groupCount; i++) {
+        String name = in.readUTF();
+        long[][] tiers = new long[in.readInt()][];
+        for (int tier = 0; tier < tiers.length; tier++) {
+          tiers[tier] = new long[in.readInt()];
+          for (int j = 0; j < tiers[tier].length; j++) {
+            tiers[tier][j] = in.readLong();
+          }
+        }
+
+        groups.put(name, tiers);
+      }
+
+      RemoteFile remoteFile = new RemoteFile(sequence, updatedAt, groups);
+      this.remoteFiles.put(file, remoteFile);
+      return remoteFile;
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the lease table, drops the expired leases, applies the update and writes the table back, under the lock.
+   */
+  private <T> T updateLeases(Function<LeaseTable, T> update) throws IOException {
+    synchronized (LEASE_LOCK) {
+      FileLock lock = this.lockChannel.lock();
+      try {
+        LeaseTable table = this.readLeases();
+        table.removeExpired(QueueClock.millis());
+        T result = update.apply(table);
+        this.writeLeases(table);
+        return result;
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  private LeaseTable readLeases() throws IOException {
+    if (!Files.exists(this.leaseFile)) {
+      return new LeaseTable();
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.leaseFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unknown format of the lease file " + this.leaseFile);
+      }
+
+      return LeaseTable.read(in);
+    }
+  }
+
+  private void writeLeases(LeaseTable table) throws IOException {
+    Path temporary = this.directory.resolve("leases.tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      table.write(out);
+    }
+
+    Files.move(temporary, this.leaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void failed(String action, Exception e) {
+    if (!this.failing) {
+      this.failing = true;
+      this.logger.warn("Failed to {} through the cluster directory {}, going on as if this proxy were alone", action, this.directory, e);
+    }
+  }
+
+  private void recovered() {
+    if (this.failing) {
+      this.failing = false;
+      this.logger.info("The cluster directory {} can be used again", this.directory);
+    }
+  }
+
+  private static final class RemoteFile {
+
+    private final long sequence;
+    private final long updatedAt;
+    private final Map<String, long[][]> groups;
+
+    private RemoteFile(long sequence, long updatedAt, Map<String, long[][]> groups) {
+      this.sequence = sequence;
+      this.updatedAt = updatedAt;
+      this.groups = groups;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slots leased by the proxies of a cluster, as stored by the {@link FileCluster}.
+ */
+final class LeaseTable {
+
+  private final List<Lease> leases = new ArrayList<>();
+
+  static LeaseTable read(DataInput in) throws IOException {
+    LeaseTable table = new LeaseTable();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      table.leases.add(new Lease(in.readUTF(), in.readUTF(), in.readInt(), in.readLong()));
+    }
+
+    return table;
+  }
+
+  void write(DataOutput out) throws IOException {
+    out.writeInt(this.leases.size());
+    for (Lease lease : this.leases) {
+      out.writeUTF(lease.proxy);
+      out.writeUTF(lease.server);
+      out.writeInt(lease.count);
+      out.writeLong(lease.expiresAt);
+    }
+  }
+
+  void removeExpired(long now) {
+    this.leases.removeIf(lease -> now - lease.expiresAt >= 0 || lease.count <= 0);
+  }
+
+  void removeProxy(String proxy) {
+    this.leases.removeIf(lease -> lease.proxy.equals(proxy));
+  }
+
+  /**
+   * @return slots granted on each server, never more than its free slots minus the slots leased by the other proxies
+   */
+  int[] grant(String proxy, String[] servers, int[] free, int[] wanted, long expiresAt) {
+    int[] granted = new int[servers.length];
+    for (int i = 0; i < servers.length; i++) {
+      int leasedByOthers = 0;
+      for (Lease lease : this.leases) {
+        if (lease.server.equals(servers[i]) && !lease.proxy.equals(proxy)) {
+          leasedByOthers += lease.count;
+        }
+      }
+
+      granted[i] = Math.max(0, Math.min(wanted[i], free[i] - leasedByOthers));
+      if (granted[i] > 0) {
+        this.leases.add(new Lease(proxy, servers[i], granted[i], expiresAt));
+      }
+    }
+
+    return granted;
+  }
+
+  /**
+   * Takes the unused slots off the latest leases of the proxy.
+   */
+  void release(String proxy, SlotLease slotLease) {
+    String[] servers = slotLease.getServers();
+    for (int i = 0; i < servers.length; i++) {
+      int unused = slotLease.getUnused(i);
+      for (int j = this.leases.size() - 1; j >= 0 && unused > 0; j--) {
+        Lease lease = this.leases.get(j);
+        if (lease.server.equals(servers[i]) && lease.proxy.equals(proxy)) {
+          int released = Math.min(unused, lease.count);
+          lease.count -= released;
+          unused -= released;
+        }
+      }
+    }
+
+    this.leases.removeIf(lease -> lease.count <= 0);
+  }
+
+  private static final class Lease {
+
+    private final String proxy;
+    private final String server;
+    private final long expiresAt;
+    private int count;
+
+    private Lease(String proxy, String server, int count, long expiresAt) {
+      this.proxy = proxy;
+      this.server = server;
+      this.count = count;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import java.util.List;
+import java.util.function.Supplier;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+
+/**
+ * Default backend for a proxy that is alone: nothing is published and every free slot is granted.
+ */
+public class LocalCluster implements QueueStore, CapacityCoordinator {
+
+  @Override
+  public RemoteQueue exchange(String group, Supplier<List<QueuePlayerInfo>> queue) {
+    return RemoteQueue.EMPTY;
+  }
+
+  @Override
+  public SlotLease lease(String[] servers, int[] free, int[] wanted) {
+    int[] granted = new int[servers.length];
+    for (int i = 0; i < servers.length; i++) {
+      granted[i] = Math.max(0, Math.min(wanted[i], free[i]));
+    }
+
+    return new SlotLease(servers, granted);
+  }
+
+  @Override
+  public void release(SlotLease lease) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
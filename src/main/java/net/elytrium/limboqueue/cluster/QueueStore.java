@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import java.util.List;
+import java.util.function.Supplier;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+
+/**
+ * Shares the queues of the proxies that send players to the same backends, so that the players are ordered
+ * across all of them instead of per proxy.
+ *
+ * <p>A proxy calls {@link #exchange} once per admission pass and once per sweep of every group, so an implementation
+ * talking to a remote service costs one round trip per pass, however many players joined or left since the last one.
+ */
+public interface QueueStore {
+
+  /**
+   * Publishes the players this proxy queued for the group and returns the players the other proxies queued for it.
+   * Implementations should not block for long and return {@link RemoteQueue#EMPTY} when the other proxies can't be
+   * reached, admission then goes on as if this proxy were alone.
+   *
+   * @param queue supplies the snapshot of the group's queue in admission order, only called by stores that publish it
+   */
+  RemoteQueue exchange(String group, Supplier<List<QueuePlayerInfo>> queue);
+
+  /**
+   * Withdraws everything this proxy published.
+   */
+  void close();
+}
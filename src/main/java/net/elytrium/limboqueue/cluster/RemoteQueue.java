@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Join times of the players the other proxies queued for a group, per priority tier and in ascending order.
+ */
+public final class RemoteQueue {
+
+  public static final RemoteQueue EMPTY = new RemoteQueue(new long[0][]);
+
+  private final long[][] tiers;
+  private final int size;
+
+  private RemoteQueue(long[][] tiers) {
+    this.tiers = tiers;
+    int size = 0;
+    for (long[] tier : tiers) {
+      size += tier.length;
+    }
+
+    this.size = size;
+  }
+
+  /**
+   * Merges the queues published by several proxies.
+   *
+   * @param queues join times of each proxy, per tier
+   */
+  public static RemoteQueue merge(List<long[][]> queues) {
+    int tierCount = 0;
+    for (long[][] queue : queues) {
+      tierCount = Math.max(tierCount, queue.length);
+    }
+
+    if (tierCount == 0) {
+      return EMPTY;
+    }
+
+    long[][] tiers = new long[tierCount][];
+    for (int tier = 0; tier < tierCount; tier++) {
+      int length = 0;
+      for (long[][] queue : queues) {
+        length += tier < queue.length ? queue[tier].length : 0;
+      }
+
+      long[] joinTimes = new long[length];
+      int offset = 0;
+      for (long[][] queue : queues) {
+        if (tier < queue.length) {
+          System.arraycopy(queue[tier], 0, joinTimes, offset, queue[tier].length);
+          offset += queue[tier].length;
+        }
+      }
+
+      Arrays.sort(joinTimes);
+      tiers[tier] = joinTimes;
+    }
+
+    return new RemoteQueue(tiers);
+  }
+
+  public int getTierCount() {
+    return this.tiers.length;
+  }
+
+  /**
+   * @return join times of the tier in ascending order, not to be modified
+   */
+  public long[] getTier(int tier) {
+    return this.tiers[tier];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+}
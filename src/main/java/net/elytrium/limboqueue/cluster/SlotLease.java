@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+/**
+ * Slots granted to one admission pass by the {@link CapacityCoordinator}. Only used by the thread running the pass.
+ */
+public final class SlotLease {
+
+  private final String[] servers;
+  private final int[] granted;
+  private final int[] used;
+
+  public SlotLease(String[] servers, int[] granted) {
+    this.servers = servers;
+    this.granted = granted;
+    this.used = new int[servers.length];
+  }
+
+  public boolean hasSlot(String server) {
+    int index = this.indexOf(server);
+    return index != -1 && this.used[index] < this.granted[index];
+  }
+
+  /**
+   * Marks one slot of the server as used by a player that is being sent to it.
+   *
+   * @return false if no granted slot of the server is left
+   */
+  public boolean use(String server) {
+    int index = this.indexOf(server);
+    if (index == -1 || this.used[index] >= this.granted[index]) {
+      return false;
+    }
+
+    ++this.used[index];
+    return true;
+  }
+
+  public String[] getServers() {
+    return this.servers;
+  }
+
+  public int getGranted(int index) {
+    return this.granted[index];
+  }
+
+  public int getUnused(int index) {
+    return this.granted[index] - this.used[index];
+  }
+
+  public boolean hasUnused() {
+    for (int i = 0; i < this.servers.length; i++) {
+      if (this.used[i] < this.granted[i]) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private int indexOf(String server) {
+    for (int i = 0; i < this.servers.length; i++) {
+      if (this.servers[i].equals(server)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+}
@@ -21,24 +21,31 @@ import com.google.common.collect.ImmutableList;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
 import java.util.List;
+import java.util.Locale;
 import net.elytrium.commons.kyori.serialization.Serializer;
-import net.elytrium.limboqueue.Config;
 import net.elytrium.limboqueue.LimboQueue;
 import net.elytrium.limboqueue.QueuePlayerInfo;
-import net.kyori.adventure.text.Component;
+import net.elytrium.limboqueue.QueueSettings;
+import net.elytrium.limboqueue.ServerManager;
+import net.elytrium.limboqueue.cluster.ClusterBackend;
+import net.elytrium.limboqueue.message.Messages;
+import net.elytrium.limboqueue.metrics.Histogram;
+import net.elytrium.limboqueue.metrics.QueueMetrics;
+import net.elytrium.limboqueue.queue.QueueAdmitter;
+import net.elytrium.limboqueue.queue.QueueGroup;
+import net.elytrium.limboqueue.queue.QueueView;
+import net.elytrium.limboqueue.server.ProbeResult;
+import net.elytrium.limboqueue.server.ReservationLedger;
+import net.elytrium.limboqueue.server.ServerLoad;
 
 public class LimboQueueCommand implements SimpleCommand {
 
   private final LimboQueue plugin;
-  private final Component reload;
-  private final Component reloadFailed;
 
   public LimboQueueCommand(LimboQueue plugin) {
     this.plugin = plugin;
-    Serializer serializer = LimboQueue.getSerializer();
-    this.reload = serializer.deserialize(Config.IMP.MESSAGES.RELOAD);
-    this.reloadFailed = serializer.deserialize(Config.IMP.MESSAGES.RELOAD_FAILED);
   }
 
   @Override
@@ -46,7 +53,7 @@ public class LimboQueueCommand implements SimpleCommand {
     String[] args = invocation.arguments();
 
     if (args.length == 0) {
-      return ImmutableList.of("reload", "status", "queue");
+      return ImmutableList.of("reload", "status", "metrics", "queue");
     } else {
       return ImmutableList.of();
     }
@@ -63,13 +70,15 @@ public class LimboQueueCommand implements SimpleCommand {
       if (command.equalsIgnoreCase("reload") && source.hasPermission("limboqueue.reload")) {
         try {
           this.plugin.reload();
-          source.sendMessage(this.reload);
+          source.sendMessage(this.plugin.getMessages().reload());
         } catch (Exception e) {
           e.printStackTrace();
-          source.sendMessage(this.reloadFailed);
+          source.sendMessage(this.plugin.getMessages().reloadFailed());
         }
       } else if (command.equalsIgnoreCase("status") && source.hasPermission("limboqueue.status")) {
         this.showStatus(source);
+      } else if (command.equalsIgnoreCase("metrics") && source.hasPermission("limboqueue.metrics")) {
+        this.showMetrics(source);
       } else if (command.equalsIgnoreCase("queue") && source instanceof Player) {
         Player player = (Player) source;
         this.plugin.queuePlayer(player);
@@ -82,13 +91,58 @@ public class LimboQueueCommand implements SimpleCommand {
 
   private void showStatus(CommandSource source) {
     Serializer serializer = LimboQueue.getSerializer();
-    List<QueuePlayerInfo> queuedPlayers = this.plugin.getQueuedPlayers();
     
     source.sendMessage(serializer.deserialize("<yellow>===== LimboQueue Status ====="));
-    source.sendMessage(serializer.deserialize("<aqua>Players in queue: <white>" + queuedPlayers.size()));
+    source.sendMessage(serializer.deserialize("<aqua>Players in queue: <white>" + this.plugin.getQueuedCount()));
     source.sendMessage(serializer.deserialize("<aqua>Available servers: <white>" 
         + this.plugin.getServerManager().getAvailableServerCount() + "/" 
         + this.plugin.getServerManager().getTotalServerCount()));
+    QueueSettings settings = this.plugin.getSettings();
+    if (settings.getClusterBackend() != ClusterBackend.LOCAL) {
+      source.sendMessage(serializer.deserialize("<aqua>Cluster: <white>" + settings.getClusterBackend()
+          + " <gray>(slots leased for " + settings.getLeaseTime() + " ms, proxies expire after " + settings.getClusterExpiry() + " s)"));
+    }
+    for (QueueGroup group : this.plugin.getGroups()) {
+      this.showGroupStatus(source, serializer, group);
+    }
+  }
+
+  private void showGroupStatus(CommandSource source, Serializer serializer, QueueGroup group) {
+    QueueView queue = group.getQueue().getView();
+    List<QueuePlayerInfo> queuedPlayers = group.getPlayers();
+    int remote = group.getRemote().size();
+    source.sendMessage(serializer.deserialize("<yellow>Group " + group.getName() + ": <white>" + queue.size() + " <gray>waiting"
+        + (remote == 0 ? "" : " here, <white>" + remote + " <gray>on the other proxies")
+        + (group.getSpillover().isEmpty() ? "" : ", spills over into " + String.join(", ", group.getSpillover()))));
+    ServerManager serverManager = this.plugin.getServerManager();
+    for (RegisteredServer server : serverManager.getGroupServers(group.getName())) {
+      ReservationLedger ledger = serverManager.getLedger(server);
+      ServerLoad load = ledger.getLoad();
+      ProbeResult probe = serverManager.getLastProbe(server);
+      source.sendMessage(serializer.deserialize("<gray>- <white>" + server.getServerInfo().getName()
+          + " <gray>[" + serverManager.getBreaker(server).getState() + "]"
+          + (load == null ? " <gray>no ping" : " <gray>" + load.getOnline() + "/" + load.getMax() + " players, ping " + load.getPingMillis() + " ms")
+          + (probe == null ? "" : ", connect " + (probe.isReachable() ? probe.getLatencyMillis() + " ms" : "failed"))
+          + ", " + ledger.getInFlight() + " connecting, " + ledger.getCompleted() + " joined since ping"));
+    }
+    QueueAdmitter admitter = group.getAdmitter();
+    Messages messages = this.plugin.getMessages();
+    double throughput = group.getClusterThroughput();
+    source.sendMessage(serializer.deserialize("<aqua>Admission: <white>" + admitter.getMode()
+        + " <gray>(" + String.format(Locale.ROOT, "%.2f", admitter.getAdmissionRate()) + " players/s, "
+        + admitter.getInFlight() + " connecting, " + admitter.getTotalAdmitted() + " total)"));
+    source.sendMessage(serializer.deserialize("<aqua>Estimated wait: <gray>based on <white>"
+        + String.format(Locale.ROOT, "%.2f", throughput) + " <gray>players/s, joining now: <white>"
+        + messages.formatEta(QueueGroup.estimateWait(queue.getJoinPosition(0), throughput))));
+    if (queue.getTierCount() > 1) {
+      for (int tier = queue.getTierCount() - 1; tier >= 0; tier--) {
+        // A new player of the tier waits for everybody the scheduler puts before them, at the recent admission rate.
+        int position = queue.getJoinPosition(tier);
+        source.sendMessage(serializer.deserialize("<gray>- <white>Tier " + tier + " <gray>(weight " + queue.getWeight(tier) + "): <white>"
+            + queue.size(tier) + " <gray>waiting, joining now: position " + position
+            + ", eta " + messages.formatEta(QueueGroup.estimateWait(position, throughput))));
+      }
+    }
     
     if (!queuedPlayers.isEmpty()) {
       source.sendMessage(serializer.deserialize("<yellow>Queue:"));
@@ -98,7 +152,7 @@ public class LimboQueueCommand implements SimpleCommand {
         String playerName = playerInfo.getLimboPlayer().getProxyPlayer() != null 
             ? playerInfo.getLimboPlayer().getProxyPlayer().getUsername() : "Unknown";
         source.sendMessage(serializer.deserialize("<gray>" + (i + 1) + ". <white>" + playerName 
-            + " <gray>(" + playerInfo.getWaitingTimeSeconds() + "s)"));
+            + " <gray>(" + playerInfo.getWaitingTimeSeconds() + "s, eta " + messages.formatEta(QueueGroup.estimateWait(i + 1, throughput)) + ")"));
       }
       if (queuedPlayers.size() > 10) {
         source.sendMessage(serializer.deserialize("<gray>... and " + (queuedPlayers.size() - 10) + " more"));
@@ -106,11 +160,55 @@ public class LimboQueueCommand implements SimpleCommand {
     }
   }
 
+  private void showMetrics(CommandSource source) {
+    Serializer serializer = LimboQueue.getSerializer();
+    QueueMetrics metrics = this.plugin.getMetrics();
+    Histogram waitTime = metrics.getWaitTime();
+
+    source.sendMessage(serializer.deserialize("<yellow>===== LimboQueue Metrics ====="));
+    source.sendMessage(serializer.deserialize("<aqua>Queued: <white>" + metrics.getEnqueued()
+        + " <aqua>Admitted: <white>" + metrics.getAdmitted()
+        + " <aqua>In queue: <white>" + this.plugin.getQueuedCount()));
+    source.sendMessage(serializer.deserialize("<aqua>Wait time: <gray>p50 <white>" + this.formatQuantile(waitTime, 0.5)
+        + " <gray>p95 <white>" + this.formatQuantile(waitTime, 0.95)
+        + " <gray>p99 <white>" + this.formatQuantile(waitTime, 0.99)));
+    for (RegisteredServer server : this.plugin.getServerManager().getTargetServers()) {
+      String name = server.getServerInfo().getName();
+      Histogram connectTime = metrics.getConnectTime(name);
+      Histogram probeTime = metrics.getProbeTime(name);
+      source.sendMessage(serializer.deserialize("<gray>- <white>" + name
+          + " <gray>connect p50 <white>" + this.formatQuantile(connectTime, 0.5)
+          + " <gray>p95 <white>" + this.formatQuantile(connectTime, 0.95)
+          + " <gray>(" + connectTime.getCount() + " ok, " + metrics.getConnectFailures(name) + " failed)"
+          + ", probe p50 <white>" + this.formatQuantile(probeTime, 0.5)
+          + " <gray>(" + metrics.getProbeFailures(name) + " failed)"));
+    }
+    QueueSettings settings = this.plugin.getSettings();
+    if (settings.isMetricsEnabled()) {
+      source.sendMessage(serializer.deserialize("<gray>Prometheus endpoint: http://" + settings.getMetricsBind() + ":"
+          + settings.getMetricsPort() + "/metrics"));
+    }
+  }
+
+  private String formatQuantile(Histogram histogram, double quantile) {
+    double seconds = histogram.getQuantile(quantile);
+    if (Double.isNaN(seconds)) {
+      return "-";
+    } else if (Double.isInfinite(seconds)) {
+      return "overflow";
+    } else if (seconds < 1) {
+      return "≤" + String.format(Locale.ROOT, "%.1f", seconds * 1000) + "ms";
+    } else {
+      return "≤" + String.format(Locale.ROOT, "%.0f", seconds) + "s";
+    }
+  }
+
   private void showHelp(CommandSource source) {
     Serializer serializer = LimboQueue.getSerializer();
     source.sendMessage(serializer.deserialize("<yellow>===== LimboQueue Commands ====="));
     source.sendMessage(serializer.deserialize("<aqua>/limboqueue reload <gray>- Reload the plugin configuration"));
     source.sendMessage(serializer.deserialize("<aqua>/limboqueue status <gray>- Show queue status"));
+    source.sendMessage(serializer.deserialize("<aqua>/limboqueue metrics <gray>- Show wait time, connection and probe statistics"));
     source.sendMessage(serializer.deserialize("<aqua>/limboqueue queue <gray>- Join the queue manually"));
   }
 }
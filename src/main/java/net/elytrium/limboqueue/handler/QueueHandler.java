@@ -23,28 +23,42 @@ import net.elytrium.limboapi.api.LimboSessionHandler;
 import net.elytrium.limboapi.api.player.LimboPlayer;
 import net.elytrium.limboqueue.LimboQueue;
 import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.elytrium.limboqueue.api.event.QueueJoinEvent;
+import net.elytrium.limboqueue.queue.QueueGroup;
 
 public class QueueHandler implements LimboSessionHandler {
 
   private final LimboQueue plugin;
+  private final String group;
   private LimboPlayer player;
   private QueuePlayerInfo playerInfo;
 
-  public QueueHandler(LimboQueue plugin) {
+  public QueueHandler(LimboQueue plugin, String group) {
     this.plugin = plugin;
+    this.group = group;
   }
 
   @Override
   public void onSpawn(Limbo server, LimboPlayer player) {
     this.player = player;
     this.player.disableFalling();
-    this.playerInfo = new QueuePlayerInfo(player);
-    this.plugin.addQueuedPlayer(this.playerInfo);
-    
-    // Log player joining queue
-    if (player.getProxyPlayer() != null) {
-      this.plugin.getLogger().info("Player {} joined the queue", player.getProxyPlayer().getUsername());
-    }
+    this.playerInfo = this.plugin.createQueuedPlayer(player, this.group);
+    this.plugin.getMetrics().recordEnqueued();
+    QueuePlayerInfo playerInfo = this.playerInfo;
+    QueueGroup group = this.plugin.getGroupOf(playerInfo);
+    group.getDispatcher().execute(() -> {
+      this.plugin.addQueuedPlayer(playerInfo);
+
+      // Log player joining queue
+      if (player.getProxyPlayer() != null) {
+        this.plugin.getLogger().info("Player {} joined the queue", player.getProxyPlayer().getUsername());
+        int position = group.getPosition(playerInfo);
+        if (position > 0) {
+          player.getProxyPlayer().sendMessage(this.plugin.getMessages().queueMessage(position));
+          this.plugin.fireEvent(new QueueJoinEvent(player.getProxyPlayer(), group.getName(), position));
+        }
+      }
+    });
   }
 
   @Override
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.listener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.TranslatableComponent;
+import net.kyori.adventure.text.serializer.ComponentSerializer;
+import org.slf4j.Logger;
+
+/**
+ * Kick reasons that send the player to the queue, compiled once per reload.
+ *
+ * <p>Reasons are matched as the plain text the player reads, so colours and formatting never get in the way.
+ * Plain text patterns are written with the configured serializer like the messages, their formatting is stripped too.
+ * All the literal patterns are compiled into a single automaton that reads the text components in order, one char at
+ * a time, so a pattern may span several components. Translatable components match by key. Regular expressions are
+ * the only patterns that need the whole text, they run on a buffer kept by each thread.
+ * Matching allocates nothing once a thread has its buffer.
+ */
+public final class KickReasonMatcher {
+
+  public static final String REGEX_PREFIX = "regex:";
+  public static final String TRANSLATION_PREFIX = "translation:";
+
+  private static final int MATCHED = -1;
+  private static final int MISSING = -1;
+  private static final int ASCII = 128;
+
+  private final int[] asciiClasses = new int[ASCII];
+  private final char[] otherChars;
+  private final int width;
+  private final int[] transitions;
+  private final boolean[] accepting;
+  private final Set<String> translationKeys;
+  private final Pattern[] regexes;
+  private final ThreadLocal<RegexBuffer> buffers;
+
+  private KickReasonMatcher(List<String> literals, Set<String> translationKeys, List<Pattern> regexes) {
+    // Chars that appear in no pattern share class 0 and always lead back to the root.
+    StringBuilder others = new StringBuilder();
+    int classes = 1;
+    for (String literal : literals) {
+      for (int i = 0; i < literal.length(); i++) {
+        char c = literal.charAt(i);
+        if (c < ASCII) {
+          if (this.asciiClasses[c] == 0) {
+            this.asciiClasses[c] = classes++;
+          }
+        } else if (others.indexOf(String.valueOf(c)) < 0) {
+          others.append(c);
+        }
+      }
+    }
+
+    this.otherChars = others.toString().toCharArray();
+    Arrays.sort(this.otherChars);
+    this.width = classes + this.otherChars.length;
+
+    int maxStates = 1;
+    for (String literal : literals) {
+      maxStates += literal.length();
+    }
+
+    int[] transitions = new int[maxStates * this.width];
+    Arrays.fill(transitions, MISSING);
+    boolean[] accepting = new boolean[maxStates];
+    int states = 1;
+    for (String literal : literals) {
+      int state = 0;
+      for (int i = 0; i < literal.length(); i++) {
+        int index = state * this.width + this.classOf(literal.charAt(i));
+        if (transitions[index] == MISSING) {
+          transitions[index] = states++;
+        }
+
+        state = transitions[index];
+      }
+
+      accepting[state] = true;
+    }
+
+    // Aho-Corasick: missing transitions follow the failure links, so the text is read once whatever the amount of patterns.
+    int[] failure = new int[states];
+    Deque<Integer> pending = new ArrayDeque<>();
+    for (int c = 0; c < this.width; c++) {
+      int next = transitions[c];
+      if (next == MISSING) {
+        transitions[c] = 0;
+      } else {
+        pending.add(next);
+      }
+    }
+
+    while (!pending.isEmpty()) {
+      int state = pending.poll();
+      accepting[state] |= accepting[failure[state]];
+      for (int c = 0; c < this.width; c++) {
+        int index = state * this.width + c;
+        int fallback = transitions[failure[state] * this.width + c];
+        if (transitions[index] == MISSING) {
+          transitions[index] = fallback;
+        } else {
+          failure[transitions[index]] = fallback;
+          pending.add(transitions[index]);
+        }
+      }
+    }
+
+    this.transitions = Arrays.copyOf(transitions, states * this.width);
+    this.accepting = Arrays.copyOf(accepting, states);
+    this.translationKeys = Set.copyOf(translationKeys);
+    this.regexes = regexes.toArray(new Pattern[0]);
+    this.buffers = ThreadLocal.withInitial(() -> new RegexBuffer(this.regexes));
+  }
+
+  /**
+   * @param patterns plain text found anywhere in the reason, {@code regex:} followed by a regular expression found in
+   *     the reason, or {@code translation:} followed by the key of a translatable component of the reason
+   * @param serializer format of the plain text patterns, e.g. {@code &cThe server is full} with the legacy one
+   */
+  public static KickReasonMatcher compile(List<String> patterns, ComponentSerializer<Component, Component, String> serializer, Logger logger) {
+    List<String> literals = new ArrayList<>();
+    Set<String> translationKeys = new HashSet<>();
+    List<Pattern> regexes = new ArrayList<>();
+    for (String pattern : patterns) {
+      if (pattern == null || pattern.isEmpty()) {
+        continue;
+      }
+
+      String lowerCase = pattern.toLowerCase(Locale.ROOT);
+      if (lowerCase.startsWith(REGEX_PREFIX)) {
+        try {
+          regexes.add(Pattern.compile(pattern.substring(REGEX_PREFIX.length())));
+        } catch (PatternSyntaxException e) {
+          logger.warn("Invalid kick reason '{}', ignoring it: {}", pattern, e.getDescription());
+        }
+      } else if (lowerCase.startsWith(TRANSLATION_PREFIX)) {
+        translationKeys.add(pattern.substring(TRANSLATION_PREFIX.length()).trim());
+      } else {
+        String literal = plainText(pattern, serializer, logger);
+        if (!literal.isEmpty() && !literals.contains(literal)) {
+          literals.add(literal);
+        }
+      }
+    }
+
+    return new KickReasonMatcher(literals, translationKeys, regexes);
+  }
+
+  /**
+   * Kick reasons used to be matched in their serialized form, so configs still carry colour codes or tags in them.
+   */
+  private static String plainText(String pattern, ComponentSerializer<Component, Component, String> serializer, Logger logger) {
+    StringBuilder text = new StringBuilder();
+    try {
+      appendText(serializer.deserialize(pattern), text);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to read the formatting of kick reason '{}', matching it as it is", pattern, e);
+      return pattern;
+    }
+
+    if (!text.toString().equals(pattern)) {
+      logger.info("Kick reason '{}' is matched without its formatting, as '{}'", pattern, text);
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * @return true if a player kicked with this reason should be sent to the queue
+   */
+  public boolean matches(Component reason) {
+    if (this.walk(reason, 0) == MATCHED) {
+      return true;
+    }
+
+    if (this.regexes.length == 0) {
+      return false;
+    }
+
+    RegexBuffer buffer = this.buffers.get();
+    buffer.text.setLength(0);
+    appendText(reason, buffer.text);
+    for (Matcher matcher : buffer.matchers) {
+      if (matcher.reset(buffer.text).find()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return {@link #MATCHED}, or the automaton state after reading the text of the component and its children
+   */
+  private int walk(Component component, int state) {
+    if (component instanceof TextComponent) {
+      String content = ((TextComponent) component).content();
+      for (int i = 0; i < content.length(); i++) {
+        state = this.transitions[state * this.width + this.classOf(content.charAt(i))];
+        if (this.accepting[state]) {
+          return MATCHED;
+        }
+      }
+    } else if (component instanceof TranslatableComponent) {
+      TranslatableComponent translatable = (TranslatableComponent) component;
+      if (this.translationKeys.contains(translatable.key())) {
+        return MATCHED;
+      }
+
+      // The translated text around the arguments is unknown here, so nothing spans them.
+      List<Component> args = translatable.args();
+      for (int i = 0; i < args.size(); i++) {
+        if (this.walk(args.get(i), 0) == MATCHED) {
+          return MATCHED;
+        }
+      }
+
+      state = 0;
+    }
+
+    List<Component> children = component.children();
+    for (int i = 0; i < children.size(); i++) {
+      state = this.walk(children.get(i), state);
+      if (state == MATCHED) {
+        return MATCHED;
+      }
+    }
+
+    return state;
+  }
+
+  private int classOf(char c) {
+    if (c < ASCII) {
+      return this.asciiClasses[c];
+    }
+
+    int index = Arrays.binarySearch(this.otherChars, c);
+    return index < 0 ? 0 : this.width - this.otherChars.length + index;
+  }
+
+  private static void appendText(Component component, StringBuilder text) {
+    if (component instanceof TextComponent) {
+      text.append(((TextComponent) component).content());
+    } else if (component instanceof TranslatableComponent) {
+      List<Component> args = ((TranslatableComponent) component).args();
+      for (int i = 0; i < args.size(); i++) {
+        appendText(args.get(i), text);
+      }
+    }
+
+    List<Component> children = component.children();
+    for (int i = 0; i < children.size(); i++) {
+      appendText(children.get(i), text);
+    }
+  }
+
+  private static final class RegexBuffer {
+
+    private final StringBuilder text = new StringBuilder();
+    private final Matcher[] matchers;
+
+    private RegexBuffer(Pattern[] regexes) {
+      this.matchers = new Matcher[regexes.length];
+      for (int i = 0; i < regexes.length; i++) {
+        this.matchers[i] = regexes[i].matcher("");
+      }
+    }
+  }
+}
@@ -19,11 +19,13 @@ package net.elytrium.limboqueue.listener;
 
 import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
 import com.velocitypowered.api.event.player.ServerPreConnectEvent;
 import net.elytrium.limboapi.api.event.LoginLimboRegisterEvent;
-import net.elytrium.limboqueue.Config;
 import net.elytrium.limboqueue.LimboQueue;
+import net.kyori.adventure.text.Component;
 
 public class QueueListener {
 
@@ -44,20 +46,24 @@ public class QueueListener {
 
   @Subscribe(order = PostOrder.FIRST)
   public void onServerPreConnect(ServerPreConnectEvent event) {
-    // Check if this is a connection to one of our target servers
-    boolean isTargetServer = this.plugin.getServerManager().getTargetServers().stream()
-        .anyMatch(server -> server.equals(event.getOriginalServer()));
+    // Check if this is a connection to one of our target servers, and which group it belongs to
+    String group = this.plugin.getServerManager().getGroup(event.getOriginalServer());
     
-    if (isTargetServer) {
-      // Check if we have available servers
-      if (!this.plugin.getServerManager().hasAvailableServers()) {
-        // No servers available, cancel the connection and send to queue
+    if (group != null) {
+      if (this.plugin.isBeingSent(event.getPlayer())) {
+        // The queue already holds a slot for this connection, denying it would queue the player a second time
+        return;
+      }
+
+      // Check if the group has available servers
+      if (!this.plugin.getServerManager().hasAvailableServers(group)) {
+        // No servers available, cancel the connection and send to the queue of the group
         event.setResult(ServerPreConnectEvent.ServerResult.denied());
-        this.plugin.getLogger().info("Prevented connection to {} - no servers available, sending player to queue", 
-            event.getOriginalServer().getServerInfo().getName());
+        this.plugin.getLogger().info("Prevented connection to {} - no servers available in group {}, sending player to queue", 
+            event.getOriginalServer().getServerInfo().getName(), group);
         
         // Send player to queue
-        this.plugin.queuePlayer(event.getPlayer());
+        this.plugin.queuePlayer(event.getPlayer(), group);
         return;
       } else {
         // Servers are available, allow the connection
@@ -67,14 +73,24 @@ public class QueueListener {
     }
   }
 
+  @Subscribe
+  public void onServerConnected(ServerConnectedEvent event) {
+    // A player switching away from a target server frees a slot there
+    event.getPreviousServer().ifPresent(server -> this.plugin.getServerManager().onPlayerLeft(server));
+  }
+
+  @Subscribe
+  public void onDisconnect(DisconnectEvent event) {
+    event.getPlayer().getCurrentServer().ifPresent(connection -> this.plugin.getServerManager().onPlayerLeft(connection.getServer()));
+  }
+
   @Subscribe
   public void onLoginLimboRegister(LoginLimboRegisterEvent event) {
     event.setOnKickCallback((kickEvent) -> {
       // Check if the kick is from one of our target servers
-      boolean isTargetServer = this.plugin.getServerManager().getTargetServers().stream()
-          .anyMatch(server -> server.equals(kickEvent.getServer()));
+      String group = this.plugin.getServerManager().getGroup(kickEvent.getServer());
       
-      if (!isTargetServer) {
+      if (group == null) {
         return false;
       }
 
@@ -82,12 +98,18 @@ public class QueueListener {
         return false;
       }
 
-      String reason = LimboQueue.getSerializer().serialize(kickEvent.getServerKickReason().get());
-      if (reason.contains(Config.IMP.MAIN.KICK_MESSAGE)) {
-        this.plugin.queuePlayer(kickEvent.getPlayer());
+      if (this.matchesKickMessage(kickEvent.getServerKickReason().get())) {
+        this.plugin.queuePlayer(kickEvent.getPlayer(), group);
         return true;
       }
       return false;
     });
   }
+
+  /**
+   * @return true if a player kicked with this reason should be sent to the queue
+   */
+  public boolean matchesKickMessage(Component reason) {
+    return this.plugin.getSettings().getKickReasons().matches(reason);
+  }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.message;
+
+import com.velocitypowered.api.proxy.Player;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.elytrium.limboqueue.queue.QueueAdmitter;
+import net.elytrium.limboqueue.queue.QueueGroup;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Spreads actionbar updates for the queue over several shards.
+ *
+ * <p>Each player belongs to a fixed shard picked from their UUID, and only one shard is refreshed per call,
+ * so a full refresh of the queue takes {@code shards} calls and the packet writes are spread evenly
+ * over the update interval. A player is only sent a packet when their line changed since the last send,
+ * or when the last one is about to fade on the client.
+ *
+ * <p>The queue and the cluster positions are read once per round of the shards, on its first call, and the players
+ * are split into one index list per shard, so every call only goes through the players of its own shard.
+ */
+public class ActionbarBroadcaster {
+
+  private final int shards;
+  private final long keepAliveMillis;
+  /**
+   * The indexes in the queue of the players of shard s are {@code shardIndexes[shardStarts[s]]} until
+   * {@code shardStarts[s + 1]}, in queue order.
+   */
+  private final int[] shardStarts;
+  private final int[] shardCursors;
+  private int[] shardIndexes = new int[0];
+  private List<QueuePlayerInfo> queue = Collections.emptyList();
+  private int[] positions;
+  private int nextShard;
+
+  public ActionbarBroadcaster(int shards, long keepAliveMillis) {
+    this.shards = Math.max(1, shards);
+    this.keepAliveMillis = keepAliveMillis;
+    this.shardStarts = new int[this.shards + 1];
+    this.shardCursors = new int[this.shards];
+  }
+
+  /**
+   * Refreshes the next shard of the queue of the group.
+   *
+   * @param serversAvailable whether at least one target server is available
+   * @return amount of actionbar packets sent
+   */
+  public synchronized int tick(Messages messages, QueueGroup group, boolean serversAvailable) {
+    int shard = this.nextShard;
+    this.nextShard = (shard + 1) % this.shards;
+    if (shard == 0) {
+      this.queue = group.getPlayers();
+      this.positions = group.getClusterPositions(this.queue);
+      this.index();
+    }
+
+    QueueAdmitter admitter = group.getAdmitter();
+    double throughput = group.getClusterThroughput();
+    long now = QueueClock.millis();
+    int sent = 0;
+    for (int j = this.shardStarts[shard]; j < this.shardStarts[shard + 1]; j++) {
+      int i = this.shardIndexes[j];
+      QueuePlayerInfo playerInfo = this.queue.get(i);
+      Player player = playerInfo.getLimboPlayer().getProxyPlayer();
+      // The round may have started before the player was sent, their line would replace the connecting one.
+      if (player == null || admitter.isSending(playerInfo.getUuid()) || player.getCurrentServer().isPresent()) {
+        continue;
+      }
+
+      playerInfo.updateWaitingTime();
+      int position = this.positions == null ? i + 1 : this.positions[i];
+      Component actionbarMessage;
+      if (serversAvailable) {
+        if (position == 1) {
+          // First player in queue - will be connected soon
+          actionbarMessage = messages.actionbarConnecting();
+        } else {
+          // Other players in queue
+          actionbarMessage = messages.actionbarQueue(position, playerInfo.getWaitingTimeSeconds(), QueueGroup.estimateWait(position, throughput));
+        }
+      } else {
+        actionbarMessage = messages.actionbarWaiting(playerInfo.getWaitingTimeSeconds());
+      }
+
+      if (this.shouldSend(playerInfo, actionbarMessage, now)) {
+        player.sendActionBar(actionbarMessage);
+        playerInfo.setLastActionbar(actionbarMessage, now);
+        sent++;
+      }
+    }
+
+    return sent;
+  }
+
+  /**
+   * Counting sort of the queue indexes by shard, which keeps the queue order within a shard.
+   */
+  private void index() {
+    int size = this.queue.size();
+    if (this.shardIndexes.length < size) {
+      this.shardIndexes = new int[Math.max(size, this.shardIndexes.length * 2)];
+    }
+
+    Arrays.fill(this.shardStarts, 0);
+    for (int i = 0; i < size; i++) {
+      ++this.shardStarts[this.shardOf(this.queue.get(i)) + 1];
+    }
+
+    for (int shard = 0; shard < this.shards; shard++) {
+      this.shardStarts[shard + 1] += this.shardStarts[shard];
+    }
+
+    System.arraycopy(this.shardStarts, 0, this.shardCursors, 0, this.shards);
+    for (int i = 0; i < size; i++) {
+      this.shardIndexes[this.shardCursors[this.shardOf(this.queue.get(i))]++] = i;
+    }
+  }
+
+  public int getShards() {
+    return this.shards;
+  }
+
+  private int shardOf(QueuePlayerInfo playerInfo) {
+    return (playerInfo.getUuid().hashCode() & Integer.MAX_VALUE) % this.shards;
+  }
+
+  private boolean shouldSend(QueuePlayerInfo playerInfo, Component actionbarMessage, long now) {
+    Component last = playerInfo.getLastActionbar();
+    if (last == null || now - playerInfo.getLastActionbarTime() >= this.keepAliveMillis) {
+      return true;
+    }
+
+    // Constant and cached lines are the very same instance, the queue line is rendered anew and compared
+    return last != actionbarMessage && !last.equals(actionbarMessage);
+  }
+}
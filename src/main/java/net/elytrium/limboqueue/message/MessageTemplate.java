@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.message;
+
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.format.Style;
+
+/**
+ * A {@link MessageFormat} message from the config, parsed by the serializer once and kept as a flat list of styled
+ * runs. Rendering only creates text components for the placeholders, no parsing is involved.
+ *
+ * <p>The placeholders are replaced by marker characters before parsing, so they keep the style of the tags around
+ * them and MessageFormat quoting rules still apply. Templates using format types ({0,number,#} and the like) can't
+ * be compiled and fall back to formatting and parsing on every render.
+ *
+ * <p>Placeholders may also be named, {@code {eta}} and the like, when the caller gives the names of its arguments.
+ */
+public final class MessageTemplate {
+
+  private static final char MARKER = '\uE000'; // Private use area, start of the marker range.
+  private static final int MAX_SLOTS = 10;
+  // Not thread-safe, every thread rendering messages gets its own.
+  private static final ThreadLocal<NumberFormat> NUMBER_FORMAT = ThreadLocal.withInitial(NumberFormat::getInstance);
+
+  private final Serializer serializer;
+  private final String pattern;
+  private final List<Run> runs;
+  private final Component constant;
+
+  private MessageTemplate(Serializer serializer, String pattern, List<Run> runs, Component constant) {
+    this.serializer = serializer;
+    this.pattern = pattern;
+    this.runs = runs;
+    this.constant = constant;
+  }
+
+  public static MessageTemplate compile(Serializer serializer, String pattern) {
+    Object[] markers = new Object[MAX_SLOTS];
+    for (int i = 0; i < MAX_SLOTS; i++) {
+      markers[i] = String.valueOf((char) (MARKER + i));
+    }
+
+    String marked;
+    try {
+      marked = new MessageFormat(pattern).format(markers);
+    } catch (IllegalArgumentException e) {
+      return new MessageTemplate(serializer, pattern, null, null);
+    }
+
+    Component component = serializer.deserialize(marked);
+    List<Run> runs = new ArrayList<>();
+    flatten(component, Style.empty(), runs);
+    boolean hasSlots = runs.stream().anyMatch(run -> run.slot >= 0);
+    Component constant = hasSlots ? null : component;
+    return new MessageTemplate(serializer, pattern, Collections.unmodifiableList(runs), constant);
+  }
+
+  /**
+   * Same as {@link #compile(Serializer, String)}, {@code {name}} being the same as {@code {i}} for the i-th name.
+   */
+  public static MessageTemplate compile(Serializer serializer, String pattern, String... names) {
+    return compile(serializer, index(pattern, names));
+  }
+
+  /**
+   * @return the pattern with its named placeholders replaced by their index, outside of quoted parts
+   */
+  public static String index(String pattern, String... names) {
+    StringBuilder indexed = new StringBuilder(pattern.length());
+    boolean quoted = false;
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        // A doubled quote toggles twice, like MessageFormat reads it as a literal quote.
+        quoted = !quoted;
+      } else if (c == '{' && !quoted) {
+        int end = pattern.indexOf('}', i);
+        int slot = end < 0 ? -1 : Arrays.asList(names).indexOf(pattern.substring(i + 1, end));
+        if (slot >= 0) {
+          indexed.append('{').append(slot).append('}');
+          i = end + 1;
+          continue;
+        }
+      }
+
+      indexed.append(c);
+      ++i;
+    }
+
+    return indexed.toString();
+  }
+
+  private static void flatten(Component component, Style parentStyle, List<Run> runs) {
+    Style style = component.style().merge(parentStyle, Style.Merge.Strategy.IF_ABSENT_ON_TARGET);
+    if (component instanceof TextComponent) {
+      String content = ((TextComponent) component).content();
+      int start = 0;
+      for (int i = 0; i < content.length(); i++) {
+        int slot = content.charAt(i) - MARKER;
+        if (slot >= 0 && slot < MAX_SLOTS) {
+          if (i > start) {
+            runs.add(new Run(Component.text(content.substring(start, i), style), -1, style));
+          }
+
+          runs.add(new Run(null, slot, style));
+          start = i + 1;
+        }
+      }
+
+      if (start < content.length()) {
+        runs.add(new Run(Component.text(content.substring(start), style), -1, style));
+      }
+    } else {
+      // Translatable, keybind and other components can't hold placeholders, keep them as they are.
+      runs.add(new Run(component.children(Collections.emptyList()).style(style), -1, style));
+    }
+
+    for (Component child : component.children()) {
+      flatten(child, style, runs);
+    }
+  }
+
+  /**
+   * @return true if the message has no placeholders, in which case {@link #render} always returns the same instance
+   */
+  public boolean isConstant() {
+    return this.constant != null;
+  }
+
+  public Component render(Object... args) {
+    if (this.constant != null) {
+      return this.constant;
+    }
+
+    if (this.runs == null) {
+      return this.serializer.deserialize(MessageFormat.format(this.pattern, args));
+    }
+
+    TextComponent.Builder builder = Component.text();
+    for (Run run : this.runs) {
+      if (run.slot < 0) {
+        builder.append(run.component);
+      } else if (run.slot < args.length) {
+        builder.append(Component.text(format(args[run.slot]), run.style));
+      } else {
+        // Same as MessageFormat for a missing argument
+        builder.append(Component.text("{" + run.slot + "}", run.style));
+      }
+    }
+
+    return builder.build();
+  }
+
+  private static String format(Object value) {
+    // MessageFormat uses the default locale number format for numbers without a format type.
+    return value instanceof Number ? NUMBER_FORMAT.get().format(value) : String.valueOf(value);
+  }
+
+  private static final class Run {
+
+    private final Component component;
+    private final int slot;
+    private final Style style;
+
+    private Run(Component component, int slot, Style style) {
+      this.component = component;
+      this.slot = slot;
+      this.style = style;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.elytrium.commons.kyori.serialization.Serializer;
+import net.elytrium.limboqueue.Config;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Messages sent to queued players, compiled once per reload.
+ *
+ * <p>Lines that many players see alike, like the waiting line or the connecting message of a server, are cached by
+ * their placeholder values, so those players share one component. The caches are dropped when they grow past
+ * {@link #MAX_CACHED}, which only happens with very long queues. The queue actionbar is rendered every time, as no
+ * two players share a position and the waiting time changes every second.
+ */
+public class Messages {
+
+  private static final int MAX_CACHED = 4096;
+
+  private final MessageTemplate actionbarQueue;
+  private final MessageTemplate actionbarWaiting;
+  private final MessageTemplate actionbarConnecting;
+  private final MessageTemplate queueMessage;
+  private final MessageTemplate connectingToServer;
+  private final MessageTemplate connectionCancelled;
+  private final Component noServersAvailable;
+  private final Component reload;
+  private final Component reloadFailed;
+  private final String etaUnknown;
+  private final Map<Integer, Component> actionbarWaitingCache = new ConcurrentHashMap<>();
+  private final Map<Integer, Component> queueMessageCache = new ConcurrentHashMap<>();
+  private final Map<String, Component> connectingToServerCache = new ConcurrentHashMap<>();
+
+  public Messages(Serializer serializer) {
+    Config.MESSAGES messages = Config.IMP.MESSAGES;
+    this.actionbarQueue = MessageTemplate.compile(serializer, messages.ACTIONBAR_QUEUE, "position", "seconds", "eta");
+    this.actionbarWaiting = MessageTemplate.compile(serializer, messages.ACTIONBAR_WAITING);
+    // Was never passed through MessageFormat, don't start interpreting quotes in it
+    this.actionbarConnecting = MessageTemplate.compile(serializer, escape(messages.ACTIONBAR_CONNECTING));
+    this.queueMessage = MessageTemplate.compile(serializer, messages.QUEUE_MESSAGE);
+    this.connectingToServer = MessageTemplate.compile(serializer, messages.CONNECTING_TO_SERVER);
+    this.connectionCancelled = MessageTemplate.compile(serializer, messages.CONNECTION_CANCELLED);
+    this.noServersAvailable = serializer.deserialize(messages.NO_SERVERS_AVAILABLE);
+    this.reload = serializer.deserialize(messages.RELOAD);
+    this.reloadFailed = serializer.deserialize(messages.RELOAD_FAILED);
+    this.etaUnknown = messages.ETA_UNKNOWN;
+  }
+
+  private static String escape(String text) {
+    return "'" + text.replace("'", "''") + "'";
+  }
+
+  /**
+   * @param position 1-based position in the queue
+   * @param seconds time spent waiting
+   * @param eta estimated seconds left, or -1 if there is no estimate
+   */
+  public Component actionbarQueue(int position, int seconds, long eta) {
+    return this.actionbarQueue.render(position, seconds, this.formatEta(eta));
+  }
+
+  /**
+   * Estimates are shown coarsely, so that the line of a player only changes when the estimate really moved:
+   * to 5 seconds under a minute, to the minute above.
+   *
+   * @param eta estimated seconds left, or -1 if there is no estimate
+   * @return the value of the {eta} placeholder
+   */
+  public String formatEta(long eta) {
+    long rounded = roundEta(eta);
+    if (rounded < 0) {
+      return this.etaUnknown;
+    } else if (rounded < 60) {
+      return rounded + "s";
+    } else if (rounded < 3600) {
+      return rounded / 60 + "m";
+    } else {
+      return rounded / 3600 + "h " + rounded % 3600 / 60 + "m";
+    }
+  }
+
+  private static long roundEta(long eta) {
+    if (eta < 0) {
+      return -1;
+    }
+
+    long step = eta < 60 ? 5 : 60;
+    return (eta + step - 1) / step * step;
+  }
+
+  public Component actionbarWaiting(int seconds) {
+    Component component = this.actionbarWaitingCache.get(seconds);
+    if (component == null) {
+      component = store(this.actionbarWaitingCache, seconds, this.actionbarWaiting.render(seconds));
+    }
+
+    return component;
+  }
+
+  public Component actionbarConnecting() {
+    return this.actionbarConnecting.render();
+  }
+
+  public Component queueMessage(int position) {
+    Component component = this.queueMessageCache.get(position);
+    if (component == null) {
+      component = store(this.queueMessageCache, position, this.queueMessage.render(position));
+    }
+
+    return component;
+  }
+
+  public Component connectingToServer(String serverName) {
+    Component component = this.connectingToServerCache.get(serverName);
+    if (component == null) {
+      component = store(this.connectingToServerCache, serverName, this.connectingToServer.render(serverName));
+    }
+
+    return component;
+  }
+
+  public Component connectionCancelled(String serverName) {
+    return this.connectionCancelled.render(serverName);
+  }
+
+  public Component noServersAvailable() {
+    return this.noServersAvailable;
+  }
+
+  public Component reload() {
+    return this.reload;
+  }
+
+  public Component reloadFailed() {
+    return this.reloadFailed;
+  }
+
+  private static <K> Component store(Map<K, Component> cache, K key, Component component) {
+    if (cache.size() >= MAX_CACHED) {
+      cache.clear();
+    }
+
+    cache.put(key, component);
+    return component;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed bucket bounds. Values are recorded as longs in a base unit (e.g. milliseconds)
+ * and exported multiplied by {@code scale} (e.g. 0.001 for seconds).
+ *
+ * <p>Recording is a binary search over the bounds and two striped additions, nothing is allocated.
+ */
+public class Histogram {
+
+  private final long[] bounds;
+  private final LongAdder[] buckets;
+  private final LongAdder sum = new LongAdder();
+  private final double scale;
+
+  /**
+   * @param scale factor from the recorded unit to the exported one
+   * @param bounds inclusive upper bounds of the buckets in the recorded unit, in ascending order.
+   *     An implicit +Inf bucket follows the last one.
+   */
+  public Histogram(double scale, long... bounds) {
+    this.bounds = bounds.clone();
+    Arrays.sort(this.bounds);
+    this.buckets = new LongAdder[this.bounds.length + 1];
+    for (int i = 0; i < this.buckets.length; i++) {
+      this.buckets[i] = new LongAdder();
+    }
+    this.scale = scale;
+  }
+
+  public void record(long value) {
+    int low = 0;
+    int high = this.bounds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (this.bounds[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    this.buckets[low].increment();
+    this.sum.add(value);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : this.buckets) {
+      count += bucket.sum();
+    }
+
+    return count;
+  }
+
+  public double getSum() {
+    return this.sum.sum() * this.scale;
+  }
+
+  /**
+   * @return upper bound of the bucket holding the given quantile (in the exported unit),
+   *     positive infinity if it falls past the last bound, or NaN if nothing was recorded
+   */
+  public double getQuantile(double quantile) {
+    long[] counts = this.getBucketCounts();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+
+    if (total == 0) {
+      return Double.NaN;
+    }
+
+    long rank = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < this.bounds.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return this.bounds[i] * this.scale;
+      }
+    }
+
+    return Double.POSITIVE_INFINITY;
+  }
+
+  double getBound(int index) {
+    return this.bounds[index] * this.scale;
+  }
+
+  int getBoundCount() {
+    return this.bounds.length;
+  }
+
+  /**
+   * @return non-cumulative bucket counts, the last one being the +Inf bucket
+   */
+  long[] getBucketCounts() {
+    long[] counts = new long[this.buckets.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = this.buckets[i].sum();
+    }
+
+    return counts;
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the same kind, one per value of a single label (e.g. one counter per backend server).
+ *
+ * <p>Children are created on first use and kept afterwards, so looking up an existing one is a plain map read.
+ */
+public class MetricFamily<T> {
+
+  private final String labelName;
+  private final Supplier<T> factory;
+  private final Map<String, T> children = new ConcurrentHashMap<>();
+
+  MetricFamily(String labelName, Supplier<T> factory) {
+    this.labelName = labelName;
+    this.factory = factory;
+  }
+
+  public T get(String labelValue) {
+    T child = this.children.get(labelValue);
+    if (child == null) {
+      T created = this.factory.get();
+      child = this.children.putIfAbsent(labelValue, created);
+      if (child == null) {
+        child = created;
+      }
+    }
+
+    return child;
+  }
+
+  public String getLabelName() {
+    return this.labelName;
+  }
+
+  Map<String, T> getChildren() {
+    return this.children;
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Named metrics, written out in the Prometheus text exposition format.
+ *
+ * <p>Metrics are registered once and recorded to directly by their owners, the registry is only involved on export.
+ * Gauges are read when exported, so they don't need to be updated at all.
+ */
+public class MetricsRegistry {
+
+  private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+  public Counter counter(String name, String help) {
+    Counter counter = new Counter();
+    this.entries.add(new Entry(name, help, "counter") {
+      @Override
+      void write(StringBuilder out) {
+        sample(out, this.name, null, null, counter.get());
+      }
+    });
+    return counter;
+  }
+
+  public MetricFamily<Counter> counterFamily(String name, String help, String labelName) {
+    MetricFamily<Counter> family = new MetricFamily<>(labelName, Counter::new);
+    this.entries.add(new Entry(name, help, "counter") {
+      @Override
+      void write(StringBuilder out) {
+        for (Map.Entry<String, Counter> child : family.getChildren().entrySet()) {
+          sample(out, this.name, labelName, child.getKey(), child.getValue().get());
+        }
+      }
+    });
+    return family;
+  }
+
+  public void gauge(String name, String help, DoubleSupplier value) {
+    this.entries.add(new Entry(name, help, "gauge") {
+      @Override
+      void write(StringBuilder out) {
+        sample(out, this.name, null, null, value.getAsDouble());
+      }
+    });
+  }
+
+  /**
+   * Registers a labeled gauge whose samples are produced on export by the given collector.
+   */
+  public void gaugeFamily(String name, String help, String labelName, Consumer<ObjDoubleConsumer<String>> collector) {
+    this.entries.add(new Entry(name, help, "gauge") {
+      @Override
+      void write(StringBuilder out) {
+        collector.accept((labelValue, value) -> sample(out, this.name, labelName, labelValue, value));
+      }
+    });
+  }
+
+  public Histogram histogram(String name, String help, double scale, long... bounds) {
+    Histogram histogram = new Histogram(scale, bounds);
+    this.entries.add(new Entry(name, help, "histogram") {
+      @Override
+      void write(StringBuilder out) {
+        writeHistogram(out, this.name, null, null, histogram);
+      }
+    });
+    return histogram;
+  }
+
+  public MetricFamily<Histogram> histogramFamily(String name, String help, String labelName, double scale, long... bounds) {
+    Supplier<Histogram> factory = () -> new Histogram(scale, bounds);
+    MetricFamily<Histogram> family = new MetricFamily<>(labelName, factory);
+    this.entries.add(new Entry(name, help, "histogram") {
+      @Override
+      void write(StringBuilder out) {
+        for (Map.Entry<String, Histogram> child : family.getChildren().entrySet()) {
+          writeHistogram(out, this.name, labelName, child.getKey(), child.getValue());
+        }
+      }
+    });
+    return family;
+  }
+
+  public String toPrometheus() {
+    StringBuilder out = new StringBuilder(4096);
+    for (Entry entry : this.entries) {
+      out.append("# HELP ").append(entry.name).append(' ').append(entry.help).append('\n');
+      out.append("# TYPE ").append(entry.name).append(' ').append(entry.type).append('\n');
+      entry.write(out);
+    }
+
+    return out.toString();
+  }
+
+  private static void writeHistogram(StringBuilder out, String name, String labelName, String labelValue, Histogram histogram) {
+    long[] counts = histogram.getBucketCounts();
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      out.append(name).append("_bucket{");
+      if (labelName != null) {
+        appendLabel(out, labelName, labelValue);
+        out.append(',');
+      }
+      out.append("le=\"").append(i < histogram.getBoundCount() ? formatValue(histogram.getBound(i)) : "+Inf").append("\"} ")
+          .append(cumulative).append('\n');
+    }
+
+    sample(out, name + "_sum", labelName, labelValue, histogram.getSum());
+    sample(out, name + "_count", labelName, labelValue, cumulative);
+  }
+
+  private static void sample(StringBuilder out, String name, String labelName, String labelValue, double value) {
+    out.append(name);
+    if (labelName != null) {
+      out.append('{');
+      appendLabel(out, labelName, labelValue);
+      out.append('}');
+    }
+
+    out.append(' ').append(formatValue(value)).append('\n');
+  }
+
+  private static void appendLabel(StringBuilder out, String labelName, String labelValue) {
+    out.append(labelName).append("=\"");
+    for (int i = 0; i < labelValue.length(); i++) {
+      char c = labelValue.charAt(i);
+      if (c == '\\' || c == '"') {
+        out.append('\\').append(c);
+      } else if (c == '\n') {
+        out.append("\\n");
+      } else {
+        out.append(c);
+      }
+    }
+    out.append('"');
+  }
+
+  private static String formatValue(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    } else if (value == (long) value) {
+      return Long.toString((long) value);
+    } else {
+      return Double.toString(value);
+    }
+  }
+
+  private abstract static class Entry {
+
+    final String name;
+    final String help;
+    final String type;
+
+    Entry(String name, String help, String type) {
+      this.name = name;
+      this.help = help;
+      this.type = type;
+    }
+
+    abstract void write(StringBuilder out);
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.metrics;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.ServerManager;
+import net.elytrium.limboqueue.queue.ConnectOutcome;
+import net.elytrium.limboqueue.queue.QueueGroup;
+import net.elytrium.limboqueue.queue.QueueView;
+import net.elytrium.limboqueue.server.CircuitBreaker;
+import net.elytrium.limboqueue.server.ProbeResult;
+import net.elytrium.limboqueue.server.ReservationLedger;
+import net.elytrium.limboqueue.server.ServerLoad;
+
+/**
+ * Metrics of the queue, the admissions and the server probes.
+ *
+ * <p>Lives as long as the plugin, so counters survive reloads. Everything that can be read from the current state
+ * (queue size, server load, circuit breakers) is a gauge evaluated on export.
+ */
+public class QueueMetrics {
+
+  private static final long[] WAIT_TIME_BOUNDS_MILLIS = {
+      1000, 5000, 10000, 30000, 60000, 120000, 300000, 600000, 1800000, 3600000
+  };
+  private static final long[] CONNECT_BOUNDS_MILLIS = {
+      10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+  };
+  private static final long[] RTT_BOUNDS_MICROS = {
+      100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000
+  };
+  private static final double MILLIS = 0.001;
+  private static final double MICROS = 0.000001;
+
+  private final MetricsRegistry registry = new MetricsRegistry();
+  private final Counter enqueued;
+  private final Counter admitted;
+  private final Histogram waitTime;
+  private final MetricFamily<Histogram> connectTime;
+  private final MetricFamily<Counter> connectFailures;
+  private final Map<ConnectOutcome, Counter> connectOutcomes = new EnumMap<>(ConnectOutcome.class);
+  private final MetricFamily<Histogram> probeTime;
+  private final MetricFamily<Counter> probeFailures;
+  private final MetricFamily<Histogram> pingTime;
+
+  public QueueMetrics(LimboQueue plugin) {
+    this.enqueued = this.registry.counter("limboqueue_enqueued_total", "Players added to the queue");
+    this.admitted = this.registry.counter("limboqueue_admitted_total", "Players sent from the queue to a server");
+    this.waitTime = this.registry.histogram("limboqueue_wait_seconds", "Time spent in the queue by admitted players",
+        MILLIS, WAIT_TIME_BOUNDS_MILLIS);
+    this.connectTime = this.registry.histogramFamily("limboqueue_connect_seconds", "Duration of successful connections to a server",
+        "server", MILLIS, CONNECT_BOUNDS_MILLIS);
+    this.connectFailures = this.registry.counterFamily("limboqueue_connect_failures_total", "Failed connections to a server", "server");
+    MetricFamily<Counter> connectOutcomes = this.registry.counterFamily("limboqueue_connect_outcomes_total", "Connections from the queue by outcome",
+        "outcome");
+    // Resolved once, recording an outcome happens on every connection and shouldn't build the label again.
+    for (ConnectOutcome outcome : ConnectOutcome.values()) {
+      this.connectOutcomes.put(outcome, connectOutcomes.get(outcome.name().toLowerCase(Locale.ROOT)));
+    }
+    this.probeTime = this.registry.histogramFamily("limboqueue_probe_rtt_seconds", "TCP connect time of successful server probes",
+        "server", MICROS, RTT_BOUNDS_MICROS);
+    this.probeFailures = this.registry.counterFamily("limboqueue_probe_failures_total", "Failed server probes and pings", "server");
+    this.pingTime = this.registry.histogramFamily("limboqueue_ping_rtt_seconds", "Round trip of server list pings", "server",
+        MICROS, RTT_BOUNDS_MICROS);
+
+    this.registry.gauge("limboqueue_queue_size", "Players currently in the queue", plugin::getQueuedCount);
+    this.registry.gaugeFamily("limboqueue_group_queue_size", "Players currently in the queue of each server group", "group", sink -> {
+      for (QueueGroup group : plugin.getGroups()) {
+        sink.accept(group.getName(), group.getQueue().size());
+      }
+    });
+    this.registry.gaugeFamily("limboqueue_group_remote_queue_size", "Players queued for each server group on the other proxies", "group", sink -> {
+      for (QueueGroup group : plugin.getGroups()) {
+        sink.accept(group.getName(), group.getRemote().size());
+      }
+    });
+    this.registry.gaugeFamily("limboqueue_queue_tier_size", "Players currently in each priority tier", "tier", sink -> {
+      int[] sizes = new int[plugin.getSettings() == null ? 0 : plugin.getSettings().getTierCount()];
+      for (QueueGroup group : plugin.getGroups()) {
+        QueueView queue = group.getQueue().getView();
+        for (int tier = 0; tier < Math.min(sizes.length, queue.getTierCount()); tier++) {
+          sizes[tier] += queue.size(tier);
+        }
+      }
+
+      for (int tier = 0; tier < sizes.length; tier++) {
+        sink.accept(String.valueOf(tier), sizes[tier]);
+      }
+    });
+    this.registry.gauge("limboqueue_connections_in_flight", "Connections to servers currently in progress", () -> {
+      int inFlight = 0;
+      for (QueueGroup group : plugin.getGroups()) {
+        inFlight += group.getAdmitter().getInFlight();
+      }
+
+      return inFlight;
+    });
+    this.registry.gauge("limboqueue_admission_rate", "Players admitted per second over the last minute", () -> {
+      double rate = 0;
+      for (QueueGroup group : plugin.getGroups()) {
+        rate += group.getAdmitter().getAdmissionRate();
+      }
+
+      return rate;
+    });
+    this.registry.gauge("limboqueue_servers_available", "Target servers currently accepting players", () -> {
+      ServerManager serverManager = plugin.getServerManager();
+      return serverManager == null ? 0 : serverManager.getAvailableServerCount();
+    });
+    this.registry.gaugeFamily("limboqueue_server_online", "Online players from the last ping", "server", sink -> {
+      ServerManager serverManager = plugin.getServerManager();
+      if (serverManager != null) {
+        for (RegisteredServer server : serverManager.getTargetServers()) {
+          ServerLoad load = serverManager.getServerLoad(server);
+          if (load != null) {
+            sink.accept(server.getServerInfo().getName(), load.getOnline());
+          }
+        }
+      }
+    });
+    this.registry.gaugeFamily("limboqueue_server_max", "Maximum players from the last ping", "server", sink -> {
+      ServerManager serverManager = plugin.getServerManager();
+      if (serverManager != null) {
+        for (RegisteredServer server : serverManager.getTargetServers()) {
+          ServerLoad load = serverManager.getServerLoad(server);
+          if (load != null) {
+            sink.accept(server.getServerInfo().getName(), load.getMax());
+          }
+        }
+      }
+    });
+    this.registry.gaugeFamily("limboqueue_server_free_slots", "Free slots after the reservations made since the last ping", "server",
+        sink -> {
+          ServerManager serverManager = plugin.getServerManager();
+          if (serverManager != null) {
+            for (RegisteredServer server : serverManager.getTargetServers()) {
+              ReservationLedger ledger = serverManager.getLedger(server);
+              if (ledger != null) {
+                sink.accept(server.getServerInfo().getName(), ledger.getFreeSlots());
+              }
+            }
+          }
+        });
+    this.registry.gaugeFamily("limboqueue_server_circuit_state", "Circuit breaker state (0 - closed, 1 - open, 2 - half open)", "server",
+        sink -> {
+          ServerManager serverManager = plugin.getServerManager();
+          if (serverManager != null) {
+            for (RegisteredServer server : serverManager.getTargetServers()) {
+              CircuitBreaker breaker = serverManager.getBreaker(server);
+              if (breaker != null) {
+                sink.accept(server.getServerInfo().getName(), breaker.getState().ordinal());
+              }
+            }
+          }
+        });
+  }
+
+  public void recordEnqueued() {
+    this.enqueued.increment();
+  }
+
+  public void recordAdmitted(String server, long waitMillis, long connectNanos) {
+    this.admitted.increment();
+    this.waitTime.record(waitMillis);
+    this.connectTime.get(server).record(TimeUnit.NANOSECONDS.toMillis(connectNanos));
+  }
+
+  public void recordConnectFailure(String server) {
+    this.connectFailures.get(server).increment();
+  }
+
+  public void recordConnectOutcome(ConnectOutcome outcome) {
+    this.connectOutcomes.get(outcome).increment();
+  }
+
+  public void recordProbe(String server, ProbeResult probe) {
+    if (probe.isReachable()) {
+      this.probeTime.get(server).record(TimeUnit.NANOSECONDS.toMicros(probe.getLatencyNanos()));
+    } else {
+      this.probeFailures.get(server).increment();
+    }
+  }
+
+  public void recordPing(String server, long pingNanos) {
+    this.pingTime.get(server).record(TimeUnit.NANOSECONDS.toMicros(pingNanos));
+  }
+
+  public void recordPingFailure(String server) {
+    this.probeFailures.get(server).increment();
+  }
+
+  public MetricsRegistry getRegistry() {
+    return this.registry;
+  }
+
+  public long getEnqueued() {
+    return this.enqueued.get();
+  }
+
+  public long getAdmitted() {
+    return this.admitted.get();
+  }
+
+  public Histogram getWaitTime() {
+    return this.waitTime;
+  }
+
+  public Histogram getConnectTime(String server) {
+    return this.connectTime.get(server);
+  }
+
+  public long getConnectFailures(String server) {
+    return this.connectFailures.get(server).get();
+  }
+
+  public long getConnectOutcomes(ConnectOutcome outcome) {
+    return this.connectOutcomes.get(outcome).get();
+  }
+
+  public Histogram getProbeTime(String server) {
+    return this.probeTime.get(server);
+  }
+
+  public long getProbeFailures(String server) {
+    return this.probeFailures.get(server).get();
+  }
+}
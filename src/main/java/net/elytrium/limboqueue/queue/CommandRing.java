@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded ring buffer with any amount of producers and a single consumer.
+ *
+ * <p>Every cell carries a sequence number telling whose turn it is: a producer claims the cell of its ticket
+ * with one CAS on the tail once the consumer has freed it, writes the element and then publishes it by moving
+ * the sequence on. The consumer never writes the tail and the producers never write the head, so neither side waits
+ * on the other except when the ring is full.
+ */
+public class CommandRing<E> {
+
+  private final int mask;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private long head;
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  public CommandRing(int capacity) {
+    int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = size - 1;
+    this.elements = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.sequences.set(i, i);
+    }
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return false if the ring is full
+   */
+  public boolean offer(E element) {
+    while (true) {
+      long ticket = this.tail.get();
+      int index = (int) ticket & this.mask;
+      long distance = this.sequences.get(index) - ticket;
+      if (distance == 0) {
+        if (this.tail.compareAndSet(ticket, ticket + 1)) {
+          this.elements.lazySet(index, element);
+          this.sequences.set(index, ticket + 1);
+          return true;
+        }
+      } else if (distance < 0) {
+        // The consumer hasn't taken the element a whole lap before yet.
+        return false;
+      }
+      // Otherwise another producer took this ticket, try the next one.
+    }
+  }
+
+  /**
+   * Only called by the consumer, or under the same lock as the consumer. Stops at the first element that is claimed but not published yet.
+   *
+   * @return amount of elements passed to the consumer
+   */
+  public int drain(Consumer<? super E> consumer, int limit) {
+    int drained = 0;
+    while (drained < limit) {
+      int index = (int) this.head & this.mask;
+      if (this.sequences.get(index) != this.head + 1) {
+        break;
+      }
+
+      E element = this.elements.get(index);
+      this.elements.lazySet(index, null);
+      // Frees the cell for the producer one lap later.
+      this.sequences.set(index, this.head + this.mask + 1);
+      this.head++;
+      drained++;
+      consumer.accept(element);
+    }
+
+    return drained;
+  }
+
+  /**
+   * Only meaningful to the consumer, producers may be adding elements meanwhile.
+   */
+  public boolean isEmpty() {
+    return this.sequences.get((int) this.head & this.mask) != this.head + 1;
+  }
+
+  public int capacity() {
+    return this.mask + 1;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import java.net.ConnectException;
+import java.util.concurrent.CompletionException;
+import net.elytrium.limboqueue.listener.KickReasonMatcher;
+
+/**
+ * How a connection attempt from the queue ended, and what it says about the player and the server.
+ */
+public enum ConnectOutcome {
+
+  SUCCESS,
+  /**
+   * Nothing listens on the server, it is taken out of rotation right away.
+   */
+  REFUSED,
+  /**
+   * The connection broke, e.g. reset by the server. Counts as a failed probe.
+   */
+  BROKEN,
+  /**
+   * The server kicked the player with one of the kick reasons of the queue. It is full until its next ping.
+   */
+  FULL,
+  /**
+   * The server kicked the player for another reason. They are still in the limbo, the queue disconnects them with it.
+   */
+  KICKED,
+  /**
+   * No answer before the deadline. Counts as a failed probe.
+   */
+  TIMEOUT,
+  /**
+   * Another connection of the player got there first.
+   */
+  ALREADY_CONNECTED,
+  /**
+   * An earlier connection of the player is still running, e.g. one given up on its deadline that Velocity
+   * has not finished yet. Whether it succeeds is unknown, so the player is sent again after a backoff.
+   */
+  IN_PROGRESS,
+  /**
+   * Another plugin cancelled the connection.
+   */
+  CANCELLED,
+  /**
+   * The player left the proxy during the attempt.
+   */
+  PLAYER_GONE;
+
+  public static ConnectOutcome of(ConnectionRequestBuilder.Result result, Throwable throwable, Player player, KickReasonMatcher kickReasons) {
+    if (!player.isActive()) {
+      return PLAYER_GONE;
+    }
+
+    if (throwable != null) {
+      Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+      return cause instanceof ConnectException ? REFUSED : BROKEN;
+    }
+
+    switch (result.getStatus()) {
+      case SUCCESS:
+        return SUCCESS;
+      case ALREADY_CONNECTED:
+        return ALREADY_CONNECTED;
+      case CONNECTION_IN_PROGRESS:
+        return IN_PROGRESS;
+      case CONNECTION_CANCELLED:
+        return CANCELLED;
+      case SERVER_DISCONNECTED:
+      default:
+        return result.getReasonComponent().map(kickReasons::matches).orElse(false) ? FULL : KICKED;
+    }
+  }
+
+  /**
+   * @return true if the player goes back to their place in the queue and is sent again after a backoff
+   */
+  public boolean isRetried() {
+    switch (this) {
+      case REFUSED:
+      case BROKEN:
+      case FULL:
+      case TIMEOUT:
+      case IN_PROGRESS:
+      case CANCELLED:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
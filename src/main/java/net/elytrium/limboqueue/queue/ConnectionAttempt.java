@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.kyori.adventure.text.Component;
+
+/**
+ * A player being sent to a server from the queue. The attempt ends exactly once, with the result of the connection
+ * or when its deadline passes, whichever comes first.
+ */
+final class ConnectionAttempt {
+
+  private final QueuePlayerInfo playerInfo;
+  private final RegisteredServer server;
+  private final long startNanos = QueueClock.nanos();
+  private final AtomicBoolean over = new AtomicBoolean();
+  private volatile ScheduledTask deadline;
+  private volatile Component reason;
+
+  ConnectionAttempt(QueuePlayerInfo playerInfo, RegisteredServer server) {
+    this.playerInfo = playerInfo;
+    this.server = server;
+  }
+
+  void setDeadline(ScheduledTask deadline) {
+    this.deadline = deadline;
+    if (this.over.get()) {
+      deadline.cancel();
+    }
+  }
+
+  /**
+   * @return true for the first caller only, who handles the outcome
+   */
+  boolean end() {
+    if (!this.over.compareAndSet(false, true)) {
+      return false;
+    }
+
+    ScheduledTask deadline = this.deadline;
+    if (deadline != null) {
+      deadline.cancel();
+    }
+
+    return true;
+  }
+
+  QueuePlayerInfo getPlayerInfo() {
+    return this.playerInfo;
+  }
+
+  RegisteredServer getServer() {
+    return this.server;
+  }
+
+  String getServerName() {
+    return this.server.getServerInfo().getName();
+  }
+
+  /**
+   * @param reason message the server kicked the player with, set before the attempt {@link #end() ends}
+   */
+  void setReason(Component reason) {
+    this.reason = reason;
+  }
+
+  /**
+   * @return message the server kicked the player with, or null if it didn't kick them
+   */
+  Component getReason() {
+    return this.reason;
+  }
+
+  long getStartNanos() {
+    return this.startNanos;
+  }
+}
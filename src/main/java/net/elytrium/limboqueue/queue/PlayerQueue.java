@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+
+/**
+ * FIFO queue of players indexed by UUID.
+ *
+ * <p>Entries are kept in a doubly linked list, so enqueue, dequeue and removal by UUID don't shift anything.
+ * Every entry also owns a slot in a Fenwick tree, which answers "how many players are ahead of me" in O(log n).
+ * Readers that need to walk the whole queue get an immutable snapshot that is rebuilt at most once per change
+ * and shared between all callers. Not thread-safe, it is only used by its {@link TieredQueue}.
+ *
+ * <p>A position can also be reserved for a player that is expected to come back, like the players restored from the
+ * journal after a restart. Reserved slots are not counted until the player is added again, then the player takes
+ * the reserved place instead of going to the tail.
+ */
+public class PlayerQueue {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final Map<UUID, Node> nodes = new HashMap<>();
+  private final Map<UUID, Node> reserved = new HashMap<>();
+  private Node head;
+  private Node tail;
+  private int[] tree = new int[INITIAL_CAPACITY + 1];
+  private Node[] slots = new Node[INITIAL_CAPACITY + 1];
+  private int nextSlot = 1;
+  private long version;
+  private Snapshot snapshot = new Snapshot(0, Collections.emptyList());
+
+  /**
+   * Appends the player to the tail of the queue.
+   * If a player with the same UUID is already queued, their entry keeps its position and only the info is replaced.
+   * If a position was reserved for the player, it is taken instead of the tail.
+   *
+   * @return true if the player was not queued before
+   */
+  public boolean add(QueuePlayerInfo playerInfo) {
+    Node existing = this.nodes.get(playerInfo.getUuid());
+    if (existing != null) {
+      existing.info = playerInfo;
+      this.version++;
+      return false;
+    }
+
+    Node node = this.reserved.remove(playerInfo.getUuid());
+    if (node == null) {
+      node = new Node(playerInfo, this.allocateSlot());
+      this.slots[node.slot] = node;
+      this.linkAfter(this.tail, node);
+    } else {
+      node.info = playerInfo;
+      // The reserved slot doesn't count yet, so the prefix sum is the amount of players queued before it.
+      int ahead = this.prefixSum(node.slot);
+      this.linkAfter(ahead == 0 ? null : this.slots[this.findSlot(ahead)], node);
+    }
+
+    this.treeAdd(node.slot, 1);
+    this.nodes.put(playerInfo.getUuid(), node);
+    this.version++;
+    return true;
+  }
+
+  /**
+   * Reserves a position at the tail of the queue for a player that is not connected yet.
+   * The reservation is not counted in positions or in the size until the player is {@link #add added}.
+   *
+   * @return true if the player was neither queued nor reserved before
+   */
+  public boolean reserve(UUID uuid) {
+    if (this.nodes.containsKey(uuid) || this.reserved.containsKey(uuid)) {
+      return false;
+    }
+
+    Node node = new Node(null, this.allocateSlot());
+    this.slots[node.slot] = node;
+    this.reserved.put(uuid, node);
+    return true;
+  }
+
+  public boolean cancelReservation(UUID uuid) {
+    Node node = this.reserved.remove(uuid);
+    if (node == null) {
+      return false;
+    }
+
+    this.slots[node.slot] = null;
+    return true;
+  }
+
+  public boolean isReserved(UUID uuid) {
+    return this.reserved.containsKey(uuid);
+  }
+
+  public int getReservedCount() {
+    return this.reserved.size();
+  }
+
+  /**
+   * Removes the given entry. Stale infos (replaced by a later {@link #add}) are ignored.
+   */
+  public boolean remove(QueuePlayerInfo playerInfo) {
+    Node node = this.nodes.get(playerInfo.getUuid());
+    if (node == null || node.info != playerInfo) {
+      return false;
+    }
+
+    this.unlink(node);
+    return true;
+  }
+
+  public QueuePlayerInfo remove(UUID uuid) {
+    Node node = this.nodes.get(uuid);
+    if (node == null) {
+      return null;
+    }
+
+    this.unlink(node);
+    return node.info;
+  }
+
+  public QueuePlayerInfo peek() {
+    return this.head == null ? null : this.head.info;
+  }
+
+  public QueuePlayerInfo poll() {
+    Node node = this.head;
+    if (node == null) {
+      return null;
+    }
+
+    this.unlink(node);
+    return node.info;
+  }
+
+  /**
+   * Removes the head like {@link #poll}, but keeps its position reserved, so the player gets it back if they are
+   * {@link #add added} again, e.g. after a failed connection. The reservation must be cancelled otherwise.
+   */
+  public QueuePlayerInfo pollAndReserve() {
+    Node node = this.head;
+    if (node == null) {
+      return null;
+    }
+
+    this.unlink(node);
+    Node reservation = new Node(null, node.slot);
+    this.slots[node.slot] = reservation;
+    this.reserved.put(node.info.getUuid(), reservation);
+    return node.info;
+  }
+
+  public boolean contains(UUID uuid) {
+    return this.nodes.containsKey(uuid);
+  }
+
+  public QueuePlayerInfo get(UUID uuid) {
+    Node node = this.nodes.get(uuid);
+    return node == null ? null : node.info;
+  }
+
+  /**
+   * @return 1-based position of the player, or -1 if the player is not queued
+   */
+  public int getPosition(UUID uuid) {
+    Node node = this.nodes.get(uuid);
+    if (node == null) {
+      return -1;
+    }
+
+    return this.prefixSum(node.slot);
+  }
+
+  public int size() {
+    return this.nodes.size();
+  }
+
+  public boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  public void clear() {
+    this.nodes.clear();
+    this.reserved.clear();
+    this.head = null;
+    this.tail = null;
+    this.tree = new int[INITIAL_CAPACITY + 1];
+    this.slots = new Node[INITIAL_CAPACITY + 1];
+    this.nextSlot = 1;
+    this.version++;
+  }
+
+  /**
+   * Returns an immutable point-in-time view of the queue in admission order.
+   * The view is cached until the queue changes, so repeated calls between mutations don't copy anything.
+   */
+  public List<QueuePlayerInfo> snapshot() {
+    if (this.snapshot.version != this.version) {
+      QueuePlayerInfo[] players = new QueuePlayerInfo[this.nodes.size()];
+      int i = 0;
+      for (Node node = this.head; node != null; node = node.next) {
+        players[i++] = node.info;
+      }
+
+      this.snapshot = new Snapshot(this.version, Collections.unmodifiableList(Arrays.asList(players)));
+    }
+
+    return this.snapshot.players;
+  }
+
+  private int allocateSlot() {
+    if (this.nextSlot >= this.tree.length) {
+      this.compact();
+    }
+
+    return this.nextSlot++;
+  }
+
+  /**
+   * Links the node after {@code prev}, or at the head when {@code prev} is null.
+   */
+  private void linkAfter(Node prev, Node node) {
+    Node next = prev == null ? this.head : prev.next;
+    node.prev = prev;
+    node.next = next;
+    if (prev == null) {
+      this.head = node;
+    } else {
+      prev.next = node;
+    }
+
+    if (next == null) {
+      this.tail = node;
+    } else {
+      next.prev = node;
+    }
+  }
+
+  private void unlink(Node node) {
+    this.nodes.remove(node.info.getUuid());
+    this.slots[node.slot] = null;
+    this.treeAdd(node.slot, -1);
+
+    if (node.prev == null) {
+      this.head = node.next;
+    } else {
+      node.prev.next = node.next;
+    }
+
+    if (node.next == null) {
+      this.tail = node.prev;
+    } else {
+      node.next.prev = node.prev;
+    }
+
+    node.prev = null;
+    node.next = null;
+    this.version++;
+  }
+
+  private void treeAdd(int slot, int delta) {
+    for (int i = slot; i < this.tree.length; i += i & -i) {
+      this.tree[i] += delta;
+    }
+  }
+
+  private int prefixSum(int slot) {
+    int sum = 0;
+    for (int i = slot; i > 0; i -= i & -i) {
+      sum += this.tree[i];
+    }
+
+    return sum;
+  }
+
+  /**
+   * @return the smallest slot whose prefix sum is {@code count}, i.e. the slot of the count-th queued player
+   */
+  private int findSlot(int count) {
+    int slot = 0;
+    for (int step = Integer.highestOneBit(this.tree.length - 1); step > 0; step >>= 1) {
+      int next = slot + step;
+      if (next < this.tree.length && this.tree[next] < count) {
+        slot = next;
+        count -= this.tree[next];
+      }
+    }
+
+    return slot + 1;
+  }
+
+  /**
+   * Renumbers the live entries and reservations from slot 1 and rebuilds the tree in linear time.
+   * Grows the tree when they occupy more than half of it, so this runs at most once per n additions.
+   */
+  private void compact() {
+    int size = this.nodes.size() + this.reserved.size();
+    int capacity = this.tree.length - 1;
+    while (size * 2 >= capacity) {
+      capacity *= 2;
+    }
+
+    int[] newTree = new int[capacity + 1];
+    Node[] newSlots = new Node[capacity + 1];
+    int slot = 1;
+    // Slot order is queue order, reservations are kept between the players around them.
+    for (int i = 1; i < this.nextSlot; i++) {
+      Node node = this.slots[i];
+      if (node != null) {
+        node.slot = slot;
+        newSlots[slot] = node;
+        newTree[slot++] = node.info == null ? 0 : 1;
+      }
+    }
+
+    for (int i = 1; i <= capacity; i++) {
+      int parent = i + (i & -i);
+      if (parent <= capacity) {
+        newTree[parent] += newTree[i];
+      }
+    }
+
+    this.tree = newTree;
+    this.slots = newSlots;
+    this.nextSlot = slot;
+  }
+
+  private static final class Node {
+
+    private QueuePlayerInfo info;
+    private int slot;
+    private Node prev;
+    private Node next;
+
+    private Node(QueuePlayerInfo info, int slot) {
+      this.info = info;
+      this.slot = slot;
+    }
+  }
+
+  private static final class Snapshot {
+
+    private final long version;
+    private final List<QueuePlayerInfo> players;
+
+    private Snapshot(long version, List<QueuePlayerInfo> players) {
+      this.version = version;
+      this.players = players;
+    }
+  }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.elytrium.limboqueue.QueueSettings;
+import net.elytrium.limboqueue.ServerManager;
+import net.elytrium.limboqueue.api.event.QueueLeaveEvent;
+import net.elytrium.limboqueue.cluster.CapacityCoordinator;
+import net.elytrium.limboqueue.cluster.ClusterOrder;
+import net.elytrium.limboqueue.cluster.RemoteQueue;
+import net.elytrium.limboqueue.cluster.SlotLease;
+import net.elytrium.limboqueue.message.Messages;
+import net.kyori.adventure.text.Component;
+import org.slf4j.Logger;
+
+/**
+ * Moves players from the queue of a group to the servers of the group, or of the groups it spills over into.
+ *
+ * <p>Every pass first exchanges the queue with the other proxies of the cluster and only admits the players
+ * whose turn it is cluster-wide, then leases the slots it may use from the {@link CapacityCoordinator}
+ * in one call, so proxies admitting at the same time never hand out the same slot. A proxy that is alone
+ * has nothing to exchange and is granted every free slot.
+ *
+ * <p>Each connection has a deadline and ends with a {@link ConnectOutcome}. A player whose connection failed keeps
+ * their position reserved and is sent again from it after a jittered backoff.
+ */
+public class QueueAdmitter {
+
+  private static final int MAX_SELECTION_MISSES = 8;
+  private static final long REPORT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final LimboQueue plugin;
+  private final QueueGroup group;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final Set<UUID> sending = ConcurrentHashMap.newKeySet();
+  private final RateMeter admissionRate = new RateMeter(60);
+  private final ThroughputEstimator throughput;
+  private final AtomicBoolean throttleWakeUp = new AtomicBoolean();
+  private int sentSinceReport;
+  private long lastReport = QueueClock.millis();
+
+  public QueueAdmitter(LimboQueue plugin, QueueGroup group) {
+    this.plugin = plugin;
+    this.group = group;
+    this.throughput = new ThroughputEstimator(plugin.getSettings().getEtaWindow());
+  }
+
+  /**
+   * Clean up disconnected players whose limbo session didn't report the disconnect.
+   */
+  public void removeDisconnected() {
+    TieredQueue queue = this.group.getQueue();
+    for (QueuePlayerInfo playerInfo : queue.snapshot()) {
+      Player player = playerInfo.getLimboPlayer().getProxyPlayer();
+      if (player == null || !player.isActive()) {
+        this.plugin.removeQueuedPlayer(playerInfo);
+        this.plugin.getLogger().debug("Removed disconnected player from queue");
+      }
+    }
+  }
+
+  public void tick() {
+    TieredQueue queue = this.group.getQueue();
+
+    // CRITICAL: Only process queue if we have players AND available servers
+    if (queue.isEmpty()) {
+      return;
+    }
+
+    ServerManager serverManager = this.plugin.getServerManager();
+    // Double check that servers are available before attempting any connection
+    if (!this.hasAvailableServers(serverManager)) {
+      // Withdraws the players from the cluster order, the other proxies may still have servers for them.
+      this.syncCluster();
+      this.plugin.getLogger().debug("No servers available, {} players waiting in group {}", queue.size(), this.group.getName());
+      return;
+    }
+
+    QueueSettings settings = this.plugin.getSettings();
+    int admitted = this.admit(serverManager, settings, settings.getAdmissionMode() == AdmissionMode.SINGLE ? 1 : Integer.MAX_VALUE);
+    if (admitted > 0) {
+      // Otherwise the admitted players would keep their place in the order of the other proxies until the next pass.
+      this.syncCluster();
+      this.report(admitted);
+    }
+
+    this.scheduleThrottleWakeUp(serverManager);
+  }
+
+  /**
+   * Logs the amount of players sent at most once per {@link #REPORT_INTERVAL_MILLIS}, passes run too often to log
+   * every one of them.
+   */
+  private void report(int admitted) {
+    this.sentSinceReport += admitted;
+    long now = QueueClock.millis();
+    if (now - this.lastReport < REPORT_INTERVAL_MILLIS) {
+      return;
+    }
+
+    this.plugin.getLogger().info("Sent {} players of group {} in the last {}s ({} connections in flight, {} players/s over the last minute)",
+        this.sentSinceReport, this.group.getName(), TimeUnit.MILLISECONDS.toSeconds(now - this.lastReport), this.inFlight.get(),
+        String.format(Locale.ROOT, "%.2f", this.admissionRate.getRatePerSecond()));
+    this.sentSinceReport = 0;
+    this.lastReport = now;
+  }
+
+  /**
+   * Nothing else wakes the dispatcher up when a server ramping up after a recovery gets its next token,
+   * so a pass is scheduled for that time while players are waiting for it.
+   */
+  private void scheduleThrottleWakeUp(ServerManager serverManager) {
+    if (this.group.getQueue().isEmpty()) {
+      return;
+    }
+
+    long delay = serverManager.getThrottleDelay(this.group.getName());
+    for (String target : this.group.getSpillover()) {
+      if (this.canSpillInto(target)) {
+        long targetDelay = serverManager.getThrottleDelay(target);
+        if (targetDelay >= 0 && (delay < 0 || targetDelay < delay)) {
+          delay = targetDelay;
+        }
+      }
+    }
+
+    if (delay < 0 || !this.throttleWakeUp.compareAndSet(false, true)) {
+      return;
+    }
+
+    this.plugin.getServer().getScheduler().buildTask(this.plugin, () -> {
+      this.throttleWakeUp.set(false);
+      this.group.getDispatcher().wakeUp();
+    }).delay(delay, TimeUnit.MILLISECONDS).schedule();
+  }
+
+  /**
+   * Leases slots on the servers the group may use for the players whose turn it is, then sends up to {@code limit}
+   * of them, asking the server selector for a target before each of them, so that a batch is spread over the backends
+   * according to their load.
+   */
+  private int admit(ServerManager serverManager, QueueSettings settings, int limit) {
+    List<RegisteredServer> servers = this.getCandidateServers(serverManager);
+    String[] names = new String[servers.size()];
+    int[] free = new int[servers.size()];
+    int capacity = 0;
+    for (int i = 0; i < names.length; i++) {
+      names[i] = servers.get(i).getServerInfo().getName();
+      free[i] = serverManager.getFreeSlots(servers.get(i));
+      capacity += free[i];
+    }
+
+    int budget = Math.min(limit, settings.getMaxConcurrentConnections() - this.inFlight.get());
+    RemoteQueue remote = this.syncCluster();
+    if (!remote.isEmpty()) {
+      // The other proxies admit the players of theirs that come first.
+      TieredQueue queue = this.group.getQueue();
+      budget = Math.min(budget, ClusterOrder.getLocalShare(queue.snapshot(), remote, queue.getWeights(), capacity));
+    }
+
+    if (budget <= 0 || capacity == 0) {
+      return 0;
+    }
+
+    int[] wanted = new int[free.length];
+    for (int i = 0; i < wanted.length; i++) {
+      wanted[i] = Math.min(free[i], budget);
+    }
+
+    CapacityCoordinator coordinator = this.plugin.getCapacityCoordinator();
+    SlotLease lease = coordinator.lease(names, free, wanted);
+    try {
+      return this.admit(serverManager, settings, lease, budget);
+    } finally {
+      if (lease.hasUnused()) {
+        coordinator.release(lease);
+      }
+    }
+  }
+
+  private int admit(ServerManager serverManager, QueueSettings settings, SlotLease lease, int limit) {
+    int admitted = 0;
+    int misses = 0;
+    while (admitted < limit && this.inFlight.get() < settings.getMaxConcurrentConnections()) {
+      Optional<RegisteredServer> availableServer = this.selectServer(serverManager, lease);
+      if (!availableServer.isPresent()) {
+        break;
+      }
+
+      RegisteredServer server = availableServer.get();
+      if (!serverManager.tryAcquireSlot(server)) {
+        // The last slot was taken or the ping was refreshed since the selection, try again a few times.
+        if (++misses > MAX_SELECTION_MISSES) {
+          break;
+        }
+
+        continue;
+      }
+
+      QueuePlayerInfo playerInfo = this.pollConnectable();
+      if (playerInfo == null) {
+        serverManager.releaseSlot(server);
+        break;
+      }
+
+      lease.use(server.getServerInfo().getName());
+      this.connect(playerInfo, server, settings);
+      ++admitted;
+    }
+
+    return admitted;
+  }
+
+  /**
+   * Publishes the queue of the group to the other proxies of the cluster and fetches theirs. Players are only
+   * published while this proxy has a server to send them to, so a proxy that lost its servers doesn't hold back
+   * the others.
+   */
+  public RemoteQueue syncCluster() {
+    TieredQueue queue = this.group.getQueue();
+    boolean admitting = this.hasAvailableServers(this.plugin.getServerManager());
+    RemoteQueue remote = this.plugin.getQueueStore().exchange(this.group.getName(), admitting ? queue::snapshot : Collections::emptyList);
+    this.group.setRemote(remote);
+    return remote;
+  }
+
+  /**
+   * @return true if a server of the group, or of a group it may spill over into, is available
+   */
+  public boolean hasAvailableServers(ServerManager serverManager) {
+    if (serverManager.hasAvailableServers(this.group.getName())) {
+      return true;
+    }
+
+    for (String target : this.group.getSpillover()) {
+      if (this.canSpillInto(target) && serverManager.hasAvailableServers(target)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return servers of the group and of the groups it may spill over into that can take a player now
+   */
+  private List<RegisteredServer> getCandidateServers(ServerManager serverManager) {
+    List<RegisteredServer> servers = serverManager.getAdmittableServers(this.group.getName());
+    for (String target : this.group.getSpillover()) {
+      if (this.canSpillInto(target)) {
+        servers.addAll(serverManager.getAdmittableServers(target));
+      }
+    }
+
+    return servers;
+  }
+
+  /**
+   * Picks a leased server of the group, or else of the first group it spills over into that has one.
+   */
+  private Optional<RegisteredServer> selectServer(ServerManager serverManager, SlotLease lease) {
+    Predicate<RegisteredServer> leased = server -> lease.hasSlot(server.getServerInfo().getName());
+    Optional<RegisteredServer> server = serverManager.getAvailableServer(this.group.getName(), leased);
+    if (server.isPresent()) {
+      return server;
+    }
+
+    for (String target : this.group.getSpillover()) {
+      if (this.canSpillInto(target)) {
+        server = serverManager.getAvailableServer(target, leased);
+        if (server.isPresent()) {
+          return server;
+        }
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * Players only spill over into a group nobody is waiting for, on any proxy, so they never overtake its own players.
+   */
+  private boolean canSpillInto(String target) {
+    QueueGroup targetGroup = this.plugin.getGroup(target);
+    return targetGroup == null || targetGroup.getQueue().isEmpty() && targetGroup.getRemote().isEmpty();
+  }
+
+  /**
+   * Removes players from the head of the queue until one that can actually be connected is found.
+   * Its position stays reserved until the connection attempt is over.
+   */
+  private QueuePlayerInfo pollConnectable() {
+    TieredQueue queue = this.group.getQueue();
+    QueuePlayerInfo playerInfo;
+    while ((playerInfo = queue.pollAndReserve()) != null) {
+      Player player = playerInfo.getLimboPlayer().getProxyPlayer();
+      if (player == null || !player.isActive()) {
+        this.plugin.getLogger().debug("First player in queue is disconnected, removing from queue");
+        queue.cancelReservation(playerInfo.getUuid());
+        this.plugin.recordLeft(playerInfo, QueueLeaveEvent.Reason.DISCONNECTED);
+        continue;
+      }
+
+      // Check if player is already connected to a server
+      if (player.getCurrentServer().isPresent()) {
+        this.plugin.getLogger().debug("Player {} is already connected to server {}, removing from queue",
+            player.getUsername(),
+            player.getCurrentServer().get().getServerInfo().getName());
+        queue.cancelReservation(playerInfo.getUuid());
+        this.plugin.recordAdmitted(playerInfo);
+        continue;
+      }
+
+      return playerInfo;
+    }
+
+    return null;
+  }
+
+  private void connect(QueuePlayerInfo playerInfo, RegisteredServer server, QueueSettings settings) {
+    Logger logger = this.plugin.getLogger();
+    ServerManager serverManager = this.plugin.getServerManager();
+    Messages messages = this.plugin.getMessages();
+    Player player = playerInfo.getLimboPlayer().getProxyPlayer();
+
+    logger.debug("Attempting to connect player {} to server {} (Available servers: {}/{})",
+        player.getUsername(),
+        server.getServerInfo().getName(),
+        serverManager.getAvailableServerCount(),
+        serverManager.getTotalServerCount());
+
+    // Send connecting message
+    player.sendMessage(messages.connectingToServer(server.getServerInfo().getName()));
+
+    // Send actionbar message
+    if (settings.isActionbarEnabled()) {
+      player.sendActionBar(messages.actionbarConnecting());
+    }
+
+    ConnectionAttempt attempt = new ConnectionAttempt(playerInfo, server);
+    this.inFlight.incrementAndGet();
+    this.sending.add(playerInfo.getUuid());
+    // Velocity has no deadline of its own on the whole connection, a backend that accepts it and never answers would hold the player.
+    QueueDispatcher dispatcher = this.group.getDispatcher();
+    attempt.setDeadline(this.plugin.getServer().getScheduler().buildTask(this.plugin, () -> {
+      if (attempt.end()) {
+        this.sending.remove(playerInfo.getUuid());
+        dispatcher.execute(() -> this.onAttemptOver(attempt, ConnectOutcome.TIMEOUT, "No answer within " + settings.getConnectTimeout() + " ms"));
+      }
+    }).delay(settings.getConnectTimeout(), TimeUnit.MILLISECONDS).schedule());
+    player.createConnectionRequest(server).connect().whenComplete((result, throwable) -> {
+      // Classified on the Netty thread, the queue is only changed by the dispatcher.
+      ConnectOutcome outcome = ConnectOutcome.of(result, throwable, player, this.plugin.getSettings().getKickReasons());
+      if (result != null) {
+        attempt.setReason(result.getReasonComponent().orElse(null));
+      }
+
+      if (attempt.end()) {
+        this.sending.remove(playerInfo.getUuid());
+        String detail = throwable != null ? throwable.getMessage() : result.getStatus().name();
+        dispatcher.execute(() -> this.onAttemptOver(attempt, outcome, detail));
+      } else if (outcome == ConnectOutcome.SUCCESS) {
+        dispatcher.execute(() -> this.onLateSuccess(attempt));
+      }
+    });
+  }
+
+  private void onAttemptOver(ConnectionAttempt attempt, ConnectOutcome outcome, String detail) {
+    this.inFlight.decrementAndGet();
+    this.plugin.getMetrics().recordConnectOutcome(outcome);
+    if (outcome == ConnectOutcome.SUCCESS) {
+      this.onConnected(attempt);
+      return;
+    }
+
+    Logger logger = this.plugin.getLogger();
+    ServerManager serverManager = this.plugin.getServerManager();
+    QueuePlayerInfo playerInfo = attempt.getPlayerInfo();
+    RegisteredServer server = attempt.getServer();
+    serverManager.releaseSlot(server);
+    switch (outcome) {
+      case REFUSED:
+        serverManager.markServerUnavailable(server);
+        break;
+      case BROKEN:
+      case TIMEOUT:
+        serverManager.recordConnectFailure(server);
+        break;
+      case FULL:
+        serverManager.markFull(server);
+        break;
+      default:
+        break;
+    }
+
+    if (outcome == ConnectOutcome.REFUSED || outcome == ConnectOutcome.BROKEN || outcome == ConnectOutcome.TIMEOUT || outcome == ConnectOutcome.FULL) {
+      this.plugin.getMetrics().recordConnectFailure(attempt.getServerName());
+    }
+
+    QueueSettings settings = this.plugin.getSettings();
+    // A plugin that denies every connection would otherwise keep the player and their reserved position forever.
+    boolean retried = outcome.isRetried() && (outcome != ConnectOutcome.CANCELLED || playerInfo.recordCancelledAttempt() <= settings.getMaxCancelled());
+    if (retried) {
+      long delay = this.getRetryDelay(playerInfo.recordFailedAttempt(), settings);
+      logger.warn("Failed to connect player {} to server {}: {} ({}), sending them again from their place in the queue in {} ms",
+          playerInfo.getLimboPlayer().getProxyPlayer().getUsername(), attempt.getServerName(), outcome, detail, delay);
+      this.plugin.getServer().getScheduler().buildTask(this.plugin, () -> this.group.getDispatcher().execute(() -> this.retry(playerInfo)))
+          .delay(delay, TimeUnit.MILLISECONDS).schedule();
+    } else {
+      logger.info("Connection of player {} to server {} ended with {} ({}), removing them from the queue",
+          playerInfo.getLimboPlayer().getProxyPlayer().getUsername(), attempt.getServerName(), outcome, detail);
+      this.group.getQueue().cancelReservation(playerInfo.getUuid());
+      if (outcome == ConnectOutcome.ALREADY_CONNECTED) {
+        this.plugin.recordAdmitted(playerInfo);
+      } else {
+        if (outcome == ConnectOutcome.KICKED) {
+          this.disconnect(playerInfo, attempt.getReason() == null ? Component.text(detail) : attempt.getReason());
+          this.plugin.recordLeft(playerInfo, QueueLeaveEvent.Reason.KICKED);
+        } else if (outcome == ConnectOutcome.CANCELLED) {
+          this.disconnect(playerInfo, this.plugin.getMessages().connectionCancelled(attempt.getServerName()));
+          this.plugin.recordLeft(playerInfo, QueueLeaveEvent.Reason.CANCELLED);
+        } else {
+          this.plugin.recordLeft(playerInfo, QueueLeaveEvent.Reason.DISCONNECTED);
+        }
+      }
+    }
+
+    // The slot went back, other players may take it.
+    this.group.getDispatcher().wakeUp();
+  }
+
+  /**
+   * Ends the limbo session of a player the queue gave up on, so they are not left in it without a queue entry.
+   */
+  private void disconnect(QueuePlayerInfo playerInfo, Component reason) {
+    Player player = playerInfo.getLimboPlayer().getProxyPlayer();
+    if (player != null && player.isActive()) {
+      player.disconnect(reason);
+    }
+  }
+
+  private void onConnected(ConnectionAttempt attempt) {
+    QueuePlayerInfo playerInfo = attempt.getPlayerInfo();
+    ServerManager serverManager = this.plugin.getServerManager();
+    RegisteredServer server = attempt.getServer();
+    this.plugin.getLogger().debug("Successfully connected player {} to server {}",
+        playerInfo.getLimboPlayer().getProxyPlayer().getUsername(), attempt.getServerName());
+    this.admissionRate.record();
+    this.throughput.record();
+    this.plugin.getMetrics().recordAdmitted(attempt.getServerName(), QueueClock.millis() - playerInfo.getJoinTime(),
+        QueueClock.nanos() - attempt.getStartNanos());
+    serverManager.confirmSlot(server);
+    serverManager.recordConnectSuccess(server);
+    this.group.getQueue().cancelReservation(playerInfo.getUuid());
+    this.plugin.recordAdmitted(playerInfo);
+    playerInfo.getLimboPlayer().disconnect();
+    if (this.inFlight.get() == this.plugin.getSettings().getMaxConcurrentConnections() - 1) {
+      // This pass may have stopped on the in-flight limit.
+      this.group.getDispatcher().wakeUp();
+    }
+  }
+
+  /**
+   * The connection went through after its deadline. The slot was already given back and the next ping counts the player,
+   * only the queue is cleaned up.
+   */
+  private void onLateSuccess(ConnectionAttempt attempt) {
+    QueuePlayerInfo playerInfo = attempt.getPlayerInfo();
+    this.plugin.getLogger().debug("Player {} reached server {} after the connection was given up",
+        playerInfo.getLimboPlayer().getProxyPlayer().getUsername(), attempt.getServerName());
+    TieredQueue queue = this.group.getQueue();
+    queue.remove(playerInfo);
+    queue.cancelReservation(playerInfo.getUuid());
+    this.plugin.recordAdmitted(playerInfo);
+    playerInfo.getLimboPlayer().disconnect();
+  }
+
+  /**
+   * "Equal jitter" like the circuit breakers: at least half of the backoff, so failed players don't all come back at once.
+   */
+  private long getRetryDelay(int failedAttempts, QueueSettings settings) {
+    long backoff = Math.min(settings.getMaxRetryBackoff(), settings.getRetryBackoff() << Math.min(failedAttempts - 1, 20));
+    long half = backoff / 2;
+    return half + ThreadLocalRandom.current().nextLong(half + 1);
+  }
+
+  /**
+   * Puts the player back at the position reserved when they were sent.
+   */
+  private void retry(QueuePlayerInfo playerInfo) {
+    TieredQueue queue = this.group.getQueue();
+    if (queue.contains(playerInfo.getUuid())) {
+      // Queued again in the meantime, e.g. by the kick callback, into the reserved position.
+      return;
+    }
+
+    Player player = playerInfo.getLimboPlayer().getProxyPlayer();
+    if (player == null || !player.isActive() || player.getCurrentServer().isPresent()) {
+      if (!queue.cancelReservation(playerInfo.getUuid())) {
+        // Already settled, e.g. an in-progress connection that got there after all.
+        return;
+      }
+
+      if (player != null && player.isActive()) {
+        this.plugin.recordAdmitted(playerInfo);
+      } else {
+        this.plugin.recordLeft(playerInfo, QueueLeaveEvent.Reason.DISCONNECTED);
+      }
+
+      return;
+    }
+
+    this.plugin.addQueuedPlayer(playerInfo);
+    // Only the first player of a queue wakes the dispatcher up, this one may well be at the head.
+    this.group.getDispatcher().wakeUp();
+  }
+
+  public AdmissionMode getMode() {
+    return this.plugin.getSettings().getAdmissionMode();
+  }
+
+  /**
+   * @return true while a connection of the player from this queue has not ended
+   */
+  public boolean isSending(UUID uuid) {
+    return this.sending.contains(uuid);
+  }
+
+  public int getInFlight() {
+    return this.inFlight.get();
+  }
+
+  public double getAdmissionRate() {
+    return this.admissionRate.getRatePerSecond();
+  }
+
+  /**
+   * @return moving average of the players of the group admitted by this proxy per second, the estimated wait times are based on it
+   */
+  public ThroughputEstimator getThroughput() {
+    return this.throughput;
+  }
+
+  public long getTotalAdmitted() {
+    return this.admissionRate.getTotal();
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.api.event.QueueAdvanceEvent;
+
+/**
+ * Single writer of the queue of a group. Joins, leaves, connection outcomes and retries are commands, queued from
+ * any thread into a bounded {@link CommandRing} and run in batches by one drain at a time on the scheduler.
+ * Other threads only read what the drains publish, the queue size and its {@link QueueView}.
+ *
+ * <p>Drains are coalesced: any amount of commands and {@link #wakeUp()} calls made before a drain starts are handled
+ * by it, with a single admission pass after the batch, and anything queued while a drain runs schedules exactly one more.
+ * Commands run in the order they were queued, except the ones queued from within a drain, which run right away
+ * as the caller already is the writer. Nothing is scheduled while there is nothing to do.
+ *
+ * <p>A producer finding the ring full makes sure a drain is scheduled and waits a little for room, it never drains
+ * on its own thread, which may well be a Netty or event thread. A command that still finds no room is dropped and logged.
+ * A drain that removed players from the queue fires a single {@link QueueAdvanceEvent} for all of them.
+ */
+public class QueueDispatcher {
+
+  private static final int CAPACITY = 1 << 14;
+  private static final int BATCH_SIZE = 1024;
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+  private final LimboQueue plugin;
+  private final QueueGroup group;
+  private final CommandRing<Runnable> commands = new CommandRing<>(CAPACITY);
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final AtomicBoolean passRequested = new AtomicBoolean();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Object drainLock = new Object();
+  private volatile Thread writer;
+
+  public QueueDispatcher(LimboQueue plugin, QueueGroup group) {
+    this.plugin = plugin;
+    this.group = group;
+  }
+
+  /**
+   * Runs the command as the writer of the queue.
+   */
+  public void execute(Runnable command) {
+    if (Thread.currentThread() == this.writer) {
+      this.run(command);
+      return;
+    }
+
+    if (!this.commands.offer(command) && !this.offerWhenFull(command)) {
+      if (this.dropped.getAndIncrement() == 0) {
+        this.plugin.getLogger().error("The commands of group {} are not drained fast enough, dropping the new ones until they are", this.group.getName());
+      }
+
+      return;
+    }
+
+    this.schedule();
+  }
+
+  /**
+   * Backpressure for producers outrunning the drains: they wait for the scheduled drain instead of running one.
+   */
+  private boolean offerWhenFull(Runnable command) {
+    long deadline = System.nanoTime() + FULL_WAIT_NANOS;
+    do {
+      this.schedule();
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+      if (this.commands.offer(command)) {
+        return true;
+      }
+    } while (System.nanoTime() - deadline < 0);
+
+    return false;
+  }
+
+  /**
+   * Requests an admission pass, e.g. when something that may free a slot happened.
+   */
+  public void wakeUp() {
+    if (this.group.getQueue().isEmpty()) {
+      return;
+    }
+
+    this.passRequested.set(true);
+    if (Thread.currentThread() != this.writer) {
+      this.schedule();
+    }
+  }
+
+  /**
+   * Publishes the queue again without an admission pass, e.g. when a reader asked for its players.
+   */
+  public void publish() {
+    this.schedule();
+  }
+
+  /**
+   * Periodic safety net for wake-ups that were missed, e.g. a slot freed by a player leaving on another proxy.
+   * Also keeps the group alive in the cluster while nothing else makes it exchange its queue.
+   */
+  public void sweep() {
+    this.execute(() -> {
+      this.group.getAdmitter().removeDisconnected();
+      this.group.getAdmitter().syncCluster();
+    });
+    this.wakeUp();
+  }
+
+  private void schedule() {
+    if (this.scheduled.compareAndSet(false, true)) {
+      this.plugin.getServer().getScheduler().buildTask(this.plugin, this::drain).schedule();
+    }
+  }
+
+  private void drain() {
+    synchronized (this.drainLock) {
+      // Cleared before the drain, so commands queued while it runs schedule another one.
+      this.scheduled.set(false);
+      this.writer = Thread.currentThread();
+      TieredQueue queue = this.group.getQueue();
+      long removed = queue.getRemovedCount();
+      try {
+        this.commands.drain(this::run, BATCH_SIZE);
+        long dropped = this.dropped.getAndSet(0);
+        if (dropped != 0) {
+          this.plugin.getLogger().warn("Dropped {} commands of group {} while they were not drained fast enough", dropped, this.group.getName());
+        }
+
+        if (this.passRequested.getAndSet(false) && this.plugin.getServerManager() != null) {
+          this.pass();
+        }
+
+        queue.publish();
+        if (queue.getRemovedCount() != removed) {
+          this.plugin.fireEvent(new QueueAdvanceEvent(this.group.getName(), (int) (queue.getRemovedCount() - removed), queue.size()));
+        }
+      } finally {
+        this.writer = null;
+      }
+
+      // Left over by the batch limit, or requested by the pass itself.
+      if (!this.commands.isEmpty() || this.passRequested.get()) {
+        this.schedule();
+      }
+    }
+  }
+
+  private void run(Runnable command) {
+    try {
+      command.run();
+    } catch (Exception e) {
+      this.plugin.getLogger().error("Queue command of group {} failed", this.group.getName(), e);
+    }
+  }
+
+  private void pass() {
+    try {
+      this.group.getAdmitter().tick();
+    } catch (Exception e) {
+      this.plugin.getLogger().error("Queue admission pass of group {} failed", this.group.getName(), e);
+    }
+  }
+}
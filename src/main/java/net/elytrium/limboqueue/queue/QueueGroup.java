@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.util.Collections;
+import java.util.List;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import net.elytrium.limboqueue.cluster.ClusterOrder;
+import net.elytrium.limboqueue.cluster.RemoteQueue;
+
+/**
+ * A group of target servers with its own queue and admission loop.
+ *
+ * <p>Every group has its own dispatcher, the single writer of its queue, so admission passes of different groups
+ * run in parallel on the scheduler and a group without free slots doesn't hold the others back.
+ * Only the server probing is shared.
+ *
+ * <p>When the proxy is part of a cluster, the group also keeps the players the other proxies queued for it
+ * as of the last exchange with the {@link net.elytrium.limboqueue.cluster.QueueStore}.
+ */
+public class QueueGroup {
+
+  private final String name;
+  private final TieredQueue queue = new TieredQueue();
+  private final QueueAdmitter admitter;
+  private final QueueDispatcher dispatcher;
+  private volatile List<String> spillover = Collections.emptyList();
+  private volatile RemoteQueue remote = RemoteQueue.EMPTY;
+  private List<QueuePlayerInfo> positionsQueue;
+  private RemoteQueue positionsRemote;
+  private int[] positions;
+
+  public QueueGroup(LimboQueue plugin, String name) {
+    this.name = name;
+    this.admitter = new QueueAdmitter(plugin, this);
+    this.dispatcher = new QueueDispatcher(plugin, this);
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public TieredQueue getQueue() {
+    return this.queue;
+  }
+
+  public QueueAdmitter getAdmitter() {
+    return this.admitter;
+  }
+
+  public QueueDispatcher getDispatcher() {
+    return this.dispatcher;
+  }
+
+  /**
+   * @return groups whose servers may take this group's players while nobody is waiting for them, in order
+   */
+  public List<String> getSpillover() {
+    return this.spillover;
+  }
+
+  public void setSpillover(List<String> spillover) {
+    this.spillover = List.copyOf(spillover);
+  }
+
+  /**
+   * @return true if players of this group may be sent to the servers of the given group
+   */
+  public boolean canUse(String group) {
+    return this.name.equals(group) || this.spillover.contains(group);
+  }
+
+  /**
+   * @return players the other proxies queued for this group, empty if the proxy is alone
+   */
+  public RemoteQueue getRemote() {
+    return this.remote;
+  }
+
+  public void setRemote(RemoteQueue remote) {
+    this.remote = remote;
+  }
+
+  /**
+   * Admissions of the other proxies are not known, they are assumed to admit at the same pace per queued player.
+   *
+   * @return estimated players of the group admitted per second in the whole cluster, 0 while this proxy admitted none
+   */
+  public double getClusterThroughput() {
+    double rate = this.admitter.getThroughput().getRate();
+    int local = this.queue.size();
+    int remote = this.remote.size();
+    return local == 0 || remote == 0 ? rate : rate * (local + remote) / local;
+  }
+
+  /**
+   * Cheap enough to be called for every queued player, as long as the throughput is read once for all of them.
+   *
+   * @param position 1-based position in the whole cluster
+   * @param throughput from {@link #getClusterThroughput()}
+   * @return estimated seconds until the player at the position is admitted, or -1 while there is no estimate
+   */
+  public static long estimateWait(int position, double throughput) {
+    return throughput > 0 ? (long) Math.ceil(position / throughput) : -1;
+  }
+
+  /**
+   * @return players in admission order as of the last drain of the dispatcher
+   */
+  public List<QueuePlayerInfo> getPlayers() {
+    QueueView view = this.queue.getView();
+    if (view.isPlayersStale()) {
+      // Copied on demand only, the next drain publishes them.
+      this.queue.requestPlayers();
+      this.dispatcher.publish();
+    }
+
+    return view.getPlayers();
+  }
+
+  /**
+   * Only called by the dispatcher, other threads use {@link #getPlayers()}.
+   *
+   * @return 1-based position of the player in the whole cluster, or -1 if the player is not queued in this group
+   */
+  public int getPosition(QueuePlayerInfo playerInfo) {
+    int position = this.queue.getPosition(playerInfo.getUuid());
+    if (position == -1 || this.remote.isEmpty()) {
+      return position;
+    }
+
+    // The snapshot is in admission order, the local position is the index in it.
+    List<QueuePlayerInfo> snapshot = this.queue.snapshot();
+    int[] positions = this.getClusterPositions(snapshot);
+    return positions == null || position > positions.length ? position : positions[position - 1];
+  }
+
+  /**
+   * @param queue snapshot of the queue of this group
+   * @return cluster-wide positions of the players of the snapshot, or null while no other proxy queues players for it
+   */
+  public synchronized int[] getClusterPositions(List<QueuePlayerInfo> queue) {
+    RemoteQueue remote = this.remote;
+    if (remote.isEmpty()) {
+      return null;
+    }
+
+    // Both only change on queue changes and exchanges, the actionbar shards in between share the positions.
+    if (queue != this.positionsQueue || remote != this.positionsRemote) {
+      this.positions = ClusterOrder.getPositions(queue, remote, this.queue.getWeights());
+      this.positionsQueue = queue;
+      this.positionsRemote = remote;
+    }
+
+    return this.positions;
+  }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import org.slf4j.Logger;
+
+/**
+ * Append-only journal of queue events, so that players get their position and join time back after a restart.
+ *
+ * <p>Joins, leaves and admissions are collected from any thread and written in batches by a single writer thread
+ * into one of two memory-mapped segments, which are forced to disk after every batch. Once the records outnumber
+ * the queue enough, the writer compacts the queue into the other segment and switches to it, so a crash during
+ * compaction leaves the previous segment intact. Records carry a checksum and replay stops at the first torn one.
+ *
+ * <p>Players that left less than the restore timeout ago, including the ones that were still queued when the proxy
+ * went down, get their place reserved in the queue of their group when the journal is opened, in their original order.
+ * They take it back if they are queued again before the timeout runs out. Groups are recorded as a 16-bit hash of
+ * their name, the places of a group that no longer exists are reserved in the default group.
+ *
+ * <p>A journal reopened while players are queued, e.g. on a reload, doesn't replay: it starts over from a snapshot
+ * of the current queues and takes the restored players of the journal it replaces over.
+ */
+public class QueueJournal implements AutoCloseable {
+
+  private static final int MAGIC = 0x4C514A31;
+  private static final int VERSION = 3;
+  private static final int HEADER_SIZE = 32;
+  private static final int RECORD_SIZE = 32;
+  private static final int MIN_SEGMENT_SIZE = 1 << 20;
+  private static final int COMPACT_MIN_RECORDS = 4096;
+  private static final byte JOIN = 1;
+  private static final byte LEAVE = 2;
+  private static final byte ADMIT = 3;
+
+  private final IntFunction<QueueGroup> groups;
+  private final Logger logger;
+  private final long restoreTimeout;
+  private final long flushIntervalNanos;
+  private final Segment[] segments = new Segment[2];
+  private final Map<UUID, Entry> entries = new LinkedHashMap<>();
+  private final Map<UUID, Entry> restored = new ConcurrentHashMap<>();
+  private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+  private final CRC32 crc = new CRC32();
+  private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES * 4 + 4);
+  private final Thread thread;
+  private Segment active;
+  private long generation;
+  private volatile boolean running = true;
+
+  /**
+   * @param groups group with the given {@link #groupKey key}, or the default group for an unknown key
+   * @param replay whether to restore the recorded positions, only while nobody is queued yet. Otherwise the recorded
+   *     state is dropped and the current queues are recorded with {@link #recordQueue}
+   */
+  public QueueJournal(Path directory, IntFunction<QueueGroup> groups, Logger logger, long restoreTimeoutMillis, long flushIntervalMillis,
+      boolean replay) throws IOException {
+    this.groups = groups;
+    this.logger = logger;
+    this.restoreTimeout = restoreTimeoutMillis;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+
+    for (int i = 0; i < this.segments.length; i++) {
+      this.segments[i] = Segment.open(directory.resolve("queue-" + i + ".journal"));
+    }
+
+    Segment newest = this.findNewest();
+    if (replay && newest != null) {
+      this.replay(newest);
+    }
+
+    this.active = newest == null ? this.segments[1] : newest;
+    this.compact();
+    this.thread = new Thread(this::loop, "LimboQueue Journal");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  public static short groupKey(String group) {
+    int hash = group.hashCode();
+    return (short) (hash ^ hash >>> 16);
+  }
+
+  /**
+   * A player coming back for another group keeps the join time, but not the reserved place.
+   *
+   * @return the original join time of a restored player coming back in time, or -1
+   */
+  public long takeRestoredJoinTime(UUID uuid, String group) {
+    Entry entry = this.restored.remove(uuid);
+    if (entry == null) {
+      return -1;
+    }
+
+    boolean expired = QueueClock.millis() - entry.leaveTime >= this.restoreTimeout;
+    if (expired || entry.group != groupKey(group)) {
+      this.cancelReservation(entry.group, uuid);
+    }
+
+    return expired ? -1 : entry.joinTime;
+  }
+
+  /**
+   * Frees the places of restored players that didn't come back in time.
+   */
+  public void expireRestored() {
+    long now = QueueClock.millis();
+    Iterator<Map.Entry<UUID, Entry>> iterator = this.restored.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<UUID, Entry> entry = iterator.next();
+      if (now - entry.getValue().leaveTime >= this.restoreTimeout) {
+        this.cancelReservation(entry.getValue().group, entry.getKey());
+        iterator.remove();
+      }
+    }
+  }
+
+  public int getRestoredCount() {
+    return this.restored.size();
+  }
+
+  /**
+   * Records the players queued in the group, from its dispatcher so that they are recorded in admission order.
+   */
+  public void recordQueue(QueueGroup group) {
+    group.getDispatcher().execute(() -> {
+      for (QueuePlayerInfo playerInfo : group.getQueue().snapshot()) {
+        this.recordJoin(playerInfo.getUuid(), playerInfo.getJoinTime(), group.getName(), playerInfo.getTier());
+      }
+    });
+  }
+
+  /**
+   * Takes the restored players of a closed journal over, their places stay reserved.
+   */
+  public void takeRestored(QueueJournal previous) {
+    for (Map.Entry<UUID, Entry> entry : previous.restored.entrySet()) {
+      Entry restored = entry.getValue();
+      this.restored.put(entry.getKey(), restored);
+      this.record(JOIN, entry.getKey(), restored.joinTime, restored.group, restored.tier);
+      this.record(LEAVE, entry.getKey(), restored.leaveTime, (short) 0, 0);
+    }
+
+    previous.restored.clear();
+  }
+
+  /**
+   * Frees the places of every restored player, e.g. when the journal is turned off.
+   */
+  public void releaseRestored() {
+    this.restored.forEach((uuid, entry) -> this.cancelReservation(entry.group, uuid));
+    this.restored.clear();
+  }
+
+  private void cancelReservation(short group, UUID uuid) {
+    QueueGroup queueGroup = this.groups.apply(group);
+    queueGroup.getDispatcher().execute(() -> queueGroup.getQueue().cancelReservation(uuid));
+  }
+
+  public void recordJoin(UUID uuid, long joinTime, String group, int tier) {
+    this.record(JOIN, uuid, joinTime, groupKey(group), tier);
+  }
+
+  public void recordLeave(UUID uuid) {
+    this.record(LEAVE, uuid, QueueClock.millis(), (short) 0, 0);
+  }
+
+  public void recordAdmit(UUID uuid) {
+    this.record(ADMIT, uuid, QueueClock.millis(), (short) 0, 0);
+  }
+
+  /**
+   * Writes the events recorded so far and stops the writer thread.
+   */
+  @Override
+  public void close() {
+    this.running = false;
+    LockSupport.unpark(this.thread);
+    try {
+      this.thread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void record(byte type, UUID uuid, long time, short group, int tier) {
+    if (this.running) {
+      this.pending.add(new Event(type, uuid, time, group, (byte) tier));
+    }
+  }
+
+  private void loop() {
+    try {
+      while (this.running) {
+        LockSupport.parkNanos(this, this.flushIntervalNanos);
+        this.flush();
+      }
+    } finally {
+      this.flush();
+      for (Segment segment : this.segments) {
+        segment.close();
+      }
+    }
+  }
+
+  private void flush() {
+    Event event = this.pending.poll();
+    if (event == null) {
+      return;
+    }
+
+    try {
+      do {
+        this.append(event);
+      } while ((event = this.pending.poll()) != null);
+
+      if (this.active.records >= COMPACT_MIN_RECORDS && this.active.records > this.entries.size() * 4L) {
+        this.compact();
+      } else {
+        this.active.buffer.force();
+      }
+    } catch (IOException | RuntimeException e) {
+      this.logger.error("Failed to write the queue journal", e);
+    }
+  }
+
+  private void append(Event event) throws IOException {
+    this.apply(event.type, event.uuid, event.time, event.group, event.tier);
+    if (this.active.buffer.position() + RECORD_SIZE > this.active.buffer.capacity()) {
+      // The compacted state already contains this event.
+      this.compact();
+    } else {
+      this.write(this.active, this.generation, event.type, event.uuid, event.time, event.group, event.tier);
+    }
+  }
+
+  private void apply(byte type, UUID uuid, long time, short group, byte tier) {
+    Entry entry = this.entries.get(uuid);
+    switch (type) {
+      case JOIN:
+        if (entry == null || entry.leaveTime == 0 || entry.joinTime != time) {
+          // New and re-queued players go to the tail, a restored player comes back with its original join time.
+          this.entries.remove(uuid);
+          this.entries.put(uuid, new Entry(time, group, tier));
+        } else {
+          entry.leaveTime = 0;
+          entry.group = group;
+          entry.tier = tier;
+        }
+        break;
+      case LEAVE:
+        if (entry != null) {
+          entry.leaveTime = time;
+        }
+        break;
+      case ADMIT:
+        this.entries.remove(uuid);
+        break;
+      default:
+        throw new IllegalStateException("Unknown record type " + type);
+    }
+  }
+
+  /**
+   * @return the valid segment of the latest generation, or null if there is none
+   */
+  private Segment findNewest() {
+    Segment newest = null;
+    for (Segment segment : this.segments) {
+      ByteBuffer buffer = segment.buffer;
+      if (buffer.getInt(0) == MAGIC && buffer.getInt(Integer.BYTES) == VERSION
+          && (newest == null || buffer.getLong(Integer.BYTES * 2) > this.generation)) {
+        newest = segment;
+        this.generation = buffer.getLong(Integer.BYTES * 2);
+      }
+    }
+
+    return newest;
+  }
+
+  /**
+   * Loads the segment and reserves the places of the players that can still be restored.
+   */
+  private void replay(Segment segment) {
+    ByteBuffer buffer = segment.buffer;
+    for (int offset = HEADER_SIZE; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+      byte type = buffer.get(offset);
+      if (type == 0) {
+        break;
+      }
+
+      byte tier = buffer.get(offset + 1);
+      short group = buffer.getShort(offset + 2);
+      UUID uuid = new UUID(buffer.getLong(offset + 8), buffer.getLong(offset + 16));
+      long time = buffer.getLong(offset + 24);
+      if (buffer.getInt(offset + 4) != this.checksum(this.generation, type, uuid, time, group, tier)) {
+        this.logger.warn("Queue journal is corrupted after {} records, the rest of it is ignored", (offset - HEADER_SIZE) / RECORD_SIZE);
+        break;
+      }
+
+      this.apply(type, uuid, time, group, tier);
+    }
+
+    long now = QueueClock.millis();
+    Iterator<Entry> iterator = this.entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.leaveTime == 0) {
+        // Still queued when the proxy went down.
+        entry.leaveTime = now;
+      }
+
+      if (now - entry.leaveTime >= this.restoreTimeout) {
+        iterator.remove();
+      }
+    }
+
+    for (Map.Entry<UUID, Entry> entry : this.entries.entrySet()) {
+      UUID uuid = entry.getKey();
+      Entry restored = new Entry(entry.getValue());
+      this.restored.put(uuid, restored);
+      QueueGroup group = this.groups.apply(restored.group);
+      // Queued by the dispatcher in the original order, players queued again meanwhile keep their place.
+      group.getDispatcher().execute(() -> {
+        if (!group.getQueue().reserve(uuid, restored.tier)) {
+          this.restored.remove(uuid, restored);
+        }
+      });
+    }
+  }
+
+  /**
+   * Writes the queue into the inactive segment and switches to it. The segment header is written last,
+   * so the previous segment stays the newest valid one until the compacted one is complete on disk.
+   */
+  private void compact() throws IOException {
+    long now = QueueClock.millis();
+    this.entries.values().removeIf(entry -> entry.leaveTime != 0 && now - entry.leaveTime >= this.restoreTimeout);
+
+    Segment target = this.segments[this.active == this.segments[0] ? 1 : 0];
+    long required = HEADER_SIZE + this.entries.size() * 2L * RECORD_SIZE;
+    long capacity = Math.max(MIN_SEGMENT_SIZE, target.buffer.capacity());
+    while (capacity < required * 2) {
+      capacity *= 2;
+    }
+
+    long generation = this.generation + 1;
+    target.reset(capacity);
+    for (Map.Entry<UUID, Entry> entry : this.entries.entrySet()) {
+      this.write(target, generation, JOIN, entry.getKey(), entry.getValue().joinTime, entry.getValue().group, entry.getValue().tier);
+      if (entry.getValue().leaveTime != 0) {
+        this.write(target, generation, LEAVE, entry.getKey(), entry.getValue().leaveTime, (short) 0, (byte) 0);
+      }
+    }
+
+    target.buffer.force();
+    target.buffer.putInt(0, MAGIC).putInt(Integer.BYTES, VERSION).putLong(Integer.BYTES * 2, generation);
+    target.buffer.force();
+    this.active = target;
+    this.generation = generation;
+  }
+
+  private void write(Segment segment, long generation, byte type, UUID uuid, long time, short group, byte tier) {
+    segment.buffer.put(type).put(tier).putShort(group)
+        .putInt(this.checksum(generation, type, uuid, time, group, tier))
+        .putLong(uuid.getMostSignificantBits())
+        .putLong(uuid.getLeastSignificantBits())
+        .putLong(time);
+    ++segment.records;
+  }
+
+  /**
+   * The generation is part of the checksum, so records left over from an older use of the segment never replay.
+   */
+  private int checksum(long generation, byte type, UUID uuid, long time, short group, byte tier) {
+    this.scratch.clear();
+    this.scratch.putLong(generation).put(type).put(tier).putShort(group)
+        .putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).putLong(time);
+    this.crc.reset();
+    this.crc.update(this.scratch.flip());
+    return (int) this.crc.getValue();
+  }
+
+  private static final class Segment {
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int records;
+
+    private Segment(FileChannel channel, MappedByteBuffer buffer) {
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    private static Segment open(Path path) throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long size = Math.max(MIN_SEGMENT_SIZE, Math.min(channel.size(), Integer.MAX_VALUE));
+      return new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    /**
+     * Zeroes the segment, header included, and grows it to the given capacity if needed.
+     */
+    private void reset(long capacity) throws IOException {
+      if (capacity > this.buffer.capacity()) {
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      }
+
+      this.buffer.clear();
+      while (this.buffer.hasRemaining()) {
+        this.buffer.putLong(0);
+      }
+
+      this.buffer.position(HEADER_SIZE);
+      this.records = 0;
+    }
+
+    private void close() {
+      try {
+        this.channel.close();
+      } catch (IOException e) {
+        // The mapping stays valid until it is collected, nothing to clean up.
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final long joinTime;
+    private long leaveTime;
+    private short group;
+    private byte tier;
+
+    private Entry(long joinTime, short group, byte tier) {
+      this.joinTime = joinTime;
+      this.group = group;
+      this.tier = tier;
+    }
+
+    private Entry(Entry entry) {
+      this.joinTime = entry.joinTime;
+      this.leaveTime = entry.leaveTime;
+      this.group = entry.group;
+      this.tier = entry.tier;
+    }
+  }
+
+  private static final class Event {
+
+    private final byte type;
+    private final UUID uuid;
+    private final long time;
+    private final short group;
+    private final byte tier;
+
+    private Event(byte type, UUID uuid, long time, short group, byte tier) {
+      this.type = type;
+      this.uuid = uuid;
+      this.time = time;
+      this.group = group;
+      this.tier = tier;
+    }
+  }
+}
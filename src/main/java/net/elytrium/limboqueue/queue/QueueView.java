@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.util.Collections;
+import java.util.List;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+
+/**
+ * Immutable state of a {@link TieredQueue} published by its dispatcher, read by the commands, the metrics
+ * and the actionbar without touching the queue itself.
+ *
+ * <p>The players are only copied while somebody asks for them, so they may be from an earlier publication
+ * than the counts.
+ */
+public class QueueView {
+
+  public static final QueueView EMPTY = new QueueView(0, 0, new int[] {0}, new int[] {1}, new int[] {1}, Collections.emptyList(), 0);
+
+  private final long version;
+  private final int size;
+  private final int[] tierSizes;
+  private final int[] weights;
+  private final int[] joinPositions;
+  private final List<QueuePlayerInfo> players;
+  private final long playersVersion;
+
+  QueueView(long version, int size, int[] tierSizes, int[] weights, int[] joinPositions, List<QueuePlayerInfo> players, long playersVersion) {
+    this.version = version;
+    this.size = size;
+    this.tierSizes = tierSizes;
+    this.weights = weights;
+    this.joinPositions = joinPositions;
+    this.players = players;
+    this.playersVersion = playersVersion;
+  }
+
+  long getVersion() {
+    return this.version;
+  }
+
+  long getPlayersVersion() {
+    return this.playersVersion;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int getTierCount() {
+    return this.tierSizes.length;
+  }
+
+  public int size(int tier) {
+    return this.tierSizes[tier];
+  }
+
+  public int getWeight(int tier) {
+    return this.weights[tier];
+  }
+
+  /**
+   * @return the position a player joining the tier would have got at the time of the publication
+   */
+  public int getJoinPosition(int tier) {
+    return this.joinPositions[tier];
+  }
+
+  /**
+   * @return players in admission order, the player at index i has position i + 1
+   */
+  public List<QueuePlayerInfo> getPlayers() {
+    return this.players;
+  }
+
+  /**
+   * @return true if the players were copied before the last change of the queue
+   */
+  public boolean isPlayersStale() {
+    return this.playersVersion != this.version;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import net.elytrium.limboqueue.QueueClock;
+
+/**
+ * Counts events in one-second buckets over a sliding window.
+ */
+public class RateMeter {
+
+  private final int windowSeconds;
+  private final long[] counts;
+  private final long[] seconds;
+  private long total;
+
+  public RateMeter(int windowSeconds) {
+    this.windowSeconds = windowSeconds;
+    // One extra bucket for the second that is still being filled.
+    this.counts = new long[windowSeconds + 1];
+    this.seconds = new long[windowSeconds + 1];
+  }
+
+  public void record() {
+    this.record(1);
+  }
+
+  public synchronized void record(int amount) {
+    long second = QueueClock.millis() / 1000;
+    int index = (int) (second % this.counts.length);
+    if (this.seconds[index] != second) {
+      this.seconds[index] = second;
+      this.counts[index] = 0;
+    }
+
+    this.counts[index] += amount;
+    this.total += amount;
+  }
+
+  public synchronized long getTotal() {
+    return this.total;
+  }
+
+  /**
+   * @return average amount of events per second over the window, excluding the current (incomplete) second
+   */
+  public synchronized double getRatePerSecond() {
+    long now = QueueClock.millis() / 1000;
+    long sum = 0;
+    for (int i = 0; i < this.counts.length; i++) {
+      long age = now - this.seconds[i];
+      if (age > 0 && age <= this.windowSeconds) {
+        sum += this.counts[i];
+      }
+    }
+
+    return (double) sum / this.windowSeconds;
+  }
+}
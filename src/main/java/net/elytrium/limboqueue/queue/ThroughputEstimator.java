@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import net.elytrium.limboqueue.QueueClock;
+
+/**
+ * Exponentially weighted moving average of the admissions per second, for estimating how long queued players still wait.
+ *
+ * <p>Admissions are counted in one-second samples, folded into the average once the second is over. The average starts
+ * from nothing and is divided by the weight its samples have so far, so the first seconds of admissions already give
+ * their real rate instead of one biased towards zero. Seconds without admissions count as samples of zero, so
+ * the estimate falls while the queue is stuck.
+ */
+public class ThroughputEstimator {
+
+  private double decay;
+  private long second = -1;
+  private long count;
+  private double average;
+  private double weight;
+
+  /**
+   * @param windowSeconds time constant of the average, older samples weigh {@code 1/e} less per window
+   */
+  public ThroughputEstimator(int windowSeconds) {
+    this.setWindow(windowSeconds);
+  }
+
+  /**
+   * Applies a reloaded window, samples already folded keep their weight.
+   */
+  public synchronized void setWindow(int windowSeconds) {
+    this.decay = Math.exp(-1.0 / Math.max(1, windowSeconds));
+  }
+
+  public synchronized void record() {
+    long now = QueueClock.millis() / 1000;
+    if (this.second < 0) {
+      this.second = now;
+    }
+
+    this.fold(now);
+    ++this.count;
+  }
+
+  /**
+   * @return average amount of admissions per second, excluding the current (incomplete) second, 0 before the first one
+   */
+  public synchronized double getRate() {
+    this.fold(QueueClock.millis() / 1000);
+    return this.weight == 0 ? 0 : this.average / this.weight;
+  }
+
+  private void fold(long now) {
+    long elapsed = now - this.second;
+    if (this.second < 0 || elapsed <= 0) {
+      return;
+    }
+
+    this.average = this.decay * this.average + (1 - this.decay) * this.count;
+    this.weight = this.decay * this.weight + (1 - this.decay);
+    if (elapsed > 1) {
+      // The empty seconds since then, all at once.
+      double empty = Math.pow(this.decay, elapsed - 1);
+      this.average *= empty;
+      this.weight = this.weight * empty + (1 - empty);
+    }
+
+    this.count = 0;
+    this.second = now;
+  }
+}
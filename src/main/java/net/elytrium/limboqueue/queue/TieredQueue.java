@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+
+/**
+ * Priority tiers, each one a {@link PlayerQueue}, admitted with weighted fair scheduling.
+ *
+ * <p>Every tier has a pass value that grows by its stride, the inverse of its weight, each time one of its players
+ * is admitted. The waiting tier with the lowest pass goes next, the higher tier on ties, so while several tiers are
+ * waiting each one gets its weight's share of the admissions and no tier is starved. A tier that was empty starts
+ * again from the pass of the last admission, it can't save up admissions while nobody is waiting in it.
+ *
+ * <p>As the passes of the waiting tiers only depend on admissions, the turn of the k-th player of a tier is known in
+ * advance, and so is the amount of players of the other tiers admitted before it. A position is the position
+ * inside the tier plus one division per other tier, the whole queue is never walked.
+ *
+ * <p>Only the {@link QueueDispatcher} of the group changes or walks the queue. Other threads read {@link #size()}
+ * and the {@link QueueView} it publishes after every drain.
+ */
+public class TieredQueue {
+
+  private static final long STRIDE_SCALE = 1L << 20;
+
+  private PlayerQueue[] tiers = {new PlayerQueue()};
+  private volatile int[] weights = {1};
+  private long[] strides = {STRIDE_SCALE};
+  private long[] passes = new long[1];
+  private long virtualTime;
+  private long version;
+  private long removed;
+  private Snapshot snapshot = new Snapshot(0, Collections.emptyList());
+  private volatile int size;
+  private volatile boolean playersWanted;
+  private volatile QueueView view = QueueView.EMPTY;
+
+  /**
+   * Applies new tier weights, lowest tier first. Changing the amount of tiers moves every player to the tier
+   * matching their priority and drops the reserved positions.
+   */
+  public void setWeights(int[] weights) {
+    long[] strides = new long[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      strides[i] = STRIDE_SCALE / Math.max(1, weights[i]);
+    }
+
+    if (weights.length != this.tiers.length) {
+      PlayerQueue[] previous = this.tiers;
+      this.tiers = new PlayerQueue[weights.length];
+      for (int i = 0; i < this.tiers.length; i++) {
+        this.tiers[i] = new PlayerQueue();
+      }
+
+      for (PlayerQueue tier : previous) {
+        for (QueuePlayerInfo playerInfo : tier.snapshot()) {
+          this.tiers[this.tierOf(playerInfo.getTier())].add(playerInfo);
+        }
+      }
+
+      this.passes = new long[weights.length];
+      this.virtualTime = 0;
+    }
+
+    this.weights = weights.clone();
+    this.strides = strides;
+    this.changed();
+  }
+
+  /**
+   * Appends the player to the tail of their tier, or to the position reserved for them.
+   * A player queued again with a different priority leaves their previous tier.
+   *
+   * @return true if the player was not queued before
+   */
+  public boolean add(QueuePlayerInfo playerInfo) {
+    int tier = this.tierOf(playerInfo.getTier());
+    boolean added = true;
+    for (int i = 0; i < this.tiers.length; i++) {
+      if (i != tier) {
+        this.tiers[i].cancelReservation(playerInfo.getUuid());
+        if (this.tiers[i].remove(playerInfo.getUuid()) != null) {
+          // The players behind them in their previous tier moved up.
+          this.removed++;
+          added = false;
+        }
+      }
+    }
+
+    added &= this.tiers[tier].add(playerInfo);
+    this.changed();
+    return added;
+  }
+
+  /**
+   * Removes the given entry. Stale infos (replaced by a later {@link #add}) are ignored.
+   */
+  public boolean remove(QueuePlayerInfo playerInfo) {
+    if (this.tiers[this.tierOf(playerInfo.getTier())].remove(playerInfo)) {
+      this.removed++;
+      this.changed();
+      return true;
+    }
+
+    return false;
+  }
+
+  public QueuePlayerInfo remove(UUID uuid) {
+    for (PlayerQueue tier : this.tiers) {
+      QueuePlayerInfo playerInfo = tier.remove(uuid);
+      if (playerInfo != null) {
+        this.removed++;
+        this.changed();
+        return playerInfo;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * @return the player {@link #poll} would return
+   */
+  public QueuePlayerInfo peek() {
+    int tier = this.nextTier();
+    return tier == -1 ? null : this.tiers[tier].peek();
+  }
+
+  /**
+   * Removes the head of the tier whose turn it is.
+   */
+  public QueuePlayerInfo poll() {
+    return this.poll(false);
+  }
+
+  private QueuePlayerInfo poll(boolean reserve) {
+    int tier = this.nextTier();
+    if (tier == -1) {
+      return null;
+    }
+
+    this.virtualTime = this.passOf(tier);
+    this.passes[tier] = this.virtualTime + this.strides[tier];
+    QueuePlayerInfo playerInfo = reserve ? this.tiers[tier].pollAndReserve() : this.tiers[tier].poll();
+    this.removed++;
+    this.changed();
+    return playerInfo;
+  }
+
+  /**
+   * Same as {@link #poll}, keeping the position of the player reserved.
+   *
+   * @see PlayerQueue#pollAndReserve
+   */
+  public QueuePlayerInfo pollAndReserve() {
+    return this.poll(true);
+  }
+
+  public boolean contains(UUID uuid) {
+    return this.get(uuid) != null;
+  }
+
+  public QueuePlayerInfo get(UUID uuid) {
+    for (PlayerQueue tier : this.tiers) {
+      QueuePlayerInfo playerInfo = tier.get(uuid);
+      if (playerInfo != null) {
+        return playerInfo;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * @return 1-based admission order of the player, or -1 if the player is not queued
+   */
+  public int getPosition(UUID uuid) {
+    for (int tier = 0; tier < this.tiers.length; tier++) {
+      int index = this.tiers[tier].getPosition(uuid);
+      if (index != -1) {
+        return this.positionOf(tier, index);
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * @return the position a player joining the tier now would get
+   */
+  public int getJoinPosition(int tier) {
+    tier = this.tierOf(tier);
+    return this.positionOf(tier, this.tiers[tier].size() + 1);
+  }
+
+  /**
+   * Reserves a position at the tail of the tier for a player that is not connected yet.
+   *
+   * @see PlayerQueue#reserve
+   */
+  public boolean reserve(UUID uuid, int tier) {
+    return this.tiers[this.tierOf(tier)].reserve(uuid);
+  }
+
+  public boolean cancelReservation(UUID uuid) {
+    boolean cancelled = false;
+    for (PlayerQueue tier : this.tiers) {
+      cancelled |= tier.cancelReservation(uuid);
+    }
+
+    return cancelled;
+  }
+
+  public int getTierCount() {
+    return this.tiers.length;
+  }
+
+  public int getWeight(int tier) {
+    return this.weights[tier];
+  }
+
+  /**
+   * May be called from any thread. The array is shared and replaced as a whole by {@link #setWeights}, it must not be modified.
+   */
+  public int[] getWeights() {
+    return this.weights;
+  }
+
+  public int size(int tier) {
+    return this.tiers[tier].size();
+  }
+
+  /**
+   * May be called from any thread.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return amount of players removed or polled so far, i.e. the amount of times the players behind them moved up
+   */
+  public long getRemovedCount() {
+    return this.removed;
+  }
+
+  public boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  public void clear() {
+    for (PlayerQueue tier : this.tiers) {
+      tier.clear();
+    }
+
+    Arrays.fill(this.passes, 0);
+    this.virtualTime = 0;
+    this.changed();
+  }
+
+  /**
+   * Returns an immutable point-in-time view of the queue in admission order, i.e. the player at index i
+   * has position i + 1. The view is cached until the queue changes.
+   */
+  public List<QueuePlayerInfo> snapshot() {
+    if (this.snapshot.version == this.version) {
+      return this.snapshot.players;
+    }
+
+    List<List<QueuePlayerInfo>> lists = new ArrayList<>(this.tiers.length);
+    for (PlayerQueue tier : this.tiers) {
+      lists.add(tier.snapshot());
+    }
+
+    int[] next = new int[lists.size()];
+    QueuePlayerInfo[] players = new QueuePlayerInfo[this.size];
+    for (int i = 0; i < players.length; i++) {
+      // Same order as the admissions: lowest turn first, higher tier on ties.
+      int best = -1;
+      long bestTurn = Long.MAX_VALUE;
+      for (int tier = next.length - 1; tier >= 0; tier--) {
+        if (next[tier] < lists.get(tier).size()) {
+          long turn = this.passOf(tier) + next[tier] * this.strides[tier];
+          if (turn < bestTurn) {
+            best = tier;
+            bestTurn = turn;
+          }
+        }
+      }
+
+      players[i] = lists.get(best).get(next[best]++);
+    }
+
+    this.snapshot = new Snapshot(this.version, Collections.unmodifiableList(Arrays.asList(players)));
+    return this.snapshot.players;
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return the state of the queue as of the last {@link #publish}
+   */
+  public QueueView getView() {
+    return this.view;
+  }
+
+  /**
+   * Asks for the players to be part of the next {@link #publish}. They are only copied while somebody reads them.
+   * May be called from any thread.
+   */
+  public void requestPlayers() {
+    this.playersWanted = true;
+  }
+
+  /**
+   * Publishes the current state of the queue to the other threads, if it changed since the last time.
+   */
+  public void publish() {
+    QueueView current = this.view;
+    boolean players = this.playersWanted && current.getPlayersVersion() != this.version;
+    if (current.getVersion() == this.version && !players) {
+      return;
+    }
+
+    int[] sizes = new int[this.tiers.length];
+    int[] joinPositions = new int[this.tiers.length];
+    for (int tier = 0; tier < this.tiers.length; tier++) {
+      sizes[tier] = this.tiers[tier].size();
+      joinPositions[tier] = this.getJoinPosition(tier);
+    }
+
+    if (players) {
+      this.playersWanted = false;
+      this.view = new QueueView(this.version, this.size, sizes, this.weights, joinPositions, this.snapshot(), this.version);
+    } else {
+      this.view = new QueueView(this.version, this.size, sizes, this.weights, joinPositions, current.getPlayers(), current.getPlayersVersion());
+    }
+  }
+
+  private void changed() {
+    this.version++;
+    int size = 0;
+    for (PlayerQueue tier : this.tiers) {
+      size += tier.size();
+    }
+
+    this.size = size;
+  }
+
+  private int tierOf(int priority) {
+    return Math.max(0, Math.min(priority, this.tiers.length - 1));
+  }
+
+  /**
+   * An empty tier may lag behind, it would get its turn at the current virtual time once it has players.
+   */
+  private long passOf(int tier) {
+    return Math.max(this.passes[tier], this.virtualTime);
+  }
+
+  private int nextTier() {
+    int best = -1;
+    long bestPass = Long.MAX_VALUE;
+    for (int tier = this.tiers.length - 1; tier >= 0; tier--) {
+      if (!this.tiers[tier].isEmpty() && this.passOf(tier) < bestPass) {
+        best = tier;
+        bestPass = this.passOf(tier);
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * @param index 1-based position inside the tier
+   */
+  private int positionOf(int tier, int index) {
+    long turn = this.passOf(tier) + (index - 1) * this.strides[tier];
+    int position = index;
+    for (int other = 0; other < this.tiers.length; other++) {
+      int size = other == tier ? 0 : this.tiers[other].size();
+      long ahead = turn - this.passOf(other);
+      if (size == 0 || ahead < 0) {
+        continue;
+      }
+
+      long stride = this.strides[other];
+      // Players of the other tier whose turn comes first: strictly before for lower tiers, ties included for higher ones.
+      long count = other > tier ? ahead / stride + 1 : (ahead + stride - 1) / stride;
+      position += (int) Math.min(size, count);
+    }
+
+    return position;
+  }
+
+  private static final class Snapshot {
+
+    private final long version;
+    private final List<QueuePlayerInfo> players;
+
+    private Snapshot(long version, List<QueuePlayerInfo> players) {
+      this.version = version;
+      this.players = players;
+    }
+  }
+}
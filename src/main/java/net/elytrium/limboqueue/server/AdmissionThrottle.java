@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting how fast players are sent to a single backend while it is warming up.
+ *
+ * <p>A backend that comes back is not sent players at full speed: like TCP slow start, its rate begins at the initial
+ * rate and grows exponentially to the full rate over the configured window, after which the bucket is lifted.
+ * A ping much slower than usual or a connection that breaks or times out halves the rate, which then grows back
+ * the same way. Backends that never went away are not throttled until they show such a sign of congestion.
+ *
+ * <p>All methods take the current time in nanoseconds, so callers decide which clock is used.
+ */
+public class AdmissionThrottle {
+
+  /**
+   * Minimum time between two cuts, so a burst of failures of connections sent at the same rate only counts once.
+   */
+  private static final long CUT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  /**
+   * Smallest ping increase counted as congestion, so the jitter of backends a few milliseconds away is ignored.
+   */
+  private static final long MIN_RTT_RISE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private Settings settings;
+  private boolean throttled;
+  private double rate;
+  private double tokens;
+  private long updatedAt;
+  private long cutAt;
+  private boolean cut;
+  private double baselineRttNanos;
+
+  public AdmissionThrottle(Settings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Applies reloaded settings, a ramp in progress goes on with them.
+   */
+  public synchronized void setSettings(Settings settings) {
+    this.settings = settings;
+    if (!settings.isEnabled()) {
+      this.throttled = false;
+    }
+  }
+
+  /**
+   * Restarts the ramp from the initial rate, e.g. when the backend is healthy again after being out of rotation.
+   */
+  public synchronized void startRamp(long now) {
+    if (!this.settings.isEnabled()) {
+      return;
+    }
+
+    this.throttle(this.settings.initialRate, now);
+  }
+
+  /**
+   * Halves the rate, starting a ramp from half of the full rate if the backend was not throttled.
+   */
+  public synchronized void onCongestion(long now) {
+    if (!this.settings.isEnabled() || this.cut && now - this.cutAt < CUT_INTERVAL_NANOS) {
+      return;
+    }
+
+    this.refill(now);
+    this.cut = true;
+    this.cutAt = now;
+    this.throttle(Math.max(this.settings.initialRate, (this.throttled ? this.rate : this.settings.fullRate) / 2), now);
+  }
+
+  /**
+   * Compares the ping time with its moving average and counts a ping over the threshold as congestion.
+   */
+  public synchronized void onPing(long rttNanos, long now) {
+    if (this.baselineRttNanos == 0) {
+      this.baselineRttNanos = rttNanos;
+      return;
+    }
+
+    if (rttNanos > this.baselineRttNanos * this.settings.rttThreshold && rttNanos - this.baselineRttNanos > MIN_RTT_RISE_NANOS) {
+      this.onCongestion(now);
+    }
+
+    // Same smoothing as the TCP round trip estimate.
+    this.baselineRttNanos += (rttNanos - this.baselineRttNanos) / 8;
+  }
+
+  /**
+   * @return true if a player may be sent now, in which case a token is taken
+   */
+  public synchronized boolean tryAcquire(long now) {
+    this.refill(now);
+    if (!this.throttled) {
+      return true;
+    }
+
+    if (this.tokens < 1) {
+      return false;
+    }
+
+    --this.tokens;
+    return true;
+  }
+
+  /**
+   * Gives back a token taken for a player that was not sent after all.
+   */
+  public synchronized void refund() {
+    if (this.throttled) {
+      this.tokens = Math.min(this.getBurst(), this.tokens + 1);
+    }
+  }
+
+  /**
+   * @return players that may be sent now, {@link Integer#MAX_VALUE} if the backend is not throttled
+   */
+  public synchronized int getAvailable(long now) {
+    this.refill(now);
+    return this.throttled ? (int) this.tokens : Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return nanoseconds until the next player may be sent, 0 if one may be sent now
+   */
+  public synchronized long getDelayNanos(long now) {
+    this.refill(now);
+    if (!this.throttled || this.tokens >= 1) {
+      return 0;
+    }
+
+    return (long) Math.ceil((1 - this.tokens) / this.rate * TimeUnit.SECONDS.toNanos(1));
+  }
+
+  public synchronized boolean isThrottled() {
+    return this.throttled;
+  }
+
+  /**
+   * @return players per second currently allowed, {@link Double#POSITIVE_INFINITY} if the backend is not throttled
+   */
+  public synchronized double getRate() {
+    return this.throttled ? this.rate : Double.POSITIVE_INFINITY;
+  }
+
+  private void throttle(double rate, long now) {
+    this.refill(now);
+    if (!this.throttled) {
+      // The first player goes right away, the next ones at the new rate.
+      this.tokens = 1;
+    }
+
+    this.throttled = true;
+    this.rate = rate;
+    this.tokens = Math.min(this.getBurst(), this.tokens);
+    this.updatedAt = now;
+  }
+
+  private void refill(long now) {
+    if (!this.throttled) {
+      return;
+    }
+
+    long elapsed = now - this.updatedAt;
+    if (elapsed <= 0) {
+      return;
+    }
+
+    double previous = this.rate;
+    this.rate = Math.min(this.settings.fullRate, this.rate * Math.exp(this.settings.growthPerNano * elapsed));
+    this.updatedAt = now;
+    if (this.rate >= this.settings.fullRate) {
+      this.throttled = false;
+      return;
+    }
+
+    this.tokens = Math.min(this.getBurst(), this.tokens + (previous + this.rate) / 2 * elapsed / TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * One second worth of players, at least one.
+   */
+  private double getBurst() {
+    return Math.max(1, this.rate);
+  }
+
+  public static class Settings {
+
+    private final long windowNanos;
+    private final double initialRate;
+    private final double fullRate;
+    private final double rttThreshold;
+    private final double growthPerNano;
+
+    /**
+     * @param windowNanos time over which the rate grows from the initial to the full rate, 0 to never throttle
+     * @param initialRate players per second right after a recovery
+     * @param fullRate players per second at the end of the window
+     * @param rttThreshold ping time, as a multiple of its moving average, above which the rate is halved
+     */
+    public Settings(long windowNanos, double initialRate, double fullRate, double rttThreshold) {
+      this.windowNanos = Math.max(0, windowNanos);
+      this.initialRate = Math.max(0.1, initialRate);
+      this.fullRate = Math.max(this.initialRate, fullRate);
+      this.rttThreshold = Math.max(1, rttThreshold);
+      this.growthPerNano = this.windowNanos == 0 ? 0 : Math.log(this.fullRate / this.initialRate) / this.windowNanos;
+    }
+
+    public boolean isEnabled() {
+      return this.windowNanos > 0 && this.fullRate > this.initialRate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Settings)) {
+        return false;
+      }
+
+      Settings settings = (Settings) o;
+      return this.windowNanos == settings.windowNanos
+          && Double.compare(this.initialRate, settings.initialRate) == 0
+          && Double.compare(this.fullRate, settings.fullRate) == 0
+          && Double.compare(this.rttThreshold, settings.rttThreshold) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.windowNanos, this.initialRate, this.fullRate, this.rttThreshold);
+    }
+  }
+}
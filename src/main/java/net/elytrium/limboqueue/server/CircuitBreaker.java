@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Health state of a single backend.
+ *
+ * <p>A closed breaker lets players through. Failures in a row open it for an exponentially growing, jittered backoff;
+ * when the backoff expires the breaker goes half-open and the next probe decides whether it closes again or reopens
+ * for longer. Closed breakers probe less often the longer the backend stays healthy.
+ *
+ * <p>All methods take the current time in milliseconds, so callers decide which clock is used.
+ */
+public class CircuitBreaker {
+
+  /**
+   * Successful probes in a row needed to double the probe interval of a closed breaker.
+   */
+  private static final int STABLE_STEP = 10;
+
+  private Settings settings;
+  private State state = State.CLOSED;
+  private int failures;
+  private int successes;
+  private int opens;
+  private long retryAt;
+  private long closedSince;
+  private long nextProbeAt;
+
+  public CircuitBreaker(Settings settings, long now) {
+    this.settings = settings;
+    this.closedSince = now;
+  }
+
+  /**
+   * Applies reloaded settings without resetting the state, they are used from the next transition on.
+   */
+  public synchronized void setSettings(Settings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Decides whether the backend should be probed in the current round. An open breaker whose backoff has expired
+   * becomes half-open here.
+   */
+  public synchronized boolean shouldProbe(long now) {
+    switch (this.state) {
+      case CLOSED:
+        // Half an interval of slack, so a round firing slightly early doesn't skip the probe.
+        return now + this.settings.probeIntervalMillis / 2 >= this.nextProbeAt;
+      case OPEN:
+        if (now >= this.retryAt) {
+          this.state = State.HALF_OPEN;
+          return true;
+        }
+
+        return false;
+      case HALF_OPEN:
+      default:
+        return true;
+    }
+  }
+
+  public synchronized void onProbeStarted(long now) {
+    this.nextProbeAt = now + this.getProbeInterval();
+  }
+
+  /**
+   * @return true if this success closed the breaker
+   */
+  public synchronized boolean recordSuccess(long now) {
+    switch (this.state) {
+      case HALF_OPEN:
+        this.state = State.CLOSED;
+        this.closedSince = now;
+        this.failures = 0;
+        this.successes = 1;
+        return true;
+      case CLOSED:
+        this.failures = 0;
+        ++this.successes;
+        if (now - this.closedSince >= this.settings.maxBackoffMillis) {
+          // Stable for a whole backoff window, forget previous trips.
+          this.opens = 0;
+        }
+
+        return false;
+      case OPEN:
+      default:
+        // Late result of a request started before the breaker opened.
+        return false;
+    }
+  }
+
+  /**
+   * @return true if this failure opened the breaker
+   */
+  public synchronized boolean recordFailure(long now) {
+    switch (this.state) {
+      case CLOSED:
+        this.successes = 0;
+        if (++this.failures < this.settings.failureThreshold) {
+          return false;
+        }
+
+        this.open(now);
+        return true;
+      case HALF_OPEN:
+        this.open(now);
+        return true;
+      case OPEN:
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Opens the breaker right away, regardless of the failure threshold.
+   *
+   * @return true if the breaker was not open before
+   */
+  public synchronized boolean trip(long now) {
+    if (this.state == State.OPEN) {
+      return false;
+    }
+
+    this.open(now);
+    return true;
+  }
+
+  private void open(long now) {
+    this.state = State.OPEN;
+    this.failures = 0;
+    this.successes = 0;
+    ++this.opens;
+
+    long backoff = Math.min(this.settings.maxBackoffMillis, this.settings.baseBackoffMillis << Math.min(this.opens - 1, 20));
+    // "Equal jitter": at least half of the backoff, so flapping servers can't come back too early.
+    long half = backoff / 2;
+    this.retryAt = now + half + ThreadLocalRandom.current().nextLong(half + 1);
+  }
+
+  private long getProbeInterval() {
+    if (this.state != State.CLOSED) {
+      return this.settings.probeIntervalMillis;
+    }
+
+    int level = Math.min(this.successes / STABLE_STEP, 16);
+    return Math.max(this.settings.probeIntervalMillis, Math.min(this.settings.stableProbeIntervalMillis, this.settings.probeIntervalMillis << level));
+  }
+
+  public synchronized State getState() {
+    return this.state;
+  }
+
+  public synchronized boolean isClosed() {
+    return this.state == State.CLOSED;
+  }
+
+  /**
+   * @return time at which an open breaker goes half-open
+   */
+  public synchronized long getRetryAt() {
+    return this.retryAt;
+  }
+
+  public enum State {
+
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  public static class Settings {
+
+    private final int failureThreshold;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long probeIntervalMillis;
+    private final long stableProbeIntervalMillis;
+
+    public Settings(int failureThreshold, long baseBackoffMillis, long maxBackoffMillis, long probeIntervalMillis, long stableProbeIntervalMillis) {
+      this.failureThreshold = Math.max(1, failureThreshold);
+      this.baseBackoffMillis = Math.max(1, baseBackoffMillis);
+      this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+      this.probeIntervalMillis = Math.max(1, probeIntervalMillis);
+      this.stableProbeIntervalMillis = stableProbeIntervalMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Settings)) {
+        return false;
+      }
+
+      Settings settings = (Settings) o;
+      return this.failureThreshold == settings.failureThreshold
+          && this.baseBackoffMillis == settings.baseBackoffMillis
+          && this.maxBackoffMillis == settings.maxBackoffMillis
+          && this.probeIntervalMillis == settings.probeIntervalMillis
+          && this.stableProbeIntervalMillis == settings.stableProbeIntervalMillis;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.failureThreshold, this.baseBackoffMillis, this.maxBackoffMillis, this.probeIntervalMillis, this.stableProbeIntervalMillis);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.List;
+import net.elytrium.limboqueue.ServerManager;
+
+/**
+ * Picks the server with the lowest share of occupied or reserved slots, preferring the lower ping round trip on ties.
+ */
+public class LeastLoadedSelector implements ServerSelector {
+
+  @Override
+  public RegisteredServer select(List<RegisteredServer> candidates, ServerManager serverManager) {
+    RegisteredServer best = candidates.get(0);
+    ReservationLedger bestLedger = serverManager.getLedger(best);
+    for (int i = 1; i < candidates.size(); i++) {
+      RegisteredServer candidate = candidates.get(i);
+      ReservationLedger ledger = serverManager.getLedger(candidate);
+      if (compare(ledger, bestLedger) < 0) {
+        best = candidate;
+        bestLedger = ledger;
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Orders servers from the least to the most occupied, reservations included. Servers without a ping come last.
+   */
+  static int compare(ReservationLedger first, ReservationLedger second) {
+    int result = Double.compare(first.getLoadFactor(), second.getLoadFactor());
+    if (result != 0) {
+      return result;
+    }
+
+    ServerLoad firstLoad = first.getLoad();
+    ServerLoad secondLoad = second.getLoad();
+    if (firstLoad == null || secondLoad == null) {
+      return firstLoad == secondLoad ? 0 : (firstLoad == null ? 1 : -1);
+    }
+
+    return Long.compare(firstLoad.getPingNanos(), secondLoad.getPingNanos());
+  }
+}
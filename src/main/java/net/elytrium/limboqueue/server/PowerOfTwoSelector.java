@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import net.elytrium.limboqueue.ServerManager;
+
+/**
+ * Compares two random candidates and keeps the less loaded one. Almost as even as least-loaded, but proxies working
+ * from the same slightly stale ping data don't all pile onto the same server.
+ */
+public class PowerOfTwoSelector implements ServerSelector {
+
+  @Override
+  public RegisteredServer select(List<RegisteredServer> candidates, ServerManager serverManager) {
+    int size = candidates.size();
+    if (size == 1) {
+      return candidates.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      ++second;
+    }
+
+    RegisteredServer firstServer = candidates.get(first);
+    RegisteredServer secondServer = candidates.get(second);
+    return LeastLoadedSelector.compare(serverManager.getLedger(firstServer), serverManager.getLedger(secondServer)) <= 0
+        ? firstServer : secondServer;
+  }
+}
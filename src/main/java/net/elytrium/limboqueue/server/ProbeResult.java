@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import java.util.concurrent.TimeUnit;
+
+public class ProbeResult {
+
+  private final boolean reachable;
+  private final long latencyNanos;
+  private final String failure;
+
+  private ProbeResult(boolean reachable, long latencyNanos, String failure) {
+    this.reachable = reachable;
+    this.latencyNanos = latencyNanos;
+    this.failure = failure;
+  }
+
+  public static ProbeResult reachable(long latencyNanos) {
+    return new ProbeResult(true, latencyNanos, null);
+  }
+
+  public static ProbeResult unreachable(long latencyNanos, String failure) {
+    return new ProbeResult(false, latencyNanos, failure);
+  }
+
+  public boolean isReachable() {
+    return this.reachable;
+  }
+
+  /**
+   * @return time from the start of the probe until the connection was established or failed
+   */
+  public long getLatencyNanos() {
+    return this.latencyNanos;
+  }
+
+  public long getLatencyMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(this.latencyNanos);
+  }
+
+  public String getFailure() {
+    return this.failure;
+  }
+}
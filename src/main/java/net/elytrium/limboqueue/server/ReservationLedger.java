@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+/**
+ * Keeps track of the players sent to a backend that its last ping can't know about yet.
+ *
+ * <p>Free slots are the pinged free capacity minus connections in flight and connections completed after the ping
+ * was sent, plus players that left after the ping response arrived. Both corrections are conservative: a player
+ * that joined while the ping was on the wire is counted twice, and a player that left during it is not counted,
+ * until the next ping reconciles the ledger. This way admission can't overshoot the max player count, whatever
+ * the ping interval.
+ */
+public class ReservationLedger {
+
+  private final TimeRing completed = new TimeRing();
+  private final TimeRing departed = new TimeRing();
+  private ServerLoad load;
+  private int inFlight;
+  private boolean full;
+  private long fullSince;
+
+  /**
+   * Replaces the pinged load and drops the corrections it already accounts for.
+   */
+  public synchronized void reconcile(ServerLoad load) {
+    if (this.load != null && load.getSentAt() - this.load.getSentAt() < 0) {
+      // Responses of an older ping arriving late
+      return;
+    }
+
+    this.load = load;
+    if (this.full && load.getSentAt() - this.fullSince >= 0) {
+      this.full = false;
+    }
+
+    this.completed.removeBefore(load.getSentAt());
+    this.departed.removeBefore(load.getReceivedAt());
+  }
+
+  /**
+   * Forgets the pinged load, e.g. once the backend is considered down. Connections in flight are still tracked.
+   */
+  public synchronized void invalidate() {
+    this.load = null;
+    this.completed.clear();
+    this.departed.clear();
+  }
+
+  /**
+   * The backend turned a player away as full: no slot is handed out until a ping sent after now is received.
+   */
+  public synchronized void markFull(long now) {
+    this.full = true;
+    this.fullSince = now;
+  }
+
+  public synchronized boolean tryReserve() {
+    if (this.getFreeSlots0() <= 0) {
+      return false;
+    }
+
+    ++this.inFlight;
+    return true;
+  }
+
+  /**
+   * Gives back a reservation whose connection failed or was never attempted.
+   */
+  public synchronized void release() {
+    if (this.inFlight > 0) {
+      --this.inFlight;
+    }
+  }
+
+  /**
+   * Turns a reservation into a completed connection, counted until a ping sent after now is received.
+   */
+  public synchronized void confirm(long now) {
+    this.release();
+    this.completed.add(now);
+  }
+
+  public synchronized void onDeparture(long now) {
+    if (this.load != null && this.departed.size() < this.load.getMax()) {
+      this.departed.add(now);
+    }
+  }
+
+  public synchronized ServerLoad getLoad() {
+    return this.load;
+  }
+
+  public synchronized int getInFlight() {
+    return this.inFlight;
+  }
+
+  public synchronized int getCompleted() {
+    return this.completed.size();
+  }
+
+  public synchronized int getFreeSlots() {
+    return this.getFreeSlots0();
+  }
+
+  /**
+   * @return share of occupied slots including reservations, 1 or more when the server is full or was never pinged
+   */
+  public synchronized double getLoadFactor() {
+    if (this.load == null || this.load.getMax() <= 0) {
+      return 1;
+    }
+
+    return (double) this.getOccupied() / this.load.getMax();
+  }
+
+  private int getFreeSlots0() {
+    return this.load == null || this.full ? 0 : Math.max(0, this.load.getMax() - this.getOccupied());
+  }
+
+  private int getOccupied() {
+    return this.load.getOnline() + this.inFlight + this.completed.size() - this.departed.size();
+  }
+
+  /**
+   * Growable ring of timestamps in insertion order.
+   */
+  private static final class TimeRing {
+
+    private long[] times = new long[16];
+    private int head;
+    private int size;
+
+    private void add(long time) {
+      if (this.size == this.times.length) {
+        long[] grown = new long[this.times.length * 2];
+        for (int i = 0; i < this.size; i++) {
+          grown[i] = this.times[(this.head + i) % this.times.length];
+        }
+
+        this.times = grown;
+        this.head = 0;
+      }
+
+      this.times[(this.head + this.size++) % this.times.length] = time;
+    }
+
+    private void removeBefore(long time) {
+      while (this.size > 0 && this.times[this.head] - time < 0) {
+        this.head = (this.head + 1) % this.times.length;
+        --this.size;
+      }
+    }
+
+    private void clear() {
+      this.head = 0;
+      this.size = 0;
+    }
+
+    private int size() {
+      return this.size;
+    }
+  }
+}
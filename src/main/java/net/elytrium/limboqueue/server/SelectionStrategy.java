@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import java.util.Map;
+
+public enum SelectionStrategy {
+
+  ROUND_ROBIN,
+  LEAST_LOADED,
+  WEIGHTED,
+  POWER_OF_TWO;
+
+  /**
+   * @param weights configured capacity by server name, used by {@link #WEIGHTED}
+   */
+  public ServerSelector create(Map<String, Integer> weights) {
+    switch (this) {
+      case ROUND_ROBIN:
+        return new RoundRobinSelector();
+      case WEIGHTED:
+        return new WeightedSelector(weights);
+      case POWER_OF_TWO:
+        return new PowerOfTwoSelector();
+      case LEAST_LOADED:
+      default:
+        return new LeastLoadedSelector();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup of the target servers and their groups, built once per reload.
+ *
+ * <p>Event handlers run for every server switch on the proxy, most of them unrelated to the queue. Every lookup here
+ * is a single hash map read that allocates nothing, so those handlers return right away for servers that are not
+ * targets.
+ */
+public final class ServerIndex {
+
+  public static final ServerIndex EMPTY = new ServerIndex(Collections.emptyMap());
+
+  private final List<RegisteredServer> servers;
+  private final Map<RegisteredServer, Integer> serverGroups;
+  private final Map<String, Integer> groupIds;
+  private final String[] groupNames;
+  private final List<List<RegisteredServer>> groupServers;
+
+  /**
+   * @param groups servers of each group in order, a server must not be in more than one group
+   */
+  public ServerIndex(Map<String, List<RegisteredServer>> groups) {
+    List<RegisteredServer> servers = new ArrayList<>();
+    Map<RegisteredServer, Integer> serverGroups = new HashMap<>();
+    Map<String, Integer> groupIds = new HashMap<>();
+    List<List<RegisteredServer>> groupServers = new ArrayList<>(groups.size());
+    this.groupNames = new String[groups.size()];
+    for (Map.Entry<String, List<RegisteredServer>> group : groups.entrySet()) {
+      int id = groupServers.size();
+      this.groupNames[id] = group.getKey();
+      groupIds.put(group.getKey(), id);
+      groupServers.add(List.copyOf(group.getValue()));
+      for (RegisteredServer server : group.getValue()) {
+        serverGroups.put(server, id);
+        servers.add(server);
+      }
+    }
+
+    this.servers = Collections.unmodifiableList(servers);
+    this.serverGroups = Collections.unmodifiableMap(serverGroups);
+    this.groupIds = Collections.unmodifiableMap(groupIds);
+    this.groupServers = Collections.unmodifiableList(groupServers);
+  }
+
+  /**
+   * @return every target server, group after group
+   */
+  public List<RegisteredServer> getServers() {
+    return this.servers;
+  }
+
+  public boolean contains(RegisteredServer server) {
+    return this.serverGroups.containsKey(server);
+  }
+
+  public int getGroupCount() {
+    return this.groupNames.length;
+  }
+
+  /**
+   * @return id of the group of the server, or -1 if it is not a target server
+   */
+  public int getGroupId(RegisteredServer server) {
+    Integer id = this.serverGroups.get(server);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @return id of the group, or -1 for an unknown group
+   */
+  public int getGroupId(String group) {
+    Integer id = this.groupIds.get(group);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @return name of the group of the server, or null if it is not a target server
+   */
+  public String getGroup(RegisteredServer server) {
+    Integer id = this.serverGroups.get(server);
+    return id == null ? null : this.groupNames[id];
+  }
+
+  /**
+   * @return immutable list of the target servers of the group, empty for an unknown group
+   */
+  public List<RegisteredServer> getGroupServers(String group) {
+    Integer id = this.groupIds.get(group);
+    return id == null ? Collections.emptyList() : this.groupServers.get(id);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Player count of a backend as reported by a status ping.
+ */
+public class ServerLoad {
+
+  private final int online;
+  private final int max;
+  private final long sentAt;
+  private final long receivedAt;
+
+  /**
+   * @param sentAt {@link net.elytrium.limboqueue.QueueClock#nanos()} when the ping was sent
+   * @param receivedAt {@link net.elytrium.limboqueue.QueueClock#nanos()} when the response arrived
+   */
+  public ServerLoad(int online, int max, long sentAt, long receivedAt) {
+    this.online = online;
+    this.max = max;
+    this.sentAt = sentAt;
+    this.receivedAt = receivedAt;
+  }
+
+  public int getOnline() {
+    return this.online;
+  }
+
+  public int getMax() {
+    return this.max;
+  }
+
+  public long getSentAt() {
+    return this.sentAt;
+  }
+
+  public long getReceivedAt() {
+    return this.receivedAt;
+  }
+
+  /**
+   * @return round trip time of the status ping
+   */
+  public long getPingNanos() {
+    return this.receivedAt - this.sentAt;
+  }
+
+  public long getPingMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(this.getPingNanos());
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.List;
+import net.elytrium.limboqueue.ServerManager;
+
+public interface ServerSelector {
+
+  /**
+   * @param candidates non-empty list of servers that can take a player right now
+   * @param serverManager source of the pinged load of each candidate
+   * @return the server the next player should be sent to
+   */
+  RegisteredServer select(List<RegisteredServer> candidates, ServerManager serverManager);
+}
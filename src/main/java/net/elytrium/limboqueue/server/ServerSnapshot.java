@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable set of backends that were available at the time of publication, along with the {@link ServerIndex}
+ * it was built against. Readers get both from a single volatile read and never need to lock or copy them.
+ */
+public final class ServerSnapshot {
+
+  public static final ServerSnapshot EMPTY = new ServerSnapshot(ServerIndex.EMPTY, Collections.emptyList());
+
+  private final ServerIndex index;
+  private final List<RegisteredServer> available;
+  private final Set<RegisteredServer> availableSet;
+  private final int[] groupAvailable;
+
+  private ServerSnapshot(ServerIndex index, List<RegisteredServer> available) {
+    this.index = index;
+    this.available = Collections.unmodifiableList(available);
+    this.availableSet = Collections.unmodifiableSet(new HashSet<>(available));
+    this.groupAvailable = new int[index.getGroupCount()];
+    for (RegisteredServer server : available) {
+      int group = index.getGroupId(server);
+      if (group >= 0) {
+        this.groupAvailable[group]++;
+      }
+    }
+  }
+
+  /**
+   * @param index target servers, in the order they should be listed in
+   * @param available servers to keep from the index
+   */
+  public static ServerSnapshot of(ServerIndex index, Set<RegisteredServer> available) {
+    List<RegisteredServer> servers = new ArrayList<>(available.size());
+    for (RegisteredServer server : index.getServers()) {
+      if (available.contains(server)) {
+        servers.add(server);
+      }
+    }
+
+    return new ServerSnapshot(index, servers);
+  }
+
+  public ServerSnapshot with(RegisteredServer server) {
+    if (this.availableSet.contains(server) || !this.index.contains(server)) {
+      return this;
+    }
+
+    List<RegisteredServer> servers = new ArrayList<>(this.available.size() + 1);
+    servers.addAll(this.available);
+    servers.add(server);
+    return new ServerSnapshot(this.index, servers);
+  }
+
+  public ServerSnapshot without(RegisteredServer server) {
+    if (!this.availableSet.contains(server)) {
+      return this;
+    }
+
+    List<RegisteredServer> servers = new ArrayList<>(this.available);
+    servers.remove(server);
+    return new ServerSnapshot(this.index, servers);
+  }
+
+  public ServerIndex getIndex() {
+    return this.index;
+  }
+
+  public List<RegisteredServer> getAvailable() {
+    return this.available;
+  }
+
+  public boolean isAvailable(RegisteredServer server) {
+    return this.availableSet.contains(server);
+  }
+
+  /**
+   * @return true if at least one server of the group is available, false for an unknown group
+   */
+  public boolean hasAvailable(String group) {
+    int id = this.index.getGroupId(group);
+    return id >= 0 && this.groupAvailable[id] > 0;
+  }
+
+  public boolean isEmpty() {
+    return this.available.isEmpty();
+  }
+
+  public int size() {
+    return this.available.size();
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks TCP reachability of many addresses at once from a single selector thread.
+ *
+ * <p>Connections are opened in non-blocking mode and closed as soon as they are established, so no thread is parked
+ * on a dead host. Futures are completed on the prober thread, callers should not block in their callbacks.
+ */
+public class TcpProber implements ServerProber {
+
+  private final Selector selector;
+  private final Queue<Probe> registrations = new ConcurrentLinkedQueue<>();
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  public TcpProber(String name) throws IOException {
+    this.selector = Selector.open();
+    this.thread = new Thread(this::loop, name);
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Unresolved addresses are resolved on the calling thread, so the selector thread never waits for DNS.
+   */
+  @Override
+  public CompletableFuture<ProbeResult> probe(InetSocketAddress address, long timeoutMillis) {
+    if (address.isUnresolved()) {
+      address = new InetSocketAddress(address.getHostString(), address.getPort());
+    }
+
+    Probe probe = new Probe(address, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    if (!this.running) {
+      probe.future.complete(ProbeResult.unreachable(0, "Prober is closed"));
+      return probe.future;
+    }
+
+    this.registrations.add(probe);
+    this.selector.wakeup();
+    return probe.future;
+  }
+
+  @Override
+  public void close() {
+    this.running = false;
+    this.selector.wakeup();
+  }
+
+  private void loop() {
+    try {
+      while (this.running) {
+        this.selector.select(this::onSelected, this.nextTimeoutMillis());
+        this.register();
+        this.expire();
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      // Fall through and fail everything still in progress.
+    } finally {
+      this.shutdown();
+    }
+  }
+
+  private void register() {
+    Probe probe;
+    while ((probe = this.registrations.poll()) != null) {
+      SocketChannel channel = null;
+      try {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        if (channel.connect(probe.address)) {
+          channel.close();
+          probe.complete(true, null);
+        } else {
+          channel.register(this.selector, SelectionKey.OP_CONNECT, probe);
+        }
+      } catch (IOException | RuntimeException e) {
+        closeQuietly(channel);
+        probe.complete(false, e.toString());
+      }
+    }
+  }
+
+  private void onSelected(SelectionKey key) {
+    Probe probe = (Probe) key.attachment();
+    SocketChannel channel = (SocketChannel) key.channel();
+    try {
+      if (channel.finishConnect()) {
+        probe.complete(true, null);
+      } else {
+        return;
+      }
+    } catch (IOException e) {
+      probe.complete(false, e.toString());
+    }
+
+    key.cancel();
+    closeQuietly(channel);
+  }
+
+  private void expire() {
+    long now = System.nanoTime();
+    for (SelectionKey key : this.selector.keys()) {
+      Probe probe = (Probe) key.attachment();
+      if (key.isValid() && now - probe.deadline >= 0) {
+        probe.complete(false, "Connection timed out");
+        key.cancel();
+        closeQuietly(key.channel());
+      }
+    }
+  }
+
+  private long nextTimeoutMillis() {
+    if (!this.registrations.isEmpty()) {
+      return 1;
+    }
+
+    long now = System.nanoTime();
+    long nearest = Long.MAX_VALUE;
+    for (SelectionKey key : this.selector.keys()) {
+      if (key.isValid()) {
+        nearest = Math.min(nearest, ((Probe) key.attachment()).deadline - now);
+      }
+    }
+
+    // 0 means "block until woken up" for Selector#select.
+    return nearest == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(nearest) + 1);
+  }
+
+  private void shutdown() {
+    this.running = false;
+    try {
+      for (SelectionKey key : this.selector.keys()) {
+        ((Probe) key.attachment()).complete(false, "Prober is closed");
+        closeQuietly(key.channel());
+      }
+
+      this.selector.close();
+    } catch (IOException | ClosedSelectorException e) {
+      // Nothing left to clean up.
+    }
+
+    Probe probe;
+    while ((probe = this.registrations.poll()) != null) {
+      probe.complete(false, "Prober is closed");
+    }
+  }
+
+  private static void closeQuietly(Channel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Ignored, the probe result is already known.
+      }
+    }
+  }
+
+  private static final class Probe {
+
+    private final InetSocketAddress address;
+    private final long start;
+    private final long deadline;
+    private final CompletableFuture<ProbeResult> future = new CompletableFuture<>();
+
+    private Probe(InetSocketAddress address, long timeoutNanos) {
+      this.address = address;
+      this.start = System.nanoTime();
+      this.deadline = this.start + timeoutNanos;
+    }
+
+    private void complete(boolean reachable, String failure) {
+      long latency = System.nanoTime() - this.start;
+      this.future.complete(reachable ? ProbeResult.reachable(latency) : ProbeResult.unreachable(latency, failure));
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.elytrium.limboqueue.ServerManager;
+
+/**
+ * Smooth weighted round-robin: every server gets a share of the players proportional to its configured capacity,
+ * interleaved instead of in bursts. Servers without a configured weight use the max player count from their ping.
+ */
+public class WeightedSelector implements ServerSelector {
+
+  private final Map<String, Integer> weights;
+  private final Map<RegisteredServer, Long> current = new HashMap<>();
+
+  public WeightedSelector(Map<String, Integer> weights) {
+    this.weights = weights;
+  }
+
+  @Override
+  public synchronized RegisteredServer select(List<RegisteredServer> candidates, ServerManager serverManager) {
+    long total = 0;
+    RegisteredServer best = null;
+    long bestWeight = Long.MIN_VALUE;
+    for (RegisteredServer candidate : candidates) {
+      int weight = this.getWeight(candidate, serverManager);
+      long value = this.current.merge(candidate, (long) weight, Long::sum);
+      total += weight;
+      if (value > bestWeight) {
+        best = candidate;
+        bestWeight = value;
+      }
+    }
+
+    this.current.put(best, bestWeight - total);
+    return best;
+  }
+
+  private int getWeight(RegisteredServer server, ServerManager serverManager) {
+    Integer weight = this.weights.get(server.getServerInfo().getName());
+    if (weight != null) {
+      return Math.max(1, weight);
+    }
+
+    ServerLoad load = serverManager.getServerLoad(server);
+    return load == null ? 1 : Math.max(1, load.getMax());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Builds in-memory implementations of the proxy and LimboAPI interfaces from a map of method answers.
+ *
+ * <p>Methods without an answer return the proxy itself when it fits the return type (builder methods),
+ * otherwise null, false, zero or an empty Optional.
+ */
+final class Proxies {
+
+  private Proxies() {
+  }
+
+  static <T> T of(Class<T> type, Map<String, Answer> answers) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        default:
+          break;
+      }
+
+      Answer answer = answers.get(method.getName());
+      if (answer != null) {
+        return answer.answer(args == null ? new Object[0] : args);
+      }
+
+      Class<?> returnType = method.getReturnType();
+      if (returnType.isInstance(proxy)) {
+        return proxy;
+      }
+
+      return defaultValue(returnType);
+    }));
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == Optional.class) {
+      return Optional.empty();
+    } else if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type == float.class) {
+      return 0.0F;
+    } else if (type == double.class) {
+      return 0.0;
+    } else if (type == short.class) {
+      return (short) 0;
+    } else if (type == byte.class) {
+      return (byte) 0;
+    } else if (type == char.class) {
+      return '\0';
+    } else {
+      return null;
+    }
+  }
+
+  interface Answer {
+
+    Object answer(Object[] args) throws Throwable;
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Scripted load: how many players join and when, how long they stay, and how the backends behave.
+ */
+final class Scenario {
+
+  private static final Map<String, Supplier<Scenario>> SCENARIOS = new LinkedHashMap<>();
+
+  static {
+    SCENARIOS.put("event", Scenario::event);
+    SCENARIOS.put("steady", Scenario::steady);
+    SCENARIOS.put("outage", Scenario::outage);
+    SCENARIOS.put("restart", Scenario::restart);
+    SCENARIOS.put("groups", Scenario::groups);
+    SCENARIOS.put("cluster", Scenario::cluster);
+  }
+
+  private final String name;
+  private final String description;
+  private final List<BackendSpec> backends = new ArrayList<>();
+  private int players;
+  private long joinWindowMillis;
+  private long durationMillis;
+  private double sessionMeanSeconds;
+  private double patienceMeanSeconds;
+  private int proxies = 1;
+
+  private Scenario(String name, String description) {
+    this.name = name;
+    this.description = description;
+  }
+
+  /**
+   * 20k players join within a minute, eight lobbies can't hold them all, two of them keep restarting.
+   */
+  static Scenario event() {
+    Scenario scenario = new Scenario("event", "20000 joins in 60 s, 8 lobbies of 1500 players, lobby7 and lobby8 flapping")
+        .players(20000, 60)
+        .duration(600)
+        .sessions(300, 240);
+    for (int i = 1; i <= 8; i++) {
+      BackendSpec backend = scenario.backend("lobby" + i, 1500).latency(10 + 5 * i, 100 + 20 * i);
+      if (i >= 7) {
+        // Up for 45 s, down for 15 s, out of phase with each other
+        backend.flapping(45, 15, i == 7 ? 10 : 40, scenario.durationMillis);
+      }
+    }
+
+    return scenario;
+  }
+
+  /**
+   * Joins slightly above what the lobbies free up, no failures. The queue should stay short.
+   */
+  static Scenario steady() {
+    Scenario scenario = new Scenario("steady", "2000 joins in 60 s, 4 lobbies of 400 players, no failures")
+        .players(2000, 60)
+        .duration(300)
+        .sessions(90, 0);
+    for (int i = 1; i <= 4; i++) {
+      scenario.backend("lobby" + i, 400).failureRate(0);
+    }
+
+    return scenario;
+  }
+
+  /**
+   * Every lobby is down while players arrive, then they all come back at once.
+   */
+  static Scenario outage() {
+    Scenario scenario = new Scenario("outage", "5000 joins in 30 s while all 4 lobbies are down for 45 s")
+        .players(5000, 30)
+        .duration(300)
+        .sessions(600, 0);
+    for (int i = 1; i <= 4; i++) {
+      scenario.backend("lobby" + i, 2000).down(0, 45);
+    }
+
+    return scenario;
+  }
+
+  /**
+   * Every lobby restarts while players arrive and is fragile while it warms up: sent players too fast, it crashes again.
+   */
+  static Scenario restart() {
+    Scenario scenario = new Scenario("restart", "6000 joins in 30 s while all 4 lobbies of 2000 players restart for 30 s, "
+        + "crashing again if sent over 12 players/s in their first 30 s")
+        .players(6000, 30)
+        .duration(300)
+        .sessions(600, 0);
+    for (int i = 1; i <= 4; i++) {
+      scenario.backend("lobby" + i, 2000).down(0, 30).warmup(30, 12, 20);
+    }
+
+    return scenario;
+  }
+
+  /**
+   * Half of the players go to a survival group that stays full, the lobby group must keep admitting its own players.
+   */
+  static Scenario groups() {
+    Scenario scenario = new Scenario("groups", "6000 joins in 60 s, lobby group of 4 x 500 players, survival group of 2 x 300 players")
+        .players(6000, 60)
+        .duration(300)
+        .sessions(120, 0);
+    for (int i = 1; i <= 4; i++) {
+      scenario.backend("lobby" + i, 500).group("lobby");
+    }
+    for (int i = 1; i <= 2; i++) {
+      scenario.backend("survival" + i, 300).group("survival");
+    }
+
+    return scenario;
+  }
+
+  /**
+   * Three proxies share the lobbies, half of the players join the first one. Without a shared queue the proxies
+   * overshoot the lobbies together and the players of the busy proxy wait longer than the others.
+   */
+  static Scenario cluster() {
+    Scenario scenario = new Scenario("cluster", "9000 joins in 60 s over 3 proxies (half on the first one), 4 lobbies of 800 players")
+        .players(9000, 60)
+        .duration(300)
+        .sessions(120, 0)
+        .proxies(3);
+    for (int i = 1; i <= 4; i++) {
+      scenario.backend("lobby" + i, 800);
+    }
+
+    return scenario;
+  }
+
+  static Scenario byName(String name) {
+    Supplier<Scenario> scenario = SCENARIOS.get(name);
+    if (scenario == null) {
+      throw new IllegalArgumentException("Unknown scenario " + name + ", expected one of " + names());
+    }
+
+    return scenario.get();
+  }
+
+  static List<String> names() {
+    return new ArrayList<>(SCENARIOS.keySet());
+  }
+
+  private Scenario players(int players, long joinWindowSeconds) {
+    this.players = players;
+    this.joinWindowMillis = TimeUnit.SECONDS.toMillis(joinWindowSeconds);
+    return this;
+  }
+
+  private Scenario duration(long seconds) {
+    this.durationMillis = TimeUnit.SECONDS.toMillis(seconds);
+    return this;
+  }
+
+  /**
+   * @param sessionMeanSeconds average time a player stays on a lobby
+   * @param patienceMeanSeconds average time a player waits in the queue before leaving, 0 if they never leave
+   */
+  private Scenario sessions(double sessionMeanSeconds, double patienceMeanSeconds) {
+    this.sessionMeanSeconds = sessionMeanSeconds;
+    this.patienceMeanSeconds = patienceMeanSeconds;
+    return this;
+  }
+
+  private Scenario proxies(int proxies) {
+    this.proxies = proxies;
+    return this;
+  }
+
+  private BackendSpec backend(String name, int capacity) {
+    BackendSpec backend = new BackendSpec(name, capacity);
+    this.backends.add(backend);
+    return backend;
+  }
+
+  String getName() {
+    return this.name;
+  }
+
+  String getDescription() {
+    return this.description;
+  }
+
+  List<BackendSpec> getBackends() {
+    return Collections.unmodifiableList(this.backends);
+  }
+
+  int getPlayers() {
+    return this.players;
+  }
+
+  long getJoinWindowMillis() {
+    return this.joinWindowMillis;
+  }
+
+  long getDurationMillis() {
+    return this.durationMillis;
+  }
+
+  double getSessionMeanSeconds() {
+    return this.sessionMeanSeconds;
+  }
+
+  double getPatienceMeanSeconds() {
+    return this.patienceMeanSeconds;
+  }
+
+  /**
+   * @return amount of proxies running the plugin against the same backends
+   */
+  int getProxies() {
+    return this.proxies;
+  }
+
+  static final class BackendSpec {
+
+    private final String name;
+    private final int capacity;
+    private final List<long[]> downWindows = new ArrayList<>();
+    private long pingLatencyMillis = 20;
+    private long connectLatencyMillis = 150;
+    private double failureRate = 0.005;
+    private String group;
+    private long warmupMillis;
+    private int warmupJoinRate;
+    private long crashMillis;
+
+    private BackendSpec(String name, int capacity) {
+      this.name = name;
+      this.capacity = capacity;
+    }
+
+    BackendSpec latency(long pingLatencyMillis, long connectLatencyMillis) {
+      this.pingLatencyMillis = pingLatencyMillis;
+      this.connectLatencyMillis = connectLatencyMillis;
+      return this;
+    }
+
+    /**
+     * @param failureRate probability of a connection attempt failing on an up and not full backend
+     */
+    BackendSpec failureRate(double failureRate) {
+      this.failureRate = failureRate;
+      return this;
+    }
+
+    /**
+     * Puts the backend in a server group. Players join the first backend of a group, spread evenly over the groups.
+     */
+    BackendSpec group(String group) {
+      this.group = group;
+      return this;
+    }
+
+    BackendSpec down(long fromSecond, long toSecond) {
+      this.downWindows.add(new long[] {TimeUnit.SECONDS.toMillis(fromSecond), TimeUnit.SECONDS.toMillis(toSecond)});
+      return this;
+    }
+
+    /**
+     * Alternates between up and down until the given time, starting with the first down period at {@code firstDownSecond}.
+     */
+    BackendSpec flapping(long upSeconds, long downSeconds, long firstDownSecond, long untilMillis) {
+      for (long start = firstDownSecond; TimeUnit.SECONDS.toMillis(start) < untilMillis; start += upSeconds + downSeconds) {
+        this.down(start, start + downSeconds);
+      }
+
+      return this;
+    }
+
+    /**
+     * The backend crashes for {@code crashSeconds} if more than {@code joinRate} players join it within a second
+     * during the first {@code seconds} after it came up.
+     */
+    BackendSpec warmup(long seconds, int joinRate, long crashSeconds) {
+      this.warmupMillis = TimeUnit.SECONDS.toMillis(seconds);
+      this.warmupJoinRate = joinRate;
+      this.crashMillis = TimeUnit.SECONDS.toMillis(crashSeconds);
+      return this;
+    }
+
+    String getName() {
+      return this.name;
+    }
+
+    int getCapacity() {
+      return this.capacity;
+    }
+
+    List<long[]> getDownWindows() {
+      return Collections.unmodifiableList(this.downWindows);
+    }
+
+    long getPingLatencyMillis() {
+      return this.pingLatencyMillis;
+    }
+
+    long getConnectLatencyMillis() {
+      return this.connectLatencyMillis;
+    }
+
+    double getFailureRate() {
+      return this.failureRate;
+    }
+
+    /**
+     * @return milliseconds after coming up during which the backend may be overloaded, 0 if it never is
+     */
+    long getWarmupMillis() {
+      return this.warmupMillis;
+    }
+
+    int getWarmupJoinRate() {
+      return this.warmupJoinRate;
+    }
+
+    long getCrashMillis() {
+      return this.crashMillis;
+    }
+
+    /**
+     * @return name of the server group, or null if the backend is in no group
+     */
+    String getGroup() {
+      return this.group;
+    }
+  }
+}
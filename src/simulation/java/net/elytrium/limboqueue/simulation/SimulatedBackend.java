@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerInfo;
+import com.velocitypowered.api.proxy.server.ServerPing;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import net.kyori.adventure.text.Component;
+
+/**
+ * In-memory backend server: holds players up to its capacity, answers pings after its latency
+ * and is unreachable during its down windows. While warming up after coming up, it crashes if players join too fast.
+ */
+final class SimulatedBackend {
+
+  private final Scenario.BackendSpec spec;
+  private final VirtualTime time;
+  private final InetSocketAddress address;
+  private final RegisteredServer server;
+  private final Set<SimulatedPlayer> players = new LinkedHashSet<>();
+  private final List<long[]> crashWindows = new ArrayList<>();
+  private final ArrayDeque<Long> recentJoins = new ArrayDeque<>();
+  private int peakOnline;
+  private int accepted;
+  private int rejectedFull;
+  private int failedDown;
+  private int failedRandom;
+  private int dropped;
+  private int crashes;
+
+  SimulatedBackend(Scenario.BackendSpec spec, VirtualTime time) {
+    this.spec = spec;
+    this.time = time;
+    this.address = InetSocketAddress.createUnresolved(spec.getName() + ".simulation", 25565);
+    ServerInfo serverInfo = new ServerInfo(spec.getName(), this.address);
+    this.server = Proxies.of(RegisteredServer.class, Map.of(
+        "getServerInfo", args -> serverInfo,
+        "getPlayersConnected", args -> this.getProxyPlayers(),
+        "ping", args -> this.ping()
+    ));
+  }
+
+  boolean isUp() {
+    long now = this.time.elapsed();
+    for (long[] window : this.spec.getDownWindows()) {
+      if (now >= window[0] && now < window[1]) {
+        return false;
+      }
+    }
+
+    for (long[] window : this.crashWindows) {
+      if (now >= window[0] && now < window[1]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return time at which the backend last came up, 0 if it never went down
+   */
+  private long getUpSince(long now) {
+    long upSince = 0;
+    for (long[] window : this.spec.getDownWindows()) {
+      if (window[1] <= now) {
+        upSince = Math.max(upSince, window[1]);
+      }
+    }
+
+    for (long[] window : this.crashWindows) {
+      if (window[1] <= now) {
+        upSince = Math.max(upSince, window[1]);
+      }
+    }
+
+    return upSince;
+  }
+
+  boolean isFull() {
+    return this.players.size() >= this.spec.getCapacity();
+  }
+
+  /**
+   * @return true if the backend is overloaded by this join and must {@link #crashNow() crash}
+   */
+  boolean join(SimulatedPlayer player) {
+    this.players.add(player);
+    this.peakOnline = Math.max(this.peakOnline, this.players.size());
+    this.accepted++;
+
+    long now = this.time.elapsed();
+    if (now - this.getUpSince(now) >= this.spec.getWarmupMillis()) {
+      this.recentJoins.clear();
+      return false;
+    }
+
+    this.recentJoins.addLast(now);
+    while (this.recentJoins.getFirst() <= now - 1000) {
+      this.recentJoins.removeFirst();
+    }
+
+    return this.recentJoins.size() > this.spec.getWarmupJoinRate();
+  }
+
+  /**
+   * Takes the backend down for its crash time, its players must be dropped by the caller.
+   */
+  void crashNow() {
+    long now = this.time.elapsed();
+    this.crashWindows.add(new long[] {now, now + this.spec.getCrashMillis()});
+    this.recentJoins.clear();
+    this.crashes++;
+  }
+
+  void leave(SimulatedPlayer player) {
+    this.players.remove(player);
+  }
+
+  /**
+   * @return players that were online, removed from the backend
+   */
+  List<SimulatedPlayer> dropAll() {
+    List<SimulatedPlayer> online = new ArrayList<>(this.players);
+    this.players.clear();
+    this.dropped += online.size();
+    return online;
+  }
+
+  void recordRejectedFull() {
+    this.rejectedFull++;
+  }
+
+  void recordFailedDown() {
+    this.failedDown++;
+  }
+
+  void recordFailedRandom() {
+    this.failedRandom++;
+  }
+
+  private CompletableFuture<ServerPing> ping() {
+    CompletableFuture<ServerPing> future = new CompletableFuture<>();
+    this.time.schedule(this.spec.getPingLatencyMillis(), () -> {
+      if (this.isUp()) {
+        ServerPing.Players players = new ServerPing.Players(this.players.size(), this.spec.getCapacity(), List.of());
+        future.complete(new ServerPing(new ServerPing.Version(0, "simulation"), players, Component.empty(), null));
+      } else {
+        future.completeExceptionally(new ConnectException("Connection refused"));
+      }
+    });
+    return future;
+  }
+
+  private Collection<Player> getProxyPlayers() {
+    List<Player> proxyPlayers = new ArrayList<>(this.players.size());
+    for (SimulatedPlayer player : this.players) {
+      proxyPlayers.add(player.getPlayer());
+    }
+
+    return proxyPlayers;
+  }
+
+  Scenario.BackendSpec getSpec() {
+    return this.spec;
+  }
+
+  InetSocketAddress getAddress() {
+    return this.address;
+  }
+
+  RegisteredServer getServer() {
+    return this.server;
+  }
+
+  int getOnline() {
+    return this.players.size();
+  }
+
+  int getPeakOnline() {
+    return this.peakOnline;
+  }
+
+  int getAccepted() {
+    return this.accepted;
+  }
+
+  int getRejectedFull() {
+    return this.rejectedFull;
+  }
+
+  int getFailedDown() {
+    return this.failedDown;
+  }
+
+  int getFailedRandom() {
+    return this.failedRandom;
+  }
+
+  int getDropped() {
+    return this.dropped;
+  }
+
+  int getCrashes() {
+    return this.crashes;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.ServerManager;
+import net.elytrium.limboqueue.server.ServerProber;
+import org.slf4j.Logger;
+
+/**
+ * The plugin, probing the simulated backends instead of opening TCP connections, and doing the cluster file I/O
+ * right away on the simulation thread so that runs stay reproducible.
+ */
+final class SimulatedLimboQueue extends LimboQueue {
+
+  private final ServerProber prober;
+
+  SimulatedLimboQueue(Logger logger, ProxyServer server, Path dataDirectory, ServerProber prober) {
+    super(logger, server, dataDirectory);
+    this.prober = prober;
+  }
+
+  @Override
+  protected ServerManager createServerManager() {
+    return new ServerManager(this, this.prober);
+  }
+
+  @Override
+  protected ExecutorService createClusterExecutor() {
+    return Proxies.of(ExecutorService.class, Map.of(
+        "execute", args -> {
+          ((Runnable) args[0]).run();
+          return null;
+        },
+        "awaitTermination", args -> true
+    ));
+  }
+}
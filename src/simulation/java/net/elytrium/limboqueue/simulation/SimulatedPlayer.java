@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import com.velocitypowered.api.event.player.KickedFromServerEvent;
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import net.elytrium.limboapi.api.LimboSessionHandler;
+import net.elytrium.limboapi.api.player.LimboPlayer;
+
+/**
+ * A connected client: its proxy-side {@link Player}, its limbo session while it is queued and the backend it plays on.
+ */
+final class SimulatedPlayer {
+
+  private final int index;
+  private final int proxy;
+  private final UUID uuid;
+  private final String username;
+  private final Player player;
+  private Function<KickedFromServerEvent, Boolean> kickCallback;
+  private LimboPlayer limboPlayer;
+  private LimboSessionHandler limboHandler;
+  private SimulatedBackend backend;
+  private ServerConnection connection;
+  private boolean active = true;
+  private long queuedAt = -1;
+  private int actionbars;
+
+  SimulatedPlayer(Simulation simulation, int index, int proxy) {
+    this.index = index;
+    this.proxy = proxy;
+    this.uuid = new UUID(0x5100_0000_0000_0000L, index);
+    this.username = "player" + index;
+    this.player = Proxies.of(Player.class, Map.of(
+        "getUniqueId", args -> this.uuid,
+        "getUsername", args -> this.username,
+        "isActive", args -> this.active,
+        "getCurrentServer", args -> Optional.ofNullable(this.connection),
+        "sendActionBar", args -> {
+          this.actionbars++;
+          return null;
+        },
+        "createConnectionRequest", args -> this.createConnectionRequest(simulation, (RegisteredServer) args[0])
+    ));
+  }
+
+  private ConnectionRequestBuilder createConnectionRequest(Simulation simulation, RegisteredServer server) {
+    return Proxies.of(ConnectionRequestBuilder.class, Map.of(
+        "connect", args -> simulation.connectFromQueue(this, server),
+        "connectWithIndication", args -> simulation.connectFromQueue(this, server).thenApply(ConnectionRequestBuilder.Result::isSuccessful),
+        "fireAndForget", args -> {
+          simulation.connectFromQueue(this, server);
+          return null;
+        }
+    ));
+  }
+
+  LimboPlayer enterLimbo(Simulation simulation, LimboSessionHandler handler) {
+    this.limboHandler = handler;
+    this.limboPlayer = Proxies.of(LimboPlayer.class, Map.of(
+        "getProxyPlayer", args -> this.player,
+        "disconnect", args -> {
+          simulation.leaveLimbo(this);
+          return null;
+        }
+    ));
+    return this.limboPlayer;
+  }
+
+  /**
+   * Ends the limbo session, if any, the way LimboAPI does when the player leaves it.
+   */
+  void leaveLimbo() {
+    LimboSessionHandler handler = this.limboHandler;
+    this.limboHandler = null;
+    this.limboPlayer = null;
+    if (handler != null) {
+      handler.onDisconnect();
+    }
+  }
+
+  void connect(SimulatedBackend backend) {
+    RegisteredServer server = backend.getServer();
+    this.backend = backend;
+    this.connection = Proxies.of(ServerConnection.class, Map.of(
+        "getServer", args -> server,
+        "getServerInfo", args -> server.getServerInfo(),
+        "getPlayer", args -> this.player
+    ));
+  }
+
+  void disconnectFromBackend() {
+    this.backend = null;
+    this.connection = null;
+  }
+
+  void quit() {
+    this.active = false;
+  }
+
+  int getIndex() {
+    return this.index;
+  }
+
+  /**
+   * @return index of the proxy the player connected to
+   */
+  int getProxy() {
+    return this.proxy;
+  }
+
+  UUID getUuid() {
+    return this.uuid;
+  }
+
+  Player getPlayer() {
+    return this.player;
+  }
+
+  Function<KickedFromServerEvent, Boolean> getKickCallback() {
+    return this.kickCallback;
+  }
+
+  void setKickCallback(Function<KickedFromServerEvent, Boolean> kickCallback) {
+    this.kickCallback = kickCallback;
+  }
+
+  boolean isInLimbo() {
+    return this.limboHandler != null;
+  }
+
+  SimulatedBackend getBackend() {
+    return this.backend;
+  }
+
+  boolean isActive() {
+    return this.active;
+  }
+
+  long getQueuedAt() {
+    return this.queuedAt;
+  }
+
+  void setQueuedAt(long queuedAt) {
+    this.queuedAt = queuedAt;
+  }
+
+  int getActionbars() {
+    return this.actionbars;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.server.ProbeResult;
+import net.elytrium.limboqueue.server.ServerProber;
+
+/**
+ * Answers reachability probes from the state of the simulated backends, on virtual time.
+ */
+final class SimulatedProber implements ServerProber {
+
+  private final VirtualTime time;
+  private final Map<InetSocketAddress, SimulatedBackend> backends = new HashMap<>();
+
+  SimulatedProber(VirtualTime time, Iterable<SimulatedBackend> backends) {
+    this.time = time;
+    for (SimulatedBackend backend : backends) {
+      this.backends.put(backend.getAddress(), backend);
+    }
+  }
+
+  @Override
+  public CompletableFuture<ProbeResult> probe(InetSocketAddress address, long timeoutMillis) {
+    CompletableFuture<ProbeResult> future = new CompletableFuture<>();
+    SimulatedBackend backend = this.backends.get(address);
+    if (backend == null) {
+      future.complete(ProbeResult.unreachable(0, "Unknown host " + address));
+      return future;
+    }
+
+    // A TCP handshake takes about one round trip
+    long latencyMillis = Math.min(backend.getSpec().getPingLatencyMillis(), timeoutMillis);
+    long latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    this.time.schedule(latencyMillis, () -> future.complete(backend.isUp()
+        ? ProbeResult.reachable(latencyNanos)
+        : ProbeResult.unreachable(latencyNanos, "Connection refused")));
+    return future;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+}
@@ -0,0 +1,672 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import com.velocitypowered.api.command.CommandManager;
+import com.velocitypowered.api.event.EventManager;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.KickedFromServerEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.event.player.ServerPreConnectEvent;
+import com.velocitypowered.api.plugin.PluginContainer;
+import com.velocitypowered.api.plugin.PluginManager;
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import com.velocitypowered.api.scheduler.Scheduler;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import net.elytrium.limboapi.api.Limbo;
+import net.elytrium.limboapi.api.LimboFactory;
+import net.elytrium.limboapi.api.LimboSessionHandler;
+import net.elytrium.limboapi.api.chunk.VirtualWorld;
+import net.elytrium.limboapi.api.event.LoginLimboRegisterEvent;
+import net.elytrium.limboapi.api.player.LimboPlayer;
+import net.elytrium.limboqueue.Config;
+import net.elytrium.limboqueue.LimboQueue;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.listener.QueueListener;
+import net.kyori.adventure.text.Component;
+import org.slf4j.Logger;
+
+/**
+ * Runs the real plugin (queue, admitter, server manager, listener and limbo handler) against in-memory
+ * players and backends on virtual time, and reports how the queue coped.
+ *
+ * <p>Usage: {@code Simulation [scenario] [--seed N] [--verbose] [--local] [--no-slow-start]}, see {@link Scenario}
+ * for the available scenarios. Scenarios with several proxies share the queue through the FILE cluster backend,
+ * unless {@code --local} keeps every proxy on its own. {@code --no-slow-start} sends players to recovered lobbies
+ * as fast as possible. The exit code is 1 if anything threw while the simulation was running.
+ */
+public final class Simulation {
+
+  private static final Component FULL_REASON = Component.text("The server is full");
+
+  private final Scenario scenario;
+  private final boolean verbose;
+  private final boolean local;
+  private final boolean slowStart;
+  private final VirtualTime time = new VirtualTime();
+  private final SplittableRandom random;
+  private final List<SimulatedBackend> backends = new ArrayList<>();
+  private final Map<String, SimulatedBackend> backendsByName = new HashMap<>();
+  private final Map<RegisteredServer, SimulatedBackend> backendsByServer = new HashMap<>();
+  private final Map<UUID, SimulatedPlayer> players = new HashMap<>();
+  private final Map<String, List<SimulatedBackend>> groups = new LinkedHashMap<>();
+  private final List<SimulatedBackend> entryBackends = new ArrayList<>();
+  private final List<Long> waits = new ArrayList<>();
+  private final Map<String, List<Long>> groupWaits = new HashMap<>();
+  private final Map<Integer, List<Long>> proxyWaits = new HashMap<>();
+  private final List<Long> admissionTimes = new ArrayList<>();
+  private final Map<String, Integer> events = new HashMap<>();
+  private final Limbo limbo;
+  private final List<LimboQueue> plugins = new ArrayList<>();
+  private final QueueListener[] listeners;
+  private int direct;
+  private int queued;
+  private int admitted;
+  private int abandoned;
+  private int lost;
+  private int dropped;
+  private int connectAttempts;
+  private int connectFailures;
+  private int overshoot;
+  private int peakQueue;
+  private int errors;
+  private int warnings;
+
+  Simulation(Scenario scenario, long seed, boolean verbose, boolean local, boolean slowStart) {
+    this.scenario = scenario;
+    this.verbose = verbose;
+    this.local = local;
+    this.slowStart = slowStart;
+    this.random = new SplittableRandom(seed);
+    this.listeners = new QueueListener[scenario.getProxies()];
+    for (Scenario.BackendSpec spec : scenario.getBackends()) {
+      SimulatedBackend backend = new SimulatedBackend(spec, this.time);
+      this.backends.add(backend);
+      this.backendsByName.put(spec.getName(), backend);
+      this.backendsByServer.put(backend.getServer(), backend);
+      if (spec.getGroup() != null) {
+        this.groups.computeIfAbsent(spec.getGroup(), group -> new ArrayList<>()).add(backend);
+      }
+    }
+
+    if (this.groups.isEmpty()) {
+      this.entryBackends.add(this.backends.get(0));
+    } else {
+      this.groups.values().forEach(group -> this.entryBackends.add(group.get(0)));
+    }
+
+    this.limbo = Proxies.of(Limbo.class, Map.of("spawnPlayer", args -> {
+      this.spawn((Player) args[0], (LimboSessionHandler) args[1]);
+      return null;
+    }));
+  }
+
+  public static void main(String[] args) throws IOException {
+    String scenarioName = "event";
+    long seed = 1;
+    boolean verbose = false;
+    boolean local = false;
+    boolean slowStart = true;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--seed") && i + 1 < args.length) {
+        seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--verbose")) {
+        verbose = true;
+      } else if (args[i].equals("--local")) {
+        local = true;
+      } else if (args[i].equals("--no-slow-start")) {
+        slowStart = false;
+      } else {
+        scenarioName = args[i];
+      }
+    }
+
+    List<Scenario> scenarios = new ArrayList<>();
+    if (scenarioName.equals("all")) {
+      for (String name : Scenario.names()) {
+        scenarios.add(Scenario.byName(name));
+      }
+    } else {
+      scenarios.add(Scenario.byName(scenarioName));
+    }
+
+    int errors = 0;
+    for (Scenario scenario : scenarios) {
+      Simulation simulation = new Simulation(scenario, seed, verbose, local, slowStart);
+      long start = System.nanoTime();
+      simulation.run();
+      simulation.printReport(System.out, System.nanoTime() - start);
+      errors += simulation.errors;
+    }
+
+    if (errors > 0) {
+      System.exit(1);
+    }
+  }
+
+  void run() throws IOException {
+    Path dataDirectory = Files.createTempDirectory("limboqueue-simulation");
+    QueueClock.setSource(this.time);
+    try {
+      this.configure(dataDirectory.resolve("config.yml").toFile());
+      // The proxies share the data directory, so the config and the cluster directory too.
+      for (int proxy = 0; proxy < this.listeners.length; proxy++) {
+        LimboQueue plugin = new SimulatedLimboQueue(this.createLogger(), this.createProxyServer(proxy), dataDirectory,
+            new SimulatedProber(this.time, this.backends));
+        plugin.onProxyInitialization(null);
+        this.plugins.add(plugin);
+      }
+
+      this.scheduleJoins();
+      for (SimulatedBackend backend : this.backends) {
+        for (long[] window : backend.getSpec().getDownWindows()) {
+          this.time.schedule(window[0], () -> this.crash(backend));
+        }
+      }
+
+      // A reload under load must keep the queue, the probe state and the listener as they are.
+      this.time.schedule(this.scenario.getDurationMillis() / 2, () -> this.plugins.forEach(LimboQueue::reload));
+      this.time.runUntil(this.scenario.getDurationMillis());
+      this.plugins.forEach(plugin -> plugin.onProxyShutdown(null));
+    } finally {
+      QueueClock.setSource(null);
+      try (Stream<Path> files = Files.walk(dataDirectory)) {
+        files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+    }
+  }
+
+  private void configure(File configFile) {
+    Config.IMP.reload(configFile);
+    StringJoiner servers = new StringJoiner(",");
+    for (SimulatedBackend backend : this.backends) {
+      servers.add(backend.getSpec().getName());
+    }
+
+    Config.IMP.MAIN.SERVER = this.backends.get(0).getSpec().getName();
+    Config.IMP.MAIN.SERVERS = servers.toString();
+    StringJoiner groups = new StringJoiner(";");
+    this.groups.forEach((group, members) -> {
+      StringJoiner memberNames = new StringJoiner(",");
+      members.forEach(backend -> memberNames.add(backend.getSpec().getName()));
+      groups.add(group + ":" + memberNames);
+    });
+    Config.IMP.MAIN.GROUPS = groups.toString();
+    Config.IMP.MAIN.KICK_MESSAGE = "The server is full";
+    Config.IMP.MAIN.METRICS.ENABLED = false;
+    // The journal writes on its own thread in real time, it has nothing to restore in a fresh data directory anyway.
+    Config.IMP.MAIN.JOURNAL.ENABLED = false;
+    Config.IMP.MAIN.CLUSTER.BACKEND = this.listeners.length > 1 && !this.local ? "FILE" : "LOCAL";
+    if (!this.slowStart) {
+      Config.IMP.MAIN.SLOW_START.WINDOW = 0;
+    }
+    Config.IMP.save(configFile);
+  }
+
+  /**
+   * With several proxies, half of the players join the first one and the others share the other half.
+   */
+  private void scheduleJoins() {
+    long window = Math.max(1, this.scenario.getJoinWindowMillis());
+    int proxies = this.listeners.length;
+    for (int i = 0; i < this.scenario.getPlayers(); i++) {
+      SimulatedPlayer player = new SimulatedPlayer(this, i, proxies == 1 || i % 2 == 0 ? 0 : 1 + i / 2 % (proxies - 1));
+      this.players.put(player.getUuid(), player);
+      this.time.schedule(this.random.nextLong(window), () -> this.join(player));
+    }
+  }
+
+  /**
+   * Login, then the first connection to the first server of the try list, like Velocity does.
+   * With server groups, players are spread evenly over the first servers of the groups.
+   */
+  private void join(SimulatedPlayer player) {
+    QueueListener listener = this.listeners[player.getProxy()];
+    LoginLimboRegisterEvent registerEvent = new LoginLimboRegisterEvent(player.getPlayer());
+    listener.onLoginLimboRegister(registerEvent);
+    player.setKickCallback(registerEvent.getOnKickCallback());
+
+    SimulatedBackend initial = this.entryBackends.get(player.getIndex() % this.entryBackends.size());
+    ServerPreConnectEvent preConnectEvent = new ServerPreConnectEvent(player.getPlayer(), initial.getServer());
+    listener.onServerPreConnect(preConnectEvent);
+    if (!preConnectEvent.getResult().isAllowed()) {
+      // The listener sent the player to the queue
+      return;
+    }
+
+    this.time.schedule(initial.getSpec().getConnectLatencyMillis(), () -> {
+      if (!initial.isUp()) {
+        initial.recordFailedDown();
+        this.lose(player);
+      } else if (initial.isFull()) {
+        initial.recordRejectedFull();
+        this.kick(player, initial);
+      } else {
+        this.direct++;
+        this.enterBackend(player, initial);
+      }
+    });
+  }
+
+  private void kick(SimulatedPlayer player, SimulatedBackend backend) {
+    KickedFromServerEvent event = new KickedFromServerEvent(player.getPlayer(), backend.getServer(), FULL_REASON, true,
+        KickedFromServerEvent.DisconnectPlayer.create(FULL_REASON));
+    if (player.getKickCallback() == null || !Boolean.TRUE.equals(player.getKickCallback().apply(event))) {
+      this.lose(player);
+    }
+  }
+
+  private void spawn(Player proxyPlayer, LimboSessionHandler handler) {
+    SimulatedPlayer player = this.players.get(proxyPlayer.getUniqueId());
+    LimboPlayer limboPlayer = player.enterLimbo(this, handler);
+    if (player.getQueuedAt() < 0) {
+      player.setQueuedAt(this.time.elapsed());
+      this.queued++;
+      if (this.scenario.getPatienceMeanSeconds() > 0) {
+        this.time.schedule(this.exponentialMillis(this.scenario.getPatienceMeanSeconds()), () -> this.abandon(player));
+      }
+    }
+
+    handler.onSpawn(this.limbo, limboPlayer);
+    this.peakQueue = Math.max(this.peakQueue, this.getQueuedCount());
+  }
+
+  void leaveLimbo(SimulatedPlayer player) {
+    player.leaveLimbo();
+  }
+
+  private void abandon(SimulatedPlayer player) {
+    if (player.isActive() && player.isInLimbo() && player.getBackend() == null) {
+      this.abandoned++;
+      player.quit();
+      player.leaveLimbo();
+    }
+  }
+
+  /**
+   * Connection requested by the admitter for a queued player.
+   */
+  CompletableFuture<ConnectionRequestBuilder.Result> connectFromQueue(SimulatedPlayer player, RegisteredServer server) {
+    this.connectAttempts++;
+    SimulatedBackend backend = this.backendsByServer.get(server);
+    CompletableFuture<ConnectionRequestBuilder.Result> future = new CompletableFuture<>();
+    this.time.schedule(backend.getSpec().getConnectLatencyMillis(), () -> {
+      if (!player.isActive()) {
+        future.complete(this.result(server, ConnectionRequestBuilder.Status.CONNECTION_CANCELLED, null));
+      } else if (!backend.isUp()) {
+        this.connectFailures++;
+        backend.recordFailedDown();
+        future.completeExceptionally(new ConnectException("Connection refused"));
+      } else if (backend.isFull()) {
+        this.connectFailures++;
+        this.overshoot++;
+        backend.recordRejectedFull();
+        future.complete(this.result(server, ConnectionRequestBuilder.Status.SERVER_DISCONNECTED, FULL_REASON));
+      } else if (this.random.nextDouble() < backend.getSpec().getFailureRate()) {
+        this.connectFailures++;
+        backend.recordFailedRandom();
+        future.completeExceptionally(new IOException("Connection reset by peer"));
+      } else {
+        this.admitted++;
+        this.waits.add(this.time.elapsed() - player.getQueuedAt());
+        if (backend.getSpec().getGroup() != null) {
+          this.groupWaits.computeIfAbsent(backend.getSpec().getGroup(), group -> new ArrayList<>()).add(this.time.elapsed() - player.getQueuedAt());
+        }
+        this.proxyWaits.computeIfAbsent(player.getProxy(), proxy -> new ArrayList<>()).add(this.time.elapsed() - player.getQueuedAt());
+        this.admissionTimes.add(this.time.elapsed());
+        this.enterBackend(player, backend);
+        future.complete(this.result(server, ConnectionRequestBuilder.Status.SUCCESS, null));
+      }
+    });
+    return future;
+  }
+
+  private ConnectionRequestBuilder.Result result(RegisteredServer server, ConnectionRequestBuilder.Status status, Component reason) {
+    return Proxies.of(ConnectionRequestBuilder.Result.class, Map.of(
+        "isSuccessful", args -> status == ConnectionRequestBuilder.Status.SUCCESS,
+        "getStatus", args -> status,
+        "getReasonComponent", args -> Optional.ofNullable(reason),
+        "getAttemptedConnection", args -> server
+    ));
+  }
+
+  private void enterBackend(SimulatedPlayer player, SimulatedBackend backend) {
+    player.connect(backend);
+    if (backend.join(player)) {
+      // After the connection is over, like a backend falling over under the load it just took.
+      backend.crashNow();
+      this.time.schedule(0, () -> this.crash(backend));
+    }
+    this.listeners[player.getProxy()].onServerConnected(new ServerConnectedEvent(player.getPlayer(), backend.getServer(), null));
+    this.time.schedule(this.exponentialMillis(this.scenario.getSessionMeanSeconds()), () -> {
+      if (player.getBackend() == backend) {
+        backend.leave(player);
+        this.disconnect(player);
+      }
+    });
+  }
+
+  /**
+   * The backend goes down: everyone on it is disconnected.
+   */
+  private void crash(SimulatedBackend backend) {
+    for (SimulatedPlayer player : backend.dropAll()) {
+      this.dropped++;
+      this.disconnect(player);
+    }
+  }
+
+  private void disconnect(SimulatedPlayer player) {
+    this.listeners[player.getProxy()].onDisconnect(new DisconnectEvent(player.getPlayer(), DisconnectEvent.LoginStatus.SUCCESSFUL_LOGIN));
+    player.disconnectFromBackend();
+    player.quit();
+  }
+
+  private void lose(SimulatedPlayer player) {
+    this.lost++;
+    player.quit();
+    player.leaveLimbo();
+  }
+
+  private long exponentialMillis(double meanSeconds) {
+    return (long) (-Math.log(1.0 - this.random.nextDouble()) * meanSeconds * 1000);
+  }
+
+  private int getQueuedCount() {
+    int queued = 0;
+    for (LimboQueue plugin : this.plugins) {
+      queued += plugin.getQueuedCount();
+    }
+
+    return queued;
+  }
+
+  private ProxyServer createProxyServer(int proxy) {
+    LimboFactory factory = Proxies.of(LimboFactory.class, Map.of(
+        "createVirtualWorld", args -> Proxies.of(VirtualWorld.class, Map.of()),
+        "createLimbo", args -> this.limbo
+    ));
+    PluginContainer container = Proxies.of(PluginContainer.class, Map.of("getInstance", args -> Optional.of(factory)));
+    PluginManager pluginManager = Proxies.of(PluginManager.class, Map.of("getPlugin", args -> Optional.of(container)));
+    EventManager eventManager = Proxies.of(EventManager.class, Map.of(
+        "register", args -> {
+          if (args[1] instanceof QueueListener) {
+            if (this.listeners[proxy] != null) {
+              // Every extra registration handles each event once more
+              ++this.errors;
+            }
+            this.listeners[proxy] = (QueueListener) args[1];
+          }
+          return null;
+        },
+        "fire", args -> CompletableFuture.completedFuture(args[0]),
+        "fireAndForget", args -> this.events.merge(args[0].getClass().getSimpleName(), 1, Integer::sum)
+    ));
+    Scheduler scheduler = Proxies.of(Scheduler.class, Map.of("buildTask", args -> this.buildTask((Runnable) args[1])));
+    CommandManager commandManager = Proxies.of(CommandManager.class, Map.of());
+    return Proxies.of(ProxyServer.class, Map.of(
+        "getPluginManager", args -> pluginManager,
+        "getEventManager", args -> eventManager,
+        "getScheduler", args -> scheduler,
+        "getCommandManager", args -> commandManager,
+        "getServer", args -> {
+          SimulatedBackend backend = this.backendsByName.get((String) args[0]);
+          return backend == null ? Optional.empty() : Optional.of(backend.getServer());
+        },
+        "getPlayer", args -> {
+          SimulatedPlayer player = this.players.get((UUID) args[0]);
+          return player == null || !player.isActive() ? Optional.empty() : Optional.of(player.getPlayer());
+        }
+    ));
+  }
+
+  /**
+   * Scheduler task on virtual time. Like Velocity, a task without delay runs right after the current one
+   * and exceptions are logged instead of stopping the scheduler.
+   */
+  private Scheduler.TaskBuilder buildTask(Runnable action) {
+    long[] delayAndRepeat = new long[2];
+    Scheduler.TaskBuilder[] builder = new Scheduler.TaskBuilder[1];
+    builder[0] = Proxies.of(Scheduler.TaskBuilder.class, Map.of(
+        "delay", args -> {
+          delayAndRepeat[0] = toMillis(args);
+          return builder[0];
+        },
+        "repeat", args -> {
+          delayAndRepeat[1] = toMillis(args);
+          return builder[0];
+        },
+        "clearDelay", args -> {
+          delayAndRepeat[0] = 0;
+          return builder[0];
+        },
+        "clearRepeat", args -> {
+          delayAndRepeat[1] = 0;
+          return builder[0];
+        },
+        "schedule", args -> this.schedule(action, delayAndRepeat[0], delayAndRepeat[1])
+    ));
+    return builder[0];
+  }
+
+  private ScheduledTask schedule(Runnable action, long delayMillis, long repeatMillis) {
+    boolean[] cancelled = new boolean[1];
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        if (cancelled[0]) {
+          return;
+        }
+
+        try {
+          action.run();
+        } catch (Exception e) {
+          Simulation.this.errors++;
+          e.printStackTrace();
+        }
+
+        if (repeatMillis > 0 && !cancelled[0]) {
+          Simulation.this.time.schedule(repeatMillis, this);
+        }
+      }
+    };
+    this.time.schedule(delayMillis, task);
+    return Proxies.of(ScheduledTask.class, Map.of("cancel", args -> {
+      cancelled[0] = true;
+      return null;
+    }));
+  }
+
+  private static long toMillis(Object[] args) {
+    if (args.length == 2) {
+      return ((TimeUnit) args[1]).toMillis((Long) args[0]);
+    }
+
+    return ((Duration) args[0]).toMillis();
+  }
+
+  private Logger createLogger() {
+    return Proxies.of(Logger.class, Map.of(
+        "error", args -> {
+          this.errors++;
+          this.log("ERROR", args);
+          return null;
+        },
+        "warn", args -> {
+          this.warnings++;
+          if (this.verbose) {
+            this.log("WARN", args);
+          }
+          return null;
+        },
+        "info", args -> {
+          if (this.verbose) {
+            this.log("INFO", args);
+          }
+          return null;
+        },
+        "isInfoEnabled", args -> this.verbose,
+        "isWarnEnabled", args -> true,
+        "isErrorEnabled", args -> true
+    ));
+  }
+
+  private void log(String level, Object[] args) {
+    if (args.length == 0 || !(args[0] instanceof String)) {
+      return;
+    }
+
+    List<Object> parameters = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      if (args[i] instanceof Object[]) {
+        parameters.addAll(Arrays.asList((Object[]) args[i]));
+      } else {
+        parameters.add(args[i]);
+      }
+    }
+
+    StringBuilder message = new StringBuilder();
+    String format = (String) args[0];
+    int parameter = 0;
+    int start = 0;
+    int index;
+    while ((index = format.indexOf("{}", start)) >= 0) {
+      message.append(format, start, index).append(parameter < parameters.size() ? parameters.get(parameter++) : "{}");
+      start = index + 2;
+    }
+    message.append(format.substring(start));
+
+    System.err.printf(Locale.ROOT, "[%8.3f] %s %s%n", this.time.elapsed() / 1000.0, level, message);
+    if (parameter < parameters.size() && parameters.get(parameters.size() - 1) instanceof Throwable) {
+      ((Throwable) parameters.get(parameters.size() - 1)).printStackTrace();
+    }
+  }
+
+  void printReport(PrintStream out, long realNanos) {
+    long[] sortedWaits = this.waits.stream().mapToLong(Long::longValue).sorted().toArray();
+    int stillQueued = this.getQueuedCount();
+    int actionbars = 0;
+    for (SimulatedPlayer player : this.players.values()) {
+      actionbars += player.getActionbars();
+    }
+
+    out.printf(Locale.ROOT, "=== %s: %s%n", this.scenario.getName(), this.scenario.getDescription());
+    if (this.listeners.length > 1) {
+      out.printf(Locale.ROOT, "Proxies: %d, %s%n", this.listeners.length, this.local ? "each on its own" : "sharing the queue through the FILE backend");
+    }
+    out.printf(Locale.ROOT, "Simulated %.0f s in %.2f s%n", this.scenario.getDurationMillis() / 1000.0, realNanos / 1e9);
+    out.printf(Locale.ROOT, "Players: %d joined, %d connected directly, %d queued, %d admitted from the queue, %d still queued%n",
+        this.players.size(), this.direct, this.queued, this.admitted, stillQueued);
+    out.printf(Locale.ROOT, "         %d left the queue, %d could not connect, %d dropped by crashing lobbies, peak queue %d%n",
+        this.abandoned, this.lost, this.dropped, this.peakQueue);
+    out.printf(Locale.ROOT, "Throughput: %.1f players/s on average while admitting, %d players/s at peak%n",
+        this.averageThroughput(), this.peakThroughput());
+    out.printf(Locale.ROOT, "Wait time: p50 %s, p90 %s, p99 %s, max %s%n",
+        formatMillis(percentile(sortedWaits, 0.5)), formatMillis(percentile(sortedWaits, 0.9)),
+        formatMillis(percentile(sortedWaits, 0.99)), formatMillis(sortedWaits.length == 0 ? -1 : sortedWaits[sortedWaits.length - 1]));
+    for (String group : this.groups.keySet()) {
+      long[] sortedGroupWaits = this.groupWaits.getOrDefault(group, List.of()).stream().mapToLong(Long::longValue).sorted().toArray();
+      int groupQueued = 0;
+      for (LimboQueue plugin : this.plugins) {
+        groupQueued += plugin.getGroup(group).getQueue().size();
+      }
+      out.printf(Locale.ROOT, "  group %s: %d admitted, %d still queued, p50 %s, p99 %s%n", group, sortedGroupWaits.length,
+          groupQueued, formatMillis(percentile(sortedGroupWaits, 0.5)), formatMillis(percentile(sortedGroupWaits, 0.99)));
+    }
+    for (int proxy = 0; this.listeners.length > 1 && proxy < this.listeners.length; proxy++) {
+      long[] sortedProxyWaits = this.proxyWaits.getOrDefault(proxy, List.of()).stream().mapToLong(Long::longValue).sorted().toArray();
+      out.printf(Locale.ROOT, "  proxy %d: %d admitted, %d still queued, p50 %s, p99 %s%n", proxy, sortedProxyWaits.length,
+          this.plugins.get(proxy).getQueuedCount(), formatMillis(percentile(sortedProxyWaits, 0.5)),
+          formatMillis(percentile(sortedProxyWaits, 0.99)));
+    }
+    out.printf(Locale.ROOT, "Connections from the queue: %d attempts, %d failed, %d overshoot (sent to a full lobby)%n",
+        this.connectAttempts, this.connectFailures, this.overshoot);
+    out.printf(Locale.ROOT, "Actionbar packets: %d, log warnings: %d, errors: %d%n", actionbars, this.warnings, this.errors);
+    out.printf(Locale.ROOT, "Queue events: %d joins, %d advances, %d admissions, %d leaves%n", this.events.getOrDefault("QueueJoinEvent", 0),
+        this.events.getOrDefault("QueueAdvanceEvent", 0), this.events.getOrDefault("QueueAdmitEvent", 0), this.events.getOrDefault("QueueLeaveEvent", 0));
+    out.printf(Locale.ROOT, "%-10s %8s %8s %8s %8s %8s %8s %8s %8s %8s%n",
+        "Lobby", "Capacity", "Online", "Peak", "Accepted", "Full", "Down", "Failed", "Dropped", "Crashes");
+    for (SimulatedBackend backend : this.backends) {
+      out.printf(Locale.ROOT, "%-10s %8d %8d %8d %8d %8d %8d %8d %8d %8d%n", backend.getSpec().getName(), backend.getSpec().getCapacity(),
+          backend.getOnline(), backend.getPeakOnline(), backend.getAccepted(), backend.getRejectedFull(), backend.getFailedDown(),
+          backend.getFailedRandom(), backend.getDropped(), backend.getCrashes());
+    }
+    out.println();
+  }
+
+  private double averageThroughput() {
+    if (this.admissionTimes.size() < 2) {
+      return this.admissionTimes.size();
+    }
+
+    long span = this.admissionTimes.get(this.admissionTimes.size() - 1) - this.admissionTimes.get(0);
+    return span == 0 ? this.admissionTimes.size() : this.admissionTimes.size() * 1000.0 / span;
+  }
+
+  private int peakThroughput() {
+    Map<Long, Integer> perSecond = new HashMap<>();
+    int peak = 0;
+    for (long admissionTime : this.admissionTimes) {
+      peak = Math.max(peak, perSecond.merge(admissionTime / 1000, 1, Integer::sum));
+    }
+
+    return peak;
+  }
+
+  private static long percentile(long[] sorted, double quantile) {
+    if (sorted.length == 0) {
+      return -1;
+    }
+
+    int rank = (int) Math.ceil(quantile * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  private static String formatMillis(long millis) {
+    if (millis < 0) {
+      return "-";
+    }
+
+    return String.format(Locale.ROOT, "%.1f s", millis / 1000.0);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.simulation;
+
+import java.util.PriorityQueue;
+import net.elytrium.limboqueue.QueueClock;
+
+/**
+ * Virtual clock and event loop of a simulation. Time only moves when the next event is run,
+ * so minutes of simulated traffic take as long as the events themselves.
+ */
+final class VirtualTime implements QueueClock.Source {
+
+  private static final long EPOCH_MILLIS = 1_700_000_000_000L;
+
+  private final PriorityQueue<Event> events = new PriorityQueue<>();
+  private long now;
+  private long sequence;
+
+  @Override
+  public long millis() {
+    return EPOCH_MILLIS + this.now;
+  }
+
+  @Override
+  public long nanos() {
+    return this.now * 1_000_000L;
+  }
+
+  /**
+   * @return milliseconds since the start of the simulation
+   */
+  long elapsed() {
+    return this.now;
+  }
+
+  /**
+   * Runs the action after the given delay. Actions scheduled for the same instant run in the order they were scheduled.
+   */
+  Event schedule(long delayMillis, Runnable action) {
+    Event event = new Event(this.now + Math.max(0, delayMillis), this.sequence++, action);
+    this.events.add(event);
+    return event;
+  }
+
+  /**
+   * Runs every event due until the given time, including the ones scheduled meanwhile, then moves the clock there.
+   */
+  void runUntil(long endMillis) {
+    Event event;
+    while ((event = this.events.peek()) != null && event.time <= endMillis) {
+      this.events.poll();
+      if (!event.cancelled) {
+        this.now = event.time;
+        event.action.run();
+      }
+    }
+
+    this.now = Math.max(this.now, endMillis);
+  }
+
+  static final class Event implements Comparable<Event> {
+
+    private final long time;
+    private final long sequence;
+    private final Runnable action;
+    private boolean cancelled;
+
+    private Event(long time, long sequence, Runnable action) {
+      this.time = time;
+      this.sequence = sequence;
+      this.action = action;
+    }
+
+    void cancel() {
+      this.cancelled = true;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+      int result = Long.compare(this.time, other.time);
+      return result != 0 ? result : Long.compare(this.sequence, other.sequence);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue;
+
+import com.velocitypowered.api.plugin.PluginContainer;
+import com.velocitypowered.api.plugin.PluginManager;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.scheduler.Scheduler;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import net.elytrium.limboapi.api.LimboFactory;
+import net.elytrium.limboapi.api.player.LimboPlayer;
+import org.slf4j.Logger;
+
+/**
+ * Minimal stand-ins for the proxy and LimboAPI objects, so the plugin classes can be tested outside of Velocity.
+ * Methods without an answer return the object itself if they return its type, like the methods of a builder,
+ * and null, false, zero or an empty Optional otherwise.
+ */
+public final class Fakes {
+
+  private Fakes() {
+  }
+
+  public static QueuePlayerInfo player(UUID uuid) {
+    return player(uuid, 0, QueueClock.millis());
+  }
+
+  public static QueuePlayerInfo player(UUID uuid, int tier) {
+    return player(uuid, tier, QueueClock.millis());
+  }
+
+  public static QueuePlayerInfo player(UUID uuid, int tier, long joinTime) {
+    Player player = proxy(Player.class, Map.of(
+        "getUniqueId", args -> uuid,
+        "getUsername", args -> uuid.toString().substring(0, 16),
+        "isActive", args -> true
+    ));
+    LimboPlayer limboPlayer = proxy(LimboPlayer.class, Map.of("getProxyPlayer", args -> player));
+    return new QueuePlayerInfo(limboPlayer, joinTime, tier, QueueSettings.DEFAULT_GROUP);
+  }
+
+  /**
+   * Creates the plugin without initializing it: no config file is read and nothing is registered on the proxy.
+   * Its settings are the defaults of {@link Config}, written to the data directory, and its scheduler runs every task
+   * right away on the calling thread, whatever its delay.
+   */
+  public static LimboQueue plugin(Path dataDirectory) {
+    LimboFactory factory = proxy(LimboFactory.class, Map.of());
+    PluginContainer container = proxy(PluginContainer.class, Map.of("getInstance", args -> Optional.of(factory)));
+    PluginManager pluginManager = proxy(PluginManager.class, Map.of("getPlugin", args -> Optional.of(container)));
+    Scheduler scheduler = proxy(Scheduler.class, Map.of(
+        "buildTask", args -> proxy(Scheduler.TaskBuilder.class, Map.of("schedule", scheduleArgs -> {
+          ((Runnable) args[1]).run();
+          return null;
+        }))
+    ));
+    ProxyServer proxyServer = proxy(ProxyServer.class, Map.of(
+        "getPluginManager", args -> pluginManager,
+        "getScheduler", args -> scheduler
+    ));
+    Config.IMP.reload(dataDirectory.resolve("config.yml").toFile());
+    Logger logger = logger();
+    LimboQueue plugin = new LimboQueue(logger, proxyServer, dataDirectory);
+    try {
+      Field settings = LimboQueue.class.getDeclaredField("settings");
+      settings.setAccessible(true);
+      settings.set(plugin, new QueueSettings(Config.IMP, logger));
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalStateException("Failed to set the settings", e);
+    }
+
+    return plugin;
+  }
+
+  public static Logger logger() {
+    return proxy(Logger.class, Map.of());
+  }
+
+  /**
+   * A UUID that reads back as {@code id} in assertion messages.
+   */
+  public static UUID uuid(int id) {
+    return new UUID(0, id);
+  }
+
+  static <T> T proxy(Class<T> type, Map<String, Answer> answers) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        default:
+          break;
+      }
+
+      Answer answer = answers.get(method.getName());
+      if (answer != null) {
+        return answer.answer(args);
+      }
+
+      if (method.getReturnType() == type) {
+        return proxy;
+      }
+
+      return defaultValue(method.getReturnType());
+    }));
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == Optional.class) {
+      return Optional.empty();
+    } else if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type == float.class) {
+      return 0.0F;
+    } else if (type == double.class) {
+      return 0.0;
+    } else if (type == short.class) {
+      return (short) 0;
+    } else if (type == byte.class) {
+      return (byte) 0;
+    } else if (type == char.class) {
+      return '\0';
+    } else {
+      return null;
+    }
+  }
+
+  interface Answer {
+
+    Object answer(Object[] args);
+  }
+}
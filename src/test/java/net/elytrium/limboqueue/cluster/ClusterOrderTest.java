@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import net.elytrium.limboqueue.Fakes;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import org.junit.jupiter.api.Test;
+
+class ClusterOrderTest {
+
+  private static final int[] WEIGHTS = {1, 3};
+
+  /**
+   * Local players joined at 10 and 40 in tier 0 and at 20 and 50 in tier 1, the other proxies queue players that
+   * joined at 30 in tier 0 and at 15 and 60 in tier 1. With ties going to the higher tier and the lower tier getting
+   * one turn for every three of the higher one, the cluster order is:
+   * remote 15 (tier 1), local 10 (tier 0), local 20 (tier 1), local 50 (tier 1), remote 60 (tier 1),
+   * remote 30 (tier 0), local 40 (tier 0).
+   */
+  private static final List<QueuePlayerInfo> LOCAL = List.of(
+      player(1, 1, 20),
+      player(2, 0, 10),
+      player(3, 1, 50),
+      player(4, 0, 40)
+  );
+  private static final RemoteQueue REMOTE = RemoteQueue.merge(List.of(
+      new long[][] {{30}, {15}},
+      new long[][] {{}, {60}}
+  ));
+
+  @Test
+  void localShareFollowsTheClusterOrder() {
+    int[] expected = {0, 0, 1, 2, 3, 3, 3, 4, 4};
+    for (int capacity = 0; capacity < expected.length; capacity++) {
+      assertEquals(expected[capacity], ClusterOrder.getLocalShare(LOCAL, REMOTE, WEIGHTS, capacity), "local share of " + capacity + " slots");
+    }
+
+    assertEquals(4, ClusterOrder.getLocalShare(LOCAL, REMOTE, WEIGHTS, 100));
+  }
+
+  @Test
+  void positionsAreTheClusterPositionsOfTheLocalPlayers() {
+    assertArrayEquals(new int[] {3, 2, 4, 7}, ClusterOrder.getPositions(LOCAL, REMOTE, WEIGHTS));
+  }
+
+  @Test
+  void aloneTheLocalQueueIsTheClusterOrder() {
+    assertEquals(3, ClusterOrder.getLocalShare(LOCAL, RemoteQueue.EMPTY, WEIGHTS, 3));
+    assertEquals(4, ClusterOrder.getLocalShare(LOCAL, RemoteQueue.EMPTY, WEIGHTS, 10));
+    assertArrayEquals(new int[] {1, 2, 3, 4}, ClusterOrder.getPositions(LOCAL, RemoteQueue.EMPTY, WEIGHTS));
+  }
+
+  @Test
+  void localPlayerGoesFirstOnAnEqualJoinTime() {
+    List<QueuePlayerInfo> local = List.of(player(1, 0, 10));
+    RemoteQueue remote = RemoteQueue.merge(List.<long[][]>of(new long[][] {{10}}));
+
+    assertArrayEquals(new int[] {1}, ClusterOrder.getPositions(local, remote, new int[] {1}));
+  }
+
+  @Test
+  void tiersUnknownToThisProxyAreLeftOut() {
+    List<QueuePlayerInfo> local = List.of(player(1, 0, 10), player(2, 3, 20));
+    RemoteQueue remote = RemoteQueue.merge(List.<long[][]>of(new long[][] {{5}, {}, {1}}));
+
+    // The player of tier 3 is counted in the highest tier known here, the remote player of tier 2 is left out.
+    assertArrayEquals(new int[] {3, 1}, ClusterOrder.getPositions(local, remote, new int[] {1, 1}));
+  }
+
+  @Test
+  void joinTimesArePublishedPerTierInQueueOrder() {
+    long[][] joinTimes = ClusterOrder.getJoinTimes(LOCAL);
+
+    assertEquals(2, joinTimes.length);
+    assertArrayEquals(new long[] {10, 40}, joinTimes[0]);
+    assertArrayEquals(new long[] {20, 50}, joinTimes[1]);
+  }
+
+  private static QueuePlayerInfo player(int id, int tier, long joinTime) {
+    return Fakes.player(Fakes.uuid(id), tier, joinTime);
+  }
+}
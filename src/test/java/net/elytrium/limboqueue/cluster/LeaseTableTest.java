@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class LeaseTableTest {
+
+  private static final String[] SERVERS = {"lobby", "survival"};
+
+  @Test
+  void grantsTheFreeSlotsLeftByTheOtherProxies() {
+    LeaseTable table = new LeaseTable();
+    assertArrayEquals(new int[] {3, 2}, table.grant("a", SERVERS, new int[] {5, 2}, new int[] {3, 4}, 100));
+    assertArrayEquals(new int[] {2, 0}, table.grant("b", SERVERS, new int[] {5, 2}, new int[] {4, 4}, 100));
+    // Own leases are not counted against the proxy, the free slots it sees already leave them out.
+    assertArrayEquals(new int[] {3, 2}, table.grant("a", SERVERS, new int[] {5, 2}, new int[] {4, 4}, 100));
+  }
+
+  @Test
+  void leaseHoldsItsSlotsUntilItExpires() {
+    LeaseTable table = new LeaseTable();
+    table.grant("a", SERVERS, new int[] {4, 0}, new int[] {4, 0}, 100);
+
+    table.removeExpired(99);
+    assertArrayEquals(new int[] {0, 0}, table.grant("b", SERVERS, new int[] {4, 0}, new int[] {4, 0}, 200));
+
+    table.removeExpired(100);
+    assertArrayEquals(new int[] {4, 0}, table.grant("b", SERVERS, new int[] {4, 0}, new int[] {4, 0}, 200));
+  }
+
+  @Test
+  void renewedLeaseOutlivesThePreviousOne() {
+    LeaseTable table = new LeaseTable();
+    table.grant("a", SERVERS, new int[] {4, 0}, new int[] {1, 0}, 100);
+    table.grant("a", SERVERS, new int[] {4, 0}, new int[] {2, 0}, 150);
+
+    table.removeExpired(100);
+    assertArrayEquals(new int[] {2, 0}, table.grant("b", SERVERS, new int[] {4, 0}, new int[] {4, 0}, 100));
+
+    table.removeExpired(150);
+    assertArrayEquals(new int[] {4, 0}, table.grant("c", SERVERS, new int[] {4, 0}, new int[] {4, 0}, 200));
+  }
+
+  @Test
+  void releaseTakesTheUnusedSlotsOffTheLatestLeases() {
+    LeaseTable table = new LeaseTable();
+    table.grant("a", SERVERS, new int[] {6, 0}, new int[] {2, 0}, 100);
+    SlotLease slotLease = new SlotLease(SERVERS, table.grant("a", SERVERS, new int[] {6, 0}, new int[] {3, 0}, 150));
+    slotLease.use("lobby");
+    table.release("a", slotLease);
+
+    // Three slots are still leased: the used one of the latest lease and both of the first one.
+    assertArrayEquals(new int[] {3, 0}, table.grant("b", SERVERS, new int[] {6, 0}, new int[] {6, 0}, 200));
+    table.removeProxy("b");
+
+    // Only the used slot of the latest lease is left once the first one expired.
+    table.removeExpired(100);
+    assertArrayEquals(new int[] {5, 0}, table.grant("b", SERVERS, new int[] {6, 0}, new int[] {6, 0}, 200));
+  }
+
+  @Test
+  void removedProxyLeavesNoLease() {
+    LeaseTable table = new LeaseTable();
+    table.grant("a", SERVERS, new int[] {4, 4}, new int[] {4, 4}, 100);
+    table.removeProxy("a");
+    assertArrayEquals(new int[] {4, 4}, table.grant("b", SERVERS, new int[] {4, 4}, new int[] {4, 4}, 100));
+  }
+
+  @Test
+  void leasesSurviveAWriteAndRead() throws IOException {
+    LeaseTable table = new LeaseTable();
+    table.grant("a", SERVERS, new int[] {4, 4}, new int[] {1, 3}, 100);
+    table.grant("b", SERVERS, new int[] {4, 4}, new int[] {2, 0}, 150);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    table.write(new DataOutputStream(bytes));
+    LeaseTable read = LeaseTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertArrayEquals(new int[] {1, 1}, read.grant("c", SERVERS, new int[] {4, 4}, new int[] {4, 4}, 200));
+    read.removeProxy("c");
+    read.removeExpired(100);
+    assertArrayEquals(new int[] {2, 4}, read.grant("c", SERVERS, new int[] {4, 4}, new int[] {4, 4}, 200));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.listener;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import net.elytrium.commons.kyori.serialization.Serializers;
+import net.elytrium.limboqueue.Fakes;
+import net.kyori.adventure.text.Component;
+import org.junit.jupiter.api.Test;
+
+class KickReasonMatcherTest {
+
+  @Test
+  void literalMatchesAnywhereInASingleComponent() {
+    KickReasonMatcher matcher = compile("Server is full");
+
+    assertTrue(matcher.matches(Component.text("Server is full")));
+    assertTrue(matcher.matches(Component.text("Sorry! Server is full, try again later")));
+    assertFalse(matcher.matches(Component.text("Server is fine")));
+    assertFalse(matcher.matches(Component.text("server is full")));
+  }
+
+  @Test
+  void literalMatchesAcrossComponents() {
+    KickReasonMatcher matcher = compile("Server is full");
+
+    assertTrue(matcher.matches(Component.text("Server ").append(Component.text("is ")).append(Component.text("full!"))));
+    assertTrue(matcher.matches(Component.text("Ser").append(Component.text("ver is ").append(Component.text("fu").append(Component.text("ll"))))));
+    assertTrue(matcher.matches(Component.text("").append(Component.text("Server is")).append(Component.text(" full"))));
+    assertFalse(matcher.matches(Component.text("Server is ").append(Component.text("not full"))));
+  }
+
+  @Test
+  void overlappingLiteralsFollowTheFailureLinks() {
+    KickReasonMatcher matcher = compile("queue full", "ueue down", "server restarting");
+
+    assertTrue(matcher.matches(Component.text("The queue down").append(Component.text("stream is gone"))));
+    assertTrue(matcher.matches(Component.text("server queue ").append(Component.text("full"))));
+    assertTrue(matcher.matches(Component.text("server server restarting")));
+    assertFalse(matcher.matches(Component.text("queue ful")));
+  }
+
+  @Test
+  void translatableReasonMatchesItsKey() {
+    KickReasonMatcher matcher = compile("translation:multiplayer.disconnect.server_full");
+
+    assertTrue(matcher.matches(Component.translatable("multiplayer.disconnect.server_full")));
+    assertTrue(matcher.matches(Component.text("Disconnected: ").append(Component.translatable("multiplayer.disconnect.server_full"))));
+    assertFalse(matcher.matches(Component.translatable("multiplayer.disconnect.kicked")));
+    assertFalse(matcher.matches(Component.text("multiplayer.disconnect.server_full")));
+  }
+
+  @Test
+  void literalMatchesTheArgumentsOfATranslatableReason() {
+    KickReasonMatcher matcher = compile("Server is full");
+
+    assertTrue(matcher.matches(Component.translatable("disconnect.genericReason", List.of(Component.text("Server is full")))));
+    assertTrue(matcher.matches(Component.translatable("disconnect.genericReason", List.of(Component.text("Server ").append(Component.text("is full"))))));
+    // The translated text around the arguments is unknown, so a literal can't span them.
+    assertFalse(matcher.matches(Component.text("Server is ").append(Component.translatable("chat.type.text")).append(Component.text("full"))));
+  }
+
+  @Test
+  void regexMatchesTheWholeText() {
+    KickReasonMatcher matcher = compile("regex:full \\(\\d+/\\d+\\)");
+
+    assertTrue(matcher.matches(Component.text("Server full ").append(Component.text("(100/100)"))));
+    assertTrue(matcher.matches(Component.translatable("disconnect.genericReason", List.of(Component.text("full (1/1)")))));
+    assertFalse(matcher.matches(Component.text("Server full (many)")));
+  }
+
+  @Test
+  void invalidRegexIsIgnored() {
+    KickReasonMatcher matcher = compile("regex:full (", "Server is full");
+
+    assertTrue(matcher.matches(Component.text("Server is full")));
+    assertFalse(matcher.matches(Component.text("full (")));
+  }
+
+  @Test
+  void formattedLiteralMatchesThePlainReason() {
+    KickReasonMatcher legacy = KickReasonMatcher.compile(List.of("&cServer is &lfull"), Serializers.LEGACY_AMPERSAND.getSerializer(), Fakes.logger());
+    KickReasonMatcher miniMessage = KickReasonMatcher.compile(
+        List.of("<red>Server is full</red>"), Serializers.MINIMESSAGE.getSerializer(), Fakes.logger()
+    );
+
+    assertTrue(legacy.matches(Component.text("Server is ").append(Component.text("full"))));
+    assertTrue(miniMessage.matches(Component.text("Server is full")));
+  }
+
+  private static KickReasonMatcher compile(String... patterns) {
+    return KickReasonMatcher.compile(List.of(patterns), Serializers.LEGACY_AMPERSAND.getSerializer(), Fakes.logger());
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class CommandRingTest {
+
+  private static final int PRODUCERS = 4;
+  private static final int PER_PRODUCER = 20_000;
+
+  @Test
+  void capacityIsRoundedUpToAPowerOfTwo() {
+    assertEquals(2, new CommandRing<>(1).capacity());
+    assertEquals(8, new CommandRing<>(5).capacity());
+    assertEquals(8, new CommandRing<>(8).capacity());
+    assertEquals(1024, new CommandRing<>(1000).capacity());
+  }
+
+  @Test
+  void offerFailsWhileFullAndTheRingWrapsAround() {
+    CommandRing<Integer> ring = new CommandRing<>(4);
+    List<Integer> drained = new ArrayList<>();
+    int next = 0;
+    // Every lap leaves the head one cell further, so the elements end up in every cell of the ring.
+    for (int lap = 0; lap < 10; lap++) {
+      while (ring.offer(next)) {
+        next++;
+      }
+
+      assertFalse(ring.isEmpty());
+      assertEquals(3, ring.drain(drained::add, 3));
+    }
+
+    ring.drain(drained::add, Integer.MAX_VALUE);
+    assertTrue(ring.isEmpty());
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < next; i++) {
+      expected.add(i);
+    }
+
+    assertEquals(expected, drained);
+  }
+
+  @Test
+  void drainStopsAtTheLimit() {
+    CommandRing<Integer> ring = new CommandRing<>(8);
+    for (int i = 0; i < 5; i++) {
+      ring.offer(i);
+    }
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(2, ring.drain(drained::add, 2));
+    assertEquals(List.of(0, 1), drained);
+    assertEquals(3, ring.drain(drained::add, 8));
+    assertEquals(0, ring.drain(drained::add, 8));
+    assertEquals(List.of(0, 1, 2, 3, 4), drained);
+  }
+
+  /**
+   * A small ring makes the producers run into the full ring and the tickets wrap around many times.
+   * Nothing may be lost or duplicated, and the elements of each producer must come out in the order it offered them.
+   */
+  @Test
+  void concurrentProducersKeepTheirOrder() throws InterruptedException {
+    CommandRing<Long> ring = new CommandRing<>(16);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Thread> producers = new ArrayList<>();
+    for (int producer = 0; producer < PRODUCERS; producer++) {
+      long id = producer;
+      Thread thread = new Thread(() -> {
+        for (long i = 0; i < PER_PRODUCER; i++) {
+          Long element = id << 32 | i;
+          while (!ring.offer(element)) {
+            Thread.yield();
+          }
+        }
+      }, "CommandRingTest Producer " + producer);
+      thread.setDaemon(true);
+      thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+      producers.add(thread);
+    }
+
+    producers.forEach(Thread::start);
+    long[] next = new long[PRODUCERS];
+    int[] received = new int[1];
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while (received[0] < PRODUCERS * PER_PRODUCER && System.nanoTime() < deadline) {
+      int drained = ring.drain(element -> {
+        int producer = (int) (element >>> 32);
+        long sequence = element & 0xFFFFFFFFL;
+        assertEquals(next[producer], sequence, "element of producer " + producer);
+        next[producer]++;
+        received[0]++;
+      }, 8);
+      if (drained == 0) {
+        Thread.yield();
+      }
+    }
+
+    for (Thread thread : producers) {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    assertNull(failure.get());
+    assertEquals(PRODUCERS * PER_PRODUCER, received[0]);
+    for (int producer = 0; producer < PRODUCERS; producer++) {
+      assertEquals(PER_PRODUCER, next[producer]);
+    }
+
+    assertTrue(ring.isEmpty());
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import net.elytrium.limboqueue.Fakes;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import org.junit.jupiter.api.Test;
+
+class PlayerQueueTest {
+
+  @Test
+  void positionsFollowAdmissionOrder() {
+    PlayerQueue queue = new PlayerQueue();
+    for (int i = 1; i <= 5; i++) {
+      assertTrue(queue.add(Fakes.player(Fakes.uuid(i))));
+    }
+
+    for (int i = 1; i <= 5; i++) {
+      assertEquals(i, queue.getPosition(Fakes.uuid(i)));
+    }
+
+    assertEquals(-1, queue.getPosition(Fakes.uuid(6)));
+  }
+
+  @Test
+  void positionsShiftAfterRemove() {
+    PlayerQueue queue = new PlayerQueue();
+    for (int i = 1; i <= 5; i++) {
+      queue.add(Fakes.player(Fakes.uuid(i)));
+    }
+
+    assertEquals(Fakes.uuid(3), queue.remove(Fakes.uuid(3)).getUuid());
+    assertEquals(Fakes.uuid(1), queue.poll().getUuid());
+
+    assertEquals(1, queue.getPosition(Fakes.uuid(2)));
+    assertEquals(2, queue.getPosition(Fakes.uuid(4)));
+    assertEquals(3, queue.getPosition(Fakes.uuid(5)));
+    assertEquals(-1, queue.getPosition(Fakes.uuid(3)));
+    assertEquals(3, queue.size());
+  }
+
+  @Test
+  void addingAgainKeepsThePositionAndIgnoresTheStaleInfo() {
+    PlayerQueue queue = new PlayerQueue();
+    QueuePlayerInfo stale = Fakes.player(Fakes.uuid(1));
+    queue.add(stale);
+    queue.add(Fakes.player(Fakes.uuid(2)));
+    QueuePlayerInfo fresh = Fakes.player(Fakes.uuid(1));
+
+    assertFalse(queue.add(fresh));
+    assertFalse(queue.remove(stale));
+    assertSame(fresh, queue.get(Fakes.uuid(1)));
+    assertEquals(1, queue.getPosition(Fakes.uuid(1)));
+  }
+
+  @Test
+  void reservedPlayerGetsTheirPositionBack() {
+    PlayerQueue queue = new PlayerQueue();
+    for (int i = 1; i <= 3; i++) {
+      queue.add(Fakes.player(Fakes.uuid(i)));
+    }
+
+    assertEquals(Fakes.uuid(1), queue.pollAndReserve().getUuid());
+    assertTrue(queue.isReserved(Fakes.uuid(1)));
+    assertEquals(1, queue.getPosition(Fakes.uuid(2)));
+    assertEquals(2, queue.size());
+
+    queue.add(Fakes.player(Fakes.uuid(4)));
+    assertTrue(queue.add(Fakes.player(Fakes.uuid(1))));
+
+    assertFalse(queue.isReserved(Fakes.uuid(1)));
+    assertEquals(1, queue.getPosition(Fakes.uuid(1)));
+    assertEquals(2, queue.getPosition(Fakes.uuid(2)));
+    assertEquals(4, queue.getPosition(Fakes.uuid(4)));
+  }
+
+  @Test
+  void reservationIsNotCountedUntilThePlayerIsAdded() {
+    PlayerQueue queue = new PlayerQueue();
+    queue.add(Fakes.player(Fakes.uuid(1)));
+    assertTrue(queue.reserve(Fakes.uuid(2)));
+    assertFalse(queue.reserve(Fakes.uuid(2)));
+    assertFalse(queue.reserve(Fakes.uuid(1)));
+    queue.add(Fakes.player(Fakes.uuid(3)));
+
+    assertEquals(2, queue.getPosition(Fakes.uuid(3)));
+    assertEquals(2, queue.size());
+    assertEquals(1, queue.getReservedCount());
+
+    assertTrue(queue.cancelReservation(Fakes.uuid(2)));
+    assertFalse(queue.cancelReservation(Fakes.uuid(2)));
+    queue.add(Fakes.player(Fakes.uuid(2)));
+    assertEquals(3, queue.getPosition(Fakes.uuid(2)));
+  }
+
+  @Test
+  void reservedPlayerAddedToAnEmptyQueueIsTheHead() {
+    PlayerQueue queue = new PlayerQueue();
+    queue.reserve(Fakes.uuid(1));
+    queue.add(Fakes.player(Fakes.uuid(2)));
+    queue.poll();
+    queue.add(Fakes.player(Fakes.uuid(1)));
+
+    assertEquals(Fakes.uuid(1), queue.peek().getUuid());
+    assertEquals(1, queue.getPosition(Fakes.uuid(1)));
+  }
+
+  /**
+   * Runs random operations against a plain list and compares every position, which goes through several
+   * compactions of the slots, with reserved slots among the ones that are moved.
+   */
+  @Test
+  void positionsMatchAListAcrossCompactions() {
+    Random random = new Random(42);
+    PlayerQueue queue = new PlayerQueue();
+    List<Entry> model = new ArrayList<>();
+    int nextId = 1;
+    for (int step = 0; step < 5_000; step++) {
+      int operation = random.nextInt(10);
+      if (operation < 4 || model.isEmpty()) {
+        UUID uuid = Fakes.uuid(nextId++);
+        queue.add(Fakes.player(uuid));
+        model.add(new Entry(uuid, true));
+      } else if (operation == 4) {
+        UUID uuid = Fakes.uuid(nextId++);
+        queue.reserve(uuid);
+        model.add(new Entry(uuid, false));
+      } else if (operation == 5) {
+        Entry entry = model.get(random.nextInt(model.size()));
+        if (!entry.queued) {
+          queue.add(Fakes.player(entry.uuid));
+          entry.queued = true;
+        }
+      } else if (operation == 6) {
+        Entry entry = model.get(random.nextInt(model.size()));
+        if (entry.queued) {
+          assertEquals(entry.uuid, queue.remove(entry.uuid).getUuid());
+        } else {
+          assertTrue(queue.cancelReservation(entry.uuid));
+        }
+
+        model.remove(entry);
+      } else if (operation == 7) {
+        Entry head = firstQueued(model);
+        QueuePlayerInfo polled = queue.poll();
+        if (head == null) {
+          assertNull(polled);
+        } else {
+          assertEquals(head.uuid, polled.getUuid());
+          model.remove(head);
+        }
+      } else {
+        Entry head = firstQueued(model);
+        QueuePlayerInfo polled = queue.pollAndReserve();
+        if (head == null) {
+          assertNull(polled);
+        } else {
+          assertEquals(head.uuid, polled.getUuid());
+          head.queued = false;
+        }
+      }
+
+      assertMatches(model, queue, step);
+    }
+  }
+
+  private static Entry firstQueued(List<Entry> model) {
+    for (Entry entry : model) {
+      if (entry.queued) {
+        return entry;
+      }
+    }
+
+    return null;
+  }
+
+  private static void assertMatches(List<Entry> model, PlayerQueue queue, int step) {
+    List<UUID> expected = new ArrayList<>();
+    int reserved = 0;
+    for (Entry entry : model) {
+      if (entry.queued) {
+        expected.add(entry.uuid);
+        assertEquals(expected.size(), queue.getPosition(entry.uuid), () -> "position of " + entry.uuid + " at step " + step);
+      } else {
+        reserved++;
+        assertTrue(queue.isReserved(entry.uuid), () -> entry.uuid + " is reserved at step " + step);
+      }
+    }
+
+    List<UUID> actual = new ArrayList<>();
+    queue.snapshot().forEach(playerInfo -> actual.add(playerInfo.getUuid()));
+    assertEquals(expected, actual, () -> "snapshot at step " + step);
+    assertEquals(expected.size(), queue.size());
+    assertEquals(reserved, queue.getReservedCount());
+  }
+
+  private static final class Entry {
+
+    private final UUID uuid;
+    private boolean queued;
+
+    private Entry(UUID uuid, boolean queued) {
+      this.uuid = uuid;
+      this.queued = queued;
+    }
+  }
+}
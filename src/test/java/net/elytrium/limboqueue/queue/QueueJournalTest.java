@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboqueue.Fakes;
+import net.elytrium.limboqueue.QueueClock;
+import net.elytrium.limboqueue.QueueSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueueJournalTest {
+
+  // Layout of the segments, see QueueJournal.
+  private static final int HEADER_SIZE = 32;
+  private static final int RECORD_SIZE = 32;
+  private static final String FIRST_SEGMENT = "queue-0.journal";
+  private static final long RESTORE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+  @TempDir
+  Path directory;
+
+  private QueueGroup group;
+  private long joinTime;
+
+  @BeforeEach
+  void createGroup() {
+    this.group = new QueueGroup(Fakes.plugin(this.directory), QueueSettings.DEFAULT_GROUP);
+    this.joinTime = QueueClock.millis() - TimeUnit.MINUTES.toMillis(1);
+  }
+
+  @Test
+  void restoresQueuedAndRecentlyLeftPlayersInTheirOrder() throws IOException {
+    try (QueueJournal journal = this.open(true)) {
+      for (int i = 1; i <= 4; i++) {
+        journal.recordJoin(Fakes.uuid(i), this.joinTime + i, QueueSettings.DEFAULT_GROUP, 0);
+      }
+
+      journal.recordLeave(Fakes.uuid(2));
+      journal.recordAdmit(Fakes.uuid(3));
+    }
+
+    try (QueueJournal journal = this.open(true)) {
+      assertEquals(3, journal.getRestoredCount());
+      assertEquals(this.joinTime + 1, journal.takeRestoredJoinTime(Fakes.uuid(1), QueueSettings.DEFAULT_GROUP));
+      assertEquals(this.joinTime + 2, journal.takeRestoredJoinTime(Fakes.uuid(2), QueueSettings.DEFAULT_GROUP));
+      assertEquals(-1, journal.takeRestoredJoinTime(Fakes.uuid(3), QueueSettings.DEFAULT_GROUP));
+    }
+
+    // Players coming back take their reserved place, in the recorded order and ahead of the new ones.
+    TieredQueue queue = this.group.getQueue();
+    queue.add(Fakes.player(Fakes.uuid(5)));
+    queue.add(Fakes.player(Fakes.uuid(4)));
+    queue.add(Fakes.player(Fakes.uuid(2)));
+    queue.add(Fakes.player(Fakes.uuid(1)));
+    assertEquals(1, queue.getPosition(Fakes.uuid(1)));
+    assertEquals(2, queue.getPosition(Fakes.uuid(2)));
+    assertEquals(3, queue.getPosition(Fakes.uuid(4)));
+    assertEquals(4, queue.getPosition(Fakes.uuid(5)));
+  }
+
+  @Test
+  void replayStopsAtATruncatedRecord() throws IOException {
+    this.recordJoins(4);
+    try (FileChannel channel = FileChannel.open(this.directory.resolve(FIRST_SEGMENT), StandardOpenOption.WRITE)) {
+      // The proxy went down while the third record was written.
+      channel.truncate(HEADER_SIZE + 2 * RECORD_SIZE + RECORD_SIZE / 2);
+    }
+
+    this.assertRestored(2);
+  }
+
+  @Test
+  void replayStopsAtACorruptedRecord() throws IOException {
+    this.recordJoins(4);
+    try (FileChannel channel = FileChannel.open(this.directory.resolve(FIRST_SEGMENT), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // Flips a bit of the join time of the second record, the records after it can't be trusted either.
+      long offset = HEADER_SIZE + RECORD_SIZE + 24;
+      ByteBuffer time = ByteBuffer.allocate(1);
+      channel.read(time, offset);
+      time.put(0, (byte) (time.get(0) ^ 1)).rewind();
+      channel.write(time, offset);
+    }
+
+    this.assertRestored(1);
+  }
+
+  @Test
+  void reopeningWithoutReplayRecordsTheCurrentQueue() throws IOException {
+    this.recordJoins(3);
+    this.group.getQueue().add(Fakes.player(Fakes.uuid(10), 0, this.joinTime));
+    try (QueueJournal journal = this.open(false)) {
+      assertEquals(0, journal.getRestoredCount());
+      journal.recordQueue(this.group);
+    }
+
+    this.group.getQueue().clear();
+    try (QueueJournal journal = this.open(true)) {
+      assertEquals(1, journal.getRestoredCount());
+      assertEquals(this.joinTime, journal.takeRestoredJoinTime(Fakes.uuid(10), QueueSettings.DEFAULT_GROUP));
+      assertEquals(-1, journal.takeRestoredJoinTime(Fakes.uuid(1), QueueSettings.DEFAULT_GROUP));
+    }
+  }
+
+  private QueueJournal open(boolean replay) throws IOException {
+    return new QueueJournal(this.directory, key -> this.group, Fakes.logger(), RESTORE_TIMEOUT, 1, replay);
+  }
+
+  private void recordJoins(int count) throws IOException {
+    try (QueueJournal journal = this.open(true)) {
+      for (int i = 1; i <= count; i++) {
+        journal.recordJoin(Fakes.uuid(i), this.joinTime + i, QueueSettings.DEFAULT_GROUP, 0);
+      }
+    }
+  }
+
+  /**
+   * Checks that only the players of the first records got their place back, the others join as new players.
+   */
+  private void assertRestored(int count) throws IOException {
+    try (QueueJournal journal = this.open(true)) {
+      assertEquals(count, journal.getRestoredCount());
+      for (int i = 1; i <= 4; i++) {
+        UUID uuid = Fakes.uuid(i);
+        assertEquals(i <= count ? this.joinTime + i : -1, journal.takeRestoredJoinTime(uuid, QueueSettings.DEFAULT_GROUP), "join time of " + uuid);
+      }
+    }
+
+    TieredQueue queue = this.group.getQueue();
+    for (int i = 4; i >= 1; i--) {
+      queue.add(Fakes.player(Fakes.uuid(i)));
+    }
+
+    for (int i = 1; i <= count; i++) {
+      assertEquals(i, queue.getPosition(Fakes.uuid(i)));
+    }
+
+    assertEquals(count + 1, queue.getPosition(Fakes.uuid(4)));
+  }
+}
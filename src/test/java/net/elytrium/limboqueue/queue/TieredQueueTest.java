@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import net.elytrium.limboqueue.Fakes;
+import net.elytrium.limboqueue.QueuePlayerInfo;
+import org.junit.jupiter.api.Test;
+
+class TieredQueueTest {
+
+  private static final int[][] WEIGHTS = {
+      {1},
+      {1, 1},
+      {1, 3},
+      {3, 1},
+      {2, 5, 10},
+      {1, 1, 7, 3}
+  };
+
+  @Test
+  void tiersShareTheAdmissionsByWeight() {
+    TieredQueue queue = new TieredQueue();
+    queue.setWeights(new int[] {1, 3});
+    for (int i = 1; i <= 4; i++) {
+      queue.add(Fakes.player(Fakes.uuid(i), 0));
+      queue.add(Fakes.player(Fakes.uuid(10 + i), 1));
+    }
+
+    // Ties go to the higher tier, then the lower tier gets one admission for every three of the higher one.
+    List<UUID> expected = List.of(
+        Fakes.uuid(11), Fakes.uuid(1), Fakes.uuid(12), Fakes.uuid(13), Fakes.uuid(14), Fakes.uuid(2), Fakes.uuid(3), Fakes.uuid(4)
+    );
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(i + 1, queue.getPosition(expected.get(i)));
+    }
+
+    assertEquals(expected, drain(queue));
+  }
+
+  @Test
+  void joinPositionIsThePositionOfTheNextPlayer() {
+    TieredQueue queue = new TieredQueue();
+    queue.setWeights(new int[] {1, 3});
+    for (int i = 1; i <= 6; i++) {
+      queue.add(Fakes.player(Fakes.uuid(i), i % 2));
+    }
+
+    for (int tier = 0; tier < 2; tier++) {
+      int joinPosition = queue.getJoinPosition(tier);
+      UUID uuid = Fakes.uuid(100 + tier);
+      queue.add(Fakes.player(uuid, tier));
+      assertEquals(joinPosition, queue.getPosition(uuid), "join position of tier " + tier);
+      queue.remove(uuid);
+    }
+  }
+
+  /**
+   * Positions are computed from the passes without walking the queue, so they are checked against the snapshot,
+   * which merges the tiers one player at a time, and against the order in which the players are actually polled.
+   */
+  @Test
+  void positionsMatchTheSnapshotAndThePollOrder() {
+    Random random = new Random(7);
+    for (int[] weights : WEIGHTS) {
+      TieredQueue queue = new TieredQueue();
+      queue.setWeights(weights);
+      List<UUID> queued = new ArrayList<>();
+      int nextId = 1;
+      for (int step = 0; step < 2_000; step++) {
+        int operation = random.nextInt(10);
+        if (operation < 5 || queued.isEmpty()) {
+          UUID uuid = Fakes.uuid(nextId++);
+          queue.add(Fakes.player(uuid, random.nextInt(weights.length + 1)));
+          queued.add(uuid);
+        } else if (operation < 7) {
+          UUID uuid = queued.remove(random.nextInt(queued.size()));
+          assertEquals(uuid, queue.remove(uuid).getUuid());
+        } else {
+          List<QueuePlayerInfo> snapshot = queue.snapshot();
+          QueuePlayerInfo polled = queue.poll();
+          assertEquals(snapshot.get(0).getUuid(), polled.getUuid(), () -> "polled player with weights " + Arrays.toString(weights));
+          queued.remove(polled.getUuid());
+        }
+
+        assertPositionsMatchSnapshot(queue, weights, step);
+      }
+
+      List<UUID> expected = new ArrayList<>();
+      queue.snapshot().forEach(playerInfo -> expected.add(playerInfo.getUuid()));
+      assertEquals(expected, drain(queue), () -> "poll order with weights " + Arrays.toString(weights));
+      assertNull(queue.poll());
+    }
+  }
+
+  @Test
+  void changingTierCountsAsARemoval() {
+    TieredQueue queue = new TieredQueue();
+    queue.setWeights(new int[] {1, 3});
+    queue.add(Fakes.player(Fakes.uuid(1), 0));
+    queue.add(Fakes.player(Fakes.uuid(2), 0));
+
+    assertFalse(queue.add(Fakes.player(Fakes.uuid(1), 1)));
+    assertEquals(1, queue.getRemovedCount());
+    assertEquals(1, queue.size(0));
+    assertEquals(1, queue.size(1));
+
+    assertFalse(queue.add(Fakes.player(Fakes.uuid(1), 1)));
+    assertEquals(1, queue.getRemovedCount());
+  }
+
+  @Test
+  void changingTheTierCountKeepsThePositionsConsistent() {
+    TieredQueue queue = new TieredQueue();
+    queue.setWeights(new int[] {1, 2});
+    for (int i = 1; i <= 20; i++) {
+      queue.add(Fakes.player(Fakes.uuid(i), i % 3));
+    }
+
+    queue.poll();
+    queue.poll();
+    int[] weights = {1, 2, 4};
+    queue.setWeights(weights);
+
+    assertEquals(18, queue.size());
+    assertPositionsMatchSnapshot(queue, weights, 0);
+  }
+
+  private static void assertPositionsMatchSnapshot(TieredQueue queue, int[] weights, int step) {
+    List<QueuePlayerInfo> snapshot = queue.snapshot();
+    assertEquals(queue.size(), snapshot.size());
+    for (int i = 0; i < snapshot.size(); i++) {
+      int index = i;
+      assertEquals(i + 1, queue.getPosition(snapshot.get(i).getUuid()),
+          () -> "position of " + snapshot.get(index).getUuid() + " at step " + step + " with weights " + Arrays.toString(weights));
+    }
+  }
+
+  private static List<UUID> drain(TieredQueue queue) {
+    List<UUID> polled = new ArrayList<>();
+    for (QueuePlayerInfo playerInfo = queue.poll(); playerInfo != null; playerInfo = queue.poll()) {
+      polled.add(playerInfo.getUuid());
+    }
+
+    return polled;
+  }
+}
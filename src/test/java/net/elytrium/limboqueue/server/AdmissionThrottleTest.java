@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class AdmissionThrottleTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final double INITIAL_RATE = 2;
+  private static final double FULL_RATE = 32;
+  // The rate doubles every 2.5 seconds, from 2 to 32 players per second in 10 seconds.
+  private static final AdmissionThrottle.Settings SETTINGS = new AdmissionThrottle.Settings(10 * SECOND, INITIAL_RATE, FULL_RATE, 2);
+  private static final double DELTA = 1e-6;
+
+  @Test
+  void healthyBackendIsNotThrottled() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    for (int i = 0; i < 1_000; i++) {
+      assertTrue(throttle.tryAcquire(0));
+    }
+
+    assertFalse(throttle.isThrottled());
+    assertEquals(Integer.MAX_VALUE, throttle.getAvailable(0));
+    assertEquals(0, throttle.getDelayNanos(0));
+  }
+
+  @Test
+  void rampSendsTheFirstPlayerThenWaitsForTheInitialRate() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.startRamp(0);
+
+    assertTrue(throttle.tryAcquire(0));
+    assertFalse(throttle.tryAcquire(0));
+    assertEquals(INITIAL_RATE, throttle.getRate(), DELTA);
+    assertEquals(SECOND / 2, throttle.getDelayNanos(0));
+  }
+
+  @Test
+  void rateGrowsExponentiallyUntilTheBucketIsLifted() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.startRamp(0);
+
+    throttle.getAvailable(SECOND * 5 / 2);
+    assertEquals(4, throttle.getRate(), DELTA);
+    throttle.getAvailable(5 * SECOND);
+    assertEquals(8, throttle.getRate(), DELTA);
+    // Never more than a second worth of players at once.
+    assertEquals(8, throttle.getAvailable(5 * SECOND));
+
+    throttle.getAvailable(10 * SECOND);
+    assertFalse(throttle.isThrottled());
+    assertEquals(Integer.MAX_VALUE, throttle.getAvailable(10 * SECOND));
+  }
+
+  @Test
+  void tokensAreTakenAndRefunded() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.startRamp(0);
+    int available = throttle.getAvailable(5 * SECOND);
+    for (int i = 0; i < available; i++) {
+      assertTrue(throttle.tryAcquire(5 * SECOND));
+    }
+
+    assertFalse(throttle.tryAcquire(5 * SECOND));
+    throttle.refund();
+    assertTrue(throttle.tryAcquire(5 * SECOND));
+  }
+
+  @Test
+  void congestionHalvesTheRateOncePerSecond() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.startRamp(0);
+    throttle.getAvailable(5 * SECOND);
+
+    throttle.onCongestion(5 * SECOND);
+    assertEquals(4, throttle.getRate(), DELTA);
+    // Failures of the connections sent at the previous rate don't cut it again.
+    throttle.onCongestion(5 * SECOND + SECOND - 1);
+    assertEquals(4, throttle.getRate(), DELTA);
+
+    throttle.onCongestion(6 * SECOND);
+    assertEquals(4 * Math.pow(2, 0.4) / 2, throttle.getRate(), DELTA);
+  }
+
+  @Test
+  void congestionNeverGoesUnderTheInitialRate() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.startRamp(0);
+    throttle.onCongestion(0);
+
+    assertEquals(INITIAL_RATE, throttle.getRate(), DELTA);
+  }
+
+  @Test
+  void congestionOfAHealthyBackendStartsFromHalfTheFullRate() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.onCongestion(0);
+
+    assertTrue(throttle.isThrottled());
+    assertEquals(FULL_RATE / 2, throttle.getRate(), DELTA);
+    assertTrue(throttle.tryAcquire(0));
+    assertFalse(throttle.tryAcquire(0));
+  }
+
+  @Test
+  void slowPingCountsAsCongestion() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.onPing(20 * MILLISECOND, 0);
+    throttle.onPing(35 * MILLISECOND, 0);
+    assertFalse(throttle.isThrottled());
+
+    throttle.onPing(60 * MILLISECOND, 0);
+    assertTrue(throttle.isThrottled());
+  }
+
+  @Test
+  void pingJitterOfANearbyBackendIsIgnored() {
+    AdmissionThrottle throttle = new AdmissionThrottle(SETTINGS);
+    throttle.onPing(MILLISECOND, 0);
+    throttle.onPing(4 * MILLISECOND, 0);
+
+    assertFalse(throttle.isThrottled());
+  }
+
+  @Test
+  void disabledSettingsNeverThrottle() {
+    AdmissionThrottle throttle = new AdmissionThrottle(new AdmissionThrottle.Settings(0, INITIAL_RATE, FULL_RATE, 2));
+    throttle.startRamp(0);
+    throttle.onCongestion(0);
+
+    assertFalse(throttle.isThrottled());
+
+    throttle = new AdmissionThrottle(SETTINGS);
+    throttle.startRamp(0);
+    throttle.setSettings(new AdmissionThrottle.Settings(0, INITIAL_RATE, FULL_RATE, 2));
+    assertTrue(throttle.tryAcquire(0));
+    assertTrue(throttle.tryAcquire(0));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private static final int FAILURE_THRESHOLD = 3;
+  private static final long BASE_BACKOFF = 1_000;
+  private static final long MAX_BACKOFF = 8_000;
+  private static final long PROBE_INTERVAL = 100;
+  private static final long STABLE_PROBE_INTERVAL = 1_600;
+  private static final CircuitBreaker.Settings SETTINGS =
+      new CircuitBreaker.Settings(FAILURE_THRESHOLD, BASE_BACKOFF, MAX_BACKOFF, PROBE_INTERVAL, STABLE_PROBE_INTERVAL);
+
+  @Test
+  void opensAfterTheFailureThreshold() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    assertFalse(breaker.recordFailure(0));
+    assertFalse(breaker.recordFailure(0));
+    assertTrue(breaker.isClosed());
+
+    assertTrue(breaker.recordFailure(0));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.recordFailure(0));
+  }
+
+  @Test
+  void successResetsTheFailuresInARow() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    breaker.recordFailure(0);
+    breaker.recordFailure(0);
+    breaker.recordSuccess(0);
+    breaker.recordFailure(0);
+    breaker.recordFailure(0);
+
+    assertTrue(breaker.isClosed());
+  }
+
+  @Test
+  void goesHalfOpenOnceTheBackoffExpired() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    breaker.trip(1_000);
+    long retryAt = breaker.getRetryAt();
+    assertBackoff(1_000, retryAt, BASE_BACKOFF);
+
+    assertFalse(breaker.shouldProbe(retryAt - 1));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertTrue(breaker.shouldProbe(retryAt));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertTrue(breaker.shouldProbe(retryAt + 1));
+  }
+
+  @Test
+  void halfOpenSuccessCloses() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    breaker.trip(0);
+    breaker.shouldProbe(breaker.getRetryAt());
+
+    assertTrue(breaker.recordSuccess(breaker.getRetryAt()));
+    assertTrue(breaker.isClosed());
+    assertFalse(breaker.recordFailure(breaker.getRetryAt()));
+  }
+
+  @Test
+  void halfOpenFailureReopensWithADoubledBackoffUpToTheMax() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    long now = 0;
+    breaker.trip(now);
+    long backoff = BASE_BACKOFF;
+    for (int i = 0; i < 6; i++) {
+      assertBackoff(now, breaker.getRetryAt(), backoff);
+      now = breaker.getRetryAt();
+      assertTrue(breaker.shouldProbe(now));
+      // A single failure is enough while half-open.
+      assertTrue(breaker.recordFailure(now));
+      backoff = Math.min(MAX_BACKOFF, backoff * 2);
+    }
+
+    assertBackoff(now, breaker.getRetryAt(), MAX_BACKOFF);
+  }
+
+  @Test
+  void stableBreakerForgetsItsPreviousTrips() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    long now = 0;
+    for (int i = 0; i < 3; i++) {
+      breaker.trip(now);
+      now = breaker.getRetryAt();
+      breaker.shouldProbe(now);
+    }
+
+    breaker.recordSuccess(now);
+    breaker.recordSuccess(now + MAX_BACKOFF - 1);
+    breaker.trip(now + MAX_BACKOFF - 1);
+    assertBackoff(now + MAX_BACKOFF - 1, breaker.getRetryAt(), BASE_BACKOFF * 8);
+
+    now = breaker.getRetryAt();
+    breaker.shouldProbe(now);
+    breaker.recordSuccess(now);
+    breaker.recordSuccess(now + MAX_BACKOFF);
+    breaker.trip(now + MAX_BACKOFF);
+    assertBackoff(now + MAX_BACKOFF, breaker.getRetryAt(), BASE_BACKOFF);
+  }
+
+  @Test
+  void lateSuccessDoesNotCloseAnOpenBreaker() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    breaker.trip(0);
+
+    assertFalse(breaker.recordSuccess(1));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.trip(1));
+  }
+
+  @Test
+  void healthyBreakerProbesLessOften() {
+    CircuitBreaker breaker = new CircuitBreaker(SETTINGS, 0);
+    assertTrue(breaker.shouldProbe(0));
+    breaker.onProbeStarted(0);
+    // Half an interval of slack before the next probe is due.
+    assertFalse(breaker.shouldProbe(PROBE_INTERVAL / 2 - 1));
+    assertTrue(breaker.shouldProbe(PROBE_INTERVAL / 2));
+
+    long now = 0;
+    for (int i = 0; i < 100; i++) {
+      breaker.recordSuccess(now);
+    }
+
+    breaker.onProbeStarted(now);
+    assertFalse(breaker.shouldProbe(now + STABLE_PROBE_INTERVAL - PROBE_INTERVAL / 2 - 1));
+    assertTrue(breaker.shouldProbe(now + STABLE_PROBE_INTERVAL - PROBE_INTERVAL / 2));
+
+    breaker.recordFailure(now);
+    breaker.onProbeStarted(now);
+    assertTrue(breaker.shouldProbe(now + PROBE_INTERVAL / 2));
+  }
+
+  /**
+   * The backoff is jittered between half of it and all of it.
+   */
+  private static void assertBackoff(long openedAt, long retryAt, long backoff) {
+    long actual = retryAt - openedAt;
+    assertTrue(actual >= backoff / 2 && actual <= backoff, () -> "backoff of " + actual + " ms, expected " + backoff / 2 + " to " + backoff);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2022 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboqueue.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ReservationLedgerTest {
+
+  private static final int MAX = 10;
+
+  @Test
+  void nothingIsReservedBeforeTheFirstPing() {
+    ReservationLedger ledger = new ReservationLedger();
+
+    assertFalse(ledger.tryReserve());
+    assertEquals(0, ledger.getFreeSlots());
+    assertEquals(1, ledger.getLoadFactor(), 0);
+  }
+
+  @Test
+  void reservationsTakeTheFreeSlotsUntilReleased() {
+    ReservationLedger ledger = new ReservationLedger();
+    ledger.reconcile(load(8, 100));
+
+    assertTrue(ledger.tryReserve());
+    assertTrue(ledger.tryReserve());
+    assertFalse(ledger.tryReserve());
+    assertEquals(2, ledger.getInFlight());
+    assertEquals(1, ledger.getLoadFactor(), 0);
+
+    ledger.release();
+    assertEquals(1, ledger.getFreeSlots());
+    assertTrue(ledger.tryReserve());
+  }
+
+  @Test
+  void confirmedConnectionsCountUntilAPingSentAfterThem() {
+    ReservationLedger ledger = new ReservationLedger();
+    ledger.reconcile(load(8, 100));
+    ledger.tryReserve();
+    ledger.confirm(200);
+
+    assertEquals(0, ledger.getInFlight());
+    assertEquals(1, ledger.getCompleted());
+    assertEquals(1, ledger.getFreeSlots());
+
+    // Sent before the player joined, the ping can't count them yet.
+    ledger.reconcile(load(8, 150));
+    assertEquals(1, ledger.getFreeSlots());
+
+    ledger.reconcile(load(9, 250));
+    assertEquals(0, ledger.getCompleted());
+    assertEquals(1, ledger.getFreeSlots());
+  }
+
+  @Test
+  void departuresFreeSlotsUntilTheNextPing() {
+    ReservationLedger ledger = new ReservationLedger();
+    ledger.reconcile(load(10, 100));
+    ledger.onDeparture(200);
+
+    assertEquals(1, ledger.getFreeSlots());
+    ledger.reconcile(load(9, 300));
+    assertEquals(1, ledger.getFreeSlots());
+  }
+
+  @Test
+  void fullServerHandsOutNoSlotUntilAPingSentAfterwards() {
+    ReservationLedger ledger = new ReservationLedger();
+    ledger.reconcile(load(5, 100));
+    ledger.markFull(200);
+
+    assertEquals(0, ledger.getFreeSlots());
+    assertFalse(ledger.tryReserve());
+
+    ledger.reconcile(load(5, 150));
+    assertEquals(0, ledger.getFreeSlots());
+
+    ledger.reconcile(load(5, 200));
+    assertEquals(5, ledger.getFreeSlots());
+  }
+
+  @Test
+  void lateResponseOfAnOlderPingIsIgnored() {
+    ReservationLedger ledger = new ReservationLedger();
+    ledger.reconcile(load(9, 200));
+    ledger.reconcile(load(2, 100));
+
+    assertEquals(9, ledger.getLoad().getOnline());
+    assertEquals(1, ledger.getFreeSlots());
+  }
+
+  @Test
+  void invalidatedLedgerKeepsTrackOfTheConnectionsInFlight() {
+    ReservationLedger ledger = new ReservationLedger();
+    ledger.reconcile(load(5, 100));
+    ledger.tryReserve();
+    ledger.confirm(150);
+    ledger.tryReserve();
+    ledger.invalidate();
+
+    assertEquals(0, ledger.getFreeSlots());
+    assertEquals(0, ledger.getCompleted());
+    assertEquals(1, ledger.getInFlight());
+
+    ledger.reconcile(load(5, 200));
+    assertEquals(4, ledger.getFreeSlots());
+  }
+
+  /**
+   * A ping sent at the given time, answered 10 nanoseconds later.
+   */
+  private static ServerLoad load(int online, long sentAt) {
+    return new ServerLoad(online, MAX, sentAt, sentAt + 10);
+  }
+}